@@ -24,15 +24,27 @@ reviewsApi.interceptors.response.use(
   }
 );
 
+// Seznami so po straneh; naslednjo stran napove header X-Next-Cursor
+const PAGE_SIZE = 200;
+
+const getAllPages = async (path) => {
+  const reviews = [];
+  let cursor;
+  do {
+    const params = { limit: PAGE_SIZE };
+    if (cursor) {
+      params.cursor = cursor;
+    }
+    const res = await reviewsApi.get(path, { params });
+    reviews.push(...res.data);
+    cursor = res.headers['x-next-cursor'];
+  } while (cursor);
+  return reviews;
+};
+
 export const reviewsAPI = {
-  getReviewsByUser: async (userId) => {
-    const res = await reviewsApi.get(`/reviews/user/${userId}`);
-    return res.data;
-  },
-  getReviewsByBook: async (bookId) => {
-    const res = await reviewsApi.get(`/reviews/book/${bookId}`);
-    return res.data;
-  },
+  getReviewsByUser: async (userId) => getAllPages(`/reviews/user/${userId}`),
+  getReviewsByBook: async (bookId) => getAllPages(`/reviews/book/${bookId}`),
   getBookStats: async (bookId) => {
     const res = await reviewsApi.get(`/reviews/book/${bookId}/stats`);
     return res.data;
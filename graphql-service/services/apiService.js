@@ -1,5 +1,8 @@
 const axios = require('axios');
 
+// Review service vrača sezname po straneh; to je največja stran, ki jo dovoli
+const REVIEW_PAGE_SIZE = 200;
+
 class ApiService {
     constructor() {
         // Service endpoints - adjust based on your environment
@@ -91,8 +94,7 @@ class ApiService {
     // Review service calls
     async getReviews() {
         try {
-            const response = await axios.get(`${this.reviewServiceUrl}/reviews`);
-            return response.data;
+            return await this.getAllReviewPages('/reviews');
         } catch (error) {
             console.error('Error fetching reviews:', error.message);
             return [];
@@ -111,8 +113,7 @@ class ApiService {
 
     async getReviewsByUser(userId) {
         try {
-            const response = await axios.get(`${this.reviewServiceUrl}/reviews/user/${userId}`);
-            return response.data;
+            return await this.getAllReviewPages(`/reviews/user/${userId}`);
         } catch (error) {
             console.error(`Error fetching reviews by user ${userId}:`, error.message);
             // Return empty array instead of crashing
@@ -122,14 +123,29 @@ class ApiService {
 
     async getReviewsByBook(bookId) {
         try {
-            const response = await axios.get(`${this.reviewServiceUrl}/reviews/book/${bookId}`);
-            return response.data;
+            return await this.getAllReviewPages(`/reviews/book/${bookId}`);
         } catch (error) {
             console.error(`Error fetching reviews by book ${bookId}:`, error.message);
             return [];
         }
     }
 
+    // Sledi headerju X-Next-Cursor, dokler review service ne vrne zadnje strani
+    async getAllReviewPages(path) {
+        const reviews = [];
+        let cursor;
+        do {
+            const params = { limit: REVIEW_PAGE_SIZE };
+            if (cursor) {
+                params.cursor = cursor;
+            }
+            const response = await axios.get(`${this.reviewServiceUrl}${path}`, { params });
+            reviews.push(...response.data);
+            cursor = response.headers['x-next-cursor'];
+        } while (cursor);
+        return reviews;
+    }
+
     async createReview(reviewData, token) {
         try {
             const response = await axios.post(`${this.reviewServiceUrl}/reviews`, reviewData, {
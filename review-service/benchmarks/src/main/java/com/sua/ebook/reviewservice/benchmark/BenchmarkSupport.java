@@ -0,0 +1,63 @@
+package com.sua.ebook.reviewservice.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.sua.ebook.reviewservice.model.Review;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Skupni testni podatki; vrednosti so podobne produkcijskim (dolžina besedila, žetoni user-service)
+final class BenchmarkSupport {
+    
+    static final String JWT_SECRET = "benchmark-secret-0123456789abcdef0123456789";
+    
+    private BenchmarkSupport() {}
+    
+    static String token(String userId, String role) {
+        return Jwts.builder()
+                .setSubject(userId)
+                .claim("role", role)
+                .claim("email", userId + "@example.com")
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + 3_600_000L))
+                .signWith(Keys.hmacShaKeyFor(JWT_SECRET.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+    }
+    
+    // Enako kot ObjectMapper, ki ga Spring Boot nastavi za MVC (JavaTimeModule, ISO datumi)
+    static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+    
+    // Enako kot BinaryFormats: ista nastavitev kot za JSON, le druga tovarna
+    static ObjectMapper objectMapper(String format) {
+        return switch (format) {
+            case "json" -> objectMapper();
+            case "cbor" -> Jackson2ObjectMapperBuilder.json().factory(new CBORFactory()).build();
+            case "smile" -> Jackson2ObjectMapperBuilder.json().factory(new SmileFactory()).build();
+            default -> throw new IllegalArgumentException("Unknown format: " + format);
+        };
+    }
+    
+    static List<Review> reviews(int count) {
+        List<Review> reviews = new ArrayList<>(count);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < count; i++) {
+            Review review = new Review("book-" + (i % 10), "user-" + i, 1 + i % 5,
+                    "Review text " + i + " " + "lorem ipsum dolor sit amet ".repeat(8));
+            review.setId(String.format("%024x", i));
+            review.setCreatedAt(now.minusMinutes(i));
+            review.setUpdatedAt(now.minusMinutes(i));
+            reviews.add(review);
+        }
+        return reviews;
+    }
+}
@@ -0,0 +1,59 @@
+package com.sua.ebook.reviewservice.benchmark;
+
+import com.sua.ebook.reviewservice.model.BookRatingSummary;
+import com.sua.ebook.reviewservice.service.RatingSummaryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU part of ReviewService.getBookReviewStats: turning the stored rating summary into the
+ * response map. The Mongo lookup of the summary is a single _id read and is not measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BookReviewStatsBenchmark {
+    
+    private RatingSummaryService ratingSummaryService;
+    private BookRatingSummary summary;
+    
+    @Setup
+    public void setup() {
+        ratingSummaryService = new RatingSummaryService();
+        summary = new BookRatingSummary("book-1");
+        Map<String, Long> histogram = new HashMap<>();
+        long count = 0;
+        long sum = 0;
+        for (int rating = 1; rating <= 5; rating++) {
+            long ratings = 100L * rating;
+            histogram.put(String.valueOf(rating), ratings);
+            count += ratings;
+            sum += ratings * rating;
+        }
+        summary.setHistogram(histogram);
+        summary.setCount(count);
+        summary.setSum(sum);
+        summary.setUpdatedAt(LocalDateTime.now());
+    }
+    
+    @Benchmark
+    public Map<String, Object> toStats() {
+        return ratingSummaryService.toStats(summary);
+    }
+}
@@ -0,0 +1,191 @@
+package com.sua.ebook.reviewservice.benchmark;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load harness for group commit (review.group-commit.enabled). Compares the throughput and
+ * latency of POST /reviews/book/{bookId}/quick on the per-request path and with group
+ * commit. This is not a JMH benchmark, the unit of work is a whole HTTP request against
+ * MongoDB. Like StartupBenchmark, each mode starts the exec jar in a fresh JVM. Then
+ * `clients` threads send quick ratings for `seconds` seconds, after a warmup of 5 seconds.
+ * Every client rates the books one after another under a new user, so no rating is a
+ * duplicate.
+ * <p>
+ * Usage: java -cp target/benchmarks.jar com.sua.ebook.reviewservice.benchmark.GroupCommitLoadBenchmark
+ * [clients] [seconds] [-- app arguments]. The exec jar is read from ../target. Point the
+ * service at a MongoDB with --spring.data.mongodb.uri; the ratings are left in the database.
+ */
+public class GroupCommitLoadBenchmark {
+    
+    private static final int BOOKS = 50;
+    private static final Duration WARMUP = Duration.ofSeconds(5);
+    
+    public static void main(String[] args) throws Exception {
+        int clients = 32;
+        int seconds = 20;
+        List<String> appArgs = new ArrayList<>();
+        int separator = Arrays.asList(args).indexOf("--");
+        List<String> own = separator >= 0 ? Arrays.asList(args).subList(0, separator) : Arrays.asList(args);
+        if (separator >= 0) {
+            appArgs.addAll(Arrays.asList(args).subList(separator + 1, args.length));
+        }
+        if (own.size() > 0) {
+            clients = Integer.parseInt(own.get(0));
+        }
+        if (own.size() > 1) {
+            seconds = Integer.parseInt(own.get(1));
+        }
+        
+        File execJar = new File(System.getProperty("review.target", "../target"), "review-service-1.0.0-exec.jar");
+        if (!execJar.isFile()) {
+            System.err.println("Missing " + execJar + "; build it with mvn package in review-service");
+            System.exit(1);
+        }
+        
+        Result perRequest = measure(execJar, false, clients, seconds, appArgs);
+        Result groupCommit = measure(execJar, true, clients, seconds, appArgs);
+        
+        System.out.println();
+        System.out.printf("%-14s %10s %8s %8s %8s %8s%n", "Mode", "req/s", "p50 ms", "p99 ms", "max ms", "errors");
+        perRequest.report("per-request");
+        groupCommit.report("group-commit");
+        System.out.printf("Group commit throughput: %.0f%% of per-request%n",
+            100.0 * groupCommit.throughput() / perRequest.throughput());
+    }
+    
+    private static Result measure(File execJar, boolean groupCommit, int clients, int seconds,
+                                  List<String> appArgs) throws Exception {
+        int port = StartupBenchmark.freePort();
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + "/bin/java");
+        command.add("-jar");
+        command.add(execJar.getPath());
+        command.add("--server.port=" + port);
+        command.add("--management.server.port=0");
+        command.add("--jwt.secret=" + BenchmarkSupport.JWT_SECRET);
+        // Omejitve sprejema bi merile sebe, ne zapisa
+        command.add("--review.admission.enabled=false");
+        command.add("--review.group-commit.enabled=" + groupCommit);
+        command.addAll(appArgs);
+        
+        Process process = new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .start();
+        try {
+            StartupBenchmark.awaitFirstRequest(process, port, System.nanoTime());
+            String mode = groupCommit ? "group-commit" : "per-request";
+            System.out.printf("%s: %d clients, %d s%n", mode, clients, seconds);
+            return run(port, mode + "-" + System.currentTimeMillis(), clients, seconds);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+    
+    private static Result run(int port, String runId, int clients, int seconds) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newCachedThreadPool())
+            .build();
+        long measureFrom = System.nanoTime() + WARMUP.toNanos();
+        long deadline = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+        
+        ExecutorService threads = Executors.newFixedThreadPool(clients);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            String userPrefix = runId + "-c" + i + "-u";
+            futures.add(threads.submit(() -> {
+                Result result = new Result(seconds);
+                String token = null;
+                for (long n = 0; System.nanoTime() < deadline; n++) {
+                    if (n % BOOKS == 0) {
+                        token = BenchmarkSupport.token(userPrefix + n / BOOKS, "user");
+                    }
+                    HttpRequest request = HttpRequest.newBuilder(
+                            URI.create("http://localhost:" + port + "/reviews/book/load-book-" + n % BOOKS + "/quick"))
+                        .header("Authorization", "Bearer " + token)
+                        .header("Content-Type", "application/json")
+                        .timeout(Duration.ofSeconds(30))
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"rating\":" + (1 + n % 5) + "}"))
+                        .build();
+                    long started = System.nanoTime();
+                    int status;
+                    try {
+                        status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    } catch (Exception e) {
+                        status = -1;
+                    }
+                    if (started >= measureFrom) {
+                        result.record(status, System.nanoTime() - started);
+                    }
+                }
+                return result;
+            }));
+        }
+        Result total = new Result(seconds);
+        for (Future<Result> future : futures) {
+            total.add(future.get());
+        }
+        threads.shutdown();
+        return total;
+    }
+    
+    private static final class Result {
+        private final int seconds;
+        private final List<Long> latencies = new ArrayList<>();
+        private final Map<Integer, Integer> errors = new TreeMap<>();
+        
+        private Result(int seconds) {
+            this.seconds = seconds;
+        }
+        
+        private void record(int status, long nanos) {
+            if (status == 201) {
+                latencies.add(nanos);
+            } else {
+                errors.merge(status, 1, Integer::sum);
+            }
+        }
+        
+        private void add(Result other) {
+            latencies.addAll(other.latencies);
+            other.errors.forEach((status, count) -> errors.merge(status, count, Integer::sum));
+        }
+        
+        private double throughput() {
+            return (double) latencies.size() / seconds;
+        }
+        
+        private void report(String mode) {
+            Collections.sort(latencies);
+            System.out.printf("%-14s %10.0f %8.1f %8.1f %8.1f %8s%n", mode, throughput(),
+                percentile(0.50), percentile(0.99), percentile(1.0), errors.isEmpty() ? "0" : errors.toString());
+        }
+        
+        private double percentile(double p) {
+            if (latencies.isEmpty()) {
+                return 0;
+            }
+            int index = (int) Math.min(latencies.size() - 1, Math.ceil(p * latencies.size()) - 1);
+            return latencies.get(Math.max(0, index)) / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.sua.ebook.reviewservice.benchmark;
+
+import com.sua.ebook.reviewservice.security.AuthMetrics;
+import com.sua.ebook.reviewservice.security.JwtAuthenticationFilter;
+import com.sua.ebook.reviewservice.security.JwtTokenProvider;
+import com.sua.ebook.reviewservice.security.VerifiedTokenCache;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token verification alone, and the whole servlet filter with the verified-token cache.
+ * A new request object is needed for every call, because OncePerRequestFilter marks the
+ * request as already filtered.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JwtBenchmark {
+    
+    private JwtTokenProvider tokenProvider;
+    private JwtAuthenticationFilter filter;
+    private String token;
+    private String authorizationHeader;
+    
+    @Setup
+    public void setup() {
+        tokenProvider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(tokenProvider, "jwtSecret", BenchmarkSupport.JWT_SECRET);
+        ReflectionTestUtils.invokeMethod(tokenProvider, "init");
+        
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        VerifiedTokenCache cache = new VerifiedTokenCache();
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(cache, "maxSize", 10_000L);
+        ReflectionTestUtils.setField(cache, "maxTtl", Duration.ofMinutes(5));
+        ReflectionTestUtils.invokeMethod(cache, "init");
+        
+        filter = new JwtAuthenticationFilter();
+        ReflectionTestUtils.setField(filter, "jwtTokenProvider", tokenProvider);
+        ReflectionTestUtils.setField(filter, "verifiedTokenCache", cache);
+        AuthMetrics authMetrics = new AuthMetrics();
+        ReflectionTestUtils.setField(authMetrics, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(filter, "authMetrics", authMetrics);
+        
+        token = BenchmarkSupport.token("user-1", "user");
+        authorizationHeader = "Bearer " + token;
+    }
+    
+    @Benchmark
+    public Claims validateToken() {
+        return tokenProvider.validateToken(token);
+    }
+    
+    @Benchmark
+    public Object filterAuthenticatedRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/reviews");
+        request.addHeader("Authorization", authorizationHeader);
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return request.getAttribute("userId");
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+    
+    @Benchmark
+    public Object filterPublicRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/reviews/book/book-1");
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return request.getAttribute("userId");
+    }
+}
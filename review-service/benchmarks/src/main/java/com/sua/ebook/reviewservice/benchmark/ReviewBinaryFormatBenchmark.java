@@ -0,0 +1,68 @@
+package com.sua.ebook.reviewservice.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sua.ebook.reviewservice.model.Review;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON compared with CBOR and Smile (Accept: application/cbor, application/x-jackson-smile)
+ * for Review lists of page sizes: encoding on the review-service side and decoding on the
+ * graphql-service / statistics-service side. The payload size of every combination is
+ * printed once in setup, since JMH only reports time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReviewBinaryFormatBenchmark {
+    
+    @Param({"json", "cbor", "smile"})
+    public String format;
+    
+    @Param({"10", "50", "200"})
+    public int size;
+    
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private List<Review> reviews;
+    private byte[] payload;
+    
+    @Setup
+    public void setup() throws Exception {
+        ObjectMapper objectMapper = BenchmarkSupport.objectMapper(format);
+        TypeReference<List<Review>> type = new TypeReference<>() {};
+        writer = objectMapper.writerFor(type);
+        reader = objectMapper.readerFor(type);
+        reviews = BenchmarkSupport.reviews(size);
+        payload = writer.writeValueAsBytes(reviews);
+        System.out.printf("%n%s, %d reviews: %d bytes%n", format, size, payload.length);
+    }
+    
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return writer.writeValueAsBytes(reviews);
+    }
+    
+    @Benchmark
+    public List<Review> deserialize() throws Exception {
+        return reader.readValue(payload);
+    }
+}
@@ -0,0 +1,139 @@
+package com.sua.ebook.reviewservice.benchmark;
+
+import com.sua.ebook.reviewservice.dto.ReviewSearchHit;
+import com.sua.ebook.reviewservice.model.BookRatingSummary;
+import com.sua.ebook.reviewservice.model.Review;
+import com.sua.ebook.reviewservice.repository.ReviewLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The embedded review log (review.storage.backend=log) with a few thousand reviews: a
+ * quick rating insert, a rating update, the first page of a book, the book's rating
+ * summary, a text search, and a replay of the whole log as done at startup. Writes go to
+ * a temporary directory. Their cost mostly depends on sync-every-write and on the fsync
+ * latency of the disk under java.io.tmpdir.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReviewLogBenchmark {
+    
+    @Param({"5000"})
+    private int reviews;
+    
+    @Param({"true", "false"})
+    private boolean syncEveryWrite;
+    
+    private MappingMongoConverter converter;
+    private Path directory;
+    private ReviewLog reviewLog;
+    private Review updated;
+    private long nextUser;
+    private int nextRating;
+    
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        // Kot MongoDataConfiguration v Spring Boot: privzete pretvorbe (java.time) za kontekst in konverter
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        
+        directory = Files.createTempDirectory("review-log-benchmark");
+        reviewLog = open(directory);
+        List<Review> data = BenchmarkSupport.reviews(reviews);
+        for (int from = 0; from < data.size(); from += 500) {
+            reviewLog.insert(data.subList(from, Math.min(from + 500, data.size())));
+        }
+        updated = reviewLog.findById(data.get(0).getId()).orElseThrow();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ReflectionTestUtils.invokeMethod(reviewLog, "close");
+        FileSystemUtils.deleteRecursively(directory);
+    }
+    
+    @Benchmark
+    public Review insertQuickRating() {
+        Review review = new Review("book-" + (nextUser % 10), "bench-user-" + nextUser++, 4, null);
+        return reviewLog.insert(List.of(review)).get(0);
+    }
+    
+    @Benchmark
+    public Review updateRating() {
+        updated.setRating(1 + nextRating++ % 5);
+        return reviewLog.save(List.of(updated)).get(0);
+    }
+    
+    @Benchmark
+    public List<Review> firstPageOfBook() {
+        return reviewLog.findPage("book-3", null, null, 21);
+    }
+    
+    @Benchmark
+    public BookRatingSummary bookSummary() {
+        return reviewLog.summary("book-3");
+    }
+    
+    @Benchmark
+    public List<ReviewSearchHit> searchBook() {
+        return reviewLog.search("lorem \"dolor sit\"", "book-3", null, null, 21);
+    }
+    
+    // Enako kot zagon storitve: branje vseh segmentov in gradnja indeksov
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long replay() {
+        ReviewLog replayed = open(directory);
+        try {
+            return replayed.count();
+        } finally {
+            ReflectionTestUtils.invokeMethod(replayed, "close");
+        }
+    }
+    
+    private ReviewLog open(Path dir) {
+        ReviewLog log = new ReviewLog();
+        ReflectionTestUtils.setField(log, "mongoConverter", converter);
+        ReflectionTestUtils.setField(log, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(log, "dir", dir.toString());
+        ReflectionTestUtils.setField(log, "syncEveryWrite", syncEveryWrite);
+        ReflectionTestUtils.setField(log, "minDeadRecords", 10_000L);
+        ReflectionTestUtils.setField(log, "deadRatio", 0.5);
+        ReflectionTestUtils.setField(log, "webApplicationType", "servlet");
+        ReflectionTestUtils.invokeMethod(log, "init");
+        return log;
+    }
+}
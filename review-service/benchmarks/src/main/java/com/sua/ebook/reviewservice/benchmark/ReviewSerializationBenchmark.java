@@ -0,0 +1,48 @@
+package com.sua.ebook.reviewservice.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.sua.ebook.reviewservice.model.Review;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Serializacija seznamov recenzij v velikostih strani (privzeto 50, največ 200)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReviewSerializationBenchmark {
+    
+    @Param({"1", "10", "50", "200"})
+    public int size;
+    
+    private ObjectWriter writer;
+    private List<Review> reviews;
+    
+    @Setup
+    public void setup() {
+        ObjectMapper objectMapper = BenchmarkSupport.objectMapper();
+        writer = objectMapper.writerFor(new TypeReference<List<Review>>() {});
+        reviews = BenchmarkSupport.reviews(size);
+    }
+    
+    @Benchmark
+    public byte[] serializeReviewList() throws Exception {
+        return writer.writeValueAsBytes(reviews);
+    }
+}
@@ -0,0 +1,59 @@
+package com.sua.ebook.reviewservice.benchmark;
+
+import com.sua.ebook.reviewservice.dto.ReviewCreateDTO;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Bean Validation za POST /reviews (@Valid ReviewCreateDTO), veljaven in neveljaven vnos
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReviewValidationBenchmark {
+    
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private ReviewCreateDTO valid;
+    private ReviewCreateDTO invalid;
+    
+    @Setup
+    public void setup() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        valid = new ReviewCreateDTO("book-1", 4, "Great book, ".repeat(20));
+        invalid = new ReviewCreateDTO("", 7, "x".repeat(1001));
+    }
+    
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+    
+    @Benchmark
+    public Set<ConstraintViolation<ReviewCreateDTO>> validDto() {
+        return validator.validate(valid);
+    }
+    
+    @Benchmark
+    public Set<ConstraintViolation<ReviewCreateDTO>> invalidDto() {
+        return validator.validate(invalid);
+    }
+}
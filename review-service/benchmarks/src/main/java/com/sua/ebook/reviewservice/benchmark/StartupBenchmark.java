@@ -0,0 +1,133 @@
+package com.sua.ebook.reviewservice.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to first request of review-service in the default mode (exec jar) and in the
+ * fast-startup mode (AOT bean definitions plus the AppCDS archive). This is not a JMH
+ * benchmark. Every run starts a fresh JVM and polls GET /reviews/leaderboard (public,
+ * served from memory) until it returns 200. The time is measured from process start,
+ * so it includes JVM boot, context refresh and the first request.
+ * <p>
+ * Usage: java -cp target/benchmarks.jar com.sua.ebook.reviewservice.benchmark.StartupBenchmark
+ * [runs] [-- app arguments]. The jars are read from ../target (build them with
+ * mvn -Pfast-startup package). The environment, such as MONGO_URL, is passed on to the
+ * service.
+ */
+public class StartupBenchmark {
+    
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+    
+    public static void main(String[] args) throws Exception {
+        int runs = 5;
+        List<String> appArgs = new ArrayList<>();
+        int separator = Arrays.asList(args).indexOf("--");
+        if (separator >= 0) {
+            appArgs.addAll(Arrays.asList(args).subList(separator + 1, args.length));
+        }
+        if (args.length > 0 && separator != 0) {
+            runs = Integer.parseInt(args[0]);
+        }
+        
+        File target = new File(System.getProperty("review.target", "../target"));
+        File execJar = new File(target, "review-service-1.0.0-exec.jar");
+        File plainJar = new File(target, "review-service-1.0.0.jar");
+        File archive = new File(target, "review-service.jsa");
+        if (!execJar.isFile() || !plainJar.isFile() || !archive.isFile()) {
+            System.err.println("Missing " + execJar + ", " + plainJar + " or " + archive
+                + "; build them with mvn -Pfast-startup package in review-service");
+            System.exit(1);
+        }
+        
+        List<Long> standard = measure(runs, List.of("-jar", execJar.getPath()), appArgs);
+        List<Long> fast = measure(runs, List.of("-XX:SharedArchiveFile=" + archive.getPath(),
+            "-Dspring.aot.enabled=true", "-jar", plainJar.getPath()), appArgs);
+        
+        System.out.println();
+        System.out.printf("%-14s %8s %8s %8s%n", "Mode", "min ms", "median", "max ms");
+        report("default", standard);
+        report("fast-startup", fast);
+        System.out.printf("Median time to first request: %.0f%% of default%n",
+            100.0 * median(fast) / median(standard));
+    }
+    
+    private static List<Long> measure(int runs, List<String> jvmArgs, List<String> appArgs) throws Exception {
+        List<Long> times = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            int port = freePort();
+            List<String> command = new ArrayList<>();
+            command.add(System.getProperty("java.home") + "/bin/java");
+            command.addAll(jvmArgs);
+            command.add("--server.port=" + port);
+            command.addAll(appArgs);
+            
+            long started = System.nanoTime();
+            Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+            try {
+                long elapsed = awaitFirstRequest(process, port, started);
+                times.add(elapsed);
+                System.out.printf("%s run %d: %d ms%n", jvmArgs.get(jvmArgs.size() - 1), i + 1, elapsed);
+            } finally {
+                process.destroy();
+                if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+        return times;
+    }
+    
+    static long awaitFirstRequest(Process process, int port, long started) throws Exception {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/reviews/leaderboard"))
+            .timeout(Duration.ofSeconds(5))
+            .GET()
+            .build();
+        long deadline = started + TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Service exited with code " + process.exitValue());
+            }
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                }
+            } catch (IOException e) {
+                // Strežnik še ne posluša
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("Service did not answer within " + TIMEOUT);
+    }
+    
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+    
+    private static void report(String mode, List<Long> times) {
+        System.out.printf("%-14s %8d %8d %8d%n", mode, Collections.min(times), median(times), Collections.max(times));
+    }
+    
+    private static long median(List<Long> times) {
+        List<Long> sorted = new ArrayList<>(times);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+}
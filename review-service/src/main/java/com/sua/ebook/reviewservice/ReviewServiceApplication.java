@@ -1,9 +1,14 @@
 package com.sua.ebook.reviewservice;
 
+import com.sua.ebook.reviewservice.config.ReviewRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
+@ImportRuntimeHints(ReviewRuntimeHints.class)
 public class ReviewServiceApplication {
     public static void main(String[] args) {
         SpringApplication.run(ReviewServiceApplication.class, args);
@@ -0,0 +1,270 @@
+package com.sua.ebook.reviewservice.admission;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control shared by the servlet and reactive filters.
+ *
+ * Rate limiting: every configured endpoint (review.admission.rate-limits, "METHOD pattern=N/period")
+ * has a token bucket per user (JWT userId, client address when there is none). A user gets
+ * a burst of N requests and then N per period. Rejected requests get 429 with Retry-After.
+ *
+ * Load shedding: all requests except health and metrics count against a global in-flight
+ * limit. While the Mongo latency of requests (MongoLatencyTracker, a percentile over a
+ * sliding window) is above mongo-latency-threshold, the limit drops from max-concurrent to overload-concurrent. Requests over the limit get 503
+ * with Retry-After, which keeps the database from queueing more work than it can finish.
+ */
+@Component
+public class AdmissionControl {
+    
+    public static final String RATE_LIMITED = "rate_limited";
+    public static final String OVERLOADED = "overloaded";
+    
+    @Autowired
+    private MongoLatencyTracker mongoLatencyTracker;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${review.admission.enabled:true}")
+    private boolean enabled;
+    
+    // "<METODA> <vzorec>=<število>/<obdobje>,..." npr. "POST /reviews=20/1m"
+    @Value("${review.admission.rate-limits:}")
+    private String rateLimitsConfig;
+    
+    @Value("${review.admission.max-tracked-users:100000}")
+    private long maxTrackedUsers;
+    
+    @Value("${review.admission.max-concurrent:256}")
+    private int maxConcurrent;
+    
+    @Value("${review.admission.overload-concurrent:32}")
+    private int overloadConcurrent;
+    
+    @Value("${review.admission.mongo-latency-threshold:250ms}")
+    private Duration mongoLatencyThreshold;
+    
+    @Value("${review.admission.retry-after:1s}")
+    private Duration overloadRetryAfter;
+    
+    private final List<RateLimit> rateLimits = new ArrayList<>();
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+    
+    private Cache<String, TokenBucket> buckets;
+    
+    @PostConstruct
+    void init() {
+        PathPatternParser parser = new PathPatternParser();
+        Duration longestPeriod = Duration.ofSeconds(1);
+        for (String entry : rateLimitsConfig.split(",")) {
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            String[] endpoint = entry.substring(0, separator).trim().split("\\s+", 2);
+            String[] limit = entry.substring(separator + 1).trim().split("/", 2);
+            if (endpoint.length != 2 || limit.length != 2) {
+                throw new IllegalArgumentException("Invalid review.admission.rate-limits entry: " + entry);
+            }
+            int capacity;
+            Duration period;
+            try {
+                capacity = Integer.parseInt(limit[0].trim());
+                period = DurationStyle.detectAndParse(limit[1].trim());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid review.admission.rate-limits entry: " + entry, e);
+            }
+            // Vedro z 0 žetoni ali obdobjem 0 bi delilo z nič ali zavrnilo vsako zahtevo
+            if (capacity <= 0 || period.isNegative() || period.toNanos() / capacity <= 0) {
+                throw new IllegalArgumentException("Invalid review.admission.rate-limits entry: " + entry
+                    + " (expected a positive number of requests per a positive period)");
+            }
+            rateLimits.add(new RateLimit(rateLimits.size(), endpoint[0].toUpperCase(), endpoint[1],
+                parser.parse(endpoint[1]), capacity, period.toNanos()));
+            if (period.compareTo(longestPeriod) > 0) {
+                longestPeriod = period;
+            }
+        }
+        // Vedro, ki ni bilo uporabljeno celo obdobje, je spet polno, zato ga lahko zavržemo
+        buckets = Caffeine.newBuilder()
+            .maximumSize(maxTrackedUsers)
+            .expireAfterAccess(longestPeriod)
+            .build();
+        
+        Gauge.builder("review.admission.in_flight", inFlight, AtomicInteger::get)
+            .description("Requests currently admitted")
+            .register(meterRegistry);
+        Gauge.builder("review.admission.concurrency_limit", this, AdmissionControl::concurrencyLimit)
+            .description("Current in-flight limit (lowered while Mongo is slow)")
+            .register(meterRegistry);
+        Gauge.builder("review.admission.mongo_latency", mongoLatencyTracker, MongoLatencyTracker::latencyMillis)
+            .description("Windowed percentile of the Mongo command latency of requests")
+            .baseUnit("milliseconds")
+            .register(meterRegistry);
+    }
+    
+    public Decision admit(String method, String path, Object userId, String clientAddress) {
+        if (!enabled || exempt(path)) {
+            return Decision.ADMITTED_UNTRACKED;
+        }
+        
+        RateLimit rateLimit = match(method, path);
+        // Najprej mesto med sočasnimi zahtevami: zahteva, zavrnjena z 503, ne porabi žetona uporabnika
+        int limit = concurrencyLimit();
+        if (inFlight.incrementAndGet() > limit) {
+            inFlight.decrementAndGet();
+            reject(OVERLOADED, rateLimit != null ? rateLimit.endpoint() : "other");
+            return Decision.rejected(HttpStatus.SERVICE_UNAVAILABLE, seconds(overloadRetryAfter.toNanos()),
+                "Service is overloaded, retry later");
+        }
+        
+        if (rateLimit != null) {
+            String key = rateLimit.index + ":" + (userId != null ? userId : "ip:" + clientAddress);
+            long now = System.nanoTime();
+            TokenBucket bucket = buckets.get(key, k -> new TokenBucket(rateLimit.capacity, rateLimit.periodNanos, now));
+            long waitNanos = bucket.tryAcquire(now);
+            if (waitNanos > 0) {
+                inFlight.decrementAndGet();
+                reject(RATE_LIMITED, rateLimit.endpoint());
+                return Decision.rejected(HttpStatus.TOO_MANY_REQUESTS, seconds(waitNanos),
+                    "Rate limit exceeded for " + rateLimit.endpoint());
+            }
+        }
+        return Decision.ADMITTED;
+    }
+    
+    public void release(Decision decision) {
+        if (decision == Decision.ADMITTED) {
+            inFlight.decrementAndGet();
+        }
+    }
+    
+    public byte[] errorBody(Decision decision) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("timestamp", LocalDateTime.now());
+        response.put("status", decision.getStatus().value());
+        response.put("error", decision.getStatus().getReasonPhrase());
+        response.put("message", decision.getMessage());
+        try {
+            return objectMapper.writeValueAsBytes(response);
+        } catch (Exception e) {
+            return new byte[0];
+        }
+    }
+    
+    private int concurrencyLimit() {
+        return mongoLatencyTracker.latencyMillis() > mongoLatencyThreshold.toMillis() ? overloadConcurrent : maxConcurrent;
+    }
+    
+    private RateLimit match(String method, String path) {
+        PathContainer container = null;
+        for (RateLimit rateLimit : rateLimits) {
+            if (!rateLimit.method.equals(method)) {
+                continue;
+            }
+            if (container == null) {
+                container = PathContainer.parsePath(path);
+            }
+            if (rateLimit.pattern.matches(container)) {
+                return rateLimit;
+            }
+        }
+        return null;
+    }
+    
+    private void reject(String reason, String endpoint) {
+        meterRegistry.counter("review.admission.rejected", "reason", reason, "endpoint", endpoint).increment();
+    }
+    
+    private static boolean exempt(String path) {
+        return path.startsWith("/actuator") || path.equals("/health");
+    }
+    
+    private static long seconds(long nanos) {
+        return Math.max(1, (nanos + 999_999_999L) / 1_000_000_000L);
+    }
+    
+    private static final class RateLimit {
+        private final int index;
+        private final String method;
+        private final String path;
+        private final PathPattern pattern;
+        private final int capacity;
+        private final long periodNanos;
+        
+        private RateLimit(int index, String method, String path, PathPattern pattern, int capacity, long periodNanos) {
+            this.index = index;
+            this.method = method;
+            this.path = path;
+            this.pattern = pattern;
+            this.capacity = capacity;
+            this.periodNanos = periodNanos;
+        }
+        
+        private String endpoint() {
+            return method + " " + path;
+        }
+    }
+    
+    public static final class Decision {
+        static final Decision ADMITTED = new Decision(null, 0, null);
+        // Izvzete zahteve (health, metrike) ne štejejo v sočasnost
+        static final Decision ADMITTED_UNTRACKED = new Decision(null, 0, null);
+        
+        private final HttpStatus status;
+        private final long retryAfterSeconds;
+        private final String message;
+        
+        private Decision(HttpStatus status, long retryAfterSeconds, String message) {
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+            this.message = message;
+        }
+        
+        static Decision rejected(HttpStatus status, long retryAfterSeconds, String message) {
+            return new Decision(status, retryAfterSeconds, message);
+        }
+        
+        public boolean isAdmitted() {
+            return status == null;
+        }
+        
+        public HttpStatus getStatus() {
+            return status;
+        }
+        
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+        
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.sua.ebook.reviewservice.admission;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+// Za Spring Security verigo, da je userId iz JWT že v request atributih
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER + 10)
+public class AdmissionFilter extends OncePerRequestFilter {
+    
+    @Autowired
+    private AdmissionControl admissionControl;
+    
+    @Autowired
+    private MongoLatencyTracker mongoLatencyTracker;
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        AdmissionControl.Decision decision = admissionControl.admit(request.getMethod(), request.getRequestURI(),
+            request.getAttribute("userId"), request.getRemoteAddr());
+        if (!decision.isAdmitted()) {
+            response.setStatus(decision.getStatus().value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(decision.getRetryAfterSeconds()));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getOutputStream().write(admissionControl.errorBody(decision));
+            return;
+        }
+        // Le Mongo ukazi sprejetih zahtev štejejo v latenco, po kateri se zmanjša sočasnost
+        boolean tracked = decision == AdmissionControl.Decision.ADMITTED;
+        if (tracked) {
+            mongoLatencyTracker.enterRequest();
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (tracked) {
+                mongoLatencyTracker.exitRequest();
+            }
+            admissionControl.release(decision);
+        }
+    }
+}
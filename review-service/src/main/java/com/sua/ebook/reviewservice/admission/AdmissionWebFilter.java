@@ -0,0 +1,48 @@
+package com.sua.ebook.reviewservice.admission;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.net.InetSocketAddress;
+
+// WebFlux različica AdmissionFilter; teče za varnostno verigo (ta ima red -100)
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER + 10)
+public class AdmissionWebFilter implements WebFilter {
+    
+    @Autowired
+    private AdmissionControl admissionControl;
+    
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        InetSocketAddress remote = exchange.getRequest().getRemoteAddress();
+        AdmissionControl.Decision decision = admissionControl.admit(exchange.getRequest().getMethod().name(),
+            exchange.getRequest().getPath().value(),
+            exchange.getAttribute("userId"),
+            remote != null ? remote.getHostString() : null);
+        if (!decision.isAdmitted()) {
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(decision.getStatus());
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(decision.getRetryAfterSeconds()));
+            response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(admissionControl.errorBody(decision))));
+        }
+        Mono<Void> admitted = chain.filter(exchange).doFinally(signal -> admissionControl.release(decision));
+        // Le Mongo ukazi sprejetih zahtev štejejo v latenco, po kateri se zmanjša sočasnost
+        return decision == AdmissionControl.Decision.ADMITTED
+            ? admitted.contextWrite(Context.of(MongoLatencyTracker.REQUEST_KEY, Boolean.TRUE))
+            : admitted;
+    }
+}
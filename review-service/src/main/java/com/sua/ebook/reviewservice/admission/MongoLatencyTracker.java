@@ -0,0 +1,192 @@
+package com.sua.ebook.reviewservice.admission;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.RequestContext;
+import com.mongodb.client.SynchronousContextProvider;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.reactivestreams.client.ReactiveContextProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PostConstruct;
+import org.reactivestreams.Subscriber;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.stereotype.Component;
+import reactor.core.CoreSubscriber;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Latency of the Mongo commands issued on behalf of admitted requests, for AdmissionControl.
+ * Jobs (stats rebuild, book deletion, event dispatch, shard rebalance) run their own long
+ * aggregations and bulk writes and are left out, so that they cannot shed user traffic.
+ * <p>
+ * Both drivers ask this class for a request context when an operation starts. The sync
+ * driver gets a marker while the calling thread serves a request (AdmissionFilter, the
+ * group-commit flusher); the reactive driver gets it when the Reactor context carries
+ * REQUEST_KEY (AdmissionWebFilter). Only commands with the marker are recorded.
+ * <p>
+ * The reported latency is a percentile (review.admission.mongo-latency-percentile) over a
+ * sliding window (review.admission.mongo-latency-window), so a single slow command does not
+ * trip the threshold and the value falls back once the window has passed.
+ */
+@Component
+public class MongoLatencyTracker implements CommandListener, MongoClientSettingsBuilderCustomizer,
+        SynchronousContextProvider, ReactiveContextProvider {
+    
+    // Ključ v Reactor kontekstu zahteve, ki jo je AdmissionWebFilter spustil naprej
+    public static final String REQUEST_KEY = MongoLatencyTracker.class.getName() + ".request";
+    
+    private static final RequestContext REQUEST = new RequestMarker();
+    
+    // Nadaljevanja kurzorjev (izvoz, dolgi tokovi) merijo hitrost odjemalca, ne obremenitve baze
+    private static final Set<String> IGNORED_COMMANDS = Set.of("getMore", "killCursors");
+    
+    // Percentil se ob vsaki zahtevi ne računa znova
+    private static final long REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${review.admission.mongo-latency-percentile:0.9}")
+    private double percentile;
+    
+    @Value("${review.admission.mongo-latency-window:10s}")
+    private Duration window;
+    
+    private final ThreadLocal<Boolean> inRequest = new ThreadLocal<>();
+    
+    private Timer latency;
+    
+    private volatile double cachedMillis;
+    private volatile long cachedAt = System.nanoTime() - REFRESH_NANOS;
+    
+    @PostConstruct
+    void init() {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("review.admission.mongo-latency-percentile must be between 0 and 1, was " + percentile);
+        }
+        latency = Timer.builder("review.admission.mongo_commands")
+            .description("Mongo commands issued by admitted requests")
+            .publishPercentiles(percentile)
+            .distributionStatisticExpiry(window)
+            .distributionStatisticBufferLength(5)
+            .register(meterRegistry);
+    }
+    
+    @Override
+    public void customize(MongoClientSettings.Builder builder) {
+        builder.addCommandListener(this);
+        builder.contextProvider(this);
+    }
+    
+    @Override
+    public RequestContext getContext() {
+        return Boolean.TRUE.equals(inRequest.get()) ? REQUEST : null;
+    }
+    
+    @Override
+    public RequestContext getContext(Subscriber<?> subscriber) {
+        if (subscriber instanceof CoreSubscriber<?> core && core.currentContext().hasKey(REQUEST_KEY)) {
+            return REQUEST;
+        }
+        return null;
+    }
+    
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        if (tracked(event.getRequestContext(), event.getCommandName())) {
+            latency.record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        if (tracked(event.getRequestContext(), event.getCommandName())) {
+            latency.record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    private static boolean tracked(RequestContext context, String commandName) {
+        return context == REQUEST && !IGNORED_COMMANDS.contains(commandName);
+    }
+    
+    // Ukazi te niti od zdaj štejejo v latenco zahtev
+    public void enterRequest() {
+        inRequest.set(Boolean.TRUE);
+    }
+    
+    public void exitRequest() {
+        inRequest.remove();
+    }
+    
+    // Dolgo opravilo, sproženo z zahtevo (npr. POST /reviews/stats/rebuild), ne šteje v latenco zahtev
+    public <T> T outsideRequest(Supplier<T> work) {
+        Boolean previous = inRequest.get();
+        inRequest.remove();
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                inRequest.set(previous);
+            }
+        }
+    }
+    
+    public double latencyMillis() {
+        long now = System.nanoTime();
+        if (now - cachedAt >= REFRESH_NANOS) {
+            ValueAtPercentile[] values = latency.takeSnapshot().percentileValues();
+            cachedMillis = values.length > 0 ? values[0].value(TimeUnit.MILLISECONDS) : 0.0;
+            cachedAt = now;
+        }
+        return cachedMillis;
+    }
+    
+    // Oznaka ukazov zahteve; gonilnik jo le prenese do CommandEvent
+    private static final class RequestMarker implements RequestContext {
+        
+        @Override
+        public <T> T get(Object key) {
+            return null;
+        }
+        
+        @Override
+        public boolean hasKey(Object key) {
+            return false;
+        }
+        
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+        
+        @Override
+        public void put(Object key, Object value) {
+            throw new UnsupportedOperationException("The request marker is shared and cannot hold values");
+        }
+        
+        @Override
+        public void delete(Object key) {
+        }
+        
+        @Override
+        public int size() {
+            return 0;
+        }
+        
+        @Override
+        public Stream<Map.Entry<Object, Object>> stream() {
+            return Stream.empty();
+        }
+    }
+}
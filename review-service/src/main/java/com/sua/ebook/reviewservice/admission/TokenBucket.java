@@ -0,0 +1,36 @@
+package com.sua.ebook.reviewservice.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket in GCRA form: the whole state is one long (the theoretical arrival time of
+ * the next request), updated with a CAS. Allows a burst of capacity requests and then
+ * one request per period / capacity.
+ */
+final class TokenBucket {
+    
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final AtomicLong theoreticalArrival;
+    
+    TokenBucket(int capacity, long periodNanos, long now) {
+        this.emissionIntervalNanos = periodNanos / capacity;
+        this.burstToleranceNanos = emissionIntervalNanos * capacity;
+        this.theoreticalArrival = new AtomicLong(now);
+    }
+    
+    // 0 = žeton je vzet, sicer čas (ns) do naslednjega žetona
+    long tryAcquire(long now) {
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + emissionIntervalNanos;
+            long wait = next - now - burstToleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
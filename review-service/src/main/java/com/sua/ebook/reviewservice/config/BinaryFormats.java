@@ -0,0 +1,93 @@
+package com.sua.ebook.reviewservice.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Binary representations of the JSON responses for service-to-service calls.
+ *
+ * CBOR and Smile mappers are built from the same Jackson2ObjectMapperBuilder as the
+ * JSON ObjectMapper (modules, date format, naming), so every response has the same
+ * shape in all three formats. Clients choose the format with the Accept header; JSON
+ * stays the default for browsers and for wildcard Accept headers.
+ */
+@Component
+public class BinaryFormats {
+    
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+    
+    // Vrstni red določa izbiro pri enaki q vrednosti in za */*
+    public static final List<MediaType> SUPPORTED = List.of(
+        MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR, APPLICATION_SMILE);
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private ObjectProvider<Jackson2ObjectMapperBuilder> builders;
+    
+    private ObjectMapper cborMapper;
+    private ObjectMapper smileMapper;
+    
+    @PostConstruct
+    void init() {
+        // Builder je prototype bean, vsak getObject() vrne svežo kopijo Bootove konfiguracije
+        cborMapper = builders.getObject().factory(new CBORFactory()).build();
+        smileMapper = builders.getObject().factory(new SmileFactory()).build();
+    }
+    
+    public ObjectMapper cborMapper() {
+        return cborMapper;
+    }
+    
+    public ObjectMapper smileMapper() {
+        return smileMapper;
+    }
+    
+    public ObjectMapper mapper(MediaType format) {
+        if (MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(format)) {
+            return cborMapper;
+        }
+        if (APPLICATION_SMILE.equalsTypeAndSubtype(format)) {
+            return smileMapper;
+        }
+        return objectMapper;
+    }
+    
+    // Za ročno serializirane odgovore (BookReviewCache); ostalo pogaja Spring sam
+    public MediaType negotiate(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return MediaType.APPLICATION_JSON;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_JSON;
+        }
+        accepted.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() <= 0) {
+                continue;
+            }
+            for (MediaType supported : SUPPORTED) {
+                if (type.includes(supported)) {
+                    return supported;
+                }
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+}
@@ -0,0 +1,96 @@
+package com.sua.ebook.reviewservice.config;
+
+import com.sua.ebook.reviewservice.security.AuthMetrics;
+import com.sua.ebook.reviewservice.security.JwtAuthenticationWebFilter;
+import com.sua.ebook.reviewservice.security.JwtTokenProvider;
+import com.sua.ebook.reviewservice.security.VerifiedTokenCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.HttpStatusServerEntryPoint;
+import org.springframework.security.web.server.authorization.HttpStatusServerAccessDeniedHandler;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.security.web.server.util.matcher.AndServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.PathPatternParserServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher.MatchResult;
+import org.springframework.web.cors.reactive.CorsConfigurationSource;
+import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+
+// Enaka pravila dostopa kot SecurityConfig, za WebFlux način
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@EnableWebFluxSecurity
+public class ReactiveSecurityConfig {
+
+    @Autowired
+    private JwtTokenProvider jwtTokenProvider;
+
+    @Autowired
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Autowired
+    private AuthMetrics authMetrics;
+
+    @Value("${server.port:5003}")
+    private int serverPort;
+
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
+    @Bean
+    public SecurityWebFilterChain reactiveFilterChain(ServerHttpSecurity http) {
+        http
+            .csrf(csrf -> csrf.disable())
+            .cors(cors -> cors.configurationSource(reactiveCorsConfigurationSource()))
+            .httpBasic(basic -> basic.disable())
+            .formLogin(form -> form.disable())
+            .logout(logout -> logout.disable())
+            .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+            // Servlet veriga brez prijavnega mehanizma vrne 403, zato tudi tukaj
+            .exceptionHandling(handling -> handling
+                .authenticationEntryPoint(new HttpStatusServerEntryPoint(HttpStatus.FORBIDDEN))
+                .accessDeniedHandler(new HttpStatusServerAccessDeniedHandler(HttpStatus.FORBIDDEN)))
+            .authorizeExchange(authz -> authz
+                .pathMatchers(HttpMethod.OPTIONS, "/**").permitAll()
+                .pathMatchers(HttpMethod.GET, "/reviews").permitAll()
+                .pathMatchers(HttpMethod.GET, "/reviews/leaderboard").permitAll()
+                .pathMatchers(HttpMethod.GET, "/reviews/search").permitAll()
+                .pathMatchers(HttpMethod.GET, "/reviews/book/**").permitAll()
+                .pathMatchers(HttpMethod.POST, "/reviews/stats/batch", "/reviews/books/batch").permitAll()
+                .pathMatchers("/swagger-ui/**", "/v3/api-docs/**", "/swagger-ui.html").permitAll()
+                .pathMatchers("/actuator/health").permitAll()
+                .matchers(new AndServerWebExchangeMatcher(this::onManagementPort, new PathPatternParserServerWebExchangeMatcher("/actuator/prometheus"))).permitAll()
+                .pathMatchers("/health", "/").permitAll()
+                .anyExchange().authenticated()
+            )
+            .addFilterAt(new JwtAuthenticationWebFilter(jwtTokenProvider, verifiedTokenCache, authMetrics),
+                SecurityWebFiltersOrder.AUTHENTICATION);
+
+        return http.build();
+    }
+
+    private Mono<MatchResult> onManagementPort(ServerWebExchange exchange) {
+        InetSocketAddress local = exchange.getRequest().getLocalAddress();
+        boolean management = managementPort > 0 && managementPort != serverPort && local != null && local.getPort() == managementPort;
+        return management ? MatchResult.match() : MatchResult.notMatch();
+    }
+
+    @Bean
+    public CorsConfigurationSource reactiveCorsConfigurationSource() {
+        UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
+        source.registerCorsConfiguration("/**", SecurityConfig.corsConfiguration());
+        return source;
+    }
+}
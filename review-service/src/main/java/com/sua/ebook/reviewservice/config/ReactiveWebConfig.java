@@ -0,0 +1,73 @@
+package com.sua.ebook.reviewservice.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+// Tomcat je na classpathu zaradi servlet načina; v reactive načinu uporabimo Netty
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebConfig implements WebFluxConfigurer {
+    
+    private static final MimeType[] SMILE_TYPES = {
+        BinaryFormats.APPLICATION_SMILE, new MimeType("application", "*+x-jackson-smile")};
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private BinaryFormats binaryFormats;
+    
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+    
+    // Enako kot WebMvcConfig. Lastni kodeki so pred privzetimi, zato JSON registriramo pred CBOR,
+    // sicer bi */* izbral CBOR. Konstruktorji z ObjectMapperjem brez tipov privzamejo JSON tipe
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.customCodecs().register(new Jackson2JsonEncoder(objectMapper));
+        configurer.customCodecs().register(new MonoCborEncoder(binaryFormats.cborMapper()));
+        configurer.customCodecs().register(new Jackson2CborDecoder(binaryFormats.cborMapper(), MediaType.APPLICATION_CBOR));
+        configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(binaryFormats.smileMapper(), SMILE_TYPES));
+        configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(binaryFormats.smileMapper(), SMILE_TYPES));
+    }
+    
+    // Jackson2CborEncoder zna le encodeValue; odgovori kontrolerjev so Mono, zato je to dovolj
+    private static final class MonoCborEncoder extends Jackson2CborEncoder {
+        
+        private MonoCborEncoder(ObjectMapper mapper) {
+            super(mapper, MediaType.APPLICATION_CBOR);
+        }
+        
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                       ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+            if (inputStream instanceof Mono<?> mono) {
+                return mono.map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints)).flux();
+            }
+            return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+        }
+    }
+}
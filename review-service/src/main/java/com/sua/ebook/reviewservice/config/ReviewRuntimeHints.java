@@ -0,0 +1,68 @@
+package com.sua.ebook.reviewservice.config;
+
+import com.sua.ebook.reviewservice.dto.BookBatchDTO;
+import com.sua.ebook.reviewservice.dto.QuickRatingDTO;
+import com.sua.ebook.reviewservice.dto.RatingUpdateDTO;
+import com.sua.ebook.reviewservice.dto.ReviewCreateDTO;
+import com.sua.ebook.reviewservice.dto.ReviewPage;
+import com.sua.ebook.reviewservice.dto.ReviewSearchHit;
+import com.sua.ebook.reviewservice.dto.ReviewUpdateDTO;
+import com.sua.ebook.reviewservice.model.BookDeletionJob;
+import com.sua.ebook.reviewservice.model.BookRatingSummary;
+import com.sua.ebook.reviewservice.model.IdempotencyRecord;
+import com.sua.ebook.reviewservice.model.RatingTrendBucket;
+import com.sua.ebook.reviewservice.model.Review;
+import com.sua.ebook.reviewservice.model.ReviewEvent;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+import java.util.List;
+
+/**
+ * Reflection and resource hints that Spring AOT cannot infer from the bean definitions.
+ * <p>
+ * jjwt loads its implementation (runtime scope, not visible to the compiler) by class
+ * name and its JSON deserializer through ServiceLoader. Response bodies are mostly
+ * maps and cached byte arrays, so the DTO and document types Jackson binds are not
+ * visible in the controller signatures. MongoTemplate maps the documents through their
+ * fields. On the JVM these hints are only recorded in target/classes/META-INF/native-image;
+ * they are needed once the AOT output is compiled to a native image.
+ */
+public class ReviewRuntimeHints implements RuntimeHintsRegistrar {
+    
+    private static final List<String> JJWT_TYPES = List.of(
+        "io.jsonwebtoken.impl.DefaultJwtParserBuilder",
+        "io.jsonwebtoken.impl.DefaultJwtParser",
+        "io.jsonwebtoken.impl.DefaultJwtBuilder",
+        "io.jsonwebtoken.impl.compression.DefaultCompressionCodecResolver",
+        "io.jsonwebtoken.jackson.io.JacksonDeserializer",
+        "io.jsonwebtoken.jackson.io.JacksonSerializer");
+    
+    private static final List<Class<?>> DOCUMENTS = List.of(
+        Review.class, BookRatingSummary.class, RatingTrendBucket.class, ReviewEvent.class, BookDeletionJob.class,
+        IdempotencyRecord.class);
+    
+    private static final List<Class<?>> BODIES = List.of(
+        ReviewCreateDTO.class, ReviewUpdateDTO.class, QuickRatingDTO.class, RatingUpdateDTO.class,
+        BookBatchDTO.class, ReviewPage.class, ReviewSearchHit.class);
+    
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (String type : JJWT_TYPES) {
+            hints.reflection().registerType(TypeReference.of(type),
+                MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+        hints.resources().registerPattern("META-INF/services/io.jsonwebtoken.io.*");
+        
+        BindingReflectionHintsRegistrar bindings = new BindingReflectionHintsRegistrar();
+        bindings.registerReflectionHints(hints.reflection(), DOCUMENTS.toArray(new Class<?>[0]));
+        bindings.registerReflectionHints(hints.reflection(), BODIES.toArray(new Class<?>[0]));
+        for (Class<?> document : DOCUMENTS) {
+            hints.reflection().registerType(document, MemberCategory.DECLARED_FIELDS,
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.sua.ebook.reviewservice.config;
 
+import com.sua.ebook.reviewservice.controller.ReviewController;
 import com.sua.ebook.reviewservice.security.JwtAuthenticationFilter;
+import com.sua.ebook.reviewservice.service.ReviewIdempotency;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
@@ -15,14 +21,23 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 
 @Configuration("webSecurityConfig")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @EnableWebSecurity
 public class SecurityConfig {
 
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    @Value("${server.port:5003}")
+    private int serverPort;
+
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
     @Bean("webFilterChain")
     public SecurityFilterChain webFilterChain(HttpSecurity http) throws Exception {
         http
@@ -34,9 +49,14 @@ public class SecurityConfig {
                 .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
                 // Public endpoints - ne potrebujejo authentication
                 .requestMatchers(HttpMethod.GET, "/reviews").permitAll()
+                .requestMatchers(HttpMethod.GET, "/reviews/leaderboard").permitAll()
+                .requestMatchers(HttpMethod.GET, "/reviews/search").permitAll()
                 .requestMatchers(HttpMethod.GET, "/reviews/book/**").permitAll()
+                .requestMatchers(HttpMethod.POST, "/reviews/stats/batch", "/reviews/books/batch").permitAll()
                 .requestMatchers("/swagger-ui/**", "/v3/api-docs/**", "/swagger-ui.html").permitAll()
-                .requestMatchers("/actuator/health").permitAll()
+                .requestMatchers("/actuator/health", "/health").permitAll()
+                // Prometheus brez prijave samo na management vratih (privzeto 127.0.0.1), ne na javnih
+                .requestMatchers(new AndRequestMatcher(this::onManagementPort, new AntPathRequestMatcher("/actuator/prometheus"))).permitAll()
                 
                 // Vsi ostali endpointi potrebujejo authentication
                 .anyRequest().authenticated()
@@ -46,15 +66,25 @@ public class SecurityConfig {
     return http.build();
     }
 
+    private boolean onManagementPort(HttpServletRequest request) {
+        return managementPort > 0 && managementPort != serverPort && request.getLocalPort() == managementPort;
+    }
+
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
+        UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
+        source.registerCorsConfiguration("/**", corsConfiguration());
+        return source;
+    }
+    
+    // Skupno za servlet in reactive način
+    static CorsConfiguration corsConfiguration() {
         CorsConfiguration config = new CorsConfiguration();
         config.setAllowedOrigins(List.of("http://localhost:3000", "http://127.0.0.1:3000", "http://localhost:3001", "http://127.0.0.1:3001"));
         config.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS"));
-        config.setAllowedHeaders(List.of("Authorization", "Content-Type"));
+        config.setAllowedHeaders(List.of("Authorization", "Content-Type", ReviewIdempotency.KEY_HEADER, HttpHeaders.IF_NONE_MATCH));
+        config.setExposedHeaders(List.of(ReviewController.NEXT_CURSOR_HEADER, ReviewIdempotency.REPLAYED_HEADER, HttpHeaders.ETAG));
         config.setAllowCredentials(true);
-        UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
-        source.registerCorsConfiguration("/**", config);
-        return source;
+        return config;
     }
 }
@@ -0,0 +1,73 @@
+package com.sua.ebook.reviewservice.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Training run for the AppCDS archive of the fast-startup build.
+ * <p>
+ * With review.startup.training-run=true the application sends a few requests to itself
+ * once it is ready and then exits. The JVM, started with -XX:ArchiveClassesAtExit,
+ * dumps every class loaded up to that point into the archive. That covers startup
+ * plus the first request through security, Jackson and the controllers. None of the
+ * warm-up requests touch MongoDB, so the run also works at image build time when no
+ * database is reachable.
+ */
+@Component
+public class StartupTrainingRun {
+    
+    private static final Logger logger = LoggerFactory.getLogger(StartupTrainingRun.class);
+    
+    @Value("${review.startup.training-run:false}")
+    private boolean enabled;
+    
+    // Pred bootstrap poslušalci (povzetki, trendi, lestvica), ki bi čakali na Mongo
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void exitWhenReady(ApplicationReadyEvent event) {
+        if (!enabled) {
+            return;
+        }
+        String port = event.getApplicationContext().getEnvironment().getProperty("local.server.port");
+        if (port != null) {
+            warmUp("http://localhost:" + port);
+        }
+        logger.info("Training run finished, exiting");
+        System.exit(SpringApplication.exit(event.getApplicationContext(), () -> 0));
+    }
+    
+    private void warmUp(String baseUrl) {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        send(client, HttpRequest.newBuilder(URI.create(baseUrl + "/reviews/leaderboard")).GET());
+        send(client, HttpRequest.newBuilder(URI.create(baseUrl + "/reviews/leaderboard"))
+            .header("Accept", "application/cbor").GET());
+        // Neveljaven žeton: JWT filter in 401 odgovor, brez dostopa do baze
+        send(client, HttpRequest.newBuilder(URI.create(baseUrl + "/reviews/training/rating"))
+            .header("Authorization", "Bearer training.run.token")
+            .header("Content-Type", "application/json")
+            .PUT(HttpRequest.BodyPublishers.ofString("{\"rating\":5}")));
+    }
+    
+    private void send(HttpClient client, HttpRequest.Builder request) {
+        try {
+            HttpResponse<Void> response = client.send(request.timeout(Duration.ofSeconds(10)).build(),
+                HttpResponse.BodyHandlers.discarding());
+            logger.info("Training request {} returned {}", response.request().uri().getPath(), response.statusCode());
+        } catch (Exception e) {
+            logger.warn("Training request failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.sua.ebook.reviewservice.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Defaults for review.storage.backend=log. Reviews then live in ReviewLog, and nothing
+ * may contact MongoDB at startup or from the health endpoint. The defaults rank below
+ * environment variables and command line arguments, so they can still be overridden.
+ */
+public class StorageBackendEnvironment implements EnvironmentPostProcessor {
+    
+    private static final String SOURCE_NAME = "reviewLogStorageDefaults";
+    
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!"log".equalsIgnoreCase(environment.getProperty("review.storage.backend"))) {
+            return;
+        }
+        Map<String, Object> defaults = new HashMap<>();
+        // Ustvarjanje indeksov bi ob zagonu čakalo na Mongo strežnik
+        defaults.put("spring.data.mongodb.auto-index-creation", "false");
+        defaults.put("management.health.mongo.enabled", "false");
+        
+        MapPropertySource source = new MapPropertySource(SOURCE_NAME, defaults);
+        if (environment.getPropertySources().contains(StandardEnvironment.SYSTEM_ENVIRONMENT_PROPERTY_SOURCE_NAME)) {
+            environment.getPropertySources().addAfter(StandardEnvironment.SYSTEM_ENVIRONMENT_PROPERTY_SOURCE_NAME, source);
+        } else {
+            environment.getPropertySources().addLast(source);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.sua.ebook.reviewservice.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+import java.util.ListIterator;
+
+// Spring doda CBOR in Smile pretvornik sam, a z nenastavljenim ObjectMapperjem (datumi kot tabele);
+// zamenjamo ju z mapperjema iz BinaryFormats. Ostaneta za JSON, zato je ta privzet za */*
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class WebMvcConfig implements WebMvcConfigurer {
+    
+    @Autowired
+    private BinaryFormats binaryFormats;
+    
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        boolean cbor = false;
+        boolean smile = false;
+        for (ListIterator<HttpMessageConverter<?>> it = converters.listIterator(); it.hasNext(); ) {
+            HttpMessageConverter<?> converter = it.next();
+            if (converter instanceof MappingJackson2CborHttpMessageConverter) {
+                it.set(new MappingJackson2CborHttpMessageConverter(binaryFormats.cborMapper()));
+                cbor = true;
+            } else if (converter instanceof MappingJackson2SmileHttpMessageConverter) {
+                it.set(new MappingJackson2SmileHttpMessageConverter(binaryFormats.smileMapper()));
+                smile = true;
+            }
+        }
+        if (!cbor) {
+            converters.add(new MappingJackson2CborHttpMessageConverter(binaryFormats.cborMapper()));
+        }
+        if (!smile) {
+            converters.add(new MappingJackson2SmileHttpMessageConverter(binaryFormats.smileMapper()));
+        }
+    }
+}
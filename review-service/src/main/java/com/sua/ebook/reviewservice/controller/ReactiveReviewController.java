@@ -0,0 +1,283 @@
+package com.sua.ebook.reviewservice.controller;
+
+import com.sua.ebook.reviewservice.config.BinaryFormats;
+import com.sua.ebook.reviewservice.dto.*;
+import com.sua.ebook.reviewservice.model.Review;
+import com.sua.ebook.reviewservice.service.BookLeaderboard;
+import com.sua.ebook.reviewservice.service.BookReviewCache;
+import com.sua.ebook.reviewservice.service.ReactiveReviewService;
+import com.sua.ebook.reviewservice.service.ReviewIdempotency;
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import jakarta.validation.Valid;
+import java.net.URI;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Isti HTTP vmesnik kot ReviewController, le na WebFlux in reaktivnem Mongo gonilniku
+@RestController
+@RequestMapping("/reviews")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Tag(name = "Reviews", description = "Review and Rating Management API")
+public class ReactiveReviewController {
+    
+    @Autowired
+    private ReactiveReviewService reviewService;
+    
+    @Autowired
+    private BookLeaderboard leaderboard;
+    
+    @Autowired
+    private BookReviewCache bookReviewCache;
+    
+    @Autowired
+    private BinaryFormats binaryFormats;
+    
+    @GetMapping
+    @Operation(summary = "Get all reviews (newest first, cursor paginated)")
+    public Mono<ResponseEntity<List<?>>> getAllReviews(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(name = "fields", required = false) String fieldList,
+            @RequestParam(required = false) String view) {
+        ReviewFields fields = ReviewFields.parse(fieldList, view);
+        return reviewService.getAllReviews(cursor, limit, fields)
+            .map(page -> ReviewController.pageResponse(ReviewFields.project(page, fields)));
+    }
+    
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Stream reviews updated since a watermark as newline-delimited JSON (admin only)")
+    public Flux<Review> exportReviews(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            ServerWebExchange exchange) {
+        String userRole = exchange.getAttribute("userRole");
+        return reviewService.exportReviews(since, userRole);
+    }
+    
+    @GetMapping("/search")
+    @Operation(summary = "Full-text search over review text (most relevant first, cursor paginated)")
+    public Mono<ResponseEntity<List<?>>> searchReviews(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) String bookId,
+            @RequestParam(required = false) Integer rating,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return reviewService.searchReviews(q, bookId, rating, cursor, limit).map(ReviewController::pageResponse);
+    }
+    
+    @GetMapping("/book/{bookId}")
+    @Operation(summary = "Get all reviews for a book (newest first, cursor paginated)")
+    public Mono<ResponseEntity<?>> getBookReviews(
+            @PathVariable String bookId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(name = "fields", required = false) String fieldList,
+            @RequestParam(required = false) String view,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ReviewFields fields = ReviewFields.parse(fieldList, view);
+        MediaType format = binaryFormats.negotiate(accept);
+        String variant = reviewService.bookPageVariant(cursor, limit, fields);
+        String etag = bookReviewCache.currentEtag(BookReviewCache.REVIEWS, bookId, variant, format);
+        if (bookReviewCache.matches(BookReviewCache.REVIEWS, bookId, variant, format, ifNoneMatch)) {
+            return Mono.just(ReviewController.notModified(etag));
+        }
+        return reviewService.getReviewsByBookId(bookId, cursor, limit, fields)
+            .map(page -> validated(ReviewController.pageResponse(ReviewFields.project(page, fields)), etag));
+    }
+    
+    @GetMapping("/user/{userId}")
+    @Operation(summary = "Get all reviews by user (newest first, cursor paginated)")
+    public Mono<ResponseEntity<List<?>>> getUserReviews(
+            @PathVariable String userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(name = "fields", required = false) String fieldList,
+            @RequestParam(required = false) String view) {
+        ReviewFields fields = ReviewFields.parse(fieldList, view);
+        return reviewService.getReviewsByUserId(userId, cursor, limit, fields)
+            .map(page -> ReviewController.pageResponse(ReviewFields.project(page, fields)));
+    }
+    
+    @PostMapping
+    @Operation(summary = "Create a new review")
+    public Mono<ResponseEntity<?>> createReview(
+            @Valid @RequestBody ReviewCreateDTO reviewCreateDTO,
+            @RequestHeader(value = ReviewIdempotency.KEY_HEADER, required = false) String idempotencyKey,
+            ServerWebExchange exchange) {
+        
+        String userId = exchange.getAttribute("userId");
+        
+        if (userId == null || userId.trim().isEmpty()) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Authentication required");
+            errorResponse.put("message", "You must be logged in to create a review. Please provide a valid JWT token.");
+            errorResponse.put("timestamp", java.time.LocalDateTime.now());
+            return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse));
+        }
+        
+        return reviewService.idempotent(userId, idempotencyKey, "POST /reviews", ReviewController.createRequest(reviewCreateDTO),
+                () -> reviewService.createReview(reviewCreateDTO, userId))
+            .<ResponseEntity<?>>map(ReviewController::created)
+            .onErrorResume(ReviewServiceException.class, ex -> {
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("error", ex.getStatus().getReasonPhrase());
+                errorResponse.put("message", ex.getMessage());
+                errorResponse.put("timestamp", java.time.LocalDateTime.now());
+                return Mono.just(ResponseEntity.status(ex.getStatus()).body(errorResponse));
+            });
+    }
+    
+    @PostMapping("/book/{bookId}/quick")
+    @Operation(summary = "Quick rating for a book")
+    public Mono<ResponseEntity<Review>> createQuickRating(
+            @PathVariable String bookId,
+            @Valid @RequestBody QuickRatingDTO quickRatingDTO,
+            @RequestHeader(value = ReviewIdempotency.KEY_HEADER, required = false) String idempotencyKey,
+            ServerWebExchange exchange) {
+        
+        String userId = exchange.getAttribute("userId");
+        return reviewService.idempotent(userId, idempotencyKey, "POST /reviews/book/{bookId}/quick",
+                ReviewController.quickRatingRequest(bookId, quickRatingDTO),
+                () -> reviewService.createQuickRating(bookId, quickRatingDTO, userId))
+            .map(ReviewController::created);
+    }
+    
+    @PutMapping("/{reviewId}")
+    @Operation(summary = "Update a review")
+    public Mono<ResponseEntity<Review>> updateReview(
+            @PathVariable String reviewId,
+            @Valid @RequestBody ReviewUpdateDTO reviewUpdateDTO,
+            ServerWebExchange exchange) {
+        
+        String userId = exchange.getAttribute("userId");
+        return reviewService.updateReview(reviewId, reviewUpdateDTO, userId).map(ResponseEntity::ok);
+    }
+    
+    @PutMapping("/{reviewId}/rating")
+    @Operation(summary = "Update only rating")
+    public Mono<ResponseEntity<Review>> updateRating(
+            @PathVariable String reviewId,
+            @Valid @RequestBody QuickRatingDTO ratingDTO,
+            ServerWebExchange exchange) {
+        
+        String userId = exchange.getAttribute("userId");
+        return reviewService.updateRating(reviewId, ratingDTO, userId).map(ResponseEntity::ok);
+    }
+    
+    @DeleteMapping("/{reviewId}")
+    @Operation(summary = "Delete a review")
+    public Mono<ResponseEntity<Void>> deleteReview(
+            @PathVariable String reviewId,
+            ServerWebExchange exchange) {
+        
+        String userId = exchange.getAttribute("userId");
+        String userRole = exchange.getAttribute("userRole");
+        return reviewService.deleteReview(reviewId, userId, userRole)
+            .then(Mono.just(ResponseEntity.noContent().<Void>build()));
+    }
+    
+    @DeleteMapping("/book/{bookId}")
+    @Operation(summary = "Delete all reviews for a book in the background (admin only)")
+    public Mono<ResponseEntity<Map<String, Object>>> deleteAllBookReviews(
+            @PathVariable String bookId,
+            ServerWebExchange exchange) {
+        
+        String userRole = exchange.getAttribute("userRole");
+        return reviewService.deleteAllReviewsForBook(bookId, userRole)
+            .map(job -> ResponseEntity.accepted().location(URI.create("/reviews/deletions/" + job.get("jobId"))).body(job));
+    }
+    
+    @GetMapping("/deletions/{jobId}")
+    @Operation(summary = "Get the progress of a book review deletion (admin only)")
+    public Mono<ResponseEntity<Map<String, Object>>> getBookDeletionJob(
+            @PathVariable String jobId,
+            ServerWebExchange exchange) {
+        
+        String userRole = exchange.getAttribute("userRole");
+        return reviewService.getBookDeletionJob(jobId, userRole).map(ResponseEntity::ok);
+    }
+    
+    @GetMapping("/book/{bookId}/stats")
+    @Operation(summary = "Get review statistics for a book")
+    public Mono<ResponseEntity<?>> getBookReviewStats(
+            @PathVariable String bookId,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        MediaType format = binaryFormats.negotiate(accept);
+        String etag = bookReviewCache.currentEtag(BookReviewCache.STATS, bookId, null, format);
+        if (bookReviewCache.matches(BookReviewCache.STATS, bookId, null, format, ifNoneMatch)) {
+            return Mono.just(ReviewController.notModified(etag));
+        }
+        return reviewService.getBookReviewStats(bookId).map(stats -> validated(ResponseEntity.ok(stats), etag));
+    }
+    
+    @GetMapping("/leaderboard")
+    @Operation(summary = "Get the top books by Bayesian rating, average rating or review count")
+    public Mono<ResponseEntity<Map<String, Object>>> getLeaderboard(
+            @RequestParam(required = false) String by,
+            @RequestParam(required = false) Integer limit) {
+        return Mono.fromSupplier(() -> ResponseEntity.ok(leaderboard.top(by, limit)));
+    }
+    
+    @GetMapping("/book/{bookId}/trend")
+    @Operation(summary = "Get daily or weekly rating trend for a book")
+    public Mono<ResponseEntity<Map<String, Object>>> getBookRatingTrend(
+            @PathVariable String bookId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String granularity) {
+        return reviewService.getBookRatingTrend(bookId, from, to, granularity).map(ResponseEntity::ok);
+    }
+    
+    @PostMapping("/stats/batch")
+    @Operation(summary = "Get review statistics for many books, keyed by bookId")
+    public Mono<ResponseEntity<Map<String, Map<String, Object>>>> getBookReviewStatsBatch(
+            @Valid @RequestBody BookBatchDTO batchDTO) {
+        return reviewService.getBookReviewStatsBatch(batchDTO.getBookIds()).map(ResponseEntity::ok);
+    }
+    
+    @PostMapping("/books/batch")
+    @Operation(summary = "Get the latest reviews for many books, keyed by bookId")
+    public Mono<ResponseEntity<Map<String, List<Review>>>> getBookReviewsBatch(
+            @Valid @RequestBody BookBatchDTO batchDTO) {
+        return reviewService.getReviewsByBookIds(batchDTO.getBookIds(), batchDTO.getLimit()).map(ResponseEntity::ok);
+    }
+    
+    @PostMapping("/stats/rebuild")
+    @Operation(summary = "Rebuild rating summaries from reviews (admin only)")
+    public Mono<ResponseEntity<Map<String, Object>>> rebuildRatingSummaries(ServerWebExchange exchange) {
+        String userRole = exchange.getAttribute("userRole");
+        return reviewService.rebuildRatingSummaries(userRole).map(ResponseEntity::ok);
+    }
+    
+    // Isti validatorji kot ReviewController.cachedResponse. ETag je prebran pred branjem iz baze:
+    // zapis med branjem ga spremeni, zato odgovor nikoli ne nosi novejše oznake od svoje vsebine
+    private static <T> ResponseEntity<T> validated(ResponseEntity<T> response, String etag) {
+        return ResponseEntity.status(response.getStatusCode())
+            .headers(response.getHeaders())
+            .eTag(etag)
+            .cacheControl(CacheControl.noCache())
+            .varyBy(HttpHeaders.ACCEPT)
+            .body(response.getBody());
+    }
+}
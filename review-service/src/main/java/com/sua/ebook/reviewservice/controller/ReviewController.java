@@ -1,65 +1,143 @@
 package com.sua.ebook.reviewservice.controller;
 
+import com.sua.ebook.reviewservice.config.BinaryFormats;
 import com.sua.ebook.reviewservice.dto.*;
 import com.sua.ebook.reviewservice.model.Review;
+import com.sua.ebook.reviewservice.service.BookLeaderboard;
+import com.sua.ebook.reviewservice.service.BookReviewCache;
+import com.sua.ebook.reviewservice.service.ReviewExportService;
+import com.sua.ebook.reviewservice.service.ReviewIdempotency;
 import com.sua.ebook.reviewservice.service.ReviewService;
 import com.sua.ebook.reviewservice.exception.ReviewServiceException;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import java.net.URI;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/reviews")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @Tag(name = "Reviews", description = "Review and Rating Management API")
 public class ReviewController {
     
+    private static final Logger logger = LoggerFactory.getLogger(ReviewController.class);
+    
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    
     @Autowired
     private ReviewService reviewService;
     
+    @Autowired
+    private ReviewExportService reviewExportService;
+    
+    @Autowired
+    private ReviewIdempotency reviewIdempotency;
+    
+    @Autowired
+    private BookReviewCache bookReviewCache;
+    
+    @Autowired
+    private BookLeaderboard leaderboard;
+    
+    @Autowired
+    private BinaryFormats binaryFormats;
+    
     @GetMapping
-    @Operation(summary = "Get all reviews")
-    public ResponseEntity<List<Review>> getAllReviews() {
-        List<Review> reviews = reviewService.getAllReviews();
-        return ResponseEntity.ok(reviews);
+    @Operation(summary = "Get all reviews (newest first, cursor paginated)")
+    public ResponseEntity<List<?>> getAllReviews(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(name = "fields", required = false) String fieldList,
+            @RequestParam(required = false) String view) {
+        ReviewFields fields = ReviewFields.parse(fieldList, view);
+        ReviewPage<Review> page = reviewService.getAllReviews(cursor, limit, fields);
+        return pageResponse(ReviewFields.project(page, fields));
+    }
+    
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Stream reviews updated since a watermark as newline-delimited JSON (admin only)")
+    public ResponseEntity<StreamingResponseBody> exportReviews(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            HttpServletRequest request) {
+        // Pred začetkom toka, da napaka dobi običajen odgovor
+        reviewExportService.checkAccess((String) request.getAttribute("userRole"));
+        StreamingResponseBody body = out -> reviewExportService.export(since, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+    
+    @GetMapping("/search")
+    @Operation(summary = "Full-text search over review text (most relevant first, cursor paginated)")
+    public ResponseEntity<List<?>> searchReviews(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) String bookId,
+            @RequestParam(required = false) Integer rating,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return pageResponse(reviewService.searchReviews(q, bookId, rating, cursor, limit));
     }
     
     @GetMapping("/book/{bookId}")
-    @Operation(summary = "Get all reviews for a book")
-    public ResponseEntity<List<Review>> getBookReviews(@PathVariable String bookId) {
-        List<Review> reviews = reviewService.getReviewsByBookId(bookId);
-        return ResponseEntity.ok(reviews);
+    @Operation(summary = "Get all reviews for a book (newest first, cursor paginated)")
+    public ResponseEntity<byte[]> getBookReviews(
+            @PathVariable String bookId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(name = "fields", required = false) String fieldList,
+            @RequestParam(required = false) String view,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ReviewFields fields = ReviewFields.parse(fieldList, view);
+        MediaType format = binaryFormats.negotiate(accept);
+        String variant = reviewService.bookPageVariant(cursor, limit, fields);
+        if (bookReviewCache.matches(BookReviewCache.REVIEWS, bookId, variant, format, ifNoneMatch)) {
+            return notModified(bookReviewCache.currentEtag(BookReviewCache.REVIEWS, bookId, variant, format));
+        }
+        return cachedResponse(reviewService.getCachedReviewsByBookId(bookId, cursor, limit, fields, format));
     }
     
     @GetMapping("/user/{userId}")
-    @Operation(summary = "Get all reviews by user")
-    public ResponseEntity<List<Review>> getUserReviews(@PathVariable String userId) {
-        List<Review> reviews = reviewService.getReviewsByUserId(userId);
-        return ResponseEntity.ok(reviews);
+    @Operation(summary = "Get all reviews by user (newest first, cursor paginated)")
+    public ResponseEntity<List<?>> getUserReviews(
+            @PathVariable String userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(name = "fields", required = false) String fieldList,
+            @RequestParam(required = false) String view) {
+        ReviewFields fields = ReviewFields.parse(fieldList, view);
+        ReviewPage<Review> page = reviewService.getReviewsByUserId(userId, cursor, limit, fields);
+        return pageResponse(ReviewFields.project(page, fields));
     }
     
     @PostMapping
     @Operation(summary = "Create a new review")
     public ResponseEntity<?> createReview(
             @Valid @RequestBody ReviewCreateDTO reviewCreateDTO,
+            @RequestHeader(value = ReviewIdempotency.KEY_HEADER, required = false) String idempotencyKey,
             HttpServletRequest request) {
         
-        System.out.println("=== CREATE REVIEW ENDPOINT HIT ===");
-        System.out.println("Request body: " + reviewCreateDTO);
-        
         // Preveri, če je user avtenticiran preko JWT
         String userId = (String) request.getAttribute("userId");
-        System.out.println("User ID from JWT: " + userId);
         
         if (userId == null || userId.trim().isEmpty()) {
             // Vrni jasno sporočilo, če JWT ni veljaven
@@ -71,9 +149,10 @@ public class ReviewController {
         }
         
         try {
-            Review review = reviewService.createReview(reviewCreateDTO, userId);
-            System.out.println("Review created successfully: " + review.getId());
-            return new ResponseEntity<>(review, HttpStatus.CREATED);
+            ReviewIdempotency.Result result = reviewIdempotency.execute(userId, idempotencyKey, "POST /reviews",
+                createRequest(reviewCreateDTO), () -> reviewService.createReview(reviewCreateDTO, userId));
+            logger.debug("Review {} created for book {}", result.getReview().getId(), result.getReview().getBookId());
+            return created(result);
         } catch (ReviewServiceException ex) {
             // Za duplicate review ali druge business logic errore
             Map<String, Object> errorResponse = new HashMap<>();
@@ -89,11 +168,13 @@ public class ReviewController {
     public ResponseEntity<Review> createQuickRating(
             @PathVariable String bookId,
             @Valid @RequestBody QuickRatingDTO quickRatingDTO,
+            @RequestHeader(value = ReviewIdempotency.KEY_HEADER, required = false) String idempotencyKey,
             HttpServletRequest request) {
         
         String userId = (String) request.getAttribute("userId");
-        Review review = reviewService.createQuickRating(bookId, quickRatingDTO, userId);
-        return new ResponseEntity<>(review, HttpStatus.CREATED);
+        ReviewIdempotency.Result result = reviewIdempotency.execute(userId, idempotencyKey, "POST /reviews/book/{bookId}/quick",
+            quickRatingRequest(bookId, quickRatingDTO), () -> reviewService.createQuickRating(bookId, quickRatingDTO, userId));
+        return created(result);
     }
     
     @PutMapping("/{reviewId}")
@@ -133,20 +214,134 @@ public class ReviewController {
     }
     
     @DeleteMapping("/book/{bookId}")
-    @Operation(summary = "Delete all reviews for a book")
-    public ResponseEntity<Void> deleteAllBookReviews(
+    @Operation(summary = "Delete all reviews for a book in the background (admin only)")
+    public ResponseEntity<Map<String, Object>> deleteAllBookReviews(
             @PathVariable String bookId,
             HttpServletRequest request) {
         
         String userRole = (String) request.getAttribute("userRole");
-        reviewService.deleteAllReviewsForBook(bookId, userRole);
-        return ResponseEntity.noContent().build();
+        Map<String, Object> job = reviewService.deleteAllReviewsForBook(bookId, userRole);
+        return ResponseEntity.accepted().location(URI.create("/reviews/deletions/" + job.get("jobId"))).body(job);
+    }
+    
+    @GetMapping("/deletions/{jobId}")
+    @Operation(summary = "Get the progress of a book review deletion (admin only)")
+    public ResponseEntity<Map<String, Object>> getBookDeletionJob(
+            @PathVariable String jobId,
+            HttpServletRequest request) {
+        
+        String userRole = (String) request.getAttribute("userRole");
+        return ResponseEntity.ok(reviewService.getBookDeletionJob(jobId, userRole));
     }
     
     @GetMapping("/book/{bookId}/stats")
     @Operation(summary = "Get review statistics for a book")
-    public ResponseEntity<Map<String, Object>> getBookReviewStats(@PathVariable String bookId) {
-        Map<String, Object> stats = reviewService.getBookReviewStats(bookId);
+    public ResponseEntity<byte[]> getBookReviewStats(
+            @PathVariable String bookId,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        MediaType format = binaryFormats.negotiate(accept);
+        if (bookReviewCache.matches(BookReviewCache.STATS, bookId, null, format, ifNoneMatch)) {
+            return notModified(bookReviewCache.currentEtag(BookReviewCache.STATS, bookId, null, format));
+        }
+        return cachedResponse(reviewService.getCachedBookReviewStats(bookId, format));
+    }
+    
+    @GetMapping("/leaderboard")
+    @Operation(summary = "Get the top books by Bayesian rating, average rating or review count")
+    public ResponseEntity<Map<String, Object>> getLeaderboard(
+            @RequestParam(required = false) String by,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(leaderboard.top(by, limit));
+    }
+    
+    @GetMapping("/book/{bookId}/trend")
+    @Operation(summary = "Get daily or weekly rating trend for a book")
+    public ResponseEntity<Map<String, Object>> getBookRatingTrend(
+            @PathVariable String bookId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String granularity) {
+        return ResponseEntity.ok(reviewService.getBookRatingTrend(bookId, from, to, granularity));
+    }
+    
+    @PostMapping("/stats/batch")
+    @Operation(summary = "Get review statistics for many books, keyed by bookId")
+    public ResponseEntity<Map<String, Map<String, Object>>> getBookReviewStatsBatch(
+            @Valid @RequestBody BookBatchDTO batchDTO) {
+        Map<String, Map<String, Object>> stats = reviewService.getBookReviewStatsBatch(batchDTO.getBookIds());
         return ResponseEntity.ok(stats);
     }
+    
+    @PostMapping("/books/batch")
+    @Operation(summary = "Get the latest reviews for many books, keyed by bookId")
+    public ResponseEntity<Map<String, List<Review>>> getBookReviewsBatch(
+            @Valid @RequestBody BookBatchDTO batchDTO) {
+        Map<String, List<Review>> reviews = reviewService.getReviewsByBookIds(batchDTO.getBookIds(), batchDTO.getLimit());
+        return ResponseEntity.ok(reviews);
+    }
+    
+    @PostMapping("/stats/rebuild")
+    @Operation(summary = "Rebuild rating summaries from reviews (admin only)")
+    public ResponseEntity<Map<String, Object>> rebuildRatingSummaries(HttpServletRequest request) {
+        String userRole = (String) request.getAttribute("userRole");
+        Map<String, Object> result = reviewService.rebuildRatingSummaries(userRole);
+        return ResponseEntity.ok(result);
+    }
+    
+    @PostMapping("/shards/rebalance")
+    @Operation(summary = "Move reviews to their current shard after the shard list changed (admin only)")
+    public ResponseEntity<Map<String, Object>> rebalanceReviewShards(HttpServletRequest request) {
+        String userRole = (String) request.getAttribute("userRole");
+        Map<String, Object> result = reviewService.rebalanceReviewShards(userRole);
+        return ResponseEntity.ok(result);
+    }
+    
+    // Ponovitev z istim Idempotency-Key dobi enak 201 odgovor, označen z Idempotent-Replayed
+    static ResponseEntity<Review> created(ReviewIdempotency.Result result) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.CREATED);
+        if (result.isReplayed()) {
+            response.header(ReviewIdempotency.REPLAYED_HEADER, "true");
+        }
+        return response.body(result.getReview());
+    }
+    
+    // Vsebina zahteve, s katero se primerja ponovitev z istim Idempotency-Key
+    static String createRequest(ReviewCreateDTO dto) {
+        return dto.getBookId() + "\n" + dto.getRating() + "\n" + dto.getReviewText();
+    }
+    
+    static String quickRatingRequest(String bookId, QuickRatingDTO dto) {
+        return bookId + "\n" + dto.getRating();
+    }
+    
+    // Telo ostane navaden seznam, kazalec na naslednjo stran gre v header
+    static ResponseEntity<List<?>> pageResponse(ReviewPage<?> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.hasNext()) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+    
+    // Telo je že serializirano iz BookReviewCache (JSON, CBOR ali Smile glede na Accept)
+    private static ResponseEntity<byte[]> cachedResponse(BookReviewCache.CachedResponse cached) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .eTag(cached.getEtag())
+            .cacheControl(CacheControl.noCache())
+            .varyBy(HttpHeaders.ACCEPT)
+            .contentType(cached.getContentType());
+        if (cached.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, cached.getNextCursor());
+        }
+        return response.body(cached.getBody());
+    }
+    
+    static ResponseEntity<byte[]> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+            .eTag(etag)
+            .cacheControl(CacheControl.noCache())
+            .varyBy(HttpHeaders.ACCEPT)
+            .build();
+    }
 }
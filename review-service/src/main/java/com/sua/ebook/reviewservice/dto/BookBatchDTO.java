@@ -0,0 +1,38 @@
+package com.sua.ebook.reviewservice.dto;
+
+import jakarta.validation.constraints.*;
+
+import java.util.List;
+
+public class BookBatchDTO {
+    @NotEmpty(message = "At least one book ID is required")
+    private List<@NotBlank(message = "Book ID cannot be blank") String> bookIds;
+    
+    @Min(value = 1, message = "Limit must be a positive number")
+    private Integer limit;
+    
+    // Constructors
+    public BookBatchDTO() {}
+    
+    public BookBatchDTO(List<String> bookIds, Integer limit) {
+        this.bookIds = bookIds;
+        this.limit = limit;
+    }
+    
+    // Getters and Setters
+    public List<String> getBookIds() {
+        return bookIds;
+    }
+    
+    public void setBookIds(List<String> bookIds) {
+        this.bookIds = bookIds;
+    }
+    
+    public Integer getLimit() {
+        return limit;
+    }
+    
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+}
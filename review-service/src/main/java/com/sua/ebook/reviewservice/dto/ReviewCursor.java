@@ -0,0 +1,59 @@
+package com.sua.ebook.reviewservice.dto;
+
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.model.Review;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+// Neprozoren kazalec (createdAt, id) zadnje vrnjene recenzije za keyset paginacijo
+public class ReviewCursor {
+    private static final char SEPARATOR = '|';
+    
+    private final LocalDateTime createdAt;
+    private final String id;
+    
+    public ReviewCursor(LocalDateTime createdAt, String id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+    
+    public static ReviewCursor after(Review review) {
+        return new ReviewCursor(review.getCreatedAt(), review.getId());
+    }
+    
+    public static String encodeAfter(Review review) {
+        return after(review).encode();
+    }
+    
+    public static ReviewCursor decode(String encoded) {
+        if (encoded == null || encoded.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            if (separator <= 0 || separator == raw.length() - 1) {
+                throw ReviewServiceException.badRequest("Invalid cursor");
+            }
+            return new ReviewCursor(LocalDateTime.parse(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw ReviewServiceException.badRequest("Invalid cursor");
+        }
+    }
+    
+    public String encode() {
+        String raw = createdAt.toString() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public String getId() {
+        return id;
+    }
+}
@@ -0,0 +1,92 @@
+package com.sua.ebook.reviewservice.dto;
+
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.model.Review;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Field selection for review listings ({@code fields=bookId,rating} and/or {@code view=summary}).
+ * The selection becomes a Mongo projection, so unselected fields such as reviewText are
+ * never read from the database. Each item in the response holds only the selected fields.
+ */
+public final class ReviewFields {
+    
+    public static final List<String> ALL = List.of(
+        "id", "bookId", "userId", "rating", "reviewText", "createdAt", "updatedAt", "isVerified");
+    
+    // Za značke ocen in sezname brez besedila
+    public static final List<String> SUMMARY = List.of("id", "bookId", "userId", "rating", "createdAt");
+    
+    private final Set<String> fields;
+    
+    private ReviewFields(Set<String> fields) {
+        this.fields = fields;
+    }
+    
+    // null pomeni celoten dokument (brez projekcije)
+    public static ReviewFields parse(String fieldList, String view) {
+        Set<String> fields = new LinkedHashSet<>();
+        if (view != null && !view.isBlank()) {
+            if ("summary".equals(view)) {
+                fields.addAll(SUMMARY);
+            } else if (!"full".equals(view)) {
+                throw ReviewServiceException.badRequest("Unknown view: " + view + " (expected summary or full)");
+            }
+        }
+        if (fieldList != null) {
+            for (String field : fieldList.split(",")) {
+                String name = field.trim();
+                if (name.isEmpty()) {
+                    continue;
+                }
+                if (!ALL.contains(name)) {
+                    throw ReviewServiceException.badRequest("Unknown field: " + name);
+                }
+                fields.add(name);
+            }
+        }
+        return fields.isEmpty() ? null : new ReviewFields(fields);
+    }
+    
+    // Polja za Mongo projekcijo; createdAt (in vedno prisoten _id) potrebuje kazalec naslednje strani
+    public Set<String> projection() {
+        Set<String> projection = new LinkedHashSet<>(fields);
+        projection.add("createdAt");
+        return projection;
+    }
+    
+    public String key() {
+        return String.join(",", fields);
+    }
+    
+    public Map<String, Object> select(Review review) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        for (String field : fields) {
+            switch (field) {
+                case "id" -> item.put(field, review.getId());
+                case "bookId" -> item.put(field, review.getBookId());
+                case "userId" -> item.put(field, review.getUserId());
+                case "rating" -> item.put(field, review.getRating());
+                case "reviewText" -> item.put(field, review.getReviewText());
+                case "createdAt" -> item.put(field, review.getCreatedAt());
+                case "updatedAt" -> item.put(field, review.getUpdatedAt());
+                case "isVerified" -> item.put(field, review.getIsVerified());
+                default -> { }
+            }
+        }
+        return item;
+    }
+    
+    public static ReviewPage<?> project(ReviewPage<Review> page, ReviewFields fields) {
+        return fields == null ? page : page.map(fields::select);
+    }
+    
+    public static Set<String> projectionOf(ReviewFields fields) {
+        return fields != null ? fields.projection() : null;
+    }
+}
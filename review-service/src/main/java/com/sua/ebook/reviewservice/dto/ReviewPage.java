@@ -0,0 +1,44 @@
+package com.sua.ebook.reviewservice.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+public class ReviewPage<T> {
+    private final List<T> items;
+    private final String nextCursor;
+    
+    public ReviewPage(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+    
+    // fetched vsebuje do pageSize + 1 zapisov; dodaten zapis pomeni, da obstaja naslednja stran
+    public static <T> ReviewPage<T> fromOverfetch(List<T> fetched, int pageSize, Function<T, String> cursorOf) {
+        if (fetched.size() <= pageSize) {
+            return new ReviewPage<>(fetched, null);
+        }
+        List<T> items = new ArrayList<>(fetched.subList(0, pageSize));
+        return new ReviewPage<>(items, cursorOf.apply(items.get(pageSize - 1)));
+    }
+    
+    public <R> ReviewPage<R> map(Function<T, R> mapper) {
+        List<R> mapped = new ArrayList<>(items.size());
+        for (T item : items) {
+            mapped.add(mapper.apply(item));
+        }
+        return new ReviewPage<>(mapped, nextCursor);
+    }
+    
+    public List<T> getItems() {
+        return items;
+    }
+    
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,52 @@
+package com.sua.ebook.reviewservice.dto;
+
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Neprozoren kazalec (score, id) zadnjega zadetka; iskanje je urejeno po relevantnosti, ne po času
+public class ReviewSearchCursor {
+    private static final char SEPARATOR = '|';
+    
+    private final double score;
+    private final String id;
+    
+    public ReviewSearchCursor(double score, String id) {
+        this.score = score;
+        this.id = id;
+    }
+    
+    public static String encodeAfter(ReviewSearchHit hit) {
+        return new ReviewSearchCursor(hit.getScore(), hit.getReview().getId()).encode();
+    }
+    
+    public static ReviewSearchCursor decode(String encoded) {
+        if (encoded == null || encoded.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            if (separator <= 0 || separator == raw.length() - 1) {
+                throw ReviewServiceException.badRequest("Invalid cursor");
+            }
+            return new ReviewSearchCursor(Double.parseDouble(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            throw ReviewServiceException.badRequest("Invalid cursor");
+        }
+    }
+    
+    public String encode() {
+        String raw = Double.toString(score) + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    public double getScore() {
+        return score;
+    }
+    
+    public String getId() {
+        return id;
+    }
+}
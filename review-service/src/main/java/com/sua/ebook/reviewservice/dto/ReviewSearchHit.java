@@ -0,0 +1,25 @@
+package com.sua.ebook.reviewservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.sua.ebook.reviewservice.model.Review;
+
+// Recenzija iz iskanja skupaj z Mongo textScore; v JSON so polja recenzije in "score" na istem nivoju
+public class ReviewSearchHit {
+    @JsonUnwrapped
+    private final Review review;
+    
+    private final double score;
+    
+    public ReviewSearchHit(Review review, double score) {
+        this.review = review;
+        this.score = score;
+    }
+    
+    public Review getReview() {
+        return review;
+    }
+    
+    public double getScore() {
+        return score;
+    }
+}
@@ -2,6 +2,10 @@ package com.sua.ebook.reviewservice.exception;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.FieldError;
+import org.springframework.validation.BindingResult;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.bind.support.WebExchangeBindException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
@@ -23,6 +27,27 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(response, ex.getStatus());
     }
     
+    // MethodArgumentNotValidException (servlet) in WebExchangeBindException (WebFlux)
+    @ExceptionHandler({MethodArgumentNotValidException.class, WebExchangeBindException.class})
+    public ResponseEntity<Map<String, Object>> handleValidationException(Exception ex) {
+        Map<String, String> fieldErrors = new HashMap<>();
+        BindingResult bindingResult = ex instanceof BindingResult result
+            ? result
+            : ((MethodArgumentNotValidException) ex).getBindingResult();
+        for (FieldError fieldError : bindingResult.getFieldErrors()) {
+            fieldErrors.putIfAbsent(fieldError.getField(), fieldError.getDefaultMessage());
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("timestamp", LocalDateTime.now());
+        response.put("status", HttpStatus.BAD_REQUEST.value());
+        response.put("error", HttpStatus.BAD_REQUEST.getReasonPhrase());
+        response.put("message", "Input validation failed");
+        response.put("fieldErrors", fieldErrors);
+        
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+    
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String, Object>> handleGenericException(Exception ex) {
         Map<String, Object> response = new HashMap<>();
@@ -26,4 +26,16 @@ public class ReviewServiceException extends RuntimeException {
     public static ReviewServiceException conflict(String message) {
         return new ReviewServiceException(message, HttpStatus.CONFLICT);
     }
+    
+    public static ReviewServiceException badRequest(String message) {
+        return new ReviewServiceException(message, HttpStatus.BAD_REQUEST);
+    }
+    
+    public static ReviewServiceException unprocessableEntity(String message) {
+        return new ReviewServiceException(message, HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+    
+    public static ReviewServiceException serviceUnavailable(String message) {
+        return new ReviewServiceException(message, HttpStatus.SERVICE_UNAVAILABLE);
+    }
 }
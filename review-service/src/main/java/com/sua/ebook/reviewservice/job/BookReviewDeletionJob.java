@@ -0,0 +1,360 @@
+package com.sua.ebook.reviewservice.job;
+
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.model.BookDeletionJob;
+import com.sua.ebook.reviewservice.repository.ReviewLog;
+import com.sua.ebook.reviewservice.repository.ReviewRepository;
+import com.sua.ebook.reviewservice.service.BookReviewCache;
+import com.sua.ebook.reviewservice.service.ReadCoalescer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Deletes all reviews of a book in the background (DELETE /reviews/book/{bookId}). A job is
+ * stored in book_deletion_jobs and claimed with a lease, like the review event outbox, so
+ * any instance can run it. A job left unfinished by a restart or a crash is picked up again
+ * once its lease has expired and continues with the reviews that are left. Reviews are
+ * removed in batches of review.deletion.batch-size, with review.deletion.batch-delay between
+ * batches, so every write stays short. After the last batch the rating summary and the
+ * trend buckets of the book are recomputed from the reviews that are left, which keeps
+ * reviews written after the last batch counted, and its cached responses are cleared. With
+ * review.storage.backend=log the jobs are kept in memory and are not resumed after a
+ * restart.
+ * <p>
+ * A book has at most one active job. The unique sparse index on activeBookId, which is set
+ * until the job completes, rejects a concurrent second submit for the same book.
+ */
+@Component
+public class BookReviewDeletionJob {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BookReviewDeletionJob.class);
+    
+    private static final int SUBMIT_ATTEMPTS = 3;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private ReviewRepository reviewRepository;
+    
+    @Autowired
+    private RatingSummaryRebuildJob ratingSummaryRebuildJob;
+    
+    @Autowired
+    private RatingTrendRebuildJob ratingTrendRebuildJob;
+    
+    @Autowired
+    private BookReviewCache bookReviewCache;
+    
+    @Autowired
+    private ReadCoalescer readCoalescer;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired(required = false)
+    private ReviewLog reviewLog;
+    
+    @Value("${review.deletion.batch-size:500}")
+    private int batchSize;
+    
+    @Value("${review.deletion.batch-delay:100ms}")
+    private Duration batchDelay;
+    
+    @Value("${review.deletion.workers:2}")
+    private int workers;
+    
+    @Value("${review.deletion.lease:60s}")
+    private Duration lease;
+    
+    private ThreadPoolExecutor executor;
+    private Semaphore freeWorkers;
+    private volatile boolean stopping;
+    
+    // Posli pri review.storage.backend=log, kjer Mongo ni na voljo
+    private final Map<String, BookDeletionJob> localJobs = new ConcurrentHashMap<>();
+    
+    private Counter deletedCounter;
+    private Timer batchTimer;
+    
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "book-deletions-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        freeWorkers = new Semaphore(workers);
+        
+        new ExecutorServiceMetrics(executor, "review.deletion", Tags.empty()).bindTo(meterRegistry);
+        deletedCounter = meterRegistry.counter("review.deletion.reviews");
+        batchTimer = Timer.builder("review.deletion.batch")
+                .description("Time of one batch of a book review deletion")
+                .register(meterRegistry);
+    }
+    
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        stopping = true;
+        executor.shutdown();
+        // Prekinjen posel sprosti lease in ga ob naslednjem zagonu nadaljuje katerakoli instanca
+        executor.awaitTermination(lease.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    // Za knjigo, ki se že briše, vrne obstoječi posel
+    public BookDeletionJob submit(String bookId) {
+        if (reviewLog != null) {
+            synchronized (localJobs) {
+                for (BookDeletionJob active : localJobs.values()) {
+                    if (active.getBookId().equals(bookId) && active.getCompletedAt() == null && active.getLastError() == null) {
+                        return active;
+                    }
+                }
+                BookDeletionJob job = new BookDeletionJob(bookId, reviewRepository.countByBookId(bookId));
+                job.setId(UUID.randomUUID().toString());
+                localJobs.values().removeIf(done -> done.getCompletedAt() != null
+                    && done.getCompletedAt().isBefore(LocalDateTime.now().minusDays(7)));
+                localJobs.put(job.getId(), job);
+                executor.execute(() -> run(job));
+                return job;
+            }
+        }
+        
+        Query active = query(where("bookId").is(bookId).and("status").in(BookDeletionJob.STATUS_PENDING, BookDeletionJob.STATUS_RUNNING));
+        for (int attempt = 0; attempt < SUBMIT_ATTEMPTS; attempt++) {
+            BookDeletionJob existing = mongoTemplate.findOne(active, BookDeletionJob.class);
+            if (existing != null) {
+                return existing;
+            }
+            try {
+                BookDeletionJob job = mongoTemplate.insert(new BookDeletionJob(bookId, reviewRepository.countByBookId(bookId)));
+                logger.info("Deletion of {} reviews of book {} submitted as job {}", job.getTotalReviews(), bookId, job.getId());
+                return job;
+            } catch (DuplicateKeyException e) {
+                // Sočasna oddaja za isto knjigo je bila hitrejša; vrni njen posel
+            }
+        }
+        // Posel je bil vmes že končan, nova oddaja pa je spet izgubila tekmo
+        throw ReviewServiceException.conflict("Deletion of the reviews of book " + bookId + " is being submitted concurrently, retry");
+    }
+    
+    public BookDeletionJob find(String jobId) {
+        BookDeletionJob job = reviewLog != null
+            ? localJobs.get(jobId)
+            : mongoTemplate.findById(jobId, BookDeletionJob.class);
+        if (job == null) {
+            throw ReviewServiceException.notFound("Deletion job not found with ID: " + jobId);
+        }
+        return job;
+    }
+    
+    public static Map<String, Object> status(BookDeletionJob job) {
+        Map<String, Object> status = new HashMap<>();
+        status.put("jobId", job.getId());
+        status.put("bookId", job.getBookId());
+        status.put("status", job.getStatus());
+        status.put("totalReviews", job.getTotalReviews());
+        status.put("deletedReviews", job.getDeletedReviews());
+        // Med brisanjem lahko pridejo nove recenzije, zato je 100 šele ob koncu
+        long progress = BookDeletionJob.STATUS_COMPLETED.equals(job.getStatus()) ? 100
+            : job.getTotalReviews() == 0 ? 0
+            : Math.min(99, job.getDeletedReviews() * 100 / job.getTotalReviews());
+        status.put("progress", progress);
+        status.put("createdAt", job.getCreatedAt());
+        status.put("startedAt", job.getStartedAt());
+        status.put("completedAt", job.getCompletedAt());
+        if (job.getLastError() != null) {
+            status.put("lastError", job.getLastError());
+        }
+        return status;
+    }
+    
+    @Scheduled(fixedDelayString = "${review.deletion.poll-interval:1000}")
+    public void poll() {
+        if (reviewLog != null || stopping) {
+            return;
+        }
+        try {
+            while (freeWorkers.tryAcquire()) {
+                BookDeletionJob job;
+                try {
+                    job = claim();
+                } catch (RuntimeException e) {
+                    freeWorkers.release();
+                    throw e;
+                }
+                if (job == null) {
+                    freeWorkers.release();
+                    break;
+                }
+                executor.execute(() -> {
+                    try {
+                        run(job);
+                    } finally {
+                        freeWorkers.release();
+                    }
+                });
+            }
+        } catch (Exception e) {
+            logger.error("Book deletion poll failed: {}", e.getMessage());
+        }
+    }
+    
+    // Najstarejši nezaseden posel; RUNNING z iztečenim lease je posel instance, ki je padla
+    private BookDeletionJob claim() {
+        LocalDateTime now = LocalDateTime.now();
+        Query due = query(where("status").in(BookDeletionJob.STATUS_PENDING, BookDeletionJob.STATUS_RUNNING)
+                .orOperator(where("lockedUntil").is(null), where("lockedUntil").lt(now)))
+            .with(Sort.by("createdAt"));
+        Update update = new Update()
+            .set("status", BookDeletionJob.STATUS_RUNNING)
+            .set("lockedUntil", now.plus(lease))
+            .set("claimToken", UUID.randomUUID().toString());
+        return mongoTemplate.findAndModify(due, update, FindAndModifyOptions.options().returnNew(true), BookDeletionJob.class);
+    }
+    
+    private void run(BookDeletionJob job) {
+        logger.info("Deleting reviews of book {} (job {}, {} deleted so far)", job.getBookId(), job.getId(), job.getDeletedReviews());
+        try {
+            while (!stopping) {
+                Timer.Sample sample = Timer.start(meterRegistry);
+                long deleted = reviewRepository.deleteBatchByBookId(job.getBookId(), batchSize);
+                sample.stop(batchTimer);
+                if (deleted == 0) {
+                    complete(job);
+                    return;
+                }
+                deletedCounter.increment(deleted);
+                if (!recordProgress(job, deleted)) {
+                    logger.warn("Deletion job {} was taken over by another worker", job.getId());
+                    return;
+                }
+                if (!batchDelay.isZero()) {
+                    Thread.sleep(batchDelay.toMillis());
+                }
+            }
+            release(job, null, LocalDateTime.now());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(job, null, LocalDateTime.now());
+        } catch (Exception e) {
+            logger.error("Deletion job {} for book {} failed: {}", job.getId(), job.getBookId(), e.getMessage());
+            // Ponovni poskus po izteku lease, da trajna napaka ne ponavlja brisanja vsako sekundo
+            String error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            release(job, error.length() > 500 ? error.substring(0, 500) : error, LocalDateTime.now().plus(lease));
+        }
+    }
+    
+    // Vrne false, če je posel medtem prevzel drug delavec (lease je potekel)
+    private boolean recordProgress(BookDeletionJob job, long deleted) {
+        LocalDateTime now = LocalDateTime.now();
+        if (reviewLog != null) {
+            job.setStatus(BookDeletionJob.STATUS_RUNNING);
+            job.setStartedAt(job.getStartedAt() != null ? job.getStartedAt() : now);
+            job.setDeletedReviews(job.getDeletedReviews() + deleted);
+            job.setUpdatedAt(now);
+            return true;
+        }
+        Update update = new Update()
+            .inc("deletedReviews", deleted)
+            .set("updatedAt", now)
+            .set("lockedUntil", now.plus(lease));
+        if (job.getStartedAt() == null) {
+            job.setStartedAt(now);
+            update.set("startedAt", now);
+        }
+        job.setDeletedReviews(job.getDeletedReviews() + deleted);
+        return mongoTemplate.updateFirst(claimed(job), update, BookDeletionJob.class).getMatchedCount() > 0;
+    }
+    
+    private void complete(BookDeletionJob job) {
+        // Preračun namesto brisanja ohrani recenzije, ki so prišle po zadnjem paketu
+        if (!ratingSummaryRebuildJob.rebuildBook(job.getBookId()) || !ratingTrendRebuildJob.rebuildBook(job.getBookId())) {
+            // Posel se ponovi po izteku lease
+            throw new IllegalStateException("Rating summary of book " + job.getBookId() + " kept changing, not recomputed");
+        }
+        bookReviewCache.bump(job.getBookId());
+        readCoalescer.written(job.getBookId(), null);
+        
+        LocalDateTime now = LocalDateTime.now();
+        if (reviewLog != null) {
+            job.setStartedAt(job.getStartedAt() != null ? job.getStartedAt() : now);
+            job.setUpdatedAt(now);
+            job.setCompletedAt(now);
+            job.setActiveBookId(null);
+            job.setStatus(BookDeletionJob.STATUS_COMPLETED);
+        } else {
+            Update update = new Update()
+                .set("status", BookDeletionJob.STATUS_COMPLETED)
+                .set("updatedAt", now)
+                .set("completedAt", now)
+                .unset("activeBookId")
+                .unset("lockedUntil")
+                .unset("claimToken")
+                .unset("lastError");
+            if (job.getStartedAt() == null) {
+                update.set("startedAt", now);
+            }
+            mongoTemplate.updateFirst(claimed(job), update, BookDeletionJob.class);
+        }
+        logger.info("Deleted {} reviews of book {} (job {})", job.getDeletedReviews(), job.getBookId(), job.getId());
+    }
+    
+    private void release(BookDeletionJob job, String error, LocalDateTime retryAt) {
+        if (reviewLog != null) {
+            job.setLastError(error);
+            return;
+        }
+        try {
+            Update update = new Update()
+                .set("updatedAt", LocalDateTime.now())
+                .set("lockedUntil", retryAt)
+                .unset("claimToken");
+            if (error != null) {
+                update.set("lastError", error);
+            }
+            mongoTemplate.updateFirst(claimed(job), update, BookDeletionJob.class);
+        } catch (Exception e) {
+            // Lease bo potekel in posel bo nadaljevan
+            logger.error("Failed to release deletion job {}: {}", job.getId(), e.getMessage());
+        }
+    }
+    
+    private static Query claimed(BookDeletionJob job) {
+        return query(where("_id").is(job.getId()).and("claimToken").is(job.getClaimToken()));
+    }
+}
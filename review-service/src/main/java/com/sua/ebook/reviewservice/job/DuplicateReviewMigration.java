@@ -0,0 +1,172 @@
+package com.sua.ebook.reviewservice.job;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AbstractDependsOnBeanFactoryPostProcessor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Startup check for reviews that break the unique (bookId, userId) index book_user_unique.
+ * Before the index existed, createReview checked for an existing review and then inserted.
+ * Two concurrent submits could both pass the check, so an existing collection may hold two
+ * reviews of one user for one book. The index cannot be built over such data.
+ * <p>
+ * MongoTemplate builds the mapped indexes when it is created, so this check runs before it
+ * (and before every review shard). If the index is missing and duplicates exist, startup
+ * fails and names them. With review.migration.remove-duplicate-reviews=true the newest
+ * review of each pair (by updatedAt, then _id) is kept and the others are deleted. The
+ * summaries and trends of those books are rebuilt once the application is ready.
+ */
+@Component(DuplicateReviewMigration.BEAN_NAME)
+public class DuplicateReviewMigration {
+    
+    static final String BEAN_NAME = "duplicateReviewMigration";
+    
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateReviewMigration.class);
+    
+    private static final String COLLECTION = "reviews";
+    private static final String INDEX_NAME = "book_user_unique";
+    // Toliko parov navede napaka ob zagonu; ostale le prešteje
+    private static final int REPORTED_PAIRS = 20;
+    // Obdrži se najnovejša kopija para
+    private static final Comparator<Document> NEWEST_FIRST = Comparator
+        .comparing((Document copy) -> copy.get("updatedAt", Date.class), Comparator.nullsLast(Comparator.reverseOrder()))
+        .thenComparing(copy -> copy.get("_id").toString(), Comparator.reverseOrder());
+    
+    @Autowired
+    private ObjectProvider<MongoDatabaseFactory> databaseFactory;
+    
+    @Autowired
+    private ObjectProvider<RatingSummaryRebuildJob> ratingSummaryRebuildJob;
+    
+    @Autowired
+    private ObjectProvider<RatingTrendRebuildJob> ratingTrendRebuildJob;
+    
+    @Value("${spring.data.mongodb.auto-index-creation:false}")
+    private boolean autoIndexCreation;
+    
+    @Value("${review.migration.remove-duplicate-reviews:false}")
+    private boolean removeDuplicates;
+    
+    private final Set<String> affectedBooks = ConcurrentHashMap.newKeySet();
+    
+    @PostConstruct
+    void init() {
+        MongoDatabaseFactory factory = databaseFactory.getIfAvailable();
+        if (factory != null) {
+            verify(factory.getMongoDatabase(), "primary database");
+        }
+    }
+    
+    // Tudi za vsak shard, preden ga ReviewShards odpre z MongoTemplate
+    public void verify(MongoDatabase database, String name) {
+        if (!autoIndexCreation || hasUniqueIndex(database)) {
+            return;
+        }
+        List<Document> duplicates = findDuplicates(database);
+        if (duplicates.isEmpty()) {
+            return;
+        }
+        if (!removeDuplicates) {
+            throw new IllegalStateException(describe(duplicates, name));
+        }
+        
+        MongoCollection<Document> reviews = database.getCollection(COLLECTION);
+        long removed = 0;
+        for (Document pair : duplicates) {
+            List<Document> copies = new ArrayList<>(pair.getList("reviews", Document.class));
+            copies.sort(NEWEST_FIRST);
+            List<Object> older = copies.subList(1, copies.size()).stream().map(copy -> copy.get("_id")).toList();
+            removed += reviews.deleteMany(new Document("_id", new Document("$in", older))).getDeletedCount();
+            Document key = pair.get("_id", Document.class);
+            affectedBooks.add(key.getString("bookId"));
+            logger.warn("Removed duplicate reviews {} of user {} for book {} in {}, kept {}",
+                older, key.getString("userId"), key.getString("bookId"), name, copies.get(0).get("_id"));
+        }
+        logger.warn("Removed {} duplicate reviews from {} pairs in {}", removed, duplicates.size(), name);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildAffectedBooks() {
+        for (String bookId : affectedBooks) {
+            RatingSummaryRebuildJob summaries = ratingSummaryRebuildJob.getIfAvailable();
+            RatingTrendRebuildJob trends = ratingTrendRebuildJob.getIfAvailable();
+            boolean rebuilt = (summaries == null || summaries.rebuildBook(bookId))
+                & (trends == null || trends.rebuildBook(bookId));
+            if (!rebuilt) {
+                // Odstopanje popravi naslednji rebuild (POST /reviews/stats/rebuild)
+                logger.warn("Rating summary of book {} was not rebuilt after removing duplicate reviews", bookId);
+            }
+        }
+        affectedBooks.clear();
+    }
+    
+    private static boolean hasUniqueIndex(MongoDatabase database) {
+        for (Document index : database.getCollection(COLLECTION).listIndexes()) {
+            if (INDEX_NAME.equals(index.getString("name"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static List<Document> findDuplicates(MongoDatabase database) {
+        List<Document> pipeline = List.of(
+            new Document("$group", new Document("_id", new Document("bookId", "$bookId").append("userId", "$userId"))
+                .append("reviews", new Document("$push", new Document("_id", "$_id").append("updatedAt", "$updatedAt")))
+                .append("count", new Document("$sum", 1))),
+            new Document("$match", new Document("count", new Document("$gt", 1))));
+        return database.getCollection(COLLECTION).aggregate(pipeline).allowDiskUse(true).into(new ArrayList<>());
+    }
+    
+    private static String describe(List<Document> duplicates, String name) {
+        StringBuilder message = new StringBuilder()
+            .append(duplicates.size()).append(" (bookId, userId) pairs in ").append(name)
+            .append(" have more than one review, so the unique index ").append(INDEX_NAME).append(" cannot be built:");
+        for (Document pair : duplicates.subList(0, Math.min(REPORTED_PAIRS, duplicates.size()))) {
+            Document key = pair.get("_id", Document.class);
+            message.append("\n  bookId=").append(key.getString("bookId"))
+                .append(" userId=").append(key.getString("userId"))
+                .append(" reviews=").append(pair.getList("reviews", Document.class).stream().map(copy -> copy.get("_id")).toList());
+        }
+        if (duplicates.size() > REPORTED_PAIRS) {
+            message.append("\n  ... and ").append(duplicates.size() - REPORTED_PAIRS).append(" more");
+        }
+        return message.append("\nRemove them, or start once with review.migration.remove-duplicate-reviews=true")
+            .append(" to keep the newest review of each pair").toString();
+    }
+    
+    // MongoTemplate ob nastanku zgradi indekse iz preslikave, zato mora preverjanje teči prej
+    @Component
+    static class MongoTemplateDependsOnMigration extends AbstractDependsOnBeanFactoryPostProcessor {
+        MongoTemplateDependsOnMigration() {
+            super(MongoTemplate.class, BEAN_NAME);
+        }
+    }
+    
+    @Component
+    static class ReactiveMongoTemplateDependsOnMigration extends AbstractDependsOnBeanFactoryPostProcessor {
+        ReactiveMongoTemplateDependsOnMigration() {
+            super(ReactiveMongoTemplate.class, BEAN_NAME);
+        }
+    }
+}
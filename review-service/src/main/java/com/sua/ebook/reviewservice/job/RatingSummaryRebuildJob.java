@@ -0,0 +1,337 @@
+package com.sua.ebook.reviewservice.job;
+
+import com.sua.ebook.reviewservice.model.BookRatingSummary;
+import com.sua.ebook.reviewservice.model.Review;
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.repository.ReviewLog;
+import com.sua.ebook.reviewservice.repository.ReviewShards;
+import com.sua.ebook.reviewservice.service.BookLeaderboard;
+import com.sua.ebook.reviewservice.service.BookReviewCache;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Recomputes book_rating_summaries from the reviews collection. Used to bootstrap
+ * the summaries on first start and to repair drift (e.g. a crash between a review
+ * write and its summary update).
+ * <p>
+ * Reviews keep being written during a rebuild. Every summary write increments the
+ * summary's version, and a rebuilt summary replaces the stored one only if its version
+ * is still the one read before the aggregation. Otherwise the book is recomputed again,
+ * and after GUARD_ATTEMPTS tries it is left to the next rebuild, so a rebuild never
+ * overwrites a concurrent $inc it did not count.
+ */
+@Component
+public class RatingSummaryRebuildJob {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RatingSummaryRebuildJob.class);
+    
+    private static final int GUARD_ATTEMPTS = 3;
+    private static final int DUPLICATE_KEY = 11000;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private BookReviewCache bookReviewCache;
+    
+    @Autowired
+    private BookLeaderboard leaderboard;
+    
+    @Autowired(required = false)
+    private ReviewLog reviewLog;
+    
+    @Autowired(required = false)
+    private ReviewShards reviewShards;
+    
+    @Value("${review.stats.rebuild-batch-size:500}")
+    private int batchSize;
+    
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void bootstrap() {
+        if (reviewLog != null) {
+            return;
+        }
+        try {
+            boolean summariesMissing = mongoTemplate.estimatedCount(BookRatingSummary.class) == 0;
+            if (summariesMissing && reviewTemplates().stream().anyMatch(reviews -> reviews.exists(new Query(), Review.class))) {
+                logger.info("No rating summaries found, rebuilding from reviews");
+                rebuild();
+            }
+        } catch (Exception e) {
+            logger.error("Rating summary bootstrap failed: {}", e.getMessage());
+        }
+    }
+    
+    @Scheduled(cron = "${review.stats.rebuild-cron:-}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+    
+    public Map<String, Object> rebuild() {
+        if (!running.compareAndSet(false, true)) {
+            throw ReviewServiceException.conflict("Rating summary rebuild is already running");
+        }
+        try {
+            Map<String, Object> result = doRebuild();
+            // Povzetki so se lahko spremenili za katerokoli knjigo
+            bookReviewCache.invalidateAll();
+            leaderboard.reload();
+            return result;
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    /**
+     * Recomputes the summary of one book with the same version guard as rebuild(), e.g. after
+     * all its reviews were deleted. A book without reviews loses its summary. Returns false
+     * when concurrent writes kept changing the summary and it was left as it is.
+     */
+    public boolean rebuildBook(String bookId) {
+        if (reviewLog != null) {
+            leaderboard.replace(reviewLog.summary(bookId));
+            return true;
+        }
+        List<MongoTemplate> sources = reviewShards != null ? reviewShards.forBookReads(bookId) : List.of(mongoTemplate);
+        Map<String, BookRatingSummary> rebuilt = new HashMap<>();
+        boolean replaced = rebuildGuarded(List.of(bookId), sources, rebuilt).isEmpty();
+        if (replaced) {
+            leaderboard.replace(rebuilt.getOrDefault(bookId, new BookRatingSummary(bookId)));
+        } else {
+            logger.warn("Rating summary of book {} kept changing during its rebuild, left as it is", bookId);
+        }
+        return replaced;
+    }
+    
+    private Map<String, Object> doRebuild() {
+        if (reviewLog != null) {
+            // Log način nima kolekcije povzetkov, ReviewLog jih vodi sproti; ostane le reload lestvice
+            Map<String, Object> result = new HashMap<>();
+            result.put("rebuiltBooks", 0L);
+            result.put("skippedBooks", 0L);
+            result.put("removedSummaries", 0L);
+            result.put("durationMs", 0L);
+            return result;
+        }
+        long started = System.currentTimeMillis();
+        LocalDateTime rebuildStart = LocalDateTime.now();
+        
+        Aggregation books = Aggregation.newAggregation(Aggregation.group("bookId"))
+            .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        
+        long rebuilt = 0;
+        long skipped = 0;
+        
+        for (MongoTemplate reviews : reviewTemplates()) {
+            List<String> batch = new ArrayList<>(batchSize);
+            try (Stream<Document> groups = reviews.aggregateStream(books, Review.class, Document.class)) {
+                for (Document group : (Iterable<Document>) groups::iterator) {
+                    if (group.getString("_id") == null) {
+                        continue;
+                    }
+                    batch.add(group.getString("_id"));
+                    if (batch.size() >= batchSize) {
+                        long conflicts = rebuildGuarded(batch, List.of(reviews), new HashMap<>()).size();
+                        rebuilt += batch.size() - conflicts;
+                        skipped += conflicts;
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                long conflicts = rebuildGuarded(batch, List.of(reviews), new HashMap<>()).size();
+                rebuilt += batch.size() - conflicts;
+                skipped += conflicts;
+            }
+        }
+        
+        // Povzetki, ki jih ta rebuild ni osvežil, pripadajo knjigam brez recenzij
+        long removed = mongoTemplate.remove(
+            query(where("updatedAt").lt(rebuildStart)), BookRatingSummary.class).getDeletedCount();
+        
+        long durationMs = System.currentTimeMillis() - started;
+        if (skipped > 0) {
+            logger.warn("Rating summaries of {} books kept changing during the rebuild and were left as they are", skipped);
+        }
+        logger.info("Rating summaries rebuilt: {} books, {} stale removed in {} ms", rebuilt, removed, durationMs);
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("rebuiltBooks", rebuilt);
+        result.put("skippedBooks", skipped);
+        result.put("removedSummaries", removed);
+        result.put("durationMs", durationMs);
+        return result;
+    }
+    
+    /**
+     * Replaces the summaries of the books only if their version did not change since it was
+     * read, before the reviews were aggregated. A concurrent $inc advances the version, so a
+     * book whose summary was written in between is retried, up to GUARD_ATTEMPTS times.
+     * Returns the books that still conflicted; rebuilt receives the summaries written.
+     */
+    private Set<String> rebuildGuarded(Collection<String> bookIds, List<MongoTemplate> sources,
+                                       Map<String, BookRatingSummary> rebuilt) {
+        Set<String> pending = new LinkedHashSet<>(bookIds);
+        for (int attempt = 0; attempt < GUARD_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            Map<String, Long> versions = versions(pending);
+            Map<String, BookRatingSummary> summaries = aggregate(pending, sources);
+            pending = replaceGuarded(pending, versions, summaries);
+            summaries.keySet().removeAll(pending);
+            rebuilt.putAll(summaries);
+        }
+        return pending;
+    }
+    
+    // Brez povzetka ali brez polja version (povzetek iz starejše različice) je null
+    private Map<String, Long> versions(Collection<String> bookIds) {
+        Query query = query(where("_id").in(bookIds));
+        query.fields().include("version");
+        Map<String, Long> versions = new HashMap<>();
+        for (Document summary : mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(BookRatingSummary.class))) {
+            Object version = summary.get("version");
+            versions.put(summary.getString("_id"), version != null ? ((Number) version).longValue() : null);
+        }
+        return versions;
+    }
+    
+    private Map<String, BookRatingSummary> aggregate(Collection<String> bookIds, List<MongoTemplate> sources) {
+        Map<String, BookRatingSummary> summaries = new HashMap<>();
+        if (sources.size() > 1) {
+            // Med selitvijo shardov je ista recenzija lahko na obeh shardih, zato štejemo po _id
+            Map<String, Review> reviews = new HashMap<>();
+            Query query = query(where("bookId").in(bookIds));
+            query.fields().include("bookId", "rating");
+            for (MongoTemplate source : sources) {
+                for (Review review : source.find(query, Review.class)) {
+                    reviews.putIfAbsent(review.getId(), review);
+                }
+            }
+            for (Review review : reviews.values()) {
+                BookRatingSummary summary = summaries.computeIfAbsent(review.getBookId(), BookRatingSummary::new);
+                summary.setCount(summary.getCount() + 1);
+                summary.setSum(summary.getSum() + review.getRating());
+                summary.getHistogram().merge(String.valueOf(review.getRating()), 1L, Long::sum);
+                summary.setUpdatedAt(LocalDateTime.now());
+            }
+            return summaries;
+        }
+        Aggregation aggregation = Aggregation.newAggregation(
+            Aggregation.match(where("bookId").in(bookIds)),
+            Aggregation.group("bookId")
+                .count().as("count")
+                .sum("rating").as("sum")
+                .sum(ratingEquals(1)).as("r1")
+                .sum(ratingEquals(2)).as("r2")
+                .sum(ratingEquals(3)).as("r3")
+                .sum(ratingEquals(4)).as("r4")
+                .sum(ratingEquals(5)).as("r5")
+        );
+        for (Document group : sources.get(0).aggregate(aggregation, Review.class, Document.class)) {
+            BookRatingSummary summary = toSummary(group);
+            summaries.put(summary.getBookId(), summary);
+        }
+        return summaries;
+    }
+    
+    // Vrne knjige, katerih povzetek je medtem spremenil drug zapis
+    private Set<String> replaceGuarded(Set<String> bookIds, Map<String, Long> versions,
+                                       Map<String, BookRatingSummary> summaries) {
+        Set<String> conflicts = new LinkedHashSet<>();
+        List<String> replaced = new ArrayList<>();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BookRatingSummary.class);
+        for (String bookId : bookIds) {
+            Long version = versions.get(bookId);
+            // version null se ujema tudi z manjkajočim povzetkom; upsert ga takrat ustvari
+            Query guard = query(where("_id").is(bookId).and("version").is(version));
+            BookRatingSummary summary = summaries.get(bookId);
+            if (summary == null) {
+                // Knjiga nima več recenzij
+                if (mongoTemplate.remove(guard, BookRatingSummary.class).getDeletedCount() == 0
+                        && mongoTemplate.exists(query(where("_id").is(bookId)), BookRatingSummary.class)) {
+                    conflicts.add(bookId);
+                }
+                continue;
+            }
+            summary.setVersion(version != null ? version + 1 : 1);
+            bulk.replaceOne(guard, summary, FindAndReplaceOptions.options().upsert());
+            replaced.add(bookId);
+        }
+        if (replaced.isEmpty()) {
+            return conflicts;
+        }
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            // Upsert se ob spremenjeni verziji poskusi vstaviti obstoječ _id
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+                conflicts.add(replaced.get(error.getIndex()));
+            }
+        }
+        return conflicts;
+    }
+    
+    // Pri review.storage.backend=sharded so recenzije razdeljene po shardih; vsaka knjiga je na enem
+    private List<MongoTemplate> reviewTemplates() {
+        if (reviewShards == null) {
+            return List.of(mongoTemplate);
+        }
+        if (reviewShards.isMigrating()) {
+            // Med selitvijo je lahko recenzija na dveh shardih in bi bila šteta dvakrat
+            throw ReviewServiceException.conflict("Review shards are being rebalanced, rebuild after the rebalance");
+        }
+        return reviewShards.current();
+    }
+    
+    static ConditionalOperators.Cond ratingEquals(int rating) {
+        return ConditionalOperators.when(where("rating").is(rating)).then(1).otherwise(0);
+    }
+    
+    private static BookRatingSummary toSummary(Document group) {
+        BookRatingSummary summary = new BookRatingSummary(group.getString("_id"));
+        summary.setCount(((Number) group.get("count")).longValue());
+        summary.setSum(((Number) group.get("sum")).longValue());
+        Map<String, Long> histogram = new HashMap<>();
+        for (int rating = 1; rating <= 5; rating++) {
+            histogram.put(String.valueOf(rating), ((Number) group.get("r" + rating)).longValue());
+        }
+        summary.setHistogram(histogram);
+        summary.setUpdatedAt(LocalDateTime.now());
+        return summary;
+    }
+}
@@ -0,0 +1,331 @@
+package com.sua.ebook.reviewservice.job;
+
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.model.RatingTrendBucket;
+import com.sua.ebook.reviewservice.model.Review;
+import com.sua.ebook.reviewservice.repository.ReviewLog;
+import com.sua.ebook.reviewservice.repository.ReviewShards;
+import com.sua.ebook.reviewservice.service.RatingTrendService;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Recomputes rating_trend_buckets from the reviews collection. Used to bootstrap the
+ * buckets for reviews written before trends existed and to repair drift, same as
+ * RatingSummaryRebuildJob does for the per-book summaries.
+ */
+@Component
+public class RatingTrendRebuildJob {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RatingTrendRebuildJob.class);
+    
+    private static final int GUARD_ATTEMPTS = 3;
+    private static final int DUPLICATE_KEY = 11000;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired(required = false)
+    private ReviewLog reviewLog;
+    
+    @Autowired(required = false)
+    private ReviewShards reviewShards;
+    
+    @Value("${review.stats.rebuild-batch-size:500}")
+    private int batchSize;
+    
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void bootstrap() {
+        if (reviewLog != null) {
+            return;
+        }
+        try {
+            boolean bucketsMissing = mongoTemplate.estimatedCount(RatingTrendBucket.class) == 0;
+            if (bucketsMissing && reviewTemplates().stream().anyMatch(reviews -> reviews.exists(new Query(), Review.class))) {
+                logger.info("No rating trend buckets found, rebuilding from reviews");
+                rebuild();
+            }
+        } catch (Exception e) {
+            logger.error("Rating trend bootstrap failed: {}", e.getMessage());
+        }
+    }
+    
+    @Scheduled(cron = "${review.stats.rebuild-cron:-}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+    
+    public Map<String, Object> rebuild() {
+        if (!running.compareAndSet(false, true)) {
+            throw ReviewServiceException.conflict("Rating trend rebuild is already running");
+        }
+        try {
+            return doRebuild();
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    private Map<String, Object> doRebuild() {
+        if (reviewLog != null) {
+            // Log način bucketov ne shranjuje, RatingTrendService jih sestavi ob branju
+            Map<String, Object> result = new HashMap<>();
+            result.put("rebuiltBuckets", 0L);
+            result.put("removedBuckets", 0L);
+            result.put("durationMs", 0L);
+            return result;
+        }
+        long started = System.currentTimeMillis();
+        LocalDateTime rebuildStart = LocalDateTime.now();
+        
+        // Dnevi v časovnem pasu strežnika, enako kot createdAt.toLocalDate() pri sprotnih posodobitvah
+        Aggregation aggregation = Aggregation.newAggregation(
+            Aggregation.project("bookId", "rating")
+                .and(DateOperators.DateToString.dateOf("createdAt").toString("%Y-%m-%d")
+                    .withTimezone(DateOperators.Timezone.valueOf(ZoneId.systemDefault().getId())))
+                .as("day"),
+            Aggregation.group("bookId", "day")
+                .count().as("count")
+                .sum("rating").as("sum")
+                .sum(RatingSummaryRebuildJob.ratingEquals(1)).as("r1")
+                .sum(RatingSummaryRebuildJob.ratingEquals(2)).as("r2")
+                .sum(RatingSummaryRebuildJob.ratingEquals(3)).as("r3")
+                .sum(RatingSummaryRebuildJob.ratingEquals(4)).as("r4")
+                .sum(RatingSummaryRebuildJob.ratingEquals(5)).as("r5"),
+            // Po knjigi, da se tedni ene knjige seštejejo in zapišejo, preden pride naslednja
+            Aggregation.sort(Sort.by(Sort.Direction.ASC, "_id"))
+        ).withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        
+        BucketWriter writer = new BucketWriter();
+        String currentBook = null;
+        Map<LocalDate, RatingTrendBucket> weeks = new TreeMap<>();
+        
+        // Knjiga je na enem samem shardu, zato se njeni tedni zaključijo znotraj enega toka
+        for (MongoTemplate reviews : reviewTemplates()) {
+            try (Stream<Document> groups = reviews.aggregateStream(aggregation, Review.class, Document.class)) {
+                for (Document group : (Iterable<Document>) groups::iterator) {
+                    Document key = group.get("_id", Document.class);
+                    String bookId = key.getString("bookId");
+                    if (bookId == null || key.getString("day") == null) {
+                        continue;
+                    }
+                    if (!bookId.equals(currentBook)) {
+                        writer.writeAll(weeks.values());
+                        weeks.clear();
+                        currentBook = bookId;
+                    }
+                    
+                    LocalDate day = LocalDate.parse(key.getString("day"));
+                    RatingTrendBucket daily = bucket(bookId, RatingTrendBucket.GRANULARITY_DAY, day);
+                    add(daily, group);
+                    writer.write(daily);
+                    
+                    LocalDate week = RatingTrendBucket.periodStart(RatingTrendBucket.GRANULARITY_WEEK, day);
+                    add(weeks.computeIfAbsent(week, start -> bucket(bookId, RatingTrendBucket.GRANULARITY_WEEK, start)), group);
+                }
+            }
+        }
+        writer.writeAll(weeks.values());
+        writer.flush();
+        
+        // Bucketi, ki jih ta rebuild ni osvežil, nimajo več recenzij
+        long removed = mongoTemplate.remove(
+            query(where("updatedAt").lt(rebuildStart)), RatingTrendBucket.class).getDeletedCount();
+        
+        long durationMs = System.currentTimeMillis() - started;
+        logger.info("Rating trend buckets rebuilt: {} buckets, {} stale removed in {} ms", writer.written, removed, durationMs);
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("rebuiltBuckets", writer.written);
+        result.put("removedBuckets", removed);
+        result.put("durationMs", durationMs);
+        return result;
+    }
+    
+    /**
+     * Recomputes the buckets of one book, e.g. after all its reviews were deleted or when a
+     * group commit failed to update them. The reviews of the book are read one by one. Like RatingSummaryRebuildJob, a bucket
+     * is replaced or removed only if its version did not change since it was read. Returns
+     * false when concurrent writes kept changing the buckets and they were left as they are.
+     */
+    public boolean rebuildBook(String bookId) {
+        if (reviewLog != null) {
+            return true;
+        }
+        List<MongoTemplate> sources = reviewShards != null ? reviewShards.forBookReads(bookId) : List.of(mongoTemplate);
+        for (int attempt = 0; attempt < GUARD_ATTEMPTS; attempt++) {
+            Query stored = RatingTrendService.bookQuery(bookId);
+            stored.fields().include("version");
+            Map<String, Long> versions = new HashMap<>();
+            for (Document bucket : mongoTemplate.find(stored, Document.class, mongoTemplate.getCollectionName(RatingTrendBucket.class))) {
+                Object version = bucket.get("version");
+                versions.put(bucket.getString("_id"), version != null ? ((Number) version).longValue() : null);
+            }
+            if (replaceGuarded(versions, buckets(bookId, sources))) {
+                return true;
+            }
+        }
+        logger.warn("Rating trend buckets of book {} kept changing during their rebuild, left as they are", bookId);
+        return false;
+    }
+    
+    private Map<String, RatingTrendBucket> buckets(String bookId, List<MongoTemplate> sources) {
+        Map<String, RatingTrendBucket> buckets = new HashMap<>();
+        // Med selitvijo shardov je ista recenzija lahko na obeh shardih, zato štejemo po _id
+        Set<String> seen = new HashSet<>();
+        Query query = query(where("bookId").is(bookId));
+        query.fields().include("bookId", "rating", "createdAt");
+        for (MongoTemplate source : sources) {
+            try (Stream<Review> reviews = source.stream(query, Review.class)) {
+                for (Review review : (Iterable<Review>) reviews::iterator) {
+                    if (review.getCreatedAt() == null || !seen.add(review.getId())) {
+                        continue;
+                    }
+                    for (String granularity : RatingTrendBucket.GRANULARITIES) {
+                        LocalDate periodStart = RatingTrendBucket.periodStart(granularity, review.getCreatedAt().toLocalDate());
+                        RatingTrendBucket bucket = buckets.computeIfAbsent(RatingTrendBucket.id(bookId, granularity, periodStart),
+                            id -> bucket(bookId, granularity, periodStart));
+                        bucket.setCount(bucket.getCount() + 1);
+                        bucket.setSum(bucket.getSum() + review.getRating());
+                        bucket.getHistogram().merge(String.valueOf(review.getRating()), 1L, Long::sum);
+                    }
+                }
+            }
+        }
+        return buckets;
+    }
+    
+    // Vrne false, če je kateri od bucketov medtem spremenil drug zapis
+    private boolean replaceGuarded(Map<String, Long> versions, Map<String, RatingTrendBucket> buckets) {
+        boolean unchanged = true;
+        for (String id : versions.keySet()) {
+            if (!buckets.containsKey(id)) {
+                // Obdobje nima več recenzij
+                Query guard = query(where("_id").is(id).and("version").is(versions.get(id)));
+                if (mongoTemplate.remove(guard, RatingTrendBucket.class).getDeletedCount() == 0
+                        && mongoTemplate.exists(query(where("_id").is(id)), RatingTrendBucket.class)) {
+                    unchanged = false;
+                }
+            }
+        }
+        if (buckets.isEmpty()) {
+            return unchanged;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RatingTrendBucket.class);
+        for (RatingTrendBucket bucket : buckets.values()) {
+            Long version = versions.get(bucket.getId());
+            bucket.setVersion(version != null ? version + 1 : 1);
+            bulk.replaceOne(query(where("_id").is(bucket.getId()).and("version").is(version)), bucket,
+                FindAndReplaceOptions.options().upsert());
+        }
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            // Upsert se ob spremenjeni verziji poskusi vstaviti obstoječ _id
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+            unchanged = false;
+        }
+        return unchanged;
+    }
+    
+    // Pri review.storage.backend=sharded so recenzije razdeljene po shardih; vsaka knjiga je na enem
+    private List<MongoTemplate> reviewTemplates() {
+        if (reviewShards == null) {
+            return List.of(mongoTemplate);
+        }
+        if (reviewShards.isMigrating()) {
+            // Med selitvijo je lahko recenzija na dveh shardih in bi bila šteta dvakrat
+            throw ReviewServiceException.conflict("Review shards are being rebalanced, rebuild after the rebalance");
+        }
+        return reviewShards.current();
+    }
+    
+    private static RatingTrendBucket bucket(String bookId, String granularity, LocalDate periodStart) {
+        RatingTrendBucket bucket = new RatingTrendBucket();
+        bucket.setId(RatingTrendBucket.id(bookId, granularity, periodStart));
+        bucket.setBookId(bookId);
+        bucket.setGranularity(granularity);
+        bucket.setPeriodStart(periodStart);
+        bucket.setUpdatedAt(LocalDateTime.now());
+        return bucket;
+    }
+    
+    private static void add(RatingTrendBucket bucket, Document group) {
+        bucket.setCount(bucket.getCount() + ((Number) group.get("count")).longValue());
+        bucket.setSum(bucket.getSum() + ((Number) group.get("sum")).longValue());
+        for (int rating = 1; rating <= 5; rating++) {
+            bucket.getHistogram().merge(String.valueOf(rating), ((Number) group.get("r" + rating)).longValue(), Long::sum);
+        }
+    }
+    
+    // Zapisuje v paketih po batchSize, kot RatingSummaryRebuildJob
+    private class BucketWriter {
+        private BulkOperations bulk;
+        private int pending;
+        private long written;
+        
+        private void write(RatingTrendBucket bucket) {
+            if (bulk == null) {
+                bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RatingTrendBucket.class);
+            }
+            bulk.replaceOne(query(where("_id").is(bucket.getId())), bucket, FindAndReplaceOptions.options().upsert());
+            pending++;
+            written++;
+            if (pending >= batchSize) {
+                flush();
+            }
+        }
+        
+        private void writeAll(Iterable<RatingTrendBucket> buckets) {
+            for (RatingTrendBucket bucket : buckets) {
+                write(bucket);
+            }
+        }
+        
+        private void flush() {
+            if (bulk != null && pending > 0) {
+                bulk.execute();
+            }
+            bulk = null;
+            pending = 0;
+        }
+    }
+}
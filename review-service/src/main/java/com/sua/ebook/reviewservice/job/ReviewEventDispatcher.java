@@ -0,0 +1,396 @@
+package com.sua.ebook.reviewservice.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.sua.ebook.reviewservice.model.Review;
+import com.sua.ebook.reviewservice.model.ReviewEvent;
+import com.sua.ebook.reviewservice.repository.ReviewRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Drains the review_events outbox. Each poll first turns reviews flagged with eventPending
+ * into REVIEW_CREATED events. The event id is derived from the review, so a sweep repeated
+ * after a crash cannot record an event twice. The flag is cleared once the event is stored.
+ * isFirstReview is decided here, from reviews of the user created before this one, so the
+ * write path does not pay for that lookup.
+ * <p>
+ * The poll then claims due events in batches (a lease in
+ * lockedUntil, so several instances can share the outbox) and hands every batch to a
+ * fixed pool of workers that POST it with one shared HttpClient. Delivered events are
+ * deleted; failed ones are retried with exponential backoff until review.events.max-attempts,
+ * after which they stay in the collection as FAILED. Delivery is at-least-once, so the
+ * receiver should de-duplicate by eventId.
+ */
+@Component
+public class ReviewEventDispatcher {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ReviewEventDispatcher.class);
+    
+    private static final int DUPLICATE_KEY = 11000;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private ReviewRepository reviewRepository;
+    
+    @Value("${review.events.url:}")
+    private String url;
+    
+    @Value("${review.events.batch-size:100}")
+    private int batchSize;
+    
+    @Value("${review.events.workers:4}")
+    private int workers;
+    
+    @Value("${review.events.lease:60s}")
+    private Duration lease;
+    
+    @Value("${review.events.max-attempts:10}")
+    private int maxAttempts;
+    
+    @Value("${review.events.backoff-initial:1s}")
+    private Duration backoffInitial;
+    
+    @Value("${review.events.backoff-max:5m}")
+    private Duration backoffMax;
+    
+    @Value("${review.events.timeout:5s}")
+    private Duration timeout;
+    
+    private HttpClient httpClient;
+    private ThreadPoolExecutor executor;
+    private Semaphore freeWorkers;
+    
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final AtomicLong failedEvents = new AtomicLong();
+    private final AtomicLong oldestPendingSeconds = new AtomicLong();
+    
+    private Counter recordedCounter;
+    private Counter deliveredCounter;
+    private Counter retriedCounter;
+    private Counter deadCounter;
+    private Timer deliveryLag;
+    
+    @PostConstruct
+    void init() {
+        if (url == null || url.isBlank()) {
+            logger.info("review.events.url is not set, review event delivery is disabled");
+            return;
+        }
+        
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .build();
+        
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(workers), runnable -> {
+                    Thread thread = new Thread(runnable, "review-events-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        freeWorkers = new Semaphore(workers);
+        
+        new ExecutorServiceMetrics(executor, "review.events", Tags.empty()).bindTo(meterRegistry);
+        Gauge.builder("review.events.pending", pendingEvents, AtomicLong::get)
+                .description("Events waiting in the outbox")
+                .register(meterRegistry);
+        Gauge.builder("review.events.failed", failedEvents, AtomicLong::get)
+                .description("Events that exhausted their delivery attempts")
+                .register(meterRegistry);
+        Gauge.builder("review.events.lag", oldestPendingSeconds, AtomicLong::get)
+                .description("Age of the oldest pending event")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        recordedCounter = meterRegistry.counter("review.events.recorded");
+        deliveredCounter = meterRegistry.counter("review.events.delivered");
+        retriedCounter = meterRegistry.counter("review.events.delivery.failures", "outcome", "retry");
+        deadCounter = meterRegistry.counter("review.events.delivery.failures", "outcome", "dead");
+        deliveryLag = Timer.builder("review.events.delivery.lag")
+                .description("Time from review creation to successful delivery")
+                .register(meterRegistry);
+    }
+    
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdown();
+            // Nedokončani claimi potečejo po lease in jih prevzame naslednji zagon
+            executor.awaitTermination(timeout.toMillis() * 2, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${review.events.poll-interval:1000}")
+    public void poll() {
+        if (executor == null) {
+            return;
+        }
+        try {
+            recordPendingEvents();
+            refreshBacklogMetrics();
+            while (freeWorkers.tryAcquire()) {
+                List<ReviewEvent> batch;
+                try {
+                    batch = claimBatch();
+                } catch (RuntimeException e) {
+                    freeWorkers.release();
+                    throw e;
+                }
+                if (batch.isEmpty()) {
+                    freeWorkers.release();
+                    break;
+                }
+                executor.execute(() -> {
+                    try {
+                        deliver(batch);
+                    } finally {
+                        freeWorkers.release();
+                    }
+                });
+            }
+        } catch (Exception e) {
+            logger.error("Review event poll failed: {}", e.getMessage());
+        }
+    }
+    
+    // Dogodki recenzij z zastavico eventPending; ob napaki ostanejo označene za naslednji poll
+    private void recordPendingEvents() {
+        while (true) {
+            List<Review> reviews = reviewRepository.findEventPending(batchSize);
+            if (reviews.isEmpty()) {
+                return;
+            }
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ReviewEvent.class);
+            for (Review review : reviews) {
+                boolean firstReview = !reviewRepository.existsByUserIdAndCreatedAtBefore(review.getUserId(), review.getCreatedAt());
+                bulk.insert(ReviewEvent.reviewCreated(review, firstReview));
+            }
+            
+            // Podvojen _id pomeni, da je dogodek že zapisan (prejšnji poll se je prekinil pred brisanjem zastavice)
+            Set<Integer> failed = new HashSet<>();
+            int inserted = reviews.size();
+            try {
+                bulk.execute();
+            } catch (BulkOperationException e) {
+                inserted = e.getResult().getInsertedCount();
+                for (BulkWriteError error : e.getErrors()) {
+                    if (error.getCode() != DUPLICATE_KEY) {
+                        failed.add(error.getIndex());
+                        logger.error("Failed to record review event for review {}: {}",
+                            reviews.get(error.getIndex()).getId(), error.getMessage());
+                    }
+                }
+            }
+            
+            List<String> recorded = new ArrayList<>();
+            for (int i = 0; i < reviews.size(); i++) {
+                if (!failed.contains(i)) {
+                    recorded.add(reviews.get(i).getId());
+                }
+            }
+            if (!recorded.isEmpty()) {
+                reviewRepository.clearEventPending(recorded);
+            }
+            recordedCounter.increment(inserted);
+            if (reviews.size() < batchSize || !failed.isEmpty()) {
+                return;
+            }
+        }
+    }
+    
+    private List<ReviewEvent> claimBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        Criteria due = dueCriteria(now);
+        
+        Query candidates = query(due).with(Sort.by("nextAttemptAt")).limit(batchSize);
+        candidates.fields().include("_id");
+        List<String> ids = new ArrayList<>();
+        for (ReviewEvent event : mongoTemplate.find(candidates, ReviewEvent.class)) {
+            ids.add(event.getId());
+        }
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        
+        // Pogoj se ponovi pri posodobitvi, da dve instanci ne prevzameta istega dogodka
+        String claimToken = UUID.randomUUID().toString();
+        mongoTemplate.updateMulti(
+            query(new Criteria().andOperator(where("_id").in(ids), dueCriteria(now))),
+            new Update().set("lockedUntil", now.plus(lease)).set("claimToken", claimToken),
+            ReviewEvent.class);
+        
+        return mongoTemplate.find(query(where("_id").in(ids).and("claimToken").is(claimToken)), ReviewEvent.class);
+    }
+    
+    private static Criteria dueCriteria(LocalDateTime now) {
+        return where("status").is(ReviewEvent.STATUS_PENDING)
+            .and("nextAttemptAt").lte(now)
+            .orOperator(where("lockedUntil").is(null), where("lockedUntil").lt(now));
+    }
+    
+    private void deliver(List<ReviewEvent> batch) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(url))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(payload(batch))))
+                    .timeout(timeout)
+                    .build();
+            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            
+            if (response.statusCode() >= 200 && response.statusCode() < 300) {
+                markDelivered(batch);
+                outcome = "success";
+            } else {
+                markFailed(batch, "HTTP " + response.statusCode());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            markFailed(batch, "Interrupted");
+        } catch (Exception e) {
+            markFailed(batch, e.getClass().getSimpleName() + ": " + e.getMessage());
+        } finally {
+            sample.stop(meterRegistry.timer("review.events.batch", "outcome", outcome));
+        }
+    }
+    
+    private static Map<String, Object> payload(List<ReviewEvent> batch) {
+        List<Map<String, Object>> events = new ArrayList<>();
+        for (ReviewEvent event : batch) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("eventId", event.getId());
+            item.put("type", event.getType());
+            item.put("reviewId", event.getReviewId());
+            item.put("bookId", event.getBookId());
+            item.put("userId", event.getUserId());
+            item.put("rating", event.getRating());
+            item.put("isFirstReview", event.isFirstReview());
+            item.put("createdAt", event.getCreatedAt());
+            events.add(item);
+        }
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("events", events);
+        return payload;
+    }
+    
+    private void markDelivered(List<ReviewEvent> batch) {
+        List<String> ids = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (ReviewEvent event : batch) {
+            ids.add(event.getId());
+            if (event.getCreatedAt() != null) {
+                deliveryLag.record(Duration.between(event.getCreatedAt(), now));
+            }
+        }
+        mongoTemplate.remove(query(where("_id").in(ids)), ReviewEvent.class);
+        deliveredCounter.increment(batch.size());
+    }
+    
+    private void markFailed(List<ReviewEvent> batch, String error) {
+        logger.warn("Delivery of {} review events failed: {}", batch.size(), error);
+        String lastError = error != null && error.length() > 500 ? error.substring(0, 500) : error;
+        LocalDateTime now = LocalDateTime.now();
+        
+        try {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ReviewEvent.class);
+            for (ReviewEvent event : batch) {
+                int attempts = event.getAttempts() + 1;
+                Update update = new Update()
+                    .set("attempts", attempts)
+                    .set("lastError", lastError)
+                    .unset("lockedUntil")
+                    .unset("claimToken");
+                if (attempts >= maxAttempts) {
+                    update.set("status", ReviewEvent.STATUS_FAILED);
+                    deadCounter.increment();
+                } else {
+                    update.set("nextAttemptAt", now.plus(backoff(attempts)));
+                    retriedCounter.increment();
+                }
+                bulk.updateOne(query(where("_id").is(event.getId())), update);
+            }
+            bulk.execute();
+        } catch (Exception e) {
+            // Lease bo potekel in dogodki bodo ponovno poslani
+            logger.error("Failed to record delivery failure: {}", e.getMessage());
+        }
+    }
+    
+    // Eksponentno z naključnim raztrosom (polovica do cel interval), da se ponovitve ne zgostijo
+    private Duration backoff(int attempts) {
+        long maxMillis = backoffMax.toMillis();
+        long millis = backoffInitial.toMillis() << Math.min(attempts - 1, 30);
+        if (millis <= 0 || millis > maxMillis) {
+            millis = maxMillis;
+        }
+        return Duration.ofMillis(millis / 2 + ThreadLocalRandom.current().nextLong(millis / 2 + 1));
+    }
+    
+    private void refreshBacklogMetrics() {
+        pendingEvents.set(mongoTemplate.count(
+            query(where("status").is(ReviewEvent.STATUS_PENDING)), ReviewEvent.class));
+        failedEvents.set(mongoTemplate.count(
+            query(where("status").is(ReviewEvent.STATUS_FAILED)), ReviewEvent.class));
+        
+        Query oldest = query(where("status").is(ReviewEvent.STATUS_PENDING))
+            .with(Sort.by("createdAt")).limit(1);
+        oldest.fields().include("createdAt");
+        ReviewEvent event = mongoTemplate.findOne(oldest, ReviewEvent.class);
+        oldestPendingSeconds.set(event != null && event.getCreatedAt() != null
+            ? Math.max(0, Duration.between(event.getCreatedAt(), LocalDateTime.now()).getSeconds())
+            : 0);
+    }
+}
@@ -0,0 +1,183 @@
+package com.sua.ebook.reviewservice.job;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.model.Review;
+import com.sua.ebook.reviewservice.repository.ReviewShards;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Moves reviews to their current shard after review.sharding.uris has changed.
+ * <p>
+ * Procedure: set review.sharding.previous-uris to the old list and review.sharding.uris to
+ * the new one, restart the instances, then run the rebalance. Meanwhile books are read
+ * from both their previous and their current shard. All new writes already go to the
+ * current shard. The job scans every shard and copies each review whose book now belongs
+ * elsewhere to that shard. Then it deletes the review from the source. A review that
+ * already exists on the target was written there after the change, so the target copy is
+ * newer and is kept. The job is idempotent: after an interruption, run it again. Once it
+ * reports no remaining reviews, remove previous-uris and restart.
+ */
+@Component
+@ConditionalOnProperty(name = "review.storage.backend", havingValue = "sharded")
+public class ReviewShardRebalanceJob {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ReviewShardRebalanceJob.class);
+    
+    private static final int DUPLICATE_KEY = 11000;
+    
+    @Autowired
+    private ReviewShards shards;
+    
+    @Value("${review.sharding.rebalance-batch-size:500}")
+    private int batchSize;
+    
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    
+    public Map<String, Object> rebalance() {
+        if (!running.compareAndSet(false, true)) {
+            throw ReviewServiceException.conflict("Review shard rebalance is already running");
+        }
+        try {
+            return doRebalance();
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    private Map<String, Object> doRebalance() {
+        long started = System.currentTimeMillis();
+        Totals totals = new Totals();
+        Map<String, Object> perShard = new LinkedHashMap<>();
+        for (MongoTemplate source : shards.all()) {
+            Totals shardTotals = drain(source);
+            totals.add(shardTotals);
+            Map<String, Object> shardResult = new HashMap<>();
+            shardResult.put("scannedReviews", shardTotals.scanned);
+            shardResult.put("movedReviews", shardTotals.moved);
+            shardResult.put("conflicts", shardTotals.conflicts);
+            perShard.put(shards.describe(source), shardResult);
+        }
+        
+        long durationMs = System.currentTimeMillis() - started;
+        logger.info("Review shards rebalanced: {} scanned, {} moved, {} conflicts in {} ms",
+            totals.scanned, totals.moved, totals.conflicts, durationMs);
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("scannedReviews", totals.scanned);
+        result.put("movedReviews", totals.moved);
+        result.put("conflicts", totals.conflicts);
+        result.put("migrating", shards.isMigrating());
+        result.put("shards", perShard);
+        result.put("durationMs", durationMs);
+        return result;
+    }
+    
+    // Pregled po _id; premaknjeni dokumenti so za kazalcem, zato brisanje ne vpliva na pregled
+    private Totals drain(MongoTemplate source) {
+        Totals totals = new Totals();
+        Query all = new Query().with(Sort.by("_id")).cursorBatchSize(batchSize);
+        all.fields().include("_id", "bookId");
+        List<Review> batch = new ArrayList<>(batchSize);
+        try (Stream<Review> reviews = source.stream(all, Review.class)) {
+            for (Review review : (Iterable<Review>) reviews::iterator) {
+                totals.scanned++;
+                if (review.getBookId() == null || shards.forBook(review.getBookId()) == source) {
+                    continue;
+                }
+                batch.add(review);
+                if (batch.size() >= batchSize) {
+                    move(source, batch, totals);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            move(source, batch, totals);
+        }
+        return totals;
+    }
+    
+    private void move(MongoTemplate source, List<Review> keys, Totals totals) {
+        List<String> ids = keys.stream().map(Review::getId).toList();
+        // Celotni dokumenti šele tu, pregled bere le _id in bookId
+        Map<MongoTemplate, List<Document>> byTarget = new LinkedHashMap<>();
+        for (Document document : source.find(query(where("_id").in(ids)), Document.class, "reviews")) {
+            byTarget.computeIfAbsent(shards.forBook(document.getString("bookId")), target -> new ArrayList<>()).add(document);
+        }
+        
+        Set<Object> copied = new HashSet<>();
+        for (Map.Entry<MongoTemplate, List<Document>> entry : byTarget.entrySet()) {
+            copied.addAll(copy(entry.getKey(), entry.getValue(), totals));
+        }
+        if (!copied.isEmpty()) {
+            source.remove(query(where("_id").in(copied)), "reviews");
+            totals.moved += copied.size();
+        }
+    }
+    
+    // Vrne _id dokumentov, ki so zdaj na ciljnem shardu (vstavljeni ali tam že od prej)
+    private List<Object> copy(MongoTemplate target, List<Document> documents, Totals totals) {
+        Set<Integer> failed = new HashSet<>();
+        try {
+            BulkOperations bulk = target.bulkOps(BulkOperations.BulkMode.UNORDERED, "reviews");
+            bulk.insert(documents);
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                failed.add(error.getIndex());
+                // Ista recenzija je na cilju že zapisana (novejša); drug _id z enakim (bookId, userId) pa je konflikt
+                if (error.getCode() == DUPLICATE_KEY && error.getMessage().contains("_id_")) {
+                    failed.remove(error.getIndex());
+                } else {
+                    totals.conflicts++;
+                    logger.warn("Review {} was not moved to {}: {}", documents.get(error.getIndex()).get("_id"),
+                        shards.describe(target), error.getMessage());
+                }
+            }
+        }
+        List<Object> copied = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            if (!failed.contains(i)) {
+                copied.add(documents.get(i).get("_id"));
+            }
+        }
+        return copied;
+    }
+    
+    private static final class Totals {
+        private long scanned;
+        private long moved;
+        private long conflicts;
+        
+        void add(Totals other) {
+            scanned += other.scanned;
+            moved += other.moved;
+            conflicts += other.conflicts;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.sua.ebook.reviewservice.logging;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
+/**
+ * Decides which requests get a line in the request log and writes it as structured fields.
+ * Requests are sampled per URI pattern (review.logging.request.sample-rates). Failed
+ * (5xx) and slow requests are always logged, so sampling only thins out the healthy
+ * hot paths.
+ */
+@Component
+public class RequestLogSampler {
+    
+    private static final Logger requestLog = LoggerFactory.getLogger("review.requests");
+    
+    @Value("${review.logging.request.default-sample-rate:1.0}")
+    private double defaultSampleRate;
+    
+    // "<uri vzorec>=<delež>,..." npr. "/reviews/book/{bookId}=0.01,/health=0"
+    @Value("${review.logging.request.sample-rates:}")
+    private String sampleRatesConfig;
+    
+    @Value("${review.logging.request.slow-threshold:1s}")
+    private Duration slowThreshold;
+    
+    private final Map<String, Double> sampleRates = new HashMap<>();
+    
+    @PostConstruct
+    void init() {
+        for (String entry : sampleRatesConfig.split(",")) {
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            sampleRates.put(entry.substring(0, separator).trim(),
+                Double.parseDouble(entry.substring(separator + 1).trim()));
+        }
+    }
+    
+    public void log(String method, String pattern, String path, int status, long durationMs, Object userId) {
+        if (!requestLog.isInfoEnabled() || !sampled(pattern, status, durationMs)) {
+            return;
+        }
+        requestLog.info("{} {} {} {}",
+            kv("method", method),
+            kv("uri", pattern != null ? pattern : path),
+            kv("status", status),
+            kv("durationMs", durationMs),
+            kv("userId", userId));
+    }
+    
+    private boolean sampled(String pattern, int status, long durationMs) {
+        if (status >= 500 || durationMs >= slowThreshold.toMillis()) {
+            return true;
+        }
+        double rate = pattern != null ? sampleRates.getOrDefault(pattern, defaultSampleRate) : defaultSampleRate;
+        return rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+}
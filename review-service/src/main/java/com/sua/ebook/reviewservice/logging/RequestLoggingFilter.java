@@ -0,0 +1,40 @@
+package com.sua.ebook.reviewservice.logging;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+// Pred Spring Security verigo, da so zajeti tudi 401/403 odgovori
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RequestLoggingFilter extends OncePerRequestFilter {
+    
+    @Autowired
+    private RequestLogSampler requestLogSampler;
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        long started = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            long durationMs = (System.nanoTime() - started) / 1_000_000;
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            requestLogSampler.log(request.getMethod(), pattern != null ? pattern.toString() : null,
+                request.getRequestURI(), response.getStatus(), durationMs, request.getAttribute("userId"));
+        }
+    }
+}
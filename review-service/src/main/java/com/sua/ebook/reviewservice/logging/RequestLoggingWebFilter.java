@@ -0,0 +1,39 @@
+package com.sua.ebook.reviewservice.logging;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+// WebFlux različica RequestLoggingFilter
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RequestLoggingWebFilter implements WebFilter {
+    
+    @Autowired
+    private RequestLogSampler requestLogSampler;
+    
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        long started = System.nanoTime();
+        return chain.filter(exchange).doFinally(signal -> {
+            long durationMs = (System.nanoTime() - started) / 1_000_000;
+            Object pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            HttpStatusCode status = exchange.getResponse().getStatusCode();
+            requestLogSampler.log(exchange.getRequest().getMethod().name(),
+                pattern != null ? pattern.toString() : null,
+                exchange.getRequest().getPath().value(),
+                status != null ? status.value() : 200,
+                durationMs,
+                exchange.getAttribute("userId"));
+        });
+    }
+}
@@ -0,0 +1,168 @@
+package com.sua.ebook.reviewservice.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// Brisanje vseh recenzij knjige v ozadju; stanje in napredek izvaja BookReviewDeletionJob
+@Document(collection = "book_deletion_jobs")
+@CompoundIndex(name = "status_created", def = "{'status': 1, 'createdAt': 1}")
+@CompoundIndex(name = "book_status", def = "{'bookId': 1, 'status': 1}")
+public class BookDeletionJob {
+    
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    
+    @Id
+    private String id;
+    
+    private String bookId;
+    
+    // bookId, dokler posel ni končan; edinstven redek indeks dovoli le en aktiven posel na knjigo
+    @Indexed(name = "active_book_unique", unique = true, sparse = true)
+    private String activeBookId;
+    
+    private String status = STATUS_PENDING;
+    
+    // Število recenzij ob oddaji; med brisanjem lahko pridejo nove, zato je napredek ocena
+    private long totalReviews;
+    
+    private long deletedReviews;
+    
+    private LocalDateTime createdAt;
+    
+    private LocalDateTime startedAt;
+    
+    private LocalDateTime updatedAt;
+    
+    // Končani posli se po 7 dneh izbrišejo
+    @Indexed(name = "completed_ttl", expireAfter = "7d")
+    private LocalDateTime completedAt;
+    
+    // Zaseden do tega časa; po izteku (npr. po padcu instance) ga nadaljuje drug delavec ali instanca
+    private LocalDateTime lockedUntil;
+    
+    private String claimToken;
+    
+    private String lastError;
+    
+    // Constructors
+    public BookDeletionJob() {}
+    
+    public BookDeletionJob(String bookId, long totalReviews) {
+        this.bookId = bookId;
+        this.activeBookId = bookId;
+        this.totalReviews = totalReviews;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = this.createdAt;
+    }
+    
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getBookId() {
+        return bookId;
+    }
+    
+    public void setBookId(String bookId) {
+        this.bookId = bookId;
+    }
+    
+    public String getActiveBookId() {
+        return activeBookId;
+    }
+    
+    public void setActiveBookId(String activeBookId) {
+        this.activeBookId = activeBookId;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public long getTotalReviews() {
+        return totalReviews;
+    }
+    
+    public void setTotalReviews(long totalReviews) {
+        this.totalReviews = totalReviews;
+    }
+    
+    public long getDeletedReviews() {
+        return deletedReviews;
+    }
+    
+    public void setDeletedReviews(long deletedReviews) {
+        this.deletedReviews = deletedReviews;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+    
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+    
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+    
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+    
+    public LocalDateTime getLockedUntil() {
+        return lockedUntil;
+    }
+    
+    public void setLockedUntil(LocalDateTime lockedUntil) {
+        this.lockedUntil = lockedUntil;
+    }
+    
+    public String getClaimToken() {
+        return claimToken;
+    }
+    
+    public void setClaimToken(String claimToken) {
+        this.claimToken = claimToken;
+    }
+    
+    public String getLastError() {
+        return lastError;
+    }
+    
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+}
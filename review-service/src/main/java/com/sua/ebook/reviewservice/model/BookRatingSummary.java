@@ -0,0 +1,108 @@
+package com.sua.ebook.reviewservice.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+// Vnaprej izračunan povzetek ocen za eno knjigo (posodablja se ob vsakem zapisu recenzije)
+@Document(collection = "book_rating_summaries")
+public class BookRatingSummary {
+    @Id
+    private String bookId;
+    
+    private long count;
+    
+    private long sum;
+    
+    // Ključi "1".."5" -> število ocen
+    private Map<String, Long> histogram = new HashMap<>();
+    
+    private LocalDateTime updatedAt;
+    
+    // Poveča ga vsak zapis; RatingSummaryRebuildJob zamenja povzetek le, če se vmes ni spremenil
+    private long version;
+    
+    // Constructors
+    public BookRatingSummary() {}
+    
+    public BookRatingSummary(String bookId) {
+        this.bookId = bookId;
+    }
+    
+    public double getAverageRating() {
+        return count > 0 ? (double) sum / count : 0.0;
+    }
+    
+    public Map<String, Long> getDistribution() {
+        Map<String, Long> distribution = new HashMap<>();
+        for (int rating = 1; rating <= 5; rating++) {
+            String key = String.valueOf(rating);
+            distribution.put(key, histogram != null ? histogram.getOrDefault(key, 0L) : 0L);
+        }
+        return distribution;
+    }
+    
+    // Getters and Setters
+    public String getBookId() {
+        return bookId;
+    }
+    
+    public void setBookId(String bookId) {
+        this.bookId = bookId;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public void setCount(long count) {
+        this.count = count;
+    }
+    
+    public long getSum() {
+        return sum;
+    }
+    
+    public void setSum(long sum) {
+        this.sum = sum;
+    }
+    
+    public Map<String, Long> getHistogram() {
+        return histogram;
+    }
+    
+    public void setHistogram(Map<String, Long> histogram) {
+        this.histogram = histogram;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(long version) {
+        this.version = version;
+    }
+    
+    @Override
+    public String toString() {
+        return "BookRatingSummary{" +
+                "bookId='" + bookId + '\'' +
+                ", count=" + count +
+                ", sum=" + sum +
+                ", histogram=" + histogram +
+                ", updatedAt=" + updatedAt +
+                ", version=" + version +
+                '}';
+    }
+}
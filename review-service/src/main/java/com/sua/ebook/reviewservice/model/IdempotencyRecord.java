@@ -0,0 +1,104 @@
+package com.sua.ebook.reviewservice.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// Prvi odgovor na zahtevo z Idempotency-Key; ponovitve z istim ključem dobijo ta odgovor (ReviewIdempotency)
+@Document(collection = "idempotency_keys")
+public class IdempotencyRecord {
+    
+    public static final String STATUS_IN_PROGRESS = "IN_PROGRESS";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    
+    // <userId>:<Idempotency-Key>
+    @Id
+    private String id;
+    
+    // SHA-256 operacije in telesa zahteve; isti ključ z drugačno zahtevo se zavrne
+    private String requestHash;
+    
+    private String status = STATUS_IN_PROGRESS;
+    
+    // Shranjena recenzija kot dokument, da se indeksi iz Review ne ustvarijo tudi na tej kolekciji
+    private org.bson.Document response;
+    
+    // Do tega časa original še teče; po izteku (npr. po padcu instance) ga lahko prevzame ponovitev
+    private LocalDateTime lockedUntil;
+    
+    private LocalDateTime createdAt;
+    
+    // TTL indeks izbriše zapis ob tem času
+    @Indexed(name = "expires_ttl", expireAfterSeconds = 0)
+    private LocalDateTime expiresAt;
+    
+    // Constructors
+    public IdempotencyRecord() {}
+    
+    public IdempotencyRecord(String id, String requestHash, LocalDateTime lockedUntil, LocalDateTime expiresAt) {
+        this.id = id;
+        this.requestHash = requestHash;
+        this.lockedUntil = lockedUntil;
+        this.createdAt = LocalDateTime.now();
+        this.expiresAt = expiresAt;
+    }
+    
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getRequestHash() {
+        return requestHash;
+    }
+    
+    public void setRequestHash(String requestHash) {
+        this.requestHash = requestHash;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public org.bson.Document getResponse() {
+        return response;
+    }
+    
+    public void setResponse(org.bson.Document response) {
+        this.response = response;
+    }
+    
+    public LocalDateTime getLockedUntil() {
+        return lockedUntil;
+    }
+    
+    public void setLockedUntil(LocalDateTime lockedUntil) {
+        this.lockedUntil = lockedUntil;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+    
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
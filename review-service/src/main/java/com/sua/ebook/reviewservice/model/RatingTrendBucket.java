@@ -0,0 +1,142 @@
+package com.sua.ebook.reviewservice.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Ocene ene knjige v enem dnevu ali tednu (po createdAt recenzije); posodablja se ob vsakem zapisu recenzije
+@Document(collection = "rating_trend_buckets")
+public class RatingTrendBucket {
+    
+    public static final String GRANULARITY_DAY = "day";
+    // Teden se začne v ponedeljek (ISO)
+    public static final String GRANULARITY_WEEK = "week";
+    
+    public static final List<String> GRANULARITIES = List.of(GRANULARITY_DAY, GRANULARITY_WEEK);
+    
+    // "<bookId>|<granularity>|<yyyy-MM-dd>", zato je razpon obdobij ene knjige razpon po _id indeksu
+    @Id
+    private String id;
+    
+    private String bookId;
+    
+    private String granularity;
+    
+    private LocalDate periodStart;
+    
+    private long count;
+    
+    private long sum;
+    
+    // Ključi "1".."5" -> število ocen
+    private Map<String, Long> histogram = new HashMap<>();
+    
+    private LocalDateTime updatedAt;
+    
+    // Poveča ga vsak zapis, enako kot pri BookRatingSummary
+    private long version;
+    
+    // Constructors
+    public RatingTrendBucket() {}
+    
+    public static String id(String bookId, String granularity, LocalDate periodStart) {
+        return bookId + "|" + granularity + "|" + periodStart;
+    }
+    
+    public static LocalDate periodStart(String granularity, LocalDate date) {
+        return GRANULARITY_WEEK.equals(granularity) ? date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)) : date;
+    }
+    
+    public double getAverageRating() {
+        return count > 0 ? (double) sum / count : 0.0;
+    }
+    
+    public Map<String, Long> getDistribution() {
+        Map<String, Long> distribution = new HashMap<>();
+        for (int rating = 1; rating <= 5; rating++) {
+            String key = String.valueOf(rating);
+            distribution.put(key, histogram != null ? histogram.getOrDefault(key, 0L) : 0L);
+        }
+        return distribution;
+    }
+    
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getBookId() {
+        return bookId;
+    }
+    
+    public void setBookId(String bookId) {
+        this.bookId = bookId;
+    }
+    
+    public String getGranularity() {
+        return granularity;
+    }
+    
+    public void setGranularity(String granularity) {
+        this.granularity = granularity;
+    }
+    
+    public LocalDate getPeriodStart() {
+        return periodStart;
+    }
+    
+    public void setPeriodStart(LocalDate periodStart) {
+        this.periodStart = periodStart;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public void setCount(long count) {
+        this.count = count;
+    }
+    
+    public long getSum() {
+        return sum;
+    }
+    
+    public void setSum(long sum) {
+        this.sum = sum;
+    }
+    
+    public Map<String, Long> getHistogram() {
+        return histogram;
+    }
+    
+    public void setHistogram(Map<String, Long> histogram) {
+        this.histogram = histogram;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
@@ -1,24 +1,32 @@
 package com.sua.ebook.reviewservice.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.TextIndexed;
+import org.springframework.data.mongodb.core.mapping.Document;
 
 import jakarta.validation.constraints.*;
 import java.time.LocalDateTime;
 import java.util.Objects;
 
-@Document(collection = "reviews")
+// language "none": besedilo je večinoma slovensko, za katerega Mongo nima stemmerja, zato brez stemminga in stop besed
+@Document(collection = "reviews", language = "none")
+// En uporabnik lahko oceni knjigo samo enkrat; ostali indeksi pokrivajo keyset strani, izvoz in iskanje
+@CompoundIndex(name = "book_user_unique", def = "{'bookId': 1, 'userId': 1}", unique = true)
+@CompoundIndex(name = "book_created", def = "{'bookId': 1, 'createdAt': -1, '_id': -1}")
+@CompoundIndex(name = "user_created", def = "{'userId': 1, 'createdAt': -1, '_id': -1}")
+@CompoundIndex(name = "created", def = "{'createdAt': -1, '_id': -1}")
+@CompoundIndex(name = "updated", def = "{'updatedAt': 1, '_id': 1}")
 public class Review {
     @Id
     private String id;
     
     @NotBlank(message = "Book ID is required")
-    @Indexed
     private String bookId;
     
     @NotBlank(message = "User ID is required")  
-    @Indexed
     private String userId;
     
     @Min(value = 1, message = "Rating must be between 1 and 5")
@@ -27,6 +35,7 @@ public class Review {
     private Integer rating;
     
     @Size(max = 1000, message = "Review text cannot exceed 1000 characters")
+    @TextIndexed
     private String reviewText;
     
     @NotNull
@@ -36,6 +45,11 @@ public class Review {
     
     private Boolean isVerified; // Če je uporabnik dejansko izposodil knjigo
     
+    // Dogodek REVIEW_CREATED še ni v outboxu; zapiše se z recenzijo, pobriše ga ReviewEventDispatcher
+    @JsonIgnore
+    @Indexed(name = "event_pending", sparse = true)
+    private Boolean eventPending;
+    
     // Constructors
     public Review() {
         this.createdAt = LocalDateTime.now();
@@ -118,6 +132,14 @@ public class Review {
         this.isVerified = isVerified;
     }
     
+    public Boolean getEventPending() {
+        return eventPending;
+    }
+    
+    public void setEventPending(Boolean eventPending) {
+        this.eventPending = eventPending;
+    }
+    
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
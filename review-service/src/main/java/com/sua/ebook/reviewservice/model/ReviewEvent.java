@@ -0,0 +1,181 @@
+package com.sua.ebook.reviewservice.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// Dogodek v outboxu; ustvari, pošlje in nato izbriše ga ReviewEventDispatcher
+@Document(collection = "review_events")
+@CompoundIndex(name = "status_next_attempt", def = "{'status': 1, 'nextAttemptAt': 1}")
+@CompoundIndex(name = "status_created", def = "{'status': 1, 'createdAt': 1}")
+public class ReviewEvent {
+    
+    public static final String TYPE_REVIEW_CREATED = "REVIEW_CREATED";
+    
+    public static final String STATUS_PENDING = "PENDING";
+    // Preseženo največje število poskusov; ostane v kolekciji za ročni pregled
+    public static final String STATUS_FAILED = "FAILED";
+    
+    @Id
+    private String id;
+    
+    private String type;
+    
+    private String reviewId;
+    
+    private String bookId;
+    
+    private String userId;
+    
+    private Integer rating;
+    
+    private boolean firstReview;
+    
+    private String status = STATUS_PENDING;
+    
+    private int attempts;
+    
+    private LocalDateTime createdAt;
+    
+    private LocalDateTime nextAttemptAt;
+    
+    // Zaseden do tega časa (claim); po izteku ga lahko prevzame drug delavec ali instanca
+    private LocalDateTime lockedUntil;
+    
+    private String claimToken;
+    
+    private String lastError;
+    
+    // Constructors
+    public ReviewEvent() {}
+    
+    // Id je določen z recenzijo, da ponovljeno zapisovanje istega dogodka zavrne _id indeks
+    public static ReviewEvent reviewCreated(Review review, boolean firstReview) {
+        ReviewEvent event = new ReviewEvent();
+        event.setId(review.getId() + "-created");
+        event.setType(TYPE_REVIEW_CREATED);
+        event.setReviewId(review.getId());
+        event.setBookId(review.getBookId());
+        event.setUserId(review.getUserId());
+        event.setRating(review.getRating());
+        event.setFirstReview(firstReview);
+        event.setCreatedAt(review.getCreatedAt());
+        event.setNextAttemptAt(review.getCreatedAt());
+        return event;
+    }
+    
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    public String getReviewId() {
+        return reviewId;
+    }
+    
+    public void setReviewId(String reviewId) {
+        this.reviewId = reviewId;
+    }
+    
+    public String getBookId() {
+        return bookId;
+    }
+    
+    public void setBookId(String bookId) {
+        this.bookId = bookId;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+    
+    public Integer getRating() {
+        return rating;
+    }
+    
+    public void setRating(Integer rating) {
+        this.rating = rating;
+    }
+    
+    public boolean isFirstReview() {
+        return firstReview;
+    }
+    
+    public void setFirstReview(boolean firstReview) {
+        this.firstReview = firstReview;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public int getAttempts() {
+        return attempts;
+    }
+    
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+    
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+    
+    public LocalDateTime getLockedUntil() {
+        return lockedUntil;
+    }
+    
+    public void setLockedUntil(LocalDateTime lockedUntil) {
+        this.lockedUntil = lockedUntil;
+    }
+    
+    public String getClaimToken() {
+        return claimToken;
+    }
+    
+    public void setClaimToken(String claimToken) {
+        this.claimToken = claimToken;
+    }
+    
+    public String getLastError() {
+        return lastError;
+    }
+    
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+}
@@ -0,0 +1,9 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.sua.ebook.reviewservice.model.BookRatingSummary;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BookRatingSummaryRepository extends MongoRepository<BookRatingSummary, String> {
+}
@@ -0,0 +1,254 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.sua.ebook.reviewservice.dto.ReviewCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchHit;
+import com.sua.ebook.reviewservice.model.Review;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.query.FluentQuery;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * ReviewRepository backed by ReviewLog, used instead of the Mongo repository when
+ * review.storage.backend=log. Derived queries and the custom queries return the same
+ * results in the same order as their Mongo counterparts, and a duplicate (bookId, userId)
+ * is rejected with DuplicateKeyException. Query-by-example is not supported.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "review.storage.backend", havingValue = "log")
+public class LogReviewRepository implements ReviewRepository {
+    
+    @Autowired
+    private ReviewLog reviewLog;
+    
+    @Override
+    public List<Review> findAllByOrderByCreatedAtDesc() {
+        return reviewLog.findNewest(null, null);
+    }
+    
+    @Override
+    public List<Review> findByBookIdOrderByCreatedAtDesc(String bookId) {
+        return reviewLog.findNewest(bookId, null);
+    }
+    
+    @Override
+    public List<Review> findByUserIdOrderByCreatedAtDesc(String userId) {
+        return reviewLog.findNewest(null, userId);
+    }
+    
+    @Override
+    public Optional<Review> findByBookIdAndUserId(String bookId, String userId) {
+        return reviewLog.findByBookIdAndUserId(bookId, userId);
+    }
+    
+    @Override
+    public void deleteByBookId(String bookId) {
+        reviewLog.deleteByBookId(bookId);
+    }
+    
+    @Override
+    public long deleteBatchByBookId(String bookId, int limit) {
+        return reviewLog.deleteBatchByBookId(bookId, limit);
+    }
+    
+    // Dnevnik ne podpira dogodkov (ReviewLog ob zagonu zavrne review.events.url), zato zastavic ni
+    @Override
+    public List<Review> findEventPending(int limit) {
+        return List.of();
+    }
+    
+    @Override
+    public void clearEventPending(Collection<String> ids) {
+    }
+    
+    @Override
+    public long countByBookId(String bookId) {
+        return reviewLog.countByBookId(bookId);
+    }
+    
+    @Override
+    public long countByUserId(String userId) {
+        return reviewLog.countByUserId(userId);
+    }
+    
+    @Override
+    public boolean existsByUserIdAndCreatedAtBefore(String userId, LocalDateTime createdAt) {
+        return reviewLog.existsByUserIdAndCreatedAtBefore(userId, createdAt);
+    }
+    
+    // include se ne upošteva: dokumenti so že v pomnilniku, polja izbere ReviewFields.project
+    @Override
+    public List<Review> findPage(String bookId, String userId, ReviewCursor after, int limit, Set<String> include) {
+        return reviewLog.findPage(bookId, userId, after, limit);
+    }
+    
+    @Override
+    public List<ReviewSearchHit> search(String text, String bookId, Integer rating, ReviewSearchCursor after, int limit) {
+        return reviewLog.search(text, bookId, rating, after, limit);
+    }
+    
+    @Override
+    public Stream<Review> streamUpdatedSince(LocalDateTime since, int batchSize) {
+        return reviewLog.findUpdatedSince(since).stream();
+    }
+    
+    @Override
+    public Map<String, List<Review>> findLatestByBookIds(Collection<String> bookIds, int perBook) {
+        return reviewLog.findLatestByBookIds(bookIds, perBook);
+    }
+    
+    @Override
+    public <S extends Review> S insert(S entity) {
+        return reviewLog.insert(List.of(entity)).get(0);
+    }
+    
+    @Override
+    public <S extends Review> List<S> insert(Iterable<S> entities) {
+        return reviewLog.insert(toList(entities));
+    }
+    
+    @Override
+    public <S extends Review> S save(S entity) {
+        return reviewLog.save(List.of(entity)).get(0);
+    }
+    
+    @Override
+    public <S extends Review> List<S> saveAll(Iterable<S> entities) {
+        return reviewLog.save(toList(entities));
+    }
+    
+    @Override
+    public Optional<Review> findById(String id) {
+        return reviewLog.findById(id);
+    }
+    
+    @Override
+    public boolean existsById(String id) {
+        return reviewLog.existsById(id);
+    }
+    
+    @Override
+    public List<Review> findAll() {
+        return reviewLog.findNewest(null, null);
+    }
+    
+    @Override
+    public List<Review> findAllById(Iterable<String> ids) {
+        return reviewLog.findAllById(ids);
+    }
+    
+    @Override
+    public long count() {
+        return reviewLog.count();
+    }
+    
+    @Override
+    public void deleteById(String id) {
+        reviewLog.delete(List.of(id));
+    }
+    
+    @Override
+    public void delete(Review entity) {
+        reviewLog.delete(List.of(entity.getId()));
+    }
+    
+    @Override
+    public void deleteAllById(Iterable<? extends String> ids) {
+        List<String> list = new ArrayList<>();
+        ids.forEach(list::add);
+        reviewLog.delete(list);
+    }
+    
+    @Override
+    public void deleteAll(Iterable<? extends Review> entities) {
+        List<String> ids = new ArrayList<>();
+        entities.forEach(review -> ids.add(review.getId()));
+        reviewLog.delete(ids);
+    }
+    
+    @Override
+    public void deleteAll() {
+        reviewLog.deleteAll();
+    }
+    
+    @Override
+    public List<Review> findAll(Sort sort) {
+        List<Review> reviews = reviewLog.findNewest(null, null);
+        reviews.sort(ReviewOrder.of(sort));
+        return reviews;
+    }
+    
+    @Override
+    public Page<Review> findAll(Pageable pageable) {
+        List<Review> reviews = findAll(pageable.getSort());
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(reviews);
+        }
+        int from = (int) Math.min(pageable.getOffset(), reviews.size());
+        int to = Math.min(from + pageable.getPageSize(), reviews.size());
+        return new PageImpl<>(new ArrayList<>(reviews.subList(from, to)), pageable, reviews.size());
+    }
+    
+    @Override
+    public <S extends Review> Optional<S> findOne(Example<S> example) {
+        throw unsupported();
+    }
+    
+    @Override
+    public <S extends Review> List<S> findAll(Example<S> example) {
+        throw unsupported();
+    }
+    
+    @Override
+    public <S extends Review> List<S> findAll(Example<S> example, Sort sort) {
+        throw unsupported();
+    }
+    
+    @Override
+    public <S extends Review> Page<S> findAll(Example<S> example, Pageable pageable) {
+        throw unsupported();
+    }
+    
+    @Override
+    public <S extends Review> long count(Example<S> example) {
+        throw unsupported();
+    }
+    
+    @Override
+    public <S extends Review> boolean exists(Example<S> example) {
+        throw unsupported();
+    }
+    
+    @Override
+    public <S extends Review, R> R findBy(Example<S> example, Function<FluentQuery.FetchableFluentQuery<S>, R> queryFunction) {
+        throw unsupported();
+    }
+    
+    private static <S> List<S> toList(Iterable<S> entities) {
+        List<S> list = new ArrayList<>();
+        entities.forEach(list::add);
+        return list;
+    }
+    
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Query by example is not supported by review.storage.backend=log");
+    }
+}
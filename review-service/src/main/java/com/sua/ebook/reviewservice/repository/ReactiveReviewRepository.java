@@ -0,0 +1,13 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.sua.ebook.reviewservice.model.Review;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+// Neblokirni dostop do kolekcije reviews za reactive (WebFlux) način
+@Repository
+public interface ReactiveReviewRepository extends ReactiveMongoRepository<Review, String>, ReactiveReviewRepositoryCustom {
+    
+    Mono<Void> deleteByBookId(String bookId);
+}
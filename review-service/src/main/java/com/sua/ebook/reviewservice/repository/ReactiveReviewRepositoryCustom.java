@@ -0,0 +1,26 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.sua.ebook.reviewservice.dto.ReviewCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchHit;
+import com.sua.ebook.reviewservice.model.Review;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Reaktivna različica ReviewRepositoryCustom z enakimi poizvedbami
+public interface ReactiveReviewRepositoryCustom {
+    
+    Flux<Review> findPage(String bookId, String userId, ReviewCursor after, int limit, Set<String> include);
+    
+    Flux<ReviewSearchHit> search(String text, String bookId, Integer rating, ReviewSearchCursor after, int limit);
+    
+    Flux<Review> streamUpdatedSince(LocalDateTime since, int batchSize);
+    
+    Mono<Map<String, List<Review>>> findLatestByBookIds(Collection<String> bookIds, int perBook);
+}
@@ -0,0 +1,49 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.sua.ebook.reviewservice.dto.ReviewCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchHit;
+import com.sua.ebook.reviewservice.model.Review;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ReactiveReviewRepositoryCustomImpl implements ReactiveReviewRepositoryCustom {
+    
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    
+    @Override
+    public Flux<Review> findPage(String bookId, String userId, ReviewCursor after, int limit, Set<String> include) {
+        return reactiveMongoTemplate.find(ReviewRepositoryCustomImpl.pageQuery(bookId, userId, after, limit, include), Review.class);
+    }
+    
+    @Override
+    public Flux<ReviewSearchHit> search(String text, String bookId, Integer rating, ReviewSearchCursor after, int limit) {
+        return reactiveMongoTemplate
+            .aggregate(ReviewRepositoryCustomImpl.searchAggregation(text, bookId, rating, after, limit), Review.class, Document.class)
+            .map(hit -> ReviewRepositoryCustomImpl.readHit(reactiveMongoTemplate.getConverter(), hit));
+    }
+    
+    @Override
+    public Flux<Review> streamUpdatedSince(LocalDateTime since, int batchSize) {
+        return reactiveMongoTemplate.find(ReviewRepositoryCustomImpl.updatedSinceQuery(since, batchSize), Review.class);
+    }
+    
+    @Override
+    public Mono<Map<String, List<Review>>> findLatestByBookIds(Collection<String> bookIds, int perBook) {
+        return reactiveMongoTemplate
+            .aggregate(ReviewRepositoryCustomImpl.latestByBookIdsAggregation(bookIds, perBook), Review.class, Document.class)
+            .collectMap(
+                group -> group.getString("_id"),
+                group -> ReviewRepositoryCustomImpl.readGroup(reactiveMongoTemplate.getConverter(), group));
+    }
+}
@@ -0,0 +1,947 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.sua.ebook.reviewservice.dto.ReviewCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchHit;
+import com.sua.ebook.reviewservice.model.BookRatingSummary;
+import com.sua.ebook.reviewservice.model.RatingTrendBucket;
+import com.sua.ebook.reviewservice.model.Review;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded review storage for review.storage.backend=log. Reviews are kept in an
+ * append-only log on local disk with in-memory indexes, so edge and test deployments
+ * can run without a MongoDB server.
+ * <p>
+ * A write appends one record per review to the active segment: length, CRC32, type
+ * and the BSON document produced by the Mongo converter. The indexes are updated after
+ * that. The indexes cover id, (bookId, userId), bookId and userId in (createdAt desc,
+ * id desc) order, all reviews in the same order, and updatedAt for the export. Rating
+ * totals per book are kept next to the indexes. Stats, trends and the leaderboard are
+ * computed from them, so log mode needs no summary or trend collections.
+ * <p>
+ * On startup all segments are replayed in order. A torn record at the end of the last
+ * segment, left by a crash during a write, is cut off. Damage anywhere else stops the
+ * startup. Background compaction first seals the active segment. It then writes every
+ * live review to a new segment that starts with a snapshot marker, and that segment
+ * replaces the sealed ones. Writes go to a fresh active segment in the meantime.
+ */
+@Component
+@ConditionalOnProperty(name = "review.storage.backend", havingValue = "log")
+public class ReviewLog {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ReviewLog.class);
+    
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    // Ob branju zavrže vse dotlej prebrano stanje (začetek kompaktiranega segmenta, deleteAll)
+    private static final byte SNAPSHOT = 3;
+    // Dolžina, CRC32, tip
+    private static final int HEADER_SIZE = 9;
+    
+    private static final Pattern SEGMENT = Pattern.compile("reviews-(\\d{10})\\.log");
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    private static final DocumentCodec CODEC = new DocumentCodec();
+    
+    private static final Comparator<LocalDateTime> TIME = Comparator.nullsFirst(Comparator.naturalOrder());
+    private static final Comparator<Position> OLDEST_FIRST = Comparator
+        .comparing((Position position) -> position.at, TIME)
+        .thenComparing(position -> position.id);
+    // Enako kot Mongo indeksi (createdAt: -1, _id: -1); hex ObjectId se ureja kot niz
+    private static final Comparator<Position> NEWEST_FIRST = OLDEST_FIRST.reversed();
+    
+    @Autowired
+    private MongoConverter mongoConverter;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${review.storage.log.dir:data/reviews}")
+    private String dir;
+    
+    @Value("${review.storage.log.sync-every-write:true}")
+    private boolean syncEveryWrite;
+    
+    @Value("${review.storage.log.compaction.min-dead-records:10000}")
+    private long minDeadRecords;
+    
+    @Value("${review.storage.log.compaction.dead-ratio:0.5}")
+    private double deadRatio;
+    
+    @Value("${review.group-commit.enabled:false}")
+    private boolean groupCommitEnabled;
+    
+    @Value("${review.events.url:}")
+    private String eventsUrl;
+    
+    @Value("${spring.main.web-application-type:servlet}")
+    private String webApplicationType;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+    
+    // Shranjene instance se nikoli ne spreminjajo; navzven gredo le kopije
+    private final Map<String, Review> reviews = new HashMap<>();
+    private final Map<List<String>, String> idsByBookAndUser = new HashMap<>();
+    private final NavigableSet<Position> newest = new TreeSet<>(NEWEST_FIRST);
+    private final Map<String, NavigableSet<Position>> byBook = new HashMap<>();
+    private final Map<String, NavigableSet<Position>> byUser = new HashMap<>();
+    private final NavigableSet<Position> byUpdated = new TreeSet<>(OLDEST_FIRST);
+    private final Map<String, BookTotals> totals = new HashMap<>();
+    
+    private Path directory;
+    private FileChannel active;
+    private long activeSequence;
+    // PUT in DELETE zapisi v segmentih; zapisi - živi recenzije = zastareli zapisi za kompaktiranje
+    private volatile long records;
+    private volatile boolean dirty;
+    
+    private Timer compactionTimer;
+    
+    @PostConstruct
+    void init() throws IOException {
+        // Outbox in skupinski zapis pišeta neposredno v Mongo, reaktivni način uporablja reaktivni repozitorij
+        if (groupCommitEnabled) {
+            throw new IllegalStateException("review.group-commit.enabled requires review.storage.backend=mongo");
+        }
+        if (eventsUrl != null && !eventsUrl.isBlank()) {
+            throw new IllegalStateException("review.events.url requires review.storage.backend=mongo");
+        }
+        if ("reactive".equalsIgnoreCase(webApplicationType)) {
+            throw new IllegalStateException("review.storage.backend=log is only supported in servlet mode");
+        }
+        
+        long started = System.currentTimeMillis();
+        directory = Path.of(dir);
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path leftover : (Iterable<Path>) files.filter(path -> path.toString().endsWith(COMPACTING_SUFFIX))::iterator) {
+                // Prekinjeno kompaktiranje; zapečateni segmenti so še vsi na disku
+                Files.delete(leftover);
+            }
+        }
+        
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            replay(segments.get(i), i == segments.size() - 1);
+        }
+        openSegment(segments.isEmpty() ? 1 : sequence(segments.get(segments.size() - 1)));
+        
+        Gauge.builder("review.storage.log.reviews", this, log -> log.reviews.size())
+            .description("Live reviews in the review log")
+            .register(meterRegistry);
+        Gauge.builder("review.storage.log.records", this, log -> log.records)
+            .description("Records in the review log segments, including superseded ones")
+            .register(meterRegistry);
+        compactionTimer = Timer.builder("review.storage.log.compaction")
+            .description("Time to compact the review log")
+            .register(meterRegistry);
+        
+        logger.info("Review log {} opened: {} reviews from {} records in {} segments in {} ms",
+            directory.toAbsolutePath(), reviews.size(), records, segments.size(), System.currentTimeMillis() - started);
+    }
+    
+    @PreDestroy
+    void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (active != null && active.isOpen()) {
+                active.force(true);
+                active.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Branje
+    
+    public Optional<Review> findById(String id) {
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(reviews.get(id)).map(ReviewLog::copy);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public List<Review> findAllById(Iterable<String> ids) {
+        lock.readLock().lock();
+        try {
+            List<Review> found = new ArrayList<>();
+            for (String id : ids) {
+                Review review = reviews.get(id);
+                if (review != null) {
+                    found.add(copy(review));
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public Optional<Review> findByBookIdAndUserId(String bookId, String userId) {
+        lock.readLock().lock();
+        try {
+            String id = idsByBookAndUser.get(Arrays.asList(bookId, userId));
+            return Optional.ofNullable(id).map(reviews::get).map(ReviewLog::copy);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Vse recenzije (bookId/userId sta opcijska filtra), najnovejše najprej
+    public List<Review> findNewest(String bookId, String userId) {
+        return findPage(bookId, userId, null, Integer.MAX_VALUE);
+    }
+    
+    public List<Review> findPage(String bookId, String userId, ReviewCursor after, int limit) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Position> index = bookId != null ? byBook.getOrDefault(bookId, Collections.emptyNavigableSet())
+                : userId != null ? byUser.getOrDefault(userId, Collections.emptyNavigableSet())
+                : newest;
+            Iterable<Position> positions = after == null ? index
+                : index.tailSet(new Position(after.getCreatedAt(), after.getId()), false);
+            
+            List<Review> page = new ArrayList<>();
+            for (Position position : positions) {
+                if (page.size() >= limit) {
+                    break;
+                }
+                Review review = reviews.get(position.id);
+                if (bookId != null && userId != null && !userId.equals(review.getUserId())) {
+                    continue;
+                }
+                page.add(copy(review));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public Map<String, List<Review>> findLatestByBookIds(Collection<String> bookIds, int perBook) {
+        Map<String, List<Review>> latest = new HashMap<>();
+        for (String bookId : bookIds) {
+            List<Review> page = findPage(bookId, null, null, perBook);
+            if (!page.isEmpty()) {
+                latest.put(bookId, page);
+            }
+        }
+        return latest;
+    }
+    
+    // Posnetek ob klicu, urejen po (updatedAt, id); kasnejši zapisi vanj ne pridejo
+    public List<Review> findUpdatedSince(LocalDateTime since) {
+        lock.readLock().lock();
+        try {
+            Iterable<Position> positions = since == null ? byUpdated
+                : byUpdated.tailSet(new Position(since, ""), true);
+            List<Review> updated = new ArrayList<>();
+            for (Position position : positions) {
+                updated.add(copy(reviews.get(position.id)));
+            }
+            return updated;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Brez text indeksa: pregleda vse recenzije (ali recenzije knjige), urejeno po (score desc, id desc)
+    public List<ReviewSearchHit> search(String text, String bookId, Integer rating, ReviewSearchCursor after, int limit) {
+        ReviewTextQuery query = ReviewTextQuery.parse(text);
+        List<ReviewSearchHit> hits = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Iterable<Review> candidates = bookId == null ? reviews.values()
+                : byBook.getOrDefault(bookId, Collections.emptyNavigableSet()).stream().map(position -> reviews.get(position.id)).toList();
+            for (Review review : candidates) {
+                if (rating != null && !rating.equals(review.getRating())) {
+                    continue;
+                }
+                double score = query.score(review.getReviewText());
+                if (score <= 0) {
+                    continue;
+                }
+                if (after != null && (score > after.getScore()
+                        || (score == after.getScore() && review.getId().compareTo(after.getId()) >= 0))) {
+                    continue;
+                }
+                hits.add(new ReviewSearchHit(review, score));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        hits.sort(Comparator.comparingDouble(ReviewSearchHit::getScore).reversed()
+            .thenComparing(hit -> hit.getReview().getId(), Comparator.reverseOrder()));
+        List<ReviewSearchHit> page = new ArrayList<>();
+        for (ReviewSearchHit hit : hits.subList(0, Math.min(limit, hits.size()))) {
+            page.add(new ReviewSearchHit(copy(hit.getReview()), hit.getScore()));
+        }
+        return page;
+    }
+    
+    public long count() {
+        lock.readLock().lock();
+        try {
+            return reviews.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public long countByBookId(String bookId) {
+        lock.readLock().lock();
+        try {
+            return byBook.getOrDefault(bookId, Collections.emptyNavigableSet()).size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public long countByUserId(String userId) {
+        lock.readLock().lock();
+        try {
+            return byUser.getOrDefault(userId, Collections.emptyNavigableSet()).size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public boolean existsById(String id) {
+        lock.readLock().lock();
+        try {
+            return reviews.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public boolean existsByUserIdAndCreatedAtBefore(String userId, LocalDateTime createdAt) {
+        lock.readLock().lock();
+        try {
+            // Urejeno od najnovejše, zadnja je najstarejša
+            NavigableSet<Position> positions = byUser.getOrDefault(userId, Collections.emptyNavigableSet());
+            return !positions.isEmpty() && positions.last().at.isBefore(createdAt);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Povzetki in trendi iz indeksov, namesto book_rating_summaries in rating_trend_buckets
+    
+    public BookRatingSummary summary(String bookId) {
+        lock.readLock().lock();
+        try {
+            BookTotals bookTotals = totals.get(bookId);
+            return bookTotals != null ? bookTotals.toSummary(bookId) : new BookRatingSummary(bookId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public List<BookRatingSummary> summaries() {
+        lock.readLock().lock();
+        try {
+            List<BookRatingSummary> summaries = new ArrayList<>(totals.size());
+            totals.forEach((bookId, bookTotals) -> summaries.add(bookTotals.toSummary(bookId)));
+            return summaries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Obdobja od from do to (začetka prvega in zadnjega obdobja), naraščajoče; obdobja brez ocen manjkajo
+    public List<RatingTrendBucket> trendBuckets(String bookId, String granularity, LocalDate from, LocalDate to) {
+        TreeMap<LocalDate, RatingTrendBucket> buckets = new TreeMap<>();
+        lock.readLock().lock();
+        try {
+            for (Position position : byBook.getOrDefault(bookId, Collections.emptyNavigableSet())) {
+                if (position.at == null) {
+                    continue;
+                }
+                LocalDate periodStart = RatingTrendBucket.periodStart(granularity, position.at.toLocalDate());
+                if (periodStart.isAfter(to)) {
+                    continue;
+                }
+                if (periodStart.isBefore(from)) {
+                    break;
+                }
+                RatingTrendBucket bucket = buckets.computeIfAbsent(periodStart, start -> {
+                    RatingTrendBucket created = new RatingTrendBucket();
+                    created.setId(RatingTrendBucket.id(bookId, granularity, start));
+                    created.setBookId(bookId);
+                    created.setGranularity(granularity);
+                    created.setPeriodStart(start);
+                    return created;
+                });
+                int rating = ratingOf(reviews.get(position.id));
+                bucket.setCount(bucket.getCount() + 1);
+                bucket.setSum(bucket.getSum() + rating);
+                bucket.getHistogram().merge(String.valueOf(rating), 1L, Long::sum);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new ArrayList<>(buckets.values());
+    }
+    
+    // Pisanje
+    
+    public <S extends Review> List<S> insert(Collection<S> batch) {
+        lock.writeLock().lock();
+        try {
+            Set<String> ids = new HashSet<>();
+            Set<List<String>> keys = new HashSet<>();
+            for (S review : batch) {
+                if (review.getId() == null) {
+                    review.setId(new ObjectId().toHexString());
+                }
+                if (reviews.containsKey(review.getId()) || !ids.add(review.getId())) {
+                    throw duplicate("_id_", review.getId());
+                }
+                List<String> key = key(review);
+                if (idsByBookAndUser.containsKey(key) || !keys.add(key)) {
+                    throw duplicate("book_user_unique", review.getBookId() + ", " + review.getUserId());
+                }
+            }
+            write(batch);
+            return new ArrayList<>(batch);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Kot Mongo save: zamenja obstoječo recenzijo z istim id ali vstavi novo
+    public <S extends Review> List<S> save(Collection<S> batch) {
+        lock.writeLock().lock();
+        try {
+            Map<List<String>, String> keys = new HashMap<>();
+            for (S review : batch) {
+                if (review.getId() == null) {
+                    review.setId(new ObjectId().toHexString());
+                }
+                List<String> key = key(review);
+                String owner = keys.containsKey(key) ? keys.get(key) : idsByBookAndUser.get(key);
+                if (owner != null && !owner.equals(review.getId())) {
+                    throw duplicate("book_user_unique", review.getBookId() + ", " + review.getUserId());
+                }
+                keys.put(key, review.getId());
+            }
+            write(batch);
+            return new ArrayList<>(batch);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public long delete(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            List<String> existing = new ArrayList<>();
+            for (String id : new HashSet<>(ids)) {
+                if (reviews.containsKey(id)) {
+                    existing.add(id);
+                }
+            }
+            if (existing.isEmpty()) {
+                return 0;
+            }
+            List<byte[]> batch = new ArrayList<>(existing.size());
+            for (String id : existing) {
+                batch.add(record(DELETE, id.getBytes(StandardCharsets.UTF_8)));
+            }
+            append(batch);
+            records += batch.size();
+            existing.forEach(this::remove);
+            return existing.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public long deleteByBookId(String bookId) {
+        lock.writeLock().lock();
+        try {
+            List<String> ids = new ArrayList<>();
+            for (Position position : byBook.getOrDefault(bookId, Collections.emptyNavigableSet())) {
+                ids.add(position.id);
+            }
+            return delete(ids);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public long deleteBatchByBookId(String bookId, int limit) {
+        lock.writeLock().lock();
+        try {
+            List<String> ids = new ArrayList<>(limit);
+            for (Position position : byBook.getOrDefault(bookId, Collections.emptyNavigableSet())) {
+                if (ids.size() >= limit) {
+                    break;
+                }
+                ids.add(position.id);
+            }
+            return delete(ids);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void deleteAll() {
+        lock.writeLock().lock();
+        try {
+            append(List.of(record(SNAPSHOT, new byte[0])));
+            clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Pred indeksi shranimo dekodiran zapis, da je stanje enako kot po ponovnem branju (npr. čas na milisekunde)
+    private void write(Collection<? extends Review> batch) {
+        List<byte[]> encoded = new ArrayList<>(batch.size());
+        List<Review> stored = new ArrayList<>(batch.size());
+        for (Review review : batch) {
+            byte[] payload = encode(review);
+            encoded.add(record(PUT, payload));
+            stored.add(decode(payload));
+        }
+        append(encoded);
+        records += encoded.size();
+        stored.forEach(this::put);
+    }
+    
+    private void append(List<byte[]> batch) {
+        long start = -1;
+        try {
+            start = active.position();
+            ByteBuffer[] buffers = batch.stream().map(ByteBuffer::wrap).toArray(ByteBuffer[]::new);
+            long remaining = batch.stream().mapToLong(record -> record.length).sum();
+            while (remaining > 0) {
+                remaining -= active.write(buffers);
+            }
+            if (syncEveryWrite) {
+                active.force(false);
+            } else {
+                dirty = true;
+            }
+        } catch (IOException e) {
+            // Delno zapisan paket bi ob naslednjem zapisu postal poškodba sredi segmenta
+            if (start >= 0) {
+                try {
+                    active.truncate(start);
+                } catch (IOException truncateFailure) {
+                    e.addSuppressed(truncateFailure);
+                }
+            }
+            throw new DataAccessResourceFailureException("Failed to append to the review log", e);
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${review.storage.log.sync-interval:100}")
+    public void syncPeriodically() {
+        if (syncEveryWrite || !dirty) {
+            return;
+        }
+        FileChannel channel;
+        lock.readLock().lock();
+        try {
+            channel = active;
+            dirty = false;
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            // Zaprt kanal je kompaktiranje že sinhroniziralo
+            if (channel.isOpen()) {
+                dirty = true;
+                logger.error("Review log sync failed: {}", e.getMessage());
+            }
+        }
+    }
+    
+    // Kompaktiranje
+    
+    @Scheduled(fixedDelayString = "${review.storage.log.compaction.interval:60000}")
+    public void compactIfNeeded() {
+        long total = records;
+        long dead = total - count();
+        if (dead >= minDeadRecords && dead >= deadRatio * total) {
+            compact();
+        }
+    }
+    
+    public void compact() {
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+        long started = System.nanoTime();
+        Path temporary = null;
+        try {
+            long sealed;
+            long sealedRecords;
+            List<Review> snapshot;
+            lock.writeLock().lock();
+            try {
+                active.force(true);
+                active.close();
+                sealed = activeSequence;
+                sealedRecords = records;
+                openSegment(sealed + 1);
+                snapshot = new ArrayList<>(reviews.values());
+            } finally {
+                lock.writeLock().unlock();
+            }
+            
+            temporary = directory.resolve(segmentName(sealed) + COMPACTING_SUFFIX);
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+                out.write(record(SNAPSHOT, new byte[0]));
+                for (Review review : snapshot) {
+                    out.write(record(PUT, encode(review)));
+                }
+                out.flush();
+                channel.force(true);
+            }
+            // Zamenjava zadnjega zapečatenega segmenta je atomarna; starejše segmente SNAPSHOT ob branju razveljavi
+            Files.move(temporary, directory.resolve(segmentName(sealed)),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory();
+            for (Path segment : segments()) {
+                if (sequence(segment) < sealed) {
+                    Files.delete(segment);
+                }
+            }
+            
+            lock.writeLock().lock();
+            try {
+                records = records - sealedRecords + snapshot.size();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            logger.info("Review log compacted: {} records replaced by {} live reviews", sealedRecords, snapshot.size());
+        } catch (IOException e) {
+            logger.error("Review log compaction failed: {}", e.getMessage());
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // Ostanek pobriše naslednji zagon
+                }
+            }
+        } finally {
+            compactionTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            compacting.set(false);
+        }
+    }
+    
+    // Segmenti
+    
+    private void replay(Path segment, boolean last) throws IOException {
+        long size = Files.size(segment);
+        long offset = 0;
+        String damage = null;
+        // Le poškodba zadnjega zapisa je lahko prekinjen zapis; za njo ni ničesar več
+        boolean tail = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 1 << 16))) {
+            while (offset < size) {
+                if (size - offset < HEADER_SIZE) {
+                    damage = "incomplete record header";
+                    tail = true;
+                    break;
+                }
+                int length = in.readInt();
+                int checksum = in.readInt();
+                byte type = in.readByte();
+                if (length < 0 || length > size - offset - HEADER_SIZE) {
+                    damage = "incomplete record";
+                    tail = length >= 0;
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (checksum != checksum(type, payload)) {
+                    damage = "checksum mismatch";
+                    tail = offset + HEADER_SIZE + length == size;
+                    break;
+                }
+                switch (type) {
+                    case PUT -> put(decode(payload));
+                    case DELETE -> remove(new String(payload, StandardCharsets.UTF_8));
+                    case SNAPSHOT -> clear();
+                    default -> throw new IllegalStateException("Unknown record type " + type + " in " + segment + " at offset " + offset);
+                }
+                if (type != SNAPSHOT) {
+                    records++;
+                }
+                offset += HEADER_SIZE + length;
+            }
+        }
+        if (damage == null) {
+            return;
+        }
+        if (!last || !tail) {
+            throw new IllegalStateException("Review log segment " + segment + " is damaged at offset " + offset + ": " + damage);
+        }
+        // Zapis, ki ga je prekinil izpad, ni bil potrjen nobenemu odjemalcu
+        logger.warn("Discarding {} bytes after offset {} of {} ({})", size - offset, offset, segment, damage);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(offset);
+            channel.force(true);
+        }
+    }
+    
+    private void openSegment(long sequence) throws IOException {
+        active = FileChannel.open(directory.resolve(segmentName(sequence)), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        active.position(active.size());
+        activeSequence = sequence;
+    }
+    
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(path -> SEGMENT.matcher(path.getFileName().toString()).matches())
+                .sorted(Comparator.comparingLong(ReviewLog::sequence))
+                .toList();
+        }
+    }
+    
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Nekateri datotečni sistemi ne podpirajo fsync imenika
+            logger.debug("Directory sync of {} failed: {}", directory, e.getMessage());
+        }
+    }
+    
+    private static long sequence(Path segment) {
+        Matcher matcher = SEGMENT.matcher(segment.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a review log segment: " + segment);
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+    
+    private static String segmentName(long sequence) {
+        return String.format("reviews-%010d.log", sequence);
+    }
+    
+    // Zapisi
+    
+    private static byte[] record(byte type, byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(payload.length);
+        record.putInt(checksum(type, payload));
+        record.put(type);
+        record.put(payload);
+        return record.array();
+    }
+    
+    private static int checksum(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+    
+    private byte[] encode(Review review) {
+        Document document = new Document();
+        mongoConverter.write(review, document);
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        CODEC.encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+        return buffer.toByteArray();
+    }
+    
+    private Review decode(byte[] payload) {
+        Document document = CODEC.decode(new BsonBinaryReader(ByteBuffer.wrap(payload)), DecoderContext.builder().build());
+        return mongoConverter.read(Review.class, document);
+    }
+    
+    // Indeksi
+    
+    private void put(Review review) {
+        remove(review.getId());
+        reviews.put(review.getId(), review);
+        idsByBookAndUser.put(key(review), review.getId());
+        Position created = new Position(review.getCreatedAt(), review.getId());
+        newest.add(created);
+        byBook.computeIfAbsent(review.getBookId(), id -> new TreeSet<>(NEWEST_FIRST)).add(created);
+        byUser.computeIfAbsent(review.getUserId(), id -> new TreeSet<>(NEWEST_FIRST)).add(created);
+        byUpdated.add(new Position(review.getUpdatedAt(), review.getId()));
+        totals.computeIfAbsent(review.getBookId(), id -> new BookTotals()).add(ratingOf(review), 1, review.getUpdatedAt());
+    }
+    
+    private void remove(String id) {
+        Review review = reviews.remove(id);
+        if (review == null) {
+            return;
+        }
+        idsByBookAndUser.remove(key(review), id);
+        Position created = new Position(review.getCreatedAt(), id);
+        newest.remove(created);
+        removeFrom(byBook, review.getBookId(), created);
+        removeFrom(byUser, review.getUserId(), created);
+        byUpdated.remove(new Position(review.getUpdatedAt(), id));
+        BookTotals bookTotals = totals.get(review.getBookId());
+        bookTotals.add(ratingOf(review), -1, LocalDateTime.now());
+        if (bookTotals.count <= 0) {
+            totals.remove(review.getBookId());
+        }
+    }
+    
+    private void clear() {
+        reviews.clear();
+        idsByBookAndUser.clear();
+        newest.clear();
+        byBook.clear();
+        byUser.clear();
+        byUpdated.clear();
+        totals.clear();
+    }
+    
+    private static void removeFrom(Map<String, NavigableSet<Position>> index, String key, Position position) {
+        NavigableSet<Position> positions = index.get(key);
+        if (positions != null) {
+            positions.remove(position);
+            if (positions.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+    
+    private static List<String> key(Review review) {
+        return Arrays.asList(review.getBookId(), review.getUserId());
+    }
+    
+    private static int ratingOf(Review review) {
+        return review.getRating() != null ? review.getRating() : 0;
+    }
+    
+    private static DuplicateKeyException duplicate(String index, String value) {
+        return new DuplicateKeyException("E11000 duplicate key error collection: reviews index: " + index + " dup key: " + value);
+    }
+    
+    private static Review copy(Review source) {
+        Review copy = new Review();
+        copy.setId(source.getId());
+        copy.setBookId(source.getBookId());
+        copy.setUserId(source.getUserId());
+        copy.setRating(source.getRating());
+        copy.setReviewText(source.getReviewText());
+        copy.setCreatedAt(source.getCreatedAt());
+        copy.setUpdatedAt(source.getUpdatedAt());
+        copy.setIsVerified(source.getIsVerified());
+        return copy;
+    }
+    
+    // Vnos v urejenem indeksu: createdAt (ali updatedAt) in id
+    private static final class Position {
+        private final LocalDateTime at;
+        private final String id;
+        
+        Position(LocalDateTime at, String id) {
+            this.at = at;
+            this.id = id;
+        }
+    }
+    
+    // Seštevki ocen ene knjige, enako kot BookRatingSummary v Mongo načinu
+    private static final class BookTotals {
+        private long count;
+        private long sum;
+        private final long[] histogram = new long[6];
+        private LocalDateTime updatedAt;
+        
+        void add(int rating, int delta, LocalDateTime at) {
+            count += delta;
+            sum += (long) rating * delta;
+            if (rating >= 1 && rating <= 5) {
+                histogram[rating] += delta;
+            }
+            updatedAt = at;
+        }
+        
+        BookRatingSummary toSummary(String bookId) {
+            BookRatingSummary summary = new BookRatingSummary(bookId);
+            summary.setCount(count);
+            summary.setSum(sum);
+            Map<String, Long> ratings = new HashMap<>();
+            for (int rating = 1; rating <= 5; rating++) {
+                if (histogram[rating] != 0) {
+                    ratings.put(String.valueOf(rating), histogram[rating]);
+                }
+            }
+            summary.setHistogram(ratings);
+            summary.setUpdatedAt(updatedAt);
+            return summary;
+        }
+    }
+}
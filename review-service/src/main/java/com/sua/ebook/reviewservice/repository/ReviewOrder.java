@@ -0,0 +1,168 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.sua.ebook.reviewservice.dto.ReviewSearchHit;
+import com.sua.ebook.reviewservice.model.Review;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Vrstni redi Mongo poizvedb za recenzije v pomnilniku in zlivanje že urejenih delnih rezultatov
+final class ReviewOrder {
+    
+    // (createdAt desc, _id desc), enako kot ReviewRepositoryCustomImpl.NEWEST_FIRST
+    static final Comparator<Review> NEWEST_FIRST = Comparator
+        .comparing(Review::getCreatedAt, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+        .thenComparing(Review::getId)
+        .reversed();
+    
+    // (updatedAt asc, _id asc), vrstni red izvoza
+    static final Comparator<Review> UPDATED_FIRST = Comparator
+        .comparing(Review::getUpdatedAt, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+        .thenComparing(Review::getId);
+    
+    // (textScore desc, _id desc); textScore ni odvisen od ostalih dokumentov, zato je primerljiv med shardi
+    static final Comparator<ReviewSearchHit> BEST_MATCH = Comparator
+        .comparingDouble(ReviewSearchHit::getScore)
+        .thenComparing(hit -> hit.getReview().getId())
+        .reversed();
+    
+    private ReviewOrder() {}
+    
+    // Sort po poljih dokumenta; null vrednosti so prve, kot v Mongu
+    static Comparator<Review> of(Sort sort) {
+        Comparator<Review> comparator = (a, b) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<Review> byProperty = byProperty(order.getProperty());
+            comparator = comparator.thenComparing(order.isAscending() ? byProperty : byProperty.reversed());
+        }
+        return comparator;
+    }
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparator<Review> byProperty(String property) {
+        Function<Review, Comparable> value = switch (property) {
+            case "id", "_id" -> Review::getId;
+            case "bookId" -> Review::getBookId;
+            case "userId" -> Review::getUserId;
+            case "rating" -> Review::getRating;
+            case "reviewText" -> Review::getReviewText;
+            case "createdAt" -> Review::getCreatedAt;
+            case "updatedAt" -> Review::getUpdatedAt;
+            case "isVerified" -> Review::getIsVerified;
+            default -> throw new IllegalArgumentException("Cannot sort reviews by " + property);
+        };
+        return Comparator.comparing(value, Comparator.nullsFirst(Comparator.naturalOrder()));
+    }
+    
+    // k-way zlivanje do limit elementov; vsak id le enkrat, pri enakem ključu iz prejšnjega seznama
+    static <T> List<T> merge(List<List<T>> sorted, Comparator<T> order, Function<T, String> id, int limit) {
+        List<Iterator<T>> iterators = new ArrayList<>(sorted.size());
+        sorted.forEach(part -> iterators.add(part.iterator()));
+        List<T> merged = new ArrayList<>();
+        Iterator<T> iterator = new Merger<>(iterators, order, id, new HashSet<>());
+        while (merged.size() < limit && iterator.hasNext()) {
+            merged.add(iterator.next());
+        }
+        return merged;
+    }
+    
+    // Lenobno zlivanje odprtih kazalcev; zapiranje vrnjenega streama zapre vse delne. Izpusti le
+    // sosednje enake id-je (kopija med premikom sharda), ker bi množica vseh id-jev rasla z izvozom
+    static <T> Stream<T> merge(List<Stream<T>> sorted, Comparator<T> order, Function<T, String> id) {
+        List<Iterator<T>> iterators = new ArrayList<>(sorted.size());
+        sorted.forEach(part -> iterators.add(part.iterator()));
+        Stream<T> merged = StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(new Merger<>(iterators, order, id, null), Spliterator.ORDERED | Spliterator.NONNULL),
+            false);
+        return merged.onClose(() -> {
+            RuntimeException failure = null;
+            for (Stream<T> part : sorted) {
+                try {
+                    part.close();
+                } catch (RuntimeException e) {
+                    failure = failure == null ? e : failure;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        });
+    }
+    
+    private static final class Merger<T> implements Iterator<T> {
+        private final List<Iterator<T>> sources;
+        private final Function<T, String> id;
+        private final PriorityQueue<Head<T>> heads;
+        // Že vrnjeni id-ji; null pomeni, da se primerja le s prejšnjim
+        private final Set<String> seen;
+        private String lastId;
+        private Head<T> next;
+        
+        Merger(List<Iterator<T>> sources, Comparator<T> order, Function<T, String> id, Set<String> seen) {
+            this.sources = sources;
+            this.id = id;
+            this.seen = seen;
+            this.heads = new PriorityQueue<>(Math.max(1, sources.size()),
+                Comparator.<Head<T>, T>comparing(head -> head.value, order).thenComparingInt(head -> head.source));
+            for (int source = 0; source < sources.size(); source++) {
+                advance(source);
+            }
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while (next == null && !heads.isEmpty()) {
+                Head<T> head = heads.poll();
+                advance(head.source);
+                // Med selitvijo je lahko ista recenzija na dveh shardih
+                String headId = id.apply(head.value);
+                boolean repeated = headId != null && (seen != null ? !seen.add(headId) : headId.equals(lastId));
+                if (!repeated) {
+                    next = head;
+                    lastId = headId;
+                }
+            }
+            return next != null;
+        }
+        
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T value = next.value;
+            next = null;
+            return value;
+        }
+        
+        private void advance(int source) {
+            Iterator<T> iterator = sources.get(source);
+            if (iterator.hasNext()) {
+                heads.add(new Head<>(iterator.next(), source));
+            }
+        }
+    }
+    
+    private static final class Head<T> {
+        private final T value;
+        private final int source;
+        
+        Head(T value, int source) {
+            this.value = value;
+            this.source = source;
+        }
+    }
+}
@@ -4,11 +4,12 @@ import com.sua.ebook.reviewservice.model.Review;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface ReviewRepository extends MongoRepository<Review, String> {
+public interface ReviewRepository extends MongoRepository<Review, String>, ReviewRepositoryCustom {
     
     List<Review> findAllByOrderByCreatedAtDesc();
     List<Review> findByBookIdOrderByCreatedAtDesc(String bookId);
@@ -17,4 +18,5 @@ public interface ReviewRepository extends MongoRepository<Review, String> {
     void deleteByBookId(String bookId);
     long countByBookId(String bookId);
     long countByUserId(String userId);
+    boolean existsByUserIdAndCreatedAtBefore(String userId, LocalDateTime createdAt);
 }
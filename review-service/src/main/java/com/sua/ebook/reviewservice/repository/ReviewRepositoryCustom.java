@@ -0,0 +1,38 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.sua.ebook.reviewservice.dto.ReviewCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchHit;
+import com.sua.ebook.reviewservice.model.Review;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+public interface ReviewRepositoryCustom {
+    
+    // Keyset stran urejena po (createdAt desc, id desc); bookId/userId sta opcijska filtra,
+    // include omeji prebrana polja (null = celoten dokument)
+    List<Review> findPage(String bookId, String userId, ReviewCursor after, int limit, Set<String> include);
+    
+    // Iskanje po text indeksu na reviewText, urejeno po (textScore desc, id desc); bookId/rating sta opcijska filtra
+    List<ReviewSearchHit> search(String text, String bookId, Integer rating, ReviewSearchCursor after, int limit);
+    
+    // Strežniški kazalec urejen po (updatedAt asc, id asc); stream je treba zapreti
+    Stream<Review> streamUpdatedSince(LocalDateTime since, int batchSize);
+    
+    // Najnovejših perBook recenzij za vsako knjigo v eni agregaciji; knjige brez recenzij manjkajo
+    Map<String, List<Review>> findLatestByBookIds(Collection<String> bookIds, int perBook);
+    
+    // Izbriše največ limit recenzij knjige in vrne število izbrisanih; 0 pomeni, da jih ni več
+    long deleteBatchByBookId(String bookId, int limit);
+    
+    // Največ limit recenzij, katerih dogodek še ni v outboxu (eventPending), najstarejše najprej
+    List<Review> findEventPending(int limit);
+    
+    // Odstrani eventPending, ko so dogodki teh recenzij v outboxu
+    void clearEventPending(Collection<String> ids);
+}
@@ -0,0 +1,193 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.sua.ebook.reviewservice.dto.ReviewCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchHit;
+import com.sua.ebook.reviewservice.model.Review;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class ReviewRepositoryCustomImpl implements ReviewRepositoryCustom {
+    
+    static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "createdAt").and(Sort.by(Sort.Direction.DESC, "_id"));
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Override
+    public List<Review> findPage(String bookId, String userId, ReviewCursor after, int limit, Set<String> include) {
+        return mongoTemplate.find(pageQuery(bookId, userId, after, limit, include), Review.class);
+    }
+    
+    @Override
+    public List<ReviewSearchHit> search(String text, String bookId, Integer rating, ReviewSearchCursor after, int limit) {
+        List<ReviewSearchHit> hits = new ArrayList<>();
+        for (Document hit : mongoTemplate.aggregate(searchAggregation(text, bookId, rating, after, limit), Review.class, Document.class)) {
+            hits.add(readHit(mongoTemplate.getConverter(), hit));
+        }
+        return hits;
+    }
+    
+    @Override
+    public Stream<Review> streamUpdatedSince(LocalDateTime since, int batchSize) {
+        return mongoTemplate.stream(updatedSinceQuery(since, batchSize), Review.class);
+    }
+    
+    @Override
+    public Map<String, List<Review>> findLatestByBookIds(Collection<String> bookIds, int perBook) {
+        Map<String, List<Review>> result = new HashMap<>();
+        for (Document group : mongoTemplate.aggregate(latestByBookIdsAggregation(bookIds, perBook), Review.class, Document.class)) {
+            result.put(group.getString("_id"), readGroup(mongoTemplate.getConverter(), group));
+        }
+        return result;
+    }
+    
+    // Gradniki poizvedb so skupni blokirnemu in reaktivnemu repozitoriju
+    
+    @Override
+    public long deleteBatchByBookId(String bookId, int limit) {
+        return deleteBatchByBookId(mongoTemplate, bookId, limit);
+    }
+    
+    @Override
+    public List<Review> findEventPending(int limit) {
+        return mongoTemplate.find(eventPendingQuery(limit), Review.class);
+    }
+    
+    @Override
+    public void clearEventPending(Collection<String> ids) {
+        clearEventPending(mongoTemplate, ids);
+    }
+    
+    // Prek redkega indeksa event_pending; v njem so le recenzije z zastavico
+    static Query eventPendingQuery(int limit) {
+        return new Query(where("eventPending").is(true))
+            .with(Sort.by("createdAt").and(Sort.by("_id")))
+            .limit(limit);
+    }
+    
+    static void clearEventPending(MongoTemplate template, Collection<String> ids) {
+        template.updateMulti(new Query(where("_id").in(ids)), new Update().unset("eventPending"), Review.class);
+    }
+    
+    // Najprej _id prek indeksa book_created, nato brisanje po _id, da en zapis ne zajame cele knjige
+    static long deleteBatchByBookId(MongoTemplate template, String bookId, int limit) {
+        Query batch = new Query(where("bookId").is(bookId)).limit(limit);
+        batch.fields().include("_id");
+        List<String> ids = new ArrayList<>(limit);
+        for (Review review : template.find(batch, Review.class)) {
+            ids.add(review.getId());
+        }
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return template.remove(new Query(where("_id").in(ids).and("bookId").is(bookId)), Review.class).getDeletedCount();
+    }
+    
+    static Query pageQuery(String bookId, String userId, ReviewCursor after, int limit, Set<String> include) {
+        Query query = new Query(pageCriteria(bookId, userId, after))
+            .with(NEWEST_FIRST)
+            .limit(limit);
+        if (include != null) {
+            query.fields().include(include.toArray(new String[0]));
+        }
+        return query;
+    }
+    
+    static Query updatedSinceQuery(LocalDateTime since, int batchSize) {
+        return new Query(since != null ? where("updatedAt").gte(since) : new Criteria())
+            .with(Sort.by(Sort.Direction.ASC, "updatedAt").and(Sort.by(Sort.Direction.ASC, "_id")))
+            .cursorBatchSize(batchSize);
+    }
+    
+    static Aggregation latestByBookIdsAggregation(Collection<String> bookIds, int perBook) {
+        // $sort gre po indeksu (bookId, createdAt), $firstN pa obdrži le perBook zapisov na skupino
+        AggregationOperation firstN = context -> new Document("$group", new Document("_id", "$bookId")
+            .append("reviews", new Document("$firstN", new Document("input", "$$ROOT").append("n", perBook))));
+        
+        return Aggregation.newAggregation(
+            Aggregation.match(where("bookId").in(bookIds)),
+            Aggregation.sort(Sort.by(Sort.Direction.ASC, "bookId").and(NEWEST_FIRST)),
+            firstN);
+    }
+    
+    static Aggregation searchAggregation(String text, String bookId, Integer rating, ReviewSearchCursor after, int limit) {
+        // $text mora biti v prvem $match; filtra bookId/rating se uporabita nad zadetki indeksa
+        Document match = new Document("$text", new Document("$search", text));
+        if (bookId != null) {
+            match.append("bookId", bookId);
+        }
+        if (rating != null) {
+            match.append("rating", rating);
+        }
+        
+        List<AggregationOperation> stages = new ArrayList<>();
+        stages.add(context -> new Document("$match", match));
+        stages.add(context -> new Document("$addFields",
+            new Document("score", new Document("$meta", "textScore"))));
+        if (after != null) {
+            Object afterId = ObjectId.isValid(after.getId()) ? new ObjectId(after.getId()) : after.getId();
+            stages.add(context -> new Document("$match", new Document("$or", List.of(
+                new Document("score", new Document("$lt", after.getScore())),
+                new Document("score", after.getScore()).append("_id", new Document("$lt", afterId))))));
+        }
+        stages.add(context -> new Document("$sort", new Document("score", -1).append("_id", -1)));
+        stages.add(context -> new Document("$limit", limit));
+        return Aggregation.newAggregation(stages)
+            .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+    }
+    
+    static ReviewSearchHit readHit(MongoConverter converter, Document hit) {
+        return new ReviewSearchHit(converter.read(Review.class, hit), ((Number) hit.get("score")).doubleValue());
+    }
+    
+    static List<Review> readGroup(MongoConverter converter, Document group) {
+        List<Review> reviews = new ArrayList<>();
+        for (Document review : group.getList("reviews", Document.class)) {
+            reviews.add(converter.read(Review.class, review));
+        }
+        return reviews;
+    }
+    
+    static Criteria pageCriteria(String bookId, String userId, ReviewCursor after) {
+        List<Criteria> filters = new ArrayList<>();
+        if (bookId != null) {
+            filters.add(where("bookId").is(bookId));
+        }
+        if (userId != null) {
+            filters.add(where("userId").is(userId));
+        }
+        if (after != null) {
+            // Naslednja stran se začne za zadnjim (createdAt, id), zato je cena enaka za vsako stran;
+            // _id v $lt se ne pretvori sam, niz pa se z ObjectId ne primerja in izgubi recenzije z enakim createdAt
+            Object afterId = ObjectId.isValid(after.getId()) ? new ObjectId(after.getId()) : after.getId();
+            filters.add(new Criteria().orOperator(
+                where("createdAt").lt(after.getCreatedAt()),
+                new Criteria().andOperator(
+                    where("createdAt").is(after.getCreatedAt()),
+                    where("_id").lt(afterId))));
+        }
+        return filters.isEmpty() ? new Criteria() : new Criteria().andOperator(filters);
+    }
+}
@@ -0,0 +1,263 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.sua.ebook.reviewservice.job.DuplicateReviewMigration;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.autoconfigure.mongo.StandardMongoClientSettingsBuilderCustomizer;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Connections to the review shards for review.storage.backend=sharded. Reviews are
+ * partitioned by bookId across the MongoDB databases listed in review.sharding.uris.
+ * The shard of a book is CRC32(bookId) mod N, so it depends only on the bookId and the
+ * number and order of the URIs. Each shard has the full set of review indexes, including
+ * the unique (bookId, userId) index. All reviews of a book are on one shard, so that index
+ * still enforces one review per user and book.
+ * <p>
+ * Changing the shard list moves books between shards. While review.sharding.previous-uris
+ * holds the old list, a book is read from its current and its previous shard, and
+ * ReviewShardRebalanceJob moves the reviews to their current shard. Rating summaries,
+ * trends and review events stay in the database of spring.data.mongodb.uri.
+ */
+@Component
+@ConditionalOnProperty(name = "review.storage.backend", havingValue = "sharded")
+public class ReviewShards {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ReviewShards.class);
+    
+    @Autowired
+    private MongoConverter mongoConverter;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    // Podvojene recenzije bi preprečile unikatni indeks na shardu
+    @Autowired(required = false)
+    private DuplicateReviewMigration duplicateReviewMigration;
+    
+    // Enaki poslušalci kot za primarno bazo: metrike ukazov in bazena povezav, MongoLatencyTracker
+    @Autowired
+    private ObjectProvider<MongoClientSettingsBuilderCustomizer> clientCustomizers;
+    
+    @Value("${review.sharding.uris:}")
+    private List<String> uris;
+    
+    @Value("${review.sharding.previous-uris:}")
+    private List<String> previousUris;
+    
+    @Value("${review.sharding.scatter-threads:16}")
+    private int scatterThreads;
+    
+    @Value("${review.group-commit.enabled:false}")
+    private boolean groupCommitEnabled;
+    
+    @Value("${spring.main.web-application-type:servlet}")
+    private String webApplicationType;
+    
+    private final Map<String, Shard> connections = new LinkedHashMap<>();
+    private List<Shard> current;
+    private List<Shard> previous;
+    private List<MongoTemplate> all;
+    
+    private ThreadPoolExecutor executor;
+    private Timer scatterTimer;
+    
+    @PostConstruct
+    void init() {
+        uris = withoutBlanks(uris);
+        previousUris = withoutBlanks(previousUris);
+        if (uris.isEmpty()) {
+            throw new IllegalStateException("review.storage.backend=sharded requires review.sharding.uris");
+        }
+        // Skupinski zapis bere in piše recenzije z enim MongoTemplate, reaktivni način z reaktivnim repozitorijem
+        if (groupCommitEnabled) {
+            throw new IllegalStateException("review.group-commit.enabled is not supported with review.storage.backend=sharded");
+        }
+        if ("reactive".equalsIgnoreCase(webApplicationType)) {
+            throw new IllegalStateException("review.storage.backend=sharded is only supported in servlet mode");
+        }
+        
+        current = connect(uris);
+        previous = previousUris.isEmpty() ? current : connect(previousUris);
+        List<MongoTemplate> templates = new ArrayList<>();
+        connections.values().forEach(shard -> templates.add(shard.template));
+        all = List.copyOf(templates);
+        
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(scatterThreads, scatterThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "review-shards-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        new ExecutorServiceMetrics(executor, "review.shards", Tags.empty()).bindTo(meterRegistry);
+        scatterTimer = Timer.builder("review.shards.scatter")
+            .description("Time of queries sent to all review shards")
+            .register(meterRegistry);
+        
+        if (isMigrating()) {
+            logger.info("Review shards: {} current, {} previous; books are read from both until rebalanced",
+                current.size(), previous.size());
+        } else {
+            logger.info("Review shards: {}", current.size());
+        }
+    }
+    
+    @PreDestroy
+    void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        connections.values().forEach(shard -> shard.client.close());
+    }
+    
+    public static int shardOf(String bookId, int shards) {
+        CRC32 crc = new CRC32();
+        crc.update(bookId.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % shards);
+    }
+    
+    public MongoTemplate forBook(String bookId) {
+        return current.get(shardOf(bookId, current.size())).template;
+    }
+    
+    // Trenutni shard knjige, med selitvijo še prejšnji; trenutni je vedno prvi
+    public List<MongoTemplate> forBookReads(String bookId) {
+        MongoTemplate target = forBook(bookId);
+        MongoTemplate source = previous.get(shardOf(bookId, previous.size())).template;
+        return source == target ? List.of(target) : List.of(target, source);
+    }
+    
+    // Med selitvijo tudi prejšnji shardi, ki jih ni več na seznamu
+    public List<MongoTemplate> all() {
+        return all;
+    }
+    
+    public List<MongoTemplate> current() {
+        return current.stream().map(shard -> shard.template).toList();
+    }
+    
+    public List<MongoTemplate> previous() {
+        return previous.stream().map(shard -> shard.template).toList();
+    }
+    
+    public boolean isMigrating() {
+        return !previous.equals(current);
+    }
+    
+    public String describe(MongoTemplate template) {
+        for (Shard shard : connections.values()) {
+            if (shard.template == template) {
+                return shard.name;
+            }
+        }
+        return "?";
+    }
+    
+    // Ena poizvedba na shard vzporedno; rezultati so v vrstnem redu shardov
+    public <T> List<T> scatter(List<MongoTemplate> shards, Function<MongoTemplate, T> query) {
+        if (shards.size() == 1) {
+            return Collections.singletonList(query.apply(shards.get(0)));
+        }
+        long started = System.nanoTime();
+        try {
+            List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+            for (MongoTemplate shard : shards) {
+                futures.add(CompletableFuture.supplyAsync(() -> query.apply(shard), executor));
+            }
+            List<T> results = new ArrayList<>(shards.size());
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        } finally {
+            scatterTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    private List<Shard> connect(List<String> shardUris) {
+        List<Shard> shards = new ArrayList<>(shardUris.size());
+        for (String uri : shardUris) {
+            shards.add(connections.computeIfAbsent(uri, this::open));
+        }
+        return List.copyOf(shards);
+    }
+    
+    private Shard open(String uri) {
+        ConnectionString connection = new ConnectionString(uri);
+        if (connection.getDatabase() == null) {
+            throw new IllegalStateException("Review shard URI " + connection.getHosts() + " has no database name");
+        }
+        MongoClientSettings.Builder settings = MongoClientSettings.builder().applyConnectionString(connection);
+        // StandardMongoClientSettingsBuilderCustomizer bi nastavil gostitelje iz spring.data.mongodb.uri
+        clientCustomizers.orderedStream()
+            .filter(customizer -> !(customizer instanceof StandardMongoClientSettingsBuilderCustomizer))
+            .forEach(customizer -> customizer.customize(settings));
+        MongoClient client = MongoClients.create(settings.build());
+        String name = String.join(",", connection.getHosts()) + "/" + connection.getDatabase();
+        if (duplicateReviewMigration != null) {
+            duplicateReviewMigration.verify(client.getDatabase(connection.getDatabase()), "review shard " + name);
+        }
+        // Indekse iz preslikave Review ustvari MongoTemplate sam, enako kot v primarni bazi (auto-index-creation)
+        MongoTemplate template = new MongoTemplate(new SimpleMongoClientDatabaseFactory(client, connection.getDatabase()), mongoConverter);
+        return new Shard(name, client, template);
+    }
+    
+    private static List<String> withoutBlanks(List<String> values) {
+        if (values == null) {
+            return List.of();
+        }
+        return values.stream().map(String::trim).filter(value -> !value.isEmpty()).toList();
+    }
+    
+    private static final class Shard {
+        private final String name;
+        private final MongoClient client;
+        private final MongoTemplate template;
+        
+        Shard(String name, MongoClient client, MongoTemplate template) {
+            this.name = name;
+            this.client = client;
+            this.template = template;
+        }
+    }
+}
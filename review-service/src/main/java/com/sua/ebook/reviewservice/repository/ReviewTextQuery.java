@@ -0,0 +1,114 @@
+package com.sua.ebook.reviewservice.repository;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A $text search string evaluated in memory for the log storage backend, with the rules of
+ * the Mongo text index on reviewText (language "none"). Terms match case- and
+ * diacritic-insensitively without stemming. A document matches any positive term, must contain
+ * every "quoted phrase" and must not contain any -negated term. The score uses Mongo's
+ * formula: repeated occurrences of a term count less and less, and short texts score
+ * higher than long ones.
+ */
+final class ReviewTextQuery {
+    
+    private static final Pattern PHRASE = Pattern.compile("\"([^\"]*)\"");
+    private static final Pattern DELIMITERS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    
+    private final Set<String> terms;
+    private final Set<String> negated;
+    private final List<String> phrases;
+    
+    private ReviewTextQuery(Set<String> terms, Set<String> negated, List<String> phrases) {
+        this.terms = terms;
+        this.negated = negated;
+        this.phrases = phrases;
+    }
+    
+    static ReviewTextQuery parse(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        Set<String> negated = new LinkedHashSet<>();
+        List<String> phrases = new ArrayList<>();
+        
+        Matcher matcher = PHRASE.matcher(text);
+        StringBuilder rest = new StringBuilder();
+        while (matcher.find()) {
+            List<String> words = tokens(matcher.group(1));
+            if (!words.isEmpty()) {
+                phrases.add(String.join(" ", words));
+                terms.addAll(words);
+            }
+            matcher.appendReplacement(rest, " ");
+        }
+        matcher.appendTail(rest);
+        
+        for (String word : rest.toString().trim().split("\\s+")) {
+            if (word.startsWith("-")) {
+                negated.addAll(tokens(word.substring(1)));
+            } else {
+                terms.addAll(tokens(word));
+            }
+        }
+        return new ReviewTextQuery(terms, negated, phrases);
+    }
+    
+    // 0 pomeni, da besedilo ne ustreza iskanju
+    double score(String reviewText) {
+        if (reviewText == null || terms.isEmpty()) {
+            return 0;
+        }
+        List<String> words = tokens(reviewText);
+        if (words.isEmpty()) {
+            return 0;
+        }
+        for (String word : words) {
+            if (negated.contains(word)) {
+                return 0;
+            }
+        }
+        if (!phrases.isEmpty()) {
+            String joined = " " + String.join(" ", words) + " ";
+            for (String phrase : phrases) {
+                if (!joined.contains(" " + phrase + " ")) {
+                    return 0;
+                }
+            }
+        }
+        
+        Map<String, Integer> counts = new HashMap<>();
+        for (String word : words) {
+            if (terms.contains(word)) {
+                counts.merge(word, 1, Integer::sum);
+            }
+        }
+        double score = 0;
+        for (int count : counts.values()) {
+            // n-ta ponovitev šteje 1/2^(n-1), kot v Mongo FTSSpec
+            double frequency = 2 * (1 - Math.pow(0.5, count));
+            score += frequency * (0.5 * count / words.size() + 0.5);
+        }
+        return score;
+    }
+    
+    static List<String> tokens(String text) {
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+            .toLowerCase(Locale.ROOT);
+        List<String> tokens = new ArrayList<>();
+        for (String token : DELIMITERS.split(folded)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
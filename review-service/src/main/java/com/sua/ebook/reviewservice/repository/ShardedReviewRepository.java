@@ -0,0 +1,413 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.sua.ebook.reviewservice.dto.ReviewCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchHit;
+import com.sua.ebook.reviewservice.model.Review;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.repository.query.FluentQuery;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * ReviewRepository over the review shards (review.storage.backend=sharded). Queries for one
+ * book go to the book's shard. Queries by user, by id and over all reviews go to every shard
+ * in parallel, and the sorted partial results are merged k-way. Every shard returns at most
+ * the requested page, so a page costs one indexed query per shard. The queries are the same
+ * as in ReviewRepositoryCustomImpl. Query-by-example is not supported.
+ * <p>
+ * While shards are rebalanced, a save moves the review to its current shard and removes
+ * the copy on the previous one, so no review exists in two versions. A copy made by the
+ * rebalance is identical to its source until the source is removed. Merged pages return
+ * each _id once, and exports skip the copy, which sorts right next to its source.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "review.storage.backend", havingValue = "sharded")
+public class ShardedReviewRepository implements ReviewRepository {
+    
+    private static final int COUNT_BATCH_SIZE = 500;
+    
+    @Autowired
+    private ReviewShards shards;
+    
+    @Override
+    public List<Review> findAllByOrderByCreatedAtDesc() {
+        return findSorted(shards.all(), new Criteria());
+    }
+    
+    @Override
+    public List<Review> findByBookIdOrderByCreatedAtDesc(String bookId) {
+        return findSorted(shards.forBookReads(bookId), where("bookId").is(bookId));
+    }
+    
+    @Override
+    public List<Review> findByUserIdOrderByCreatedAtDesc(String userId) {
+        return findSorted(shards.all(), where("userId").is(userId));
+    }
+    
+    @Override
+    public Optional<Review> findByBookIdAndUserId(String bookId, String userId) {
+        Query query = query(where("bookId").is(bookId).and("userId").is(userId));
+        return first(shards.scatter(shards.forBookReads(bookId), shard -> shard.findOne(query, Review.class)));
+    }
+    
+    @Override
+    public void deleteByBookId(String bookId) {
+        shards.scatter(shards.forBookReads(bookId), shard -> shard.remove(query(where("bookId").is(bookId)), Review.class));
+    }
+    
+    // Trenutni shard najprej; med selitvijo nato še prejšnji
+    @Override
+    public long deleteBatchByBookId(String bookId, int limit) {
+        long deleted = 0;
+        for (MongoTemplate shard : shards.forBookReads(bookId)) {
+            deleted += ReviewRepositoryCustomImpl.deleteBatchByBookId(shard, bookId, (int) (limit - deleted));
+            if (deleted >= limit) {
+                break;
+            }
+        }
+        return deleted;
+    }
+    
+    @Override
+    public List<Review> findEventPending(int limit) {
+        Query query = ReviewRepositoryCustomImpl.eventPendingQuery(limit);
+        return ReviewOrder.merge(shards.scatter(shards.all(), shard -> shard.find(query, Review.class)),
+            ReviewOrder.NEWEST_FIRST.reversed(), Review::getId, limit);
+    }
+    
+    // Kopija med premikom sharda ima zastavico tudi na prejšnjem shardu
+    @Override
+    public void clearEventPending(Collection<String> ids) {
+        shards.scatter(shards.all(), shard -> {
+            ReviewRepositoryCustomImpl.clearEventPending(shard, ids);
+            return null;
+        });
+    }
+    
+    // Med selitvijo se recenzije, ki so že na trenutnem shardu, na prejšnjem ne štejejo
+    @Override
+    public long countByBookId(String bookId) {
+        List<MongoTemplate> targets = shards.forBookReads(bookId);
+        long count = targets.get(0).count(query(where("bookId").is(bookId)), Review.class);
+        if (targets.size() < 2) {
+            return count;
+        }
+        Query remaining = query(where("bookId").is(bookId)).cursorBatchSize(COUNT_BATCH_SIZE);
+        remaining.fields().include("_id");
+        List<String> batch = new ArrayList<>(COUNT_BATCH_SIZE);
+        try (Stream<Review> reviews = targets.get(1).stream(remaining, Review.class)) {
+            for (Review review : (Iterable<Review>) reviews::iterator) {
+                batch.add(review.getId());
+                if (batch.size() >= COUNT_BATCH_SIZE) {
+                    count += batch.size() - targets.get(0).count(query(where("_id").in(batch)), Review.class);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            count += batch.size() - targets.get(0).count(query(where("_id").in(batch)), Review.class);
+        }
+        return count;
+    }
+    
+    @Override
+    public long countByUserId(String userId) {
+        return sum(shards.scatter(shards.all(), shard -> shard.count(query(where("userId").is(userId)), Review.class)));
+    }
+    
+    @Override
+    public boolean existsByUserIdAndCreatedAtBefore(String userId, LocalDateTime createdAt) {
+        Query query = query(where("userId").is(userId).and("createdAt").lt(createdAt));
+        return shards.scatter(shards.all(), shard -> shard.exists(query, Review.class)).contains(true);
+    }
+    
+    @Override
+    public List<Review> findPage(String bookId, String userId, ReviewCursor after, int limit, Set<String> include) {
+        Query query = ReviewRepositoryCustomImpl.pageQuery(bookId, userId, after, limit, include);
+        List<MongoTemplate> targets = bookId != null ? shards.forBookReads(bookId) : shards.all();
+        return ReviewOrder.merge(shards.scatter(targets, shard -> shard.find(query, Review.class)),
+            ReviewOrder.NEWEST_FIRST, Review::getId, limit);
+    }
+    
+    @Override
+    public List<ReviewSearchHit> search(String text, String bookId, Integer rating, ReviewSearchCursor after, int limit) {
+        List<MongoTemplate> targets = bookId != null ? shards.forBookReads(bookId) : shards.all();
+        List<List<ReviewSearchHit>> hits = shards.scatter(targets, shard -> {
+            List<ReviewSearchHit> shardHits = new ArrayList<>();
+            for (Document hit : shard.aggregate(ReviewRepositoryCustomImpl.searchAggregation(text, bookId, rating, after, limit),
+                    Review.class, Document.class)) {
+                shardHits.add(ReviewRepositoryCustomImpl.readHit(shard.getConverter(), hit));
+            }
+            return shardHits;
+        });
+        return ReviewOrder.merge(hits, ReviewOrder.BEST_MATCH, hit -> hit.getReview().getId(), limit);
+    }
+    
+    // Kazalci se odprejo na vseh shardih hkrati; zlivanje bere iz vsakega le po eno stran naenkrat
+    @Override
+    public Stream<Review> streamUpdatedSince(LocalDateTime since, int batchSize) {
+        Query query = ReviewRepositoryCustomImpl.updatedSinceQuery(since, batchSize);
+        List<Stream<Review>> streams = new ArrayList<>();
+        try {
+            for (MongoTemplate shard : shards.all()) {
+                streams.add(shard.stream(query, Review.class));
+            }
+        } catch (RuntimeException e) {
+            streams.forEach(Stream::close);
+            throw e;
+        }
+        return ReviewOrder.merge(streams, ReviewOrder.UPDATED_FIRST, Review::getId);
+    }
+    
+    @Override
+    public Map<String, List<Review>> findLatestByBookIds(Collection<String> bookIds, int perBook) {
+        Map<MongoTemplate, List<String>> byShard = new LinkedHashMap<>();
+        for (String bookId : bookIds) {
+            for (MongoTemplate shard : shards.forBookReads(bookId)) {
+                byShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(bookId);
+            }
+        }
+        List<MongoTemplate> targets = new ArrayList<>(byShard.keySet());
+        List<Map<String, List<Review>>> partial = shards.scatter(targets, shard -> {
+            Map<String, List<Review>> latest = new HashMap<>();
+            for (Document group : shard.aggregate(ReviewRepositoryCustomImpl.latestByBookIdsAggregation(byShard.get(shard), perBook),
+                    Review.class, Document.class)) {
+                latest.put(group.getString("_id"), ReviewRepositoryCustomImpl.readGroup(shard.getConverter(), group));
+            }
+            return latest;
+        });
+        
+        // Knjiga je na dveh shardih le med selitvijo
+        Map<String, List<List<Review>>> byBook = new HashMap<>();
+        for (Map<String, List<Review>> latest : partial) {
+            latest.forEach((bookId, reviews) -> byBook.computeIfAbsent(bookId, key -> new ArrayList<>()).add(reviews));
+        }
+        Map<String, List<Review>> result = new HashMap<>();
+        byBook.forEach((bookId, parts) -> result.put(bookId, parts.size() == 1 ? parts.get(0)
+            : ReviewOrder.merge(parts, ReviewOrder.NEWEST_FIRST, Review::getId, perBook)));
+        return result;
+    }
+    
+    @Override
+    public <S extends Review> S insert(S entity) {
+        checkNotOnPreviousShard(entity);
+        return shards.forBook(entity.getBookId()).insert(entity);
+    }
+    
+    @Override
+    public <S extends Review> List<S> insert(Iterable<S> entities) {
+        List<S> inserted = new ArrayList<>();
+        for (S entity : entities) {
+            inserted.add(insert(entity));
+        }
+        return inserted;
+    }
+    
+    // Med selitvijo odstrani staro kopijo s prejšnjega sharda, sicer bi jo izvoz in štetje videla poleg nove
+    @Override
+    public <S extends Review> S save(S entity) {
+        List<MongoTemplate> targets = shards.forBookReads(entity.getBookId());
+        S saved = targets.get(0).save(entity);
+        if (targets.size() > 1) {
+            targets.get(1).remove(query(where("_id").is(saved.getId())), Review.class);
+        }
+        return saved;
+    }
+    
+    @Override
+    public <S extends Review> List<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        for (S entity : entities) {
+            saved.add(save(entity));
+        }
+        return saved;
+    }
+    
+    // Med selitvijo ima kopija na trenutnem shardu prednost pred tisto na prejšnjem
+    @Override
+    public Optional<Review> findById(String id) {
+        List<Review> found = shards.scatter(shards.all(), shard -> shard.findById(id, Review.class));
+        Review any = null;
+        for (int i = 0; i < found.size(); i++) {
+            Review review = found.get(i);
+            if (review == null) {
+                continue;
+            }
+            if (shards.forBook(review.getBookId()) == shards.all().get(i)) {
+                return Optional.of(review);
+            }
+            any = any != null ? any : review;
+        }
+        return Optional.ofNullable(any);
+    }
+    
+    @Override
+    public boolean existsById(String id) {
+        return shards.scatter(shards.all(), shard -> shard.exists(query(where("_id").is(id)), Review.class)).contains(true);
+    }
+    
+    @Override
+    public List<Review> findAll() {
+        return findAllByOrderByCreatedAtDesc();
+    }
+    
+    @Override
+    public List<Review> findAllById(Iterable<String> ids) {
+        List<String> idList = new ArrayList<>();
+        ids.forEach(idList::add);
+        Query query = query(where("_id").in(idList));
+        Map<String, Review> found = new LinkedHashMap<>();
+        for (List<Review> reviews : shards.scatter(shards.all(), shard -> shard.find(query, Review.class))) {
+            reviews.forEach(review -> found.putIfAbsent(review.getId(), review));
+        }
+        return new ArrayList<>(found.values());
+    }
+    
+    @Override
+    public long count() {
+        return sum(shards.scatter(shards.all(), shard -> shard.count(new Query(), Review.class)));
+    }
+    
+    @Override
+    public void deleteById(String id) {
+        shards.scatter(shards.all(), shard -> shard.remove(query(where("_id").is(id)), Review.class));
+    }
+    
+    @Override
+    public void delete(Review entity) {
+        shards.scatter(shards.forBookReads(entity.getBookId()),
+            shard -> shard.remove(query(where("_id").is(entity.getId())), Review.class));
+    }
+    
+    @Override
+    public void deleteAllById(Iterable<? extends String> ids) {
+        List<String> idList = new ArrayList<>();
+        ids.forEach(idList::add);
+        shards.scatter(shards.all(), shard -> shard.remove(query(where("_id").in(idList)), Review.class));
+    }
+    
+    @Override
+    public void deleteAll(Iterable<? extends Review> entities) {
+        entities.forEach(this::delete);
+    }
+    
+    @Override
+    public void deleteAll() {
+        shards.scatter(shards.all(), shard -> shard.remove(new Query(), Review.class));
+    }
+    
+    @Override
+    public List<Review> findAll(Sort sort) {
+        Query query = new Query().with(sort);
+        return ReviewOrder.merge(shards.scatter(shards.all(), shard -> shard.find(query, Review.class)),
+            ReviewOrder.of(sort), Review::getId, Integer.MAX_VALUE);
+    }
+    
+    // Vsak shard vrne prvih offset + size, zlivanje preskoči offset
+    @Override
+    public Page<Review> findAll(Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(findAll(pageable.getSort()));
+        }
+        long end = pageable.getOffset() + pageable.getPageSize();
+        Query query = new Query().with(pageable.getSort()).limit((int) Math.min(end, Integer.MAX_VALUE));
+        List<Review> merged = ReviewOrder.merge(shards.scatter(shards.all(), shard -> shard.find(query, Review.class)),
+            ReviewOrder.of(pageable.getSort()), Review::getId, (int) Math.min(end, Integer.MAX_VALUE));
+        int from = (int) Math.min(pageable.getOffset(), merged.size());
+        return new PageImpl<>(new ArrayList<>(merged.subList(from, merged.size())), pageable, count());
+    }
+    
+    @Override
+    public <S extends Review> Optional<S> findOne(Example<S> example) {
+        throw unsupported();
+    }
+    
+    @Override
+    public <S extends Review> List<S> findAll(Example<S> example) {
+        throw unsupported();
+    }
+    
+    @Override
+    public <S extends Review> List<S> findAll(Example<S> example, Sort sort) {
+        throw unsupported();
+    }
+    
+    @Override
+    public <S extends Review> Page<S> findAll(Example<S> example, Pageable pageable) {
+        throw unsupported();
+    }
+    
+    @Override
+    public <S extends Review> long count(Example<S> example) {
+        throw unsupported();
+    }
+    
+    @Override
+    public <S extends Review> boolean exists(Example<S> example) {
+        throw unsupported();
+    }
+    
+    @Override
+    public <S extends Review, R> R findBy(Example<S> example, Function<FluentQuery.FetchableFluentQuery<S>, R> queryFunction) {
+        throw unsupported();
+    }
+    
+    private List<Review> findSorted(List<MongoTemplate> targets, Criteria criteria) {
+        Query query = new Query(criteria).with(ReviewRepositoryCustomImpl.NEWEST_FIRST);
+        return ReviewOrder.merge(shards.scatter(targets, shard -> shard.find(query, Review.class)),
+            ReviewOrder.NEWEST_FIRST, Review::getId, Integer.MAX_VALUE);
+    }
+    
+    // Unikatni indeks (bookId, userId) velja le znotraj sharda; med selitvijo je recenzija lahko še na prejšnjem
+    private void checkNotOnPreviousShard(Review review) {
+        List<MongoTemplate> targets = shards.forBookReads(review.getBookId());
+        if (targets.size() < 2) {
+            return;
+        }
+        Query existing = query(where("bookId").is(review.getBookId()).and("userId").is(review.getUserId()));
+        if (targets.get(1).exists(existing, Review.class)) {
+            throw new DuplicateKeyException("E11000 duplicate key error collection: reviews index: book_user_unique dup key: "
+                + review.getBookId() + ", " + review.getUserId());
+        }
+    }
+    
+    private static <T> Optional<T> first(List<T> results) {
+        return results.stream().filter(result -> result != null).findFirst();
+    }
+    
+    private static long sum(List<Long> counts) {
+        return counts.stream().mapToLong(Long::longValue).sum();
+    }
+    
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Query by example is not supported by review.storage.backend=sharded");
+    }
+}
@@ -0,0 +1,53 @@
+package com.sua.ebook.reviewservice.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Authentication metrics shared by the servlet and WebFlux JWT filters.
+ * <ul>
+ *   <li>{@code auth.requests}: requests seen by the filter, tagged by outcome</li>
+ *   <li>{@code auth.authentication}: time spent on a presented token (cache lookup, plus
+ *       verification on a miss)</li>
+ *   <li>{@code jwt.verification}: the signature check alone; its count equals the number
+ *       of verified-token cache misses</li>
+ * </ul>
+ */
+@Component
+public class AuthMetrics {
+    
+    public static final String AUTHENTICATED = "authenticated";
+    public static final String INVALID_TOKEN = "invalid_token";
+    public static final String MISSING_TOKEN = "missing_token";
+    public static final String PUBLIC = "public";
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+    
+    public void record(Timer.Sample sample, String outcome) {
+        sample.stop(meterRegistry.timer("auth.authentication", "outcome", outcome));
+        count(outcome);
+    }
+    
+    public void count(String outcome) {
+        meterRegistry.counter("auth.requests", "outcome", outcome).increment();
+    }
+    
+    public JwtPrincipal verify(JwtTokenProvider jwtTokenProvider, String token) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "invalid";
+        try {
+            JwtPrincipal principal = jwtTokenProvider.parsePrincipal(token);
+            outcome = "valid";
+            return principal;
+        } finally {
+            sample.stop(meterRegistry.timer("jwt.verification", "outcome", outcome));
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.sua.ebook.reviewservice.security;
 
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -7,6 +8,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -17,6 +19,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 
 @Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
@@ -24,6 +27,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private JwtTokenProvider jwtTokenProvider;
     
+    @Autowired
+    private VerifiedTokenCache verifiedTokenCache;
+    
+    @Autowired
+    private AuthMetrics authMetrics;
+    
     @Override
     protected void doFilterInternal(HttpServletRequest request, 
                                     HttpServletResponse response, 
@@ -37,17 +46,19 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         
         if (header != null && header.startsWith("Bearer ")) {
             token = header.substring(7);
-            logger.debug("Extracted token: {}...", token.substring(0, Math.min(20, token.length())));
             
+            Timer.Sample sample = authMetrics.start();
             try {
-                String userId = jwtTokenProvider.getUserIdFromToken(token);
-                String role = jwtTokenProvider.getRoleFromToken(token);
-                String email = jwtTokenProvider.getEmailFromToken(token);
+                // Žeton preverimo največ enkrat; ponovljene zahteve iste seje pridejo iz predpomnilnika
+                JwtPrincipal principal = verifiedTokenCache.get(token, t -> authMetrics.verify(jwtTokenProvider, t));
+                String userId = principal.getUserId();
+                String role = principal.getRole();
+                String email = principal.getEmail();
                 
                 if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
                     // Ustvari authentication objekt
                     UsernamePasswordAuthenticationToken authToken = 
-                        new UsernamePasswordAuthenticationToken(userId, null, new ArrayList<>());
+                        new UsernamePasswordAuthenticationToken(principal, null, new ArrayList<>());
                     
                     // Dodaj dodatne podatke v authentication
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -59,10 +70,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                     
                     SecurityContextHolder.getContext().setAuthentication(authToken);
                 }
+                authMetrics.record(sample, userId != null ? AuthMetrics.AUTHENTICATED : AuthMetrics.INVALID_TOKEN);
             } catch (Exception e) {
                 // Če token ni veljaven, ne nastavi authentication
+                authMetrics.record(sample, AuthMetrics.INVALID_TOKEN);
                 logger.error("JWT token validation failed: " + e.getMessage());
             }
+        } else {
+            authMetrics.count(AuthMetrics.MISSING_TOKEN);
         }
         
         filterChain.doFilter(request, response);
@@ -70,34 +85,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
-        String path = request.getRequestURI();
-        String method = request.getMethod();
-        
-        logger.debug("shouldNotFilter check: {} {}", method, path);
-        
-        // Izključi OPTIONS zahteve (CORS preflight)
-        if ("OPTIONS".equals(method)) {
-            logger.debug("Skipping filter for OPTIONS request: {}", path);
-            return true;
+        boolean skip = PublicEndpoints.skipsAuthentication(request.getMethod(), request.getRequestURI());
+        logger.debug("shouldNotFilter check: {} {} -> {}", request.getMethod(), request.getRequestURI(), skip);
+        if (skip) {
+            authMetrics.count(AuthMetrics.PUBLIC);
         }
-        
-        // Izključi health check in dokumentacijo iz avtentikacije
-        if (path.startsWith("/actuator") || 
-            path.startsWith("/v3/api-docs") || 
-            path.startsWith("/swagger-ui") ||
-            path.equals("/health")) {
-            logger.debug("Skipping filter for health/docs endpoint: {}", path);
-            return true;
-        }
-        
-        // Izključi GET zahteve za branje reviews iz avtentikacije
-        if ("GET".equals(method) && 
-            (path.equals("/reviews") || path.startsWith("/reviews/book/"))) {
-            logger.debug("Skipping filter for public GET endpoint: {}", path);
-            return true;
-        }
-        
-        logger.debug("Filter will run for: {} {}", method, path);
-        return false;
+        return skip;
     }
 }
@@ -0,0 +1,83 @@
+package com.sua.ebook.reviewservice.security;
+
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+
+/**
+ * WebFlux port of JwtAuthenticationFilter. Verification is pure CPU work (and usually a
+ * cache hit), so it runs inline on the event loop. Not a bean on purpose: WebFlux would
+ * otherwise also register it as a global filter outside the security chain.
+ */
+public class JwtAuthenticationWebFilter implements WebFilter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationWebFilter.class);
+    
+    private final JwtTokenProvider jwtTokenProvider;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final AuthMetrics authMetrics;
+    
+    public JwtAuthenticationWebFilter(JwtTokenProvider jwtTokenProvider, VerifiedTokenCache verifiedTokenCache,
+                                      AuthMetrics authMetrics) {
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.authMetrics = authMetrics;
+    }
+    
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().value();
+        
+        if (PublicEndpoints.skipsAuthentication(request.getMethod().name(), path)) {
+            authMetrics.count(AuthMetrics.PUBLIC);
+            return chain.filter(exchange);
+        }
+        
+        String header = request.getHeaders().getFirst("Authorization");
+        if (header != null && header.startsWith("Bearer ")) {
+            String token = header.substring(7);
+            
+            Timer.Sample sample = authMetrics.start();
+            try {
+                JwtPrincipal principal = verifiedTokenCache.get(token, t -> authMetrics.verify(jwtTokenProvider, t));
+                
+                if (principal.getUserId() != null) {
+                    UsernamePasswordAuthenticationToken authToken = 
+                        new UsernamePasswordAuthenticationToken(principal, null, new ArrayList<>());
+                    
+                    // Enaki atributi kot v servlet načinu (atributi ne smejo biti null)
+                    exchange.getAttributes().put("userId", principal.getUserId());
+                    if (principal.getRole() != null) {
+                        exchange.getAttributes().put("userRole", principal.getRole());
+                    }
+                    if (principal.getEmail() != null) {
+                        exchange.getAttributes().put("userEmail", principal.getEmail());
+                    }
+                    
+                    authMetrics.record(sample, AuthMetrics.AUTHENTICATED);
+                    return chain.filter(exchange)
+                        .contextWrite(ReactiveSecurityContextHolder.withAuthentication(authToken));
+                }
+                authMetrics.record(sample, AuthMetrics.INVALID_TOKEN);
+            } catch (Exception e) {
+                // Če token ni veljaven, ne nastavi authentication
+                authMetrics.record(sample, AuthMetrics.INVALID_TOKEN);
+                logger.error("JWT token validation failed: " + e.getMessage());
+            }
+        } else {
+            authMetrics.count(AuthMetrics.MISSING_TOKEN);
+        }
+        
+        return chain.filter(exchange);
+    }
+}
@@ -0,0 +1,53 @@
+package com.sua.ebook.reviewservice.security;
+
+import java.security.Principal;
+import java.time.Instant;
+
+// Podatki iz enkrat preverjenega JWT žetona
+public class JwtPrincipal implements Principal {
+    private final String userId;
+    private final String role;
+    private final String email;
+    private final Instant expiresAt;
+    
+    public JwtPrincipal(String userId, String role, String email, Instant expiresAt) {
+        this.userId = userId;
+        this.role = role;
+        this.email = email;
+        this.expiresAt = expiresAt;
+    }
+    
+    @Override
+    public String getName() {
+        return userId;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public String getRole() {
+        return role;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+    
+    public boolean isExpired(Instant now) {
+        return expiresAt != null && !now.isBefore(expiresAt);
+    }
+    
+    @Override
+    public String toString() {
+        return "JwtPrincipal{" +
+                "userId='" + userId + '\'' +
+                ", role='" + role + '\'' +
+                ", expiresAt=" + expiresAt +
+                '}';
+    }
+}
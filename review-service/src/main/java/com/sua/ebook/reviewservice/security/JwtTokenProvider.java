@@ -1,68 +1,62 @@
 package com.sua.ebook.reviewservice.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.WeakKeyException;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.util.Date;
 
 @Component
 public class JwtTokenProvider {
     
+    private static final Logger logger = LoggerFactory.getLogger(JwtTokenProvider.class);
+    
     @Value("${jwt.secret}")
     private String jwtSecret;
     
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = jwtSecret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    // Ključ in parser sta nespremenljiva in varna za več niti, zato ju zgradimo samo enkrat
+    private JwtParser parser;
+    
+    @PostConstruct
+    void init() {
+        try {
+            SecretKey signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+            this.parser = Jwts.parserBuilder()
+                    .setSigningKey(signingKey)
+                    .build();
+        } catch (WeakKeyException e) {
+            // Servis se vseeno zažene, vsi žetoni pa so zavrnjeni, dokler JWT_SECRET ni popravljen
+            logger.error("jwt.secret is not usable as an HMAC-SHA key: {}", e.getMessage());
+        }
     }
     
     public Claims validateToken(String token) {
+        if (parser == null) {
+            throw new RuntimeException("Invalid JWT token: signing key is not configured");
+        }
         try {
-            System.out.println("=== JWT Validation Debug ===");
-            System.out.println("Full token: " + token);
-            System.out.println("JWT Secret length: " + jwtSecret.length());
-            System.out.println("JWT Secret: " + jwtSecret);
-            System.out.println("First 10 chars of secret: " + jwtSecret.substring(0, Math.min(10, jwtSecret.length())));
-            
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
-                    
-            System.out.println("JWT validation SUCCESS!");
-            System.out.println("Subject: " + claims.getSubject());
-            System.out.println("Email: " + claims.get("email"));
-            System.out.println("Role: " + claims.get("role"));
-            System.out.println("Issued at: " + claims.getIssuedAt());
-            System.out.println("Expires at: " + claims.getExpiration());
-            return claims;
-            
+            return parser.parseClaimsJws(token).getBody();
         } catch (Exception e) {
-            System.err.println("=== JWT Validation FAILED ===");
-            System.err.println("JWT validation error: " + e.getMessage());
-            System.err.println("Exception class: " + e.getClass().getSimpleName());
-            e.printStackTrace();
             throw new RuntimeException("Invalid JWT token", e);
         }
     }
     
-    public String getUserIdFromToken(String token) {
-        Claims claims = validateToken(token);
-        return claims.getSubject();
-    }
-    
-    public String getRoleFromToken(String token) {
-        Claims claims = validateToken(token);
-        return claims.get("role", String.class);
-    }
-    
-    public String getEmailFromToken(String token) {
+    public JwtPrincipal parsePrincipal(String token) {
         Claims claims = validateToken(token);
-        return claims.get("email", String.class);
+        Date expiration = claims.getExpiration();
+        return new JwtPrincipal(
+                claims.getSubject(),
+                claims.get("role", String.class),
+                claims.get("email", String.class),
+                expiration != null ? expiration.toInstant() : null);
     }
 }
@@ -0,0 +1,33 @@
+package com.sua.ebook.reviewservice.security;
+
+// Zahteve, pri katerih JWT filter (servlet ali reactive) sploh ne teče
+public final class PublicEndpoints {
+    
+    private PublicEndpoints() {}
+    
+    public static boolean skipsAuthentication(String method, String path) {
+        // Izključi OPTIONS zahteve (CORS preflight)
+        if ("OPTIONS".equals(method)) {
+            return true;
+        }
+        
+        // Izključi health check, Prometheus in dokumentacijo iz avtentikacije; ostale actuator poti zahtevajo JWT
+        if (path.equals("/actuator/health") || path.equals("/actuator/prometheus") || 
+            path.startsWith("/v3/api-docs") || 
+            path.startsWith("/swagger-ui") ||
+            path.equals("/health")) {
+            return true;
+        }
+        
+        // Izključi GET zahteve za branje reviews iz avtentikacije
+        if ("GET".equals(method) && 
+            (path.equals("/reviews") || path.equals("/reviews/leaderboard") ||
+             path.equals("/reviews/search") || path.startsWith("/reviews/book/"))) {
+            return true;
+        }
+        
+        // Batch branje je javno, kot posamezni GET
+        return "POST".equals(method) && 
+            (path.equals("/reviews/stats/batch") || path.equals("/reviews/books/batch"));
+    }
+}
@@ -0,0 +1,97 @@
+package com.sua.ebook.reviewservice.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of already verified tokens, keyed by the SHA-256 of the token so the
+ * raw token is never held as a key. Entries expire at the token's own exp claim
+ * (capped by jwt.cache.max-ttl), so an expired token always goes through full
+ * verification again and is rejected there.
+ */
+@Component
+public class VerifiedTokenCache {
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${jwt.cache.max-size:10000}")
+    private long maxSize;
+    
+    @Value("${jwt.cache.max-ttl:5m}")
+    private Duration maxTtl;
+    
+    private Cache<String, JwtPrincipal> cache;
+    
+    @PostConstruct
+    void init() {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new TokenExpiry(maxTtl))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwt.verified");
+    }
+    
+    public JwtPrincipal get(String token, Function<String, JwtPrincipal> verifier) {
+        String key = hash(token);
+        JwtPrincipal principal = cache.get(key, k -> verifier.apply(token));
+        if (principal.isExpired(Instant.now())) {
+            // Varovalka za uro: zapis je lahko še prisoten tik ob izteku
+            cache.invalidate(key);
+            return verifier.apply(token);
+        }
+        return principal;
+    }
+    
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private static class TokenExpiry implements Expiry<String, JwtPrincipal> {
+        private final long maxTtlNanos;
+        
+        TokenExpiry(Duration maxTtl) {
+            this.maxTtlNanos = maxTtl.toNanos();
+        }
+        
+        @Override
+        public long expireAfterCreate(String key, JwtPrincipal principal, long currentTime) {
+            if (principal.getExpiresAt() == null) {
+                return maxTtlNanos;
+            }
+            long untilExpiry = Duration.between(Instant.now(), principal.getExpiresAt()).toNanos();
+            return Math.max(0, Math.min(untilExpiry, maxTtlNanos));
+        }
+        
+        @Override
+        public long expireAfterUpdate(String key, JwtPrincipal principal, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+        
+        @Override
+        public long expireAfterRead(String key, JwtPrincipal principal, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
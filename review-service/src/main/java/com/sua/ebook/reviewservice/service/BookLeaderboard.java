@@ -0,0 +1,347 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.model.BookRatingSummary;
+import com.sua.ebook.reviewservice.repository.ReviewLog;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+
+/**
+ * In-memory top-N rankings of books by review count, average rating and Bayesian
+ * weighted rating. Every summary write moves one book between positions in
+ * skip lists ordered by score, so reading the top N walks N entries.
+ *
+ * The Bayesian rating is (C * m + sum) / (C + count), where C is the prior weight and
+ * m is the mean rating over all reviews. m is recomputed on every reload; between
+ * reloads all books are ranked against the same m. The reload from
+ * book_rating_summaries also picks up writes made by other instances.
+ *
+ * A reload reads the summaries into a new board without holding the lock, so writes keep
+ * going to the current board meanwhile. They are also kept per book and replayed onto the
+ * new board just before the swap. A summary is written before its change reaches the
+ * leaderboard, so the changes kept for a book before its summary is read are already in it
+ * and are dropped at that point.
+ */
+@Component
+public class BookLeaderboard {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BookLeaderboard.class);
+    
+    public static final String BY_COUNT = "count";
+    public static final String BY_AVERAGE = "avg";
+    public static final String BY_BAYESIAN = "bayesian";
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired(required = false)
+    private ReviewLog reviewLog;
+    
+    @Value("${review.leaderboard.min-reviews:5}")
+    private long minReviews;
+    
+    @Value("${review.leaderboard.prior-weight:10}")
+    private double priorWeight;
+    
+    // m, dokler ni nobene ocene (sredina lestvice 1-5)
+    @Value("${review.leaderboard.default-prior-mean:3.0}")
+    private double defaultPriorMean;
+    
+    @Value("${review.leaderboard.default-limit:10}")
+    private int defaultLimit;
+    
+    @Value("${review.leaderboard.max-limit:100}")
+    private int maxLimit;
+    
+    // Zamenja se v celoti ob reloadu; posamezni zapisi ga spreminjajo pod zaklepom
+    private volatile Board board;
+    
+    // Spremembe med reloadom, ki jih novo stanje še ne vsebuje; null, ko reload ne teče
+    private Map<String, Pending> reloadPending;
+    
+    private final Object reloadLock = new Object();
+    
+    @PostConstruct
+    void init() {
+        board = new Board(defaultPriorMean);
+        Gauge.builder("review.leaderboard.books", this, leaderboard -> leaderboard.board.standings.size())
+            .description("Books tracked by the in-memory leaderboard")
+            .register(meterRegistry);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void bootstrap() {
+        reloadQuietly();
+    }
+    
+    @Scheduled(initialDelayString = "${review.leaderboard.reload-interval:300000}",
+               fixedDelayString = "${review.leaderboard.reload-interval:300000}")
+    public void scheduledReload() {
+        reloadQuietly();
+    }
+    
+    public void recordAdded(String bookId, int rating) {
+        apply(bookId, 1, rating);
+    }
+    
+    public void recordChanged(String bookId, int oldRating, int newRating) {
+        apply(bookId, 0, newRating - oldRating);
+    }
+    
+    public void recordRemoved(String bookId, int rating) {
+        apply(bookId, -1, -rating);
+    }
+    
+    // Stanje ene knjige iz na novo izračunanega povzetka (RatingSummaryRebuildJob.rebuildBook)
+    public synchronized void replace(BookRatingSummary summary) {
+        board.replace(summary);
+        if (reloadPending != null) {
+            // Nadomesti tudi vse prej zadržane spremembe te knjige
+            reloadPending.put(summary.getBookId(), new Pending(summary));
+        }
+    }
+    
+    private synchronized void apply(String bookId, long countDelta, long sumDelta) {
+        board.apply(bookId, countDelta, sumDelta);
+        if (reloadPending != null) {
+            Pending pending = reloadPending.computeIfAbsent(bookId, id -> new Pending(null));
+            pending.countDelta += countDelta;
+            pending.sumDelta += sumDelta;
+        }
+    }
+    
+    // Prebere vse povzetke in zamenja celotno stanje; sproži se tudi po RatingSummaryRebuildJob
+    public void reload() {
+        synchronized (reloadLock) {
+            synchronized (this) {
+                reloadPending = new HashMap<>();
+            }
+            try {
+                load();
+            } finally {
+                synchronized (this) {
+                    reloadPending = null;
+                }
+            }
+        }
+    }
+    
+    private void load() {
+        long started = System.currentTimeMillis();
+        List<BookRatingSummary> summaries = new ArrayList<>();
+        long totalCount = 0;
+        long totalSum = 0;
+        // Pri review.storage.backend=log povzetke namesto kolekcije da ReviewLog, vse naenkrat
+        List<BookRatingSummary> snapshot = reviewLog != null ? reviewLog.summaries() : null;
+        if (snapshot != null) {
+            markRead(null);
+        }
+        try (Stream<BookRatingSummary> stream = snapshot != null
+                ? snapshot.stream()
+                : mongoTemplate.stream(new Query(), BookRatingSummary.class)) {
+            for (BookRatingSummary summary : (Iterable<BookRatingSummary>) stream::iterator) {
+                if (snapshot == null) {
+                    markRead(summary.getBookId());
+                }
+                if (summary.getCount() <= 0) {
+                    continue;
+                }
+                summaries.add(summary);
+                totalCount += summary.getCount();
+                totalSum += summary.getSum();
+            }
+        }
+        
+        Board next = new Board(totalCount > 0 ? (double) totalSum / totalCount : defaultPriorMean);
+        for (BookRatingSummary summary : summaries) {
+            next.put(summary.getBookId(), summary.getCount(), summary.getSum());
+        }
+        int replayed;
+        synchronized (this) {
+            reloadPending.forEach((bookId, pending) -> {
+                if (pending.replaced != null) {
+                    next.replace(pending.replaced);
+                }
+                next.apply(bookId, pending.countDelta, pending.sumDelta);
+            });
+            replayed = reloadPending.size();
+            board = next;
+        }
+        logger.info("Leaderboard loaded: {} books, prior mean {}, {} books changed during the load, in {} ms",
+            summaries.size(), Math.round(next.priorMean * 100.0) / 100.0, replayed, System.currentTimeMillis() - started);
+    }
+    
+    // Prebrani povzetek že vsebuje zadržane spremembe knjige (bookId null: vseh knjig)
+    private synchronized void markRead(String bookId) {
+        if (bookId == null) {
+            reloadPending.values().removeIf(pending -> pending.replaced == null);
+            return;
+        }
+        Pending pending = reloadPending.get(bookId);
+        if (pending != null && pending.replaced == null) {
+            reloadPending.remove(bookId);
+        }
+    }
+    
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (Exception e) {
+            logger.error("Leaderboard reload failed: {}", e.getMessage());
+        }
+    }
+    
+    public Map<String, Object> top(String by, Integer limit) {
+        int size = limit == null ? defaultLimit : limit;
+        if (size < 1) {
+            throw ReviewServiceException.badRequest("Limit must be a positive number");
+        }
+        size = Math.min(size, maxLimit);
+        
+        Board current = board;
+        NavigableSet<Standing> ranking = switch (by == null ? BY_BAYESIAN : by) {
+            case BY_COUNT -> current.byCount;
+            case BY_AVERAGE -> current.byAverage;
+            case BY_BAYESIAN -> current.byBayesian;
+            default -> throw ReviewServiceException.badRequest("Unknown ranking: " + by + " (expected avg, count or bayesian)");
+        };
+        
+        List<Map<String, Object>> books = new ArrayList<>(size);
+        Iterator<Standing> iterator = ranking.iterator();
+        while (books.size() < size && iterator.hasNext()) {
+            Standing standing = iterator.next();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("rank", books.size() + 1);
+            entry.put("bookId", standing.bookId);
+            entry.put("totalReviews", standing.count);
+            entry.put("averageRating", round(standing.average()));
+            entry.put("bayesianRating", round(standing.bayesian));
+            books.add(entry);
+        }
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("by", by == null ? BY_BAYESIAN : by);
+        result.put("minReviews", minReviews);
+        result.put("priorWeight", priorWeight);
+        result.put("priorMean", round(current.priorMean));
+        result.put("books", books);
+        return result;
+    }
+    
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+    
+    private final class Board {
+        private final double priorMean;
+        private final Map<String, Standing> standings = new HashMap<>();
+        private final NavigableSet<Standing> byCount = new ConcurrentSkipListSet<>(
+            Comparator.comparingLong((Standing s) -> s.count).reversed().thenComparing(s -> s.bookId));
+        private final NavigableSet<Standing> byAverage = new ConcurrentSkipListSet<>(
+            Comparator.comparingDouble(Standing::average).reversed()
+                .thenComparing(Comparator.comparingLong((Standing s) -> s.count).reversed())
+                .thenComparing(s -> s.bookId));
+        private final NavigableSet<Standing> byBayesian = new ConcurrentSkipListSet<>(
+            Comparator.comparingDouble((Standing s) -> s.bayesian).reversed().thenComparing(s -> s.bookId));
+        
+        private Board(double priorMean) {
+            this.priorMean = priorMean;
+        }
+        
+        private void put(String bookId, long count, long sum) {
+            double bayesian = (priorWeight * priorMean + sum) / (priorWeight + count);
+            Standing standing = new Standing(bookId, count, sum, bayesian);
+            standings.put(bookId, standing);
+            byCount.add(standing);
+            // Knjige z malo ocenami ne tekmujejo po povprečju
+            if (count >= minReviews) {
+                byAverage.add(standing);
+                byBayesian.add(standing);
+            }
+        }
+        
+        private void apply(String bookId, long countDelta, long sumDelta) {
+            Standing old = standings.get(bookId);
+            long count = (old != null ? old.count : 0) + countDelta;
+            long sum = (old != null ? old.sum : 0) + sumDelta;
+            if (old != null) {
+                unindex(old);
+            }
+            if (count > 0) {
+                put(bookId, count, sum);
+            } else {
+                standings.remove(bookId);
+            }
+        }
+        
+        private void replace(BookRatingSummary summary) {
+            Standing old = standings.remove(summary.getBookId());
+            if (old != null) {
+                unindex(old);
+            }
+            if (summary.getCount() > 0) {
+                put(summary.getBookId(), summary.getCount(), summary.getSum());
+            }
+        }
+        
+        private void unindex(Standing standing) {
+            byCount.remove(standing);
+            byAverage.remove(standing);
+            byBayesian.remove(standing);
+        }
+    }
+    
+    // Zadržane spremembe ene knjige: nov povzetek iz replace() in delte po njem
+    private static final class Pending {
+        private final BookRatingSummary replaced;
+        private long countDelta;
+        private long sumDelta;
+        
+        private Pending(BookRatingSummary replaced) {
+            this.replaced = replaced;
+        }
+    }
+    
+    private static final class Standing {
+        private final String bookId;
+        private final long count;
+        private final long sum;
+        private final double bayesian;
+        
+        private Standing(String bookId, long count, long sum, double bayesian) {
+            this.bookId = bookId;
+            this.count = count;
+            this.sum = sum;
+            this.bayesian = bayesian;
+        }
+        
+        private double average() {
+            return (double) sum / count;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sua.ebook.reviewservice.config.BinaryFormats;
+import com.sua.ebook.reviewservice.dto.ReviewFields;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache of serialized per-book responses (review pages and stats).
+ * <p>
+ * Every book has a version that ReviewService bumps after each write to that book.
+ * Entries are keyed by that version, so a write makes all of the book's older entries
+ * unreachable, and they age out. Versions come from one counter and expire after the
+ * TTL, so a version is never reused. The ETag is the instance epoch plus the version,
+ * which means an If-None-Match check is a single map lookup. Writes made by other
+ * instances show up once the TTL expires.
+ * <p>
+ * The ETag also carries a hash of the kind (page or stats) and the variant (page size,
+ * fields and cursor), plus a suffix for CBOR and Smile. Each representation of a book is
+ * cached separately, and a validator from one page, projection or format never matches
+ * another one of the same book version.
+ */
+@Component
+public class BookReviewCache {
+    
+    public static final String REVIEWS = "reviews";
+    public static final String STATS = "stats";
+    
+    @Autowired
+    private BinaryFormats binaryFormats;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${review.cache.max-size:64MB}")
+    private DataSize maxSize;
+    
+    @Value("${review.cache.max-books:100000}")
+    private long maxBooks;
+    
+    @Value("${review.cache.ttl:60s}")
+    private Duration ttl;
+    
+    // Naključen ob zagonu, da se ETag-i različnih instanc in zagonov ne prekrivajo
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+    private final AtomicLong versionCounter = new AtomicLong();
+    
+    private Cache<String, Long> versions;
+    private Cache<Key, CachedResponse> entries;
+    private Timer loadTimer;
+    
+    @PostConstruct
+    void init() {
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(maxBooks)
+                .expireAfterWrite(ttl)
+                .build();
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((Key key, CachedResponse value) -> value.getBody().length)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "reviews.book");
+        // CaffeineCacheMetrics meri čas nalaganja le za LoadingCache
+        this.loadTimer = Timer.builder("cache.load.duration")
+                .tag("cache", "reviews.book")
+                .description("Time to load and serialize a cache miss")
+                .register(meterRegistry);
+    }
+    
+    public CachedResponse get(String kind, String bookId, String variant, MediaType format, Supplier<CachedValue> loader) {
+        long version = version(bookId);
+        return entries.get(new Key(kind, bookId, version, variant, format), key -> loadTimer.record(() -> {
+            CachedValue value = loader.get();
+            ObjectMapper mapper = binaryFormats.mapper(format);
+            try {
+                return new CachedResponse(mapper.writeValueAsBytes(value.body), format, etag(version, kind, variant, format),
+                    value.nextCursor);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Failed to serialize cached response", e);
+            }
+        }));
+    }
+    
+    // If-None-Match je lahko seznam ali "*"; šibke ETag-e (W/) primerjamo kot enake
+    public boolean matches(String kind, String bookId, String variant, MediaType format, String ifNoneMatch) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        String current = currentEtag(kind, bookId, variant, format);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public String currentEtag(String kind, String bookId, String variant, MediaType format) {
+        return etag(version(bookId), kind, variant, format);
+    }
+    
+    // Različica strani knjige; enaka v servlet in reactive načinu, da se ETag-i ujemajo
+    public static String pageVariant(int pageSize, ReviewFields fields, String cursor) {
+        return pageSize + ":" + (fields != null ? fields.key() : "*") + ":" + (cursor != null ? cursor : "");
+    }
+    
+    // Klicati po zapisu v bazo, da bralec ne shrani starega stanja pod novo verzijo
+    public void bump(String bookId) {
+        versions.put(bookId, versionCounter.incrementAndGet());
+    }
+    
+    public void invalidateAll() {
+        versions.invalidateAll();
+        entries.invalidateAll();
+    }
+    
+    private long version(String bookId) {
+        return versions.get(bookId, id -> versionCounter.incrementAndGet());
+    }
+    
+    private String etag(long version, String kind, String variant, MediaType format) {
+        String suffix = MediaType.APPLICATION_JSON.equalsTypeAndSubtype(format) ? "" : "-" + format.getSubtype();
+        return "\"" + epoch + "-" + Long.toHexString(version) + "-" + representation(kind, variant) + suffix + "\"";
+    }
+    
+    // 64-bitni FNV-1a nad vrsto in različico; trk med stranmi iste verzije knjige je zanemarljiv
+    private static String representation(String kind, String variant) {
+        String value = kind + "|" + (variant != null ? variant : "");
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return Long.toHexString(hash);
+    }
+    
+    public static class CachedValue {
+        private final Object body;
+        private final String nextCursor;
+        
+        public CachedValue(Object body, String nextCursor) {
+            this.body = body;
+            this.nextCursor = nextCursor;
+        }
+    }
+    
+    public static class CachedResponse {
+        private final byte[] body;
+        private final MediaType contentType;
+        private final String etag;
+        private final String nextCursor;
+        
+        CachedResponse(byte[] body, MediaType contentType, String etag, String nextCursor) {
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.nextCursor = nextCursor;
+        }
+        
+        public byte[] getBody() {
+            return body;
+        }
+        
+        public MediaType getContentType() {
+            return contentType;
+        }
+        
+        public String getEtag() {
+            return etag;
+        }
+        
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+    
+    private static final class Key {
+        private final String kind;
+        private final String bookId;
+        private final long version;
+        private final String variant;
+        private final MediaType format;
+        
+        Key(String kind, String bookId, long version, String variant, MediaType format) {
+            this.kind = kind;
+            this.bookId = bookId;
+            this.version = version;
+            this.variant = variant;
+            this.format = format;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key other)) {
+                return false;
+            }
+            return version == other.version && kind.equals(other.kind)
+                && bookId.equals(other.bookId) && Objects.equals(variant, other.variant)
+                && format.equals(other.format);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, bookId, version, variant, format);
+        }
+    }
+}
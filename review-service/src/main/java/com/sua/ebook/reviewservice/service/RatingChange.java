@@ -0,0 +1,64 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.sua.ebook.reviewservice.model.Review;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Ena sprememba ocene iz skupinskega zapisa (RatingWriteBuffer); oldRating je null za novo oceno
+final class RatingChange {
+    
+    final String bookId;
+    final LocalDateTime createdAt;
+    final Integer oldRating;
+    final int newRating;
+    
+    private RatingChange(String bookId, LocalDateTime createdAt, Integer oldRating, int newRating) {
+        this.bookId = bookId;
+        this.createdAt = createdAt;
+        this.oldRating = oldRating;
+        this.newRating = newRating;
+    }
+    
+    static RatingChange added(Review review) {
+        return new RatingChange(review.getBookId(), review.getCreatedAt(), null, review.getRating());
+    }
+    
+    static RatingChange changed(Review review, int oldRating) {
+        return new RatingChange(review.getBookId(), review.getCreatedAt(), oldRating, review.getRating());
+    }
+    
+    // Vsota sprememb kot en $inc, enako kot RatingSummaryService.ratingAdded/ratingChanged skupaj
+    static Update combined(Collection<RatingChange> changes) {
+        long count = 0;
+        long sum = 0;
+        Map<Integer, Long> histogram = new TreeMap<>();
+        for (RatingChange change : changes) {
+            if (change.oldRating == null) {
+                count++;
+            } else {
+                sum -= change.oldRating;
+                histogram.merge(change.oldRating, -1L, Long::sum);
+            }
+            sum += change.newRating;
+            histogram.merge(change.newRating, 1L, Long::sum);
+        }
+        
+        Update update = new Update().inc("version", 1).set("updatedAt", LocalDateTime.now());
+        if (count != 0) {
+            update.inc("count", count);
+        }
+        if (sum != 0) {
+            update.inc("sum", sum);
+        }
+        histogram.forEach((rating, delta) -> {
+            if (delta != 0) {
+                update.inc("histogram." + rating, delta);
+            }
+        });
+        return update;
+    }
+}
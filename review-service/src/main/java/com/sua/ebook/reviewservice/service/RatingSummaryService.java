@@ -0,0 +1,146 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.sua.ebook.reviewservice.model.BookRatingSummary;
+import com.sua.ebook.reviewservice.repository.BookRatingSummaryRepository;
+import com.sua.ebook.reviewservice.repository.ReviewLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@Service
+public class RatingSummaryService {
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private BookRatingSummaryRepository summaryRepository;
+    
+    @Autowired
+    private BookLeaderboard leaderboard;
+    
+    // Samo pri review.storage.backend=log; povzetke takrat računa iz svojih indeksov
+    @Autowired(required = false)
+    private ReviewLog reviewLog;
+    
+    public BookRatingSummary getSummary(String bookId) {
+        if (reviewLog != null) {
+            return reviewLog.summary(bookId);
+        }
+        return summaryRepository.findById(bookId).orElseGet(() -> new BookRatingSummary(bookId));
+    }
+    
+    // En sam $in poizvedba po _id za vse knjige; manjkajoče knjige dobijo prazen povzetek
+    public Map<String, BookRatingSummary> getSummaries(Collection<String> bookIds) {
+        Map<String, BookRatingSummary> summaries = new HashMap<>();
+        if (reviewLog != null) {
+            for (String bookId : bookIds) {
+                summaries.put(bookId, reviewLog.summary(bookId));
+            }
+            return summaries;
+        }
+        for (BookRatingSummary summary : summaryRepository.findAllById(bookIds)) {
+            summaries.put(summary.getBookId(), summary);
+        }
+        for (String bookId : bookIds) {
+            summaries.computeIfAbsent(bookId, BookRatingSummary::new);
+        }
+        return summaries;
+    }
+    
+    public Map<String, Object> toStats(BookRatingSummary summary) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalReviews", summary.getCount());
+        stats.put("averageRating", Math.round(summary.getAverageRating() * 100.0) / 100.0);
+        stats.put("ratingDistribution", summary.getDistribution());
+        return stats;
+    }
+    
+    public void recordAdded(String bookId, int rating) {
+        apply(bookId, ratingAdded(rating));
+        leaderboard.recordAdded(bookId, rating);
+    }
+    
+    public void recordChanged(String bookId, int oldRating, int newRating) {
+        if (oldRating == newRating) {
+            return;
+        }
+        apply(bookId, ratingChanged(oldRating, newRating));
+        leaderboard.recordChanged(bookId, oldRating, newRating);
+    }
+    
+    public void recordRemoved(String bookId, int rating) {
+        apply(bookId, ratingRemoved(rating));
+        leaderboard.recordRemoved(bookId, rating);
+    }
+    
+    // Skupinski zapis: ena upsert operacija na knjigo, vse v enem bulk zapisu
+    void recordBatch(List<RatingChange> changes) {
+        Map<String, List<RatingChange>> byBook = new LinkedHashMap<>();
+        for (RatingChange change : changes) {
+            byBook.computeIfAbsent(change.bookId, id -> new ArrayList<>()).add(change);
+        }
+        if (byBook.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BookRatingSummary.class);
+        byBook.forEach((bookId, bookChanges) -> bulk.upsert(query(where("_id").is(bookId)), RatingChange.combined(bookChanges)));
+        bulk.execute();
+        
+        for (RatingChange change : changes) {
+            if (change.oldRating == null) {
+                leaderboard.recordAdded(change.bookId, change.newRating);
+            } else {
+                leaderboard.recordChanged(change.bookId, change.oldRating, change.newRating);
+            }
+        }
+    }
+    
+    // Vsaka sprememba je en sam $inc na dokumentu knjige, zato je atomarna tudi pri sočasnih zapisih
+    private void apply(String bookId, Update update) {
+        if (reviewLog != null) {
+            return;
+        }
+        mongoTemplate.upsert(query(where("_id").is(bookId)), update, BookRatingSummary.class);
+    }
+    
+    static Update ratingAdded(int rating) {
+        return new Update()
+            .inc("count", 1)
+            .inc("sum", rating)
+            .inc("histogram." + rating, 1)
+            .inc("version", 1)
+            .set("updatedAt", LocalDateTime.now());
+    }
+    
+    static Update ratingChanged(int oldRating, int newRating) {
+        return new Update()
+            .inc("sum", newRating - oldRating)
+            .inc("histogram." + oldRating, -1)
+            .inc("histogram." + newRating, 1)
+            .inc("version", 1)
+            .set("updatedAt", LocalDateTime.now());
+    }
+    
+    static Update ratingRemoved(int rating) {
+        return new Update()
+            .inc("count", -1)
+            .inc("sum", -rating)
+            .inc("histogram." + rating, -1)
+            .inc("version", 1)
+            .set("updatedAt", LocalDateTime.now());
+    }
+}
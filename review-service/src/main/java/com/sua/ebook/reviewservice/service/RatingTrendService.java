@@ -0,0 +1,190 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.model.RatingTrendBucket;
+import com.sua.ebook.reviewservice.repository.ReviewLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Daily and weekly rating rollups per book. A review is counted in the buckets of the
+ * day and week it was created in. A rating change moves the count between histogram
+ * slots in those buckets, and a delete removes it. A trend read only fetches the
+ * buckets in the requested range.
+ */
+@Service
+public class RatingTrendService {
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    // Samo pri review.storage.backend=log; buckete takrat sestavi iz indeksa knjige
+    @Autowired(required = false)
+    private ReviewLog reviewLog;
+    
+    @Value("${review.trend.max-buckets:366}")
+    private int maxBuckets;
+    
+    @Value("${review.trend.default-days:30}")
+    private int defaultDays;
+    
+    public void recordAdded(String bookId, LocalDateTime createdAt, int rating) {
+        apply(bookId, createdAt, () -> RatingSummaryService.ratingAdded(rating));
+    }
+    
+    public void recordChanged(String bookId, LocalDateTime createdAt, int oldRating, int newRating) {
+        if (oldRating == newRating) {
+            return;
+        }
+        apply(bookId, createdAt, () -> RatingSummaryService.ratingChanged(oldRating, newRating));
+    }
+    
+    public void recordRemoved(String bookId, LocalDateTime createdAt, int rating) {
+        apply(bookId, createdAt, () -> RatingSummaryService.ratingRemoved(rating));
+    }
+    
+    // Skupinski zapis: spremembe istega bucketa se seštejejo v en upsert
+    void recordBatch(List<RatingChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RatingTrendBucket.class);
+        for (String granularity : RatingTrendBucket.GRANULARITIES) {
+            Map<String, List<RatingChange>> byBucket = new LinkedHashMap<>();
+            for (RatingChange change : changes) {
+                LocalDate periodStart = RatingTrendBucket.periodStart(granularity, change.createdAt.toLocalDate());
+                byBucket.computeIfAbsent(RatingTrendBucket.id(change.bookId, granularity, periodStart),
+                    id -> new ArrayList<>()).add(change);
+            }
+            for (List<RatingChange> bucketChanges : byBucket.values()) {
+                RatingChange first = bucketChanges.get(0);
+                LocalDate periodStart = RatingTrendBucket.periodStart(granularity, first.createdAt.toLocalDate());
+                bulk.upsert(bucketQuery(first.bookId, granularity, periodStart),
+                    bucketUpdate(first.bookId, granularity, periodStart, RatingChange.combined(bucketChanges)));
+            }
+        }
+        bulk.execute();
+    }
+    
+    // Dnevni in tedenski bucket v enem bulk zapisu
+    private void apply(String bookId, LocalDateTime createdAt, Supplier<Update> change) {
+        if (reviewLog != null) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RatingTrendBucket.class);
+        for (String granularity : RatingTrendBucket.GRANULARITIES) {
+            LocalDate periodStart = RatingTrendBucket.periodStart(granularity, createdAt.toLocalDate());
+            bulk.upsert(bucketQuery(bookId, granularity, periodStart), bucketUpdate(bookId, granularity, periodStart, change.get()));
+        }
+        bulk.execute();
+    }
+    
+    public Map<String, Object> getTrend(String bookId, LocalDate from, LocalDate to, String granularity) {
+        TrendRange range = range(from, to, granularity);
+        List<RatingTrendBucket> buckets = reviewLog != null
+            ? reviewLog.trendBuckets(bookId, range.granularity, range.from, range.to)
+            : mongoTemplate.find(rangeQuery(bookId, range), RatingTrendBucket.class);
+        return toTrend(bookId, range, buckets);
+    }
+    
+    TrendRange range(LocalDate from, LocalDate to, String granularity) {
+        String unit = granularity == null ? RatingTrendBucket.GRANULARITY_DAY : granularity;
+        if (!RatingTrendBucket.GRANULARITIES.contains(unit)) {
+            throw ReviewServiceException.badRequest("Unknown granularity: " + granularity + " (expected day or week)");
+        }
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(defaultDays - 1L);
+        if (start.isAfter(end)) {
+            throw ReviewServiceException.badRequest("'from' must not be after 'to'");
+        }
+        
+        LocalDate firstPeriod = RatingTrendBucket.periodStart(unit, start);
+        LocalDate lastPeriod = RatingTrendBucket.periodStart(unit, end);
+        long periods = RatingTrendBucket.GRANULARITY_WEEK.equals(unit)
+            ? ChronoUnit.WEEKS.between(firstPeriod, lastPeriod) + 1
+            : ChronoUnit.DAYS.between(firstPeriod, lastPeriod) + 1;
+        if (periods > maxBuckets) {
+            throw ReviewServiceException.badRequest("Range covers " + periods + " " + unit + "s, at most " + maxBuckets + " are allowed");
+        }
+        return new TrendRange(unit, firstPeriod, lastPeriod);
+    }
+    
+    static Query bucketQuery(String bookId, String granularity, LocalDate periodStart) {
+        return query(where("_id").is(RatingTrendBucket.id(bookId, granularity, periodStart)));
+    }
+    
+    static Update bucketUpdate(String bookId, String granularity, LocalDate periodStart, Update change) {
+        return change
+            .setOnInsert("bookId", bookId)
+            .setOnInsert("granularity", granularity)
+            .setOnInsert("periodStart", periodStart);
+    }
+    
+    // Vsi bucketi knjige imajo _id s predpono "<bookId>|"; '}' je prvi znak za '|'
+    public static Query bookQuery(String bookId) {
+        return query(where("_id").gte(bookId + "|").lt(bookId + "}"));
+    }
+    
+    static Query rangeQuery(String bookId, TrendRange range) {
+        return query(where("_id")
+                .gte(RatingTrendBucket.id(bookId, range.granularity, range.from))
+                .lte(RatingTrendBucket.id(bookId, range.granularity, range.to)))
+            .with(Sort.by(Sort.Direction.ASC, "_id"));
+    }
+    
+    // Obdobja brez ocen se ne vrnejo
+    static Map<String, Object> toTrend(String bookId, TrendRange range, List<RatingTrendBucket> buckets) {
+        List<Map<String, Object>> points = new ArrayList<>();
+        for (RatingTrendBucket bucket : buckets) {
+            if (bucket.getCount() <= 0) {
+                continue;
+            }
+            Map<String, Object> point = new LinkedHashMap<>();
+            point.put("periodStart", bucket.getPeriodStart());
+            point.put("totalReviews", bucket.getCount());
+            point.put("averageRating", Math.round(bucket.getAverageRating() * 100.0) / 100.0);
+            point.put("ratingDistribution", bucket.getDistribution());
+            points.add(point);
+        }
+        
+        Map<String, Object> trend = new HashMap<>();
+        trend.put("bookId", bookId);
+        trend.put("granularity", range.granularity);
+        trend.put("from", range.from);
+        trend.put("to", range.to);
+        trend.put("buckets", points);
+        return trend;
+    }
+    
+    // Začetek prvega in zadnjega obdobja v razponu
+    static final class TrendRange {
+        private final String granularity;
+        private final LocalDate from;
+        private final LocalDate to;
+        
+        TrendRange(String granularity, LocalDate from, LocalDate to) {
+            this.granularity = granularity;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteError;
+import com.sua.ebook.reviewservice.admission.MongoLatencyTracker;
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.job.RatingSummaryRebuildJob;
+import com.sua.ebook.reviewservice.job.RatingTrendRebuildJob;
+import com.sua.ebook.reviewservice.model.Review;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Optional group commit for the one-tap rating endpoints (review.group-commit.enabled).
+ *
+ * Quick ratings and rating updates are queued and collected for up to `window` after the
+ * first one arrives, or until `max-batch` writes are waiting. The new ratings of a batch
+ * become one unordered bulkWrite on reviews. Each updated review gets one findAndModify that
+ * returns the document before the change, so the summary delta is taken from the rating it
+ * actually replaced, even when a concurrent write changed it after it was read. The batch
+ * then ends with one bulk upsert each for rating summaries and trend buckets. Callers wait
+ * on a future that completes once their write is in the batch result.
+ *
+ * Writes are coalesced within a batch: a second quick rating for the same (bookId, userId)
+ * gets 409 as it would from the unique index, and several updates of the same review become
+ * one update with the last rating. Durability versus latency is set by the window and by the
+ * bulk write concern (`write-concern`, e.g. acknowledged, journaled or majority).
+ *
+ * The summary and trend upserts follow the review bulkWrite. If they fail, the ratings are
+ * already stored and the callers still get their review. The books of the batch are then
+ * recomputed from their reviews every `reconcile-interval` until that succeeds, because
+ * repeating a partly applied $inc would count some ratings twice.
+ */
+@Component
+public class RatingWriteBuffer {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RatingWriteBuffer.class);
+    
+    private static final int DUPLICATE_KEY = 11000;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private MongoDatabaseFactory mongoDatabaseFactory;
+    
+    @Autowired
+    private RatingSummaryService ratingSummaryService;
+    
+    @Autowired
+    private RatingTrendService ratingTrendService;
+    
+    @Autowired
+    private RatingSummaryRebuildJob ratingSummaryRebuildJob;
+    
+    @Autowired
+    private RatingTrendRebuildJob ratingTrendRebuildJob;
+    
+    @Autowired
+    private BookReviewCache bookReviewCache;
+    
+    @Autowired
+    private ReadCoalescer readCoalescer;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private MongoLatencyTracker mongoLatencyTracker;
+    
+    @Value("${review.group-commit.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${review.group-commit.window:5ms}")
+    private Duration window;
+    
+    @Value("${review.group-commit.max-batch:500}")
+    private int maxBatch;
+    
+    @Value("${review.group-commit.queue-capacity:10000}")
+    private int queueCapacity;
+    
+    @Value("${review.group-commit.write-concern:acknowledged}")
+    private String writeConcern;
+    
+    private BlockingQueue<PendingWrite> queue;
+    private MongoTemplate bulkTemplate;
+    private Thread flusher;
+    private volatile boolean running;
+    
+    // Knjige, katerih povzetek ali trend ni bil posodobljen skupaj z ocenami
+    private final Set<String> unreconciled = ConcurrentHashMap.newKeySet();
+    
+    private DistributionSummary batchSizes;
+    private Timer flushTimer;
+    private Counter coalesced;
+    
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        WriteConcern concern = WriteConcern.valueOf(writeConcern);
+        // Brez potrditve ne bi izvedeli za podvojene ocene
+        if (concern == null || !concern.isAcknowledged()) {
+            throw new IllegalArgumentException("review.group-commit.write-concern must be an acknowledged write concern: " + writeConcern);
+        }
+        bulkTemplate = new MongoTemplate(mongoDatabaseFactory, mongoTemplate.getConverter());
+        bulkTemplate.setWriteConcern(concern);
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        
+        batchSizes = DistributionSummary.builder("review.group_commit.batch_size")
+            .description("Rating writes per batch")
+            .register(meterRegistry);
+        flushTimer = Timer.builder("review.group_commit.flush")
+            .description("Time to write one batch (bulkWrite, summaries, trends)")
+            .register(meterRegistry);
+        coalesced = Counter.builder("review.group_commit.coalesced")
+            .description("Rating writes merged into another write of the same batch")
+            .register(meterRegistry);
+        Gauge.builder("review.group_commit.queue_depth", queue, BlockingQueue::size)
+            .description("Rating writes waiting for the next batch")
+            .register(meterRegistry);
+        Gauge.builder("review.group_commit.unreconciled_books", unreconciled, Set::size)
+            .description("Books whose summary or trend update failed and that wait for a recompute")
+            .register(meterRegistry);
+        
+        running = true;
+        flusher = new Thread(this::run, "rating-group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+        logger.info("Rating group commit enabled: window {} ms, max batch {}, write concern {}",
+            window.toMillis(), maxBatch, writeConcern);
+    }
+    
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        // Zanka izprazni vrsto, preden se ustavi
+        running = false;
+        flusher.join(Duration.ofSeconds(10).toMillis());
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public CompletableFuture<Review> submitCreate(Review review) {
+        return submit(new PendingWrite(review, null, 0, review.getUserId()));
+    }
+    
+    public CompletableFuture<Review> submitRatingUpdate(String reviewId, int rating, String userId) {
+        return submit(new PendingWrite(null, reviewId, rating, userId));
+    }
+    
+    // Sinhroni klicatelji (servlet) čakajo na flush; napaka iz flusha se vrže nespremenjena
+    public static Review await(CompletableFuture<Review> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+    
+    private CompletableFuture<Review> submit(PendingWrite write) {
+        if (!running || !queue.offer(write)) {
+            write.result.completeExceptionally(
+                ReviewServiceException.serviceUnavailable("Rating write queue is full, retry later"));
+        }
+        return write.result;
+    }
+    
+    private void run() {
+        // Paketi so zapisi zahtev, ki čakajo nanje, zato štejejo v latenco zahtev
+        mongoLatencyTracker.enterRequest();
+        while (running || !queue.isEmpty()) {
+            List<PendingWrite> batch = new ArrayList<>();
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + window.toNanos();
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                batchSizes.record(batch.size());
+                flushTimer.record(() -> flush(batch));
+            } catch (RuntimeException e) {
+                logger.error("Rating batch of {} writes failed: {}", batch.size(), e.getMessage());
+                for (PendingWrite write : batch) {
+                    write.result.completeExceptionally(e);
+                }
+            }
+        }
+    }
+    
+    private void flush(List<PendingWrite> batch) {
+        Map<List<String>, PendingWrite> creates = new LinkedHashMap<>();
+        Map<String, List<PendingWrite>> updates = new LinkedHashMap<>();
+        for (PendingWrite write : batch) {
+            if (write.review != null) {
+                List<String> key = List.of(write.review.getBookId(), write.review.getUserId());
+                if (creates.putIfAbsent(key, write) != null) {
+                    coalesced.increment();
+                    write.result.completeExceptionally(ReviewServiceException.conflict("User has already reviewed this book"));
+                }
+            } else {
+                updates.computeIfAbsent(write.reviewId, id -> new ArrayList<>()).add(write);
+            }
+        }
+        
+        // Lastnika vseh posodobljenih recenzij v eni $in poizvedbi; userId se ne spreminja
+        Map<String, Review> existing = new HashMap<>();
+        if (!updates.isEmpty()) {
+            for (Review review : mongoTemplate.find(query(where("_id").in(updates.keySet())), Review.class)) {
+                existing.put(review.getId(), review);
+            }
+        }
+        
+        List<BatchedWrite> written = new ArrayList<>();
+        if (!creates.isEmpty()) {
+            written.addAll(insertAll(creates.values()));
+        }
+        LocalDateTime now = LocalDateTime.now();
+        updates.forEach((reviewId, requests) -> {
+            Review review = existing.get(reviewId);
+            List<PendingWrite> owned = new ArrayList<>();
+            for (PendingWrite request : requests) {
+                if (review == null) {
+                    request.result.completeExceptionally(ReviewServiceException.notFound("Review not found"));
+                } else if (!review.getUserId().equals(request.userId)) {
+                    request.result.completeExceptionally(ReviewServiceException.unauthorized("You can only update your own reviews"));
+                } else {
+                    owned.add(request);
+                }
+            }
+            if (owned.isEmpty()) {
+                return;
+            }
+            coalesced.increment(owned.size() - 1);
+            BatchedWrite update = updateRating(reviewId, owned.get(owned.size() - 1).rating, now, owned);
+            if (update != null) {
+                written.add(update);
+            }
+        });
+        if (written.isEmpty()) {
+            return;
+        }
+        
+        List<RatingChange> changes = new ArrayList<>();
+        Set<String> books = new LinkedHashSet<>();
+        for (BatchedWrite write : written) {
+            books.add(write.review.getBookId());
+            if (write.oldRating == null) {
+                changes.add(RatingChange.added(write.review));
+            } else if (write.oldRating != write.review.getRating().intValue()) {
+                changes.add(RatingChange.changed(write.review, write.oldRating));
+            }
+        }
+        
+        try {
+            ratingSummaryService.recordBatch(changes);
+            ratingTrendService.recordBatch(changes);
+        } catch (RuntimeException e) {
+            // Ocene so že zapisane. Ponovljen $inc bi del paketa štel dvakrat, zato se knjige preračunajo
+            logger.error("Failed to update rating summaries for {} rating writes, {} books marked for reconciliation: {}",
+                changes.size(), books.size(), e.getMessage());
+            unreconciled.addAll(books);
+        }
+        books.forEach(bookReviewCache::bump);
+        for (BatchedWrite write : written) {
+            readCoalescer.written(write.review.getBookId(), write.review.getUserId());
+            write.requests.forEach(request -> request.result.complete(write.review));
+        }
+    }
+    
+    // Nove ocene paketa v enem neurejenem bulkWrite; podvojene dobijo 409
+    private List<BatchedWrite> insertAll(Collection<PendingWrite> creates) {
+        BulkOperations bulk = bulkTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Review.class);
+        List<BatchedWrite> writes = new ArrayList<>();
+        for (PendingWrite create : creates) {
+            create.review.setId(new ObjectId().toHexString());
+            bulk.insert(create.review);
+            writes.add(new BatchedWrite(create.review, null, List.of(create)));
+        }
+        
+        // Indeks napake je položaj operacije v bulk zapisu, torej v writes
+        Map<Integer, BulkWriteError> errors = new HashMap<>();
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                errors.put(error.getIndex(), error);
+            }
+        }
+        
+        List<BatchedWrite> written = new ArrayList<>();
+        for (int i = 0; i < writes.size(); i++) {
+            BatchedWrite write = writes.get(i);
+            BulkWriteError error = errors.get(i);
+            if (error == null) {
+                written.add(write);
+                continue;
+            }
+            RuntimeException failure = error.getCode() == DUPLICATE_KEY
+                ? ReviewServiceException.conflict("User has already reviewed this book")
+                : new IllegalStateException("Rating write failed: " + error.getMessage());
+            write.requests.forEach(request -> request.result.completeExceptionally(failure));
+        }
+        return written;
+    }
+    
+    /*
+     * Zadnja ocena združenih zahtev z enim findAndModify, ki vrne dokument pred spremembo.
+     * Razlika za povzetek je tako vedno glede na oceno, ki jo je ta zapis dejansko zamenjal,
+     * tudi če jo je vmes spremenil drug zahtevek. Vrne null, če recenzije ni več.
+     */
+    private BatchedWrite updateRating(String reviewId, int rating, LocalDateTime now, List<PendingWrite> requests) {
+        Review previous;
+        try {
+            previous = bulkTemplate.findAndModify(query(where("_id").is(reviewId)),
+                new Update().set("rating", rating).set("updatedAt", now),
+                FindAndModifyOptions.options().returnNew(false), Review.class);
+        } catch (RuntimeException e) {
+            RuntimeException failure = new IllegalStateException("Rating write failed: " + e.getMessage(), e);
+            requests.forEach(request -> request.result.completeExceptionally(failure));
+            return null;
+        }
+        if (previous == null) {
+            requests.forEach(request -> request.result.completeExceptionally(ReviewServiceException.notFound("Review not found")));
+            return null;
+        }
+        int oldRating = previous.getRating();
+        previous.setRating(rating);
+        previous.setUpdatedAt(now);
+        return new BatchedWrite(previous, oldRating, requests);
+    }
+    
+    // Preračuna povzetke in trende knjig, pri katerih je skupinski zapis uspel le za ocene
+    @Scheduled(fixedDelayString = "${review.group-commit.reconcile-interval:5000}")
+    public void reconcile() {
+        for (String bookId : unreconciled) {
+            try {
+                if (ratingSummaryRebuildJob.rebuildBook(bookId) && ratingTrendRebuildJob.rebuildBook(bookId)) {
+                    unreconciled.remove(bookId);
+                    bookReviewCache.bump(bookId);
+                    readCoalescer.written(bookId, null);
+                }
+            } catch (RuntimeException e) {
+                // Ostane v množici za naslednji poskus
+                logger.warn("Reconciliation of rating summary of book {} failed: {}", bookId, e.getMessage());
+            }
+        }
+    }
+    
+    // Zahteva v vrsti: nova ocena (review) ali sprememba ocene obstoječe recenzije (reviewId)
+    private static final class PendingWrite {
+        private final Review review;
+        private final String reviewId;
+        private final int rating;
+        private final String userId;
+        private final CompletableFuture<Review> result = new CompletableFuture<>();
+        
+        private PendingWrite(Review review, String reviewId, int rating, String userId) {
+            this.review = review;
+            this.reviewId = reviewId;
+            this.rating = rating;
+            this.userId = userId;
+        }
+    }
+    
+    // En zapis paketa (vstavljanje ali sprememba ocene) in vse zahteve, ki so se vanj združile
+    private static final class BatchedWrite {
+        private final Review review;
+        private final Integer oldRating;
+        private final List<PendingWrite> requests;
+        
+        private BatchedWrite(Review review, Integer oldRating, List<PendingWrite> requests) {
+            this.review = review;
+            this.oldRating = oldRating;
+            this.requests = requests;
+        }
+    }
+}
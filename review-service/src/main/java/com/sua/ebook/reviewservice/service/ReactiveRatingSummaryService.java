@@ -0,0 +1,63 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.sua.ebook.reviewservice.model.BookRatingSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+// Enake atomarne $inc posodobitve kot RatingSummaryService, le prek reaktivnega gonilnika
+@Service
+public class ReactiveRatingSummaryService {
+    
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    
+    @Autowired
+    private BookLeaderboard leaderboard;
+    
+    public Mono<BookRatingSummary> getSummary(String bookId) {
+        return reactiveMongoTemplate.findById(bookId, BookRatingSummary.class)
+            .defaultIfEmpty(new BookRatingSummary(bookId));
+    }
+    
+    public Mono<Map<String, BookRatingSummary>> getSummaries(Collection<String> bookIds) {
+        return reactiveMongoTemplate.find(query(where("_id").in(bookIds)), BookRatingSummary.class)
+            .collectMap(BookRatingSummary::getBookId)
+            .map(summaries -> {
+                for (String bookId : bookIds) {
+                    summaries.computeIfAbsent(bookId, BookRatingSummary::new);
+                }
+                return summaries;
+            });
+    }
+    
+    public Mono<Void> recordAdded(String bookId, int rating) {
+        return apply(bookId, RatingSummaryService.ratingAdded(rating))
+            .doOnSuccess(done -> leaderboard.recordAdded(bookId, rating));
+    }
+    
+    public Mono<Void> recordChanged(String bookId, int oldRating, int newRating) {
+        if (oldRating == newRating) {
+            return Mono.empty();
+        }
+        return apply(bookId, RatingSummaryService.ratingChanged(oldRating, newRating))
+            .doOnSuccess(done -> leaderboard.recordChanged(bookId, oldRating, newRating));
+    }
+    
+    public Mono<Void> recordRemoved(String bookId, int rating) {
+        return apply(bookId, RatingSummaryService.ratingRemoved(rating))
+            .doOnSuccess(done -> leaderboard.recordRemoved(bookId, rating));
+    }
+    
+    private Mono<Void> apply(String bookId, Update update) {
+        return reactiveMongoTemplate.upsert(query(where("_id").is(bookId)), update, BookRatingSummary.class).then();
+    }
+}
@@ -0,0 +1,60 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.sua.ebook.reviewservice.model.RatingTrendBucket;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Enaki bucketi kot RatingTrendService, le prek reaktivnega gonilnika
+@Service
+public class ReactiveRatingTrendService {
+    
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    
+    @Autowired
+    private RatingTrendService ratingTrends;
+    
+    public Mono<Void> recordAdded(String bookId, LocalDateTime createdAt, int rating) {
+        return apply(bookId, createdAt, () -> RatingSummaryService.ratingAdded(rating));
+    }
+    
+    public Mono<Void> recordChanged(String bookId, LocalDateTime createdAt, int oldRating, int newRating) {
+        if (oldRating == newRating) {
+            return Mono.empty();
+        }
+        return apply(bookId, createdAt, () -> RatingSummaryService.ratingChanged(oldRating, newRating));
+    }
+    
+    public Mono<Void> recordRemoved(String bookId, LocalDateTime createdAt, int rating) {
+        return apply(bookId, createdAt, () -> RatingSummaryService.ratingRemoved(rating));
+    }
+    
+    private Mono<Void> apply(String bookId, LocalDateTime createdAt, Supplier<Update> change) {
+        ReactiveBulkOperations bulk = reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RatingTrendBucket.class);
+        for (String granularity : RatingTrendBucket.GRANULARITIES) {
+            LocalDate periodStart = RatingTrendBucket.periodStart(granularity, createdAt.toLocalDate());
+            bulk.upsert(RatingTrendService.bucketQuery(bookId, granularity, periodStart),
+                RatingTrendService.bucketUpdate(bookId, granularity, periodStart, change.get()));
+        }
+        return bulk.execute().then();
+    }
+    
+    public Mono<Map<String, Object>> getTrend(String bookId, LocalDate from, LocalDate to, String granularity) {
+        return Mono.defer(() -> {
+            RatingTrendService.TrendRange range = ratingTrends.range(from, to, granularity);
+            return reactiveMongoTemplate.find(RatingTrendService.rangeQuery(bookId, range), RatingTrendBucket.class)
+                .collectList()
+                .map(buckets -> RatingTrendService.toTrend(bookId, range, buckets));
+        });
+    }
+}
@@ -0,0 +1,313 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.sua.ebook.reviewservice.dto.QuickRatingDTO;
+import com.sua.ebook.reviewservice.dto.ReviewCreateDTO;
+import com.sua.ebook.reviewservice.dto.ReviewCursor;
+import com.sua.ebook.reviewservice.dto.ReviewFields;
+import com.sua.ebook.reviewservice.dto.ReviewPage;
+import com.sua.ebook.reviewservice.dto.ReviewSearchCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchHit;
+import com.sua.ebook.reviewservice.dto.ReviewUpdateDTO;
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.job.BookReviewDeletionJob;
+import com.sua.ebook.reviewservice.job.RatingSummaryRebuildJob;
+import com.sua.ebook.reviewservice.job.RatingTrendRebuildJob;
+import com.sua.ebook.reviewservice.model.Review;
+import com.sua.ebook.reviewservice.repository.ReactiveReviewRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+// Reaktivna različica ReviewService z enakimi pravili; uporablja se samo v WebFlux načinu
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveReviewService {
+    
+    @Autowired
+    private ReactiveReviewRepository reviewRepository;
+    
+    @Autowired
+    private ReactiveRatingSummaryService ratingSummaryService;
+    
+    @Autowired
+    private ReactiveRatingTrendService ratingTrendService;
+    
+    @Autowired
+    private RatingSummaryService ratingSummaries;
+    
+    @Autowired
+    private RatingSummaryRebuildJob ratingSummaryRebuildJob;
+    
+    @Autowired
+    private RatingTrendRebuildJob ratingTrendRebuildJob;
+    
+    @Autowired
+    private BookReviewDeletionJob bookReviewDeletionJob;
+    
+    @Autowired
+    private ReviewIdempotency reviewIdempotency;
+    
+    @Autowired
+    private ReviewQueryLimits limits;
+    
+    @Autowired
+    private ReviewEventOutbox reviewEventOutbox;
+    
+    @Autowired
+    private RatingWriteBuffer ratingWriteBuffer;
+    
+    @Autowired
+    private ReadCoalescer readCoalescer;
+    
+    @Autowired
+    private BookReviewCache bookReviewCache;
+    
+    @Value("${review.export.batch-size:500}")
+    private int exportBatchSize;
+    
+    public Mono<ReviewPage<Review>> getAllReviews(String cursor, Integer limit, ReviewFields fields) {
+        return findPage(null, null, cursor, limit, fields);
+    }
+    
+    public Mono<ReviewPage<Review>> getReviewsByBookId(String bookId, String cursor, Integer limit, ReviewFields fields) {
+        return findPage(bookId, null, cursor, limit, fields);
+    }
+    
+    // Različica za ETag strani; enaka kot v ReviewService
+    public String bookPageVariant(String cursor, Integer limit, ReviewFields fields) {
+        return BookReviewCache.pageVariant(limits.pageSize(limit), fields, cursor);
+    }
+    
+    public Mono<ReviewPage<Review>> getReviewsByUserId(String userId, String cursor, Integer limit, ReviewFields fields) {
+        return findPage(null, userId, cursor, limit, fields);
+    }
+    
+    public Mono<ReviewPage<ReviewSearchHit>> searchReviews(String q, String bookId, Integer rating, String cursor, Integer limit) {
+        return Mono.defer(() -> {
+            String text = limits.searchText(q);
+            int pageSize = limits.pageSize(limit);
+            return reviewRepository.search(text, bookId, limits.ratingFilter(rating), ReviewSearchCursor.decode(cursor), pageSize + 1)
+                .collectList()
+                .map(hits -> ReviewPage.fromOverfetch(hits, pageSize, ReviewSearchCursor::encodeAfter));
+        });
+    }
+    
+    private Mono<ReviewPage<Review>> findPage(String bookId, String userId, String cursor, Integer limit, ReviewFields fields) {
+        return Mono.defer(() -> {
+            int pageSize = limits.pageSize(limit);
+            List<?> args = Arrays.asList(cursor, pageSize, fields != null ? fields.key() : null);
+            return readCoalescer.executeReactive("page", bookId, userId, args,
+                () -> reviewRepository.findPage(bookId, userId, ReviewCursor.decode(cursor), pageSize + 1,
+                        ReviewFields.projectionOf(fields))
+                    .collectList()
+                    .map(reviews -> ReviewPage.fromOverfetch(reviews, pageSize, ReviewCursor::encodeAfter)));
+        });
+    }
+    
+    public Flux<Review> exportReviews(LocalDateTime since, String userRole) {
+        if (!"admin".equals(userRole)) {
+            return Flux.error(ReviewServiceException.unauthorized("Only admins can export reviews"));
+        }
+        return reviewRepository.streamUpdatedSince(since, exportBatchSize);
+    }
+    
+    public Mono<Review> createReview(ReviewCreateDTO reviewCreateDTO, String userId) {
+        Review review = new Review();
+        review.setBookId(reviewCreateDTO.getBookId());
+        review.setUserId(userId);
+        review.setRating(reviewCreateDTO.getRating());
+        review.setReviewText(reviewCreateDTO.getReviewText());
+        review.setCreatedAt(LocalDateTime.now());
+        review.setUpdatedAt(LocalDateTime.now());
+        reviewEventOutbox.markPending(review);
+        
+        return insertReview(review);
+    }
+    
+    public Mono<Review> createQuickRating(String bookId, QuickRatingDTO quickRatingDTO, String userId) {
+        Review review = new Review();
+        review.setBookId(bookId);
+        review.setUserId(userId);
+        review.setRating(quickRatingDTO.getRating());
+        review.setCreatedAt(LocalDateTime.now());
+        review.setUpdatedAt(LocalDateTime.now());
+        reviewEventOutbox.markPending(review);
+        
+        // Skupinski zapis teče na svoji niti z blokirnim MongoTemplate, event loop le čaka na future
+        if (ratingWriteBuffer.isEnabled()) {
+            return Mono.fromFuture(() -> ratingWriteBuffer.submitCreate(review));
+        }
+        return insertReview(review);
+    }
+    
+    private Mono<Review> insertReview(Review review) {
+        return reviewRepository.insert(review)
+            .onErrorMap(DuplicateKeyException.class,
+                e -> ReviewServiceException.conflict("User has already reviewed this book"))
+            .flatMap(saved -> ratingSummaryService.recordAdded(saved.getBookId(), saved.getRating())
+                .then(ratingTrendService.recordAdded(saved.getBookId(), saved.getCreatedAt(), saved.getRating()))
+                .thenReturn(saved))
+            .doOnNext(saved -> written(saved));
+    }
+    
+    public Mono<Review> updateReview(String reviewId, ReviewUpdateDTO reviewUpdateDTO, String userId) {
+        return findOwnReview(reviewId, userId).flatMap(review -> {
+            int oldRating = review.getRating();
+            if (reviewUpdateDTO.getRating() != null) {
+                review.setRating(reviewUpdateDTO.getRating());
+            }
+            if (reviewUpdateDTO.getReviewText() != null) {
+                review.setReviewText(reviewUpdateDTO.getReviewText());
+            }
+            review.setUpdatedAt(LocalDateTime.now());
+            
+            return saveChanged(review, oldRating);
+        });
+    }
+    
+    public Mono<Review> updateRating(String reviewId, QuickRatingDTO ratingDTO, String userId) {
+        if (ratingWriteBuffer.isEnabled()) {
+            return Mono.fromFuture(() -> ratingWriteBuffer.submitRatingUpdate(reviewId, ratingDTO.getRating(), userId));
+        }
+        return findOwnReview(reviewId, userId).flatMap(review -> {
+            int oldRating = review.getRating();
+            review.setRating(ratingDTO.getRating());
+            review.setUpdatedAt(LocalDateTime.now());
+            
+            return saveChanged(review, oldRating);
+        });
+    }
+    
+    private Mono<Review> findOwnReview(String reviewId, String userId) {
+        return findReview(reviewId).flatMap(review -> {
+            if (!review.getUserId().equals(userId)) {
+                return Mono.error(ReviewServiceException.unauthorized("You can only update your own reviews"));
+            }
+            return Mono.just(review);
+        });
+    }
+    
+    private Mono<Review> findReview(String reviewId) {
+        return reviewRepository.findById(reviewId)
+            .switchIfEmpty(Mono.error(() -> ReviewServiceException.notFound("Review not found")));
+    }
+    
+    private Mono<Review> saveChanged(Review review, int oldRating) {
+        return reviewRepository.save(review)
+            .flatMap(saved -> ratingSummaryService.recordChanged(saved.getBookId(), oldRating, saved.getRating())
+                .then(ratingTrendService.recordChanged(saved.getBookId(), saved.getCreatedAt(), oldRating, saved.getRating()))
+                .thenReturn(saved))
+            .doOnNext(saved -> written(saved));
+    }
+    
+    public Mono<Void> deleteReview(String reviewId, String userId, String userRole) {
+        return findReview(reviewId).flatMap(review -> {
+            if (!review.getUserId().equals(userId) && !"admin".equals(userRole)) {
+                return Mono.error(ReviewServiceException.unauthorized("You can only delete your own reviews"));
+            }
+            return reviewRepository.delete(review)
+                .then(ratingSummaryService.recordRemoved(review.getBookId(), review.getRating()))
+                .then(ratingTrendService.recordRemoved(review.getBookId(), review.getCreatedAt(), review.getRating()))
+                .then(Mono.fromRunnable(() -> written(review)));
+        });
+    }
+    
+    // Enako kot ReviewService: nova verzija knjige spremeni ETag, ReadCoalescer ne pridruži starih branj
+    private void written(Review review) {
+        bookReviewCache.bump(review.getBookId());
+        readCoalescer.written(review.getBookId(), review.getUserId());
+    }
+    
+    // ReviewIdempotency je blokirna (Mongo, čakanje na sočasni original), zato zahteve s ključem tečejo na boundedElastic
+    public Mono<ReviewIdempotency.Result> idempotent(String userId, String key, String operation, String request,
+            Supplier<Mono<Review>> write) {
+        if (key == null) {
+            return write.get().map(review -> new ReviewIdempotency.Result(review, false));
+        }
+        return Mono.fromCallable(() -> reviewIdempotency.execute(userId, key, operation, request, () -> write.get().block()))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    // Brisanje teče v ozadju (BookReviewDeletionJob); vrne stanje posla
+    public Mono<Map<String, Object>> deleteAllReviewsForBook(String bookId, String userRole) {
+        if (!"admin".equals(userRole)) {
+            return Mono.error(ReviewServiceException.unauthorized("Only admins can delete all reviews for a book"));
+        }
+        
+        return Mono.fromCallable(() -> BookReviewDeletionJob.status(bookReviewDeletionJob.submit(bookId)))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    public Mono<Map<String, Object>> getBookDeletionJob(String jobId, String userRole) {
+        if (!"admin".equals(userRole)) {
+            return Mono.error(ReviewServiceException.unauthorized("Only admins can view deletion jobs"));
+        }
+        
+        return Mono.fromCallable(() -> BookReviewDeletionJob.status(bookReviewDeletionJob.find(jobId)))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    public Mono<Map<String, Object>> getBookReviewStats(String bookId) {
+        return readCoalescer.executeReactive("stats", bookId, null, List.of(), () -> ratingSummaryService.getSummary(bookId))
+            .map(ratingSummaries::toStats);
+    }
+    
+    public Mono<Map<String, Object>> getBookRatingTrend(String bookId, LocalDate from, LocalDate to, String granularity) {
+        return readCoalescer.executeReactive("trend", bookId, null, Arrays.asList(from, to, granularity),
+            () -> ratingTrendService.getTrend(bookId, from, to, granularity));
+    }
+    
+    public Mono<Map<String, Map<String, Object>>> getBookReviewStatsBatch(List<String> bookIds) {
+        return Mono.defer(() -> {
+            Set<String> ids = limits.batchBookIds(bookIds);
+            return ratingSummaryService.getSummaries(ids).map(summaries -> {
+                Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+                for (String bookId : ids) {
+                    stats.put(bookId, ratingSummaries.toStats(summaries.get(bookId)));
+                }
+                return stats;
+            });
+        });
+    }
+    
+    public Mono<Map<String, List<Review>>> getReviewsByBookIds(List<String> bookIds, Integer limit) {
+        return Mono.defer(() -> {
+            Set<String> ids = limits.batchBookIds(bookIds);
+            int perBook = limits.reviewsPerBook(limit);
+            return reviewRepository.findLatestByBookIds(ids, perBook).map(found -> {
+                Map<String, List<Review>> reviews = new LinkedHashMap<>();
+                for (String bookId : ids) {
+                    reviews.put(bookId, found.getOrDefault(bookId, List.of()));
+                }
+                return reviews;
+            });
+        });
+    }
+    
+    public Mono<Map<String, Object>> rebuildRatingSummaries(String userRole) {
+        if (!"admin".equals(userRole)) {
+            return Mono.error(ReviewServiceException.unauthorized("Only admins can rebuild rating summaries"));
+        }
+        
+        // Popravilo je dolgotrajna blokirna agregacija, zato ne sme teči na event loop niti
+        return Mono.fromCallable(() -> {
+            Map<String, Object> result = ratingSummaryRebuildJob.rebuild();
+            result.put("trends", ratingTrendRebuildJob.rebuild());
+            return result;
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+}
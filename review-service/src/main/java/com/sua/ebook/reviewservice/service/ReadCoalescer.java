@@ -0,0 +1,253 @@
+package com.sua.ebook.reviewservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for ReviewService reads (review pages, stats and trends).
+ * <p>
+ * Concurrent callers asking for the same read share one repository call and its result.
+ * A read is identified by its operation, book or user, and remaining arguments. Calls in
+ * flight are kept in review.coalescing.stripes stripes, each with its own lock and map.
+ * The stripe is chosen by the book (or user) of the read, so unrelated books rarely
+ * contend. The lock is held only to look up or register a call, never during the read.
+ * <p>
+ * A write calls written(bookId, userId), which advances the generation of the stripes of
+ * that book, that user and the unfiltered listing. Reads started before the write are no
+ * longer joined, so a client that has written always sees its write. Shared results must
+ * not be modified by the callers.
+ */
+@Component
+public class ReadCoalescer {
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${review.coalescing.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${review.coalescing.stripes:64}")
+    private int stripeCount;
+    
+    private Stripe[] stripes;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    void init() {
+        // Potenca števila 2, da je izbira traku le maska
+        int size = 1;
+        while (size < stripeCount) {
+            size <<= 1;
+        }
+        stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        Gauge.builder("review.coalescing.in_flight", inFlight, AtomicInteger::get)
+            .description("Coalesced reads currently running")
+            .register(meterRegistry);
+    }
+    
+    public <T> T execute(String operation, String bookId, String userId, List<?> args, Supplier<T> read) {
+        if (!enabled) {
+            return read.get();
+        }
+        Key key = new Key(operation, bookId, userId, args);
+        Stripe stripe = stripeOf(key.scope);
+        Flight mine = new Flight();
+        Flight flight = join(stripe, key, mine);
+        if (flight != mine) {
+            return await(flight);
+        }
+        try {
+            T result = read.get();
+            mine.future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            finish(stripe, key, mine);
+        }
+    }
+    
+    public <T> Mono<T> executeReactive(String operation, String bookId, String userId, List<?> args,
+                                       Supplier<Mono<T>> read) {
+        if (!enabled) {
+            return Mono.defer(read);
+        }
+        return Mono.defer(() -> {
+            Key key = new Key(operation, bookId, userId, args);
+            Stripe stripe = stripeOf(key.scope);
+            Flight mine = new Flight();
+            Flight flight = join(stripe, key, mine);
+            if (flight != mine) {
+                return Mono.fromFuture(flight.<T>future(), true);
+            }
+            CompletableFuture<T> result;
+            try {
+                // Poizvedba teče do konca, tudi če vodilni odjemalec prekine zahtevo, ker nanjo čakajo še drugi
+                result = read.get().toFuture();
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+            result.whenComplete((value, error) -> {
+                if (error != null) {
+                    mine.future.completeExceptionally(error);
+                } else {
+                    mine.future.complete(value);
+                }
+                finish(stripe, key, mine);
+            });
+            return Mono.fromFuture(mine.<T>future(), true);
+        });
+    }
+    
+    // Klicati po zapisu v bazo, preden odgovor doseže odjemalca
+    public void written(String bookId, String userId) {
+        if (!enabled) {
+            return;
+        }
+        advance(stripeOf(scope(bookId, null)));
+        if (userId != null) {
+            advance(stripeOf(scope(null, userId)));
+        }
+        advance(stripeOf(scope(null, null)));
+    }
+    
+    // Vrne tekoči klic iste generacije ali mine, ki ga registrira kot nov klic
+    private Flight join(Stripe stripe, Key key, Flight mine) {
+        stripe.lock.lock();
+        try {
+            Flight running = stripe.flights.get(key);
+            if (running != null && running.generation == stripe.generation) {
+                counter(key.operation, "coalesced").increment();
+                return running;
+            }
+            mine.generation = stripe.generation;
+            stripe.flights.put(key, mine);
+        } finally {
+            stripe.lock.unlock();
+        }
+        counter(key.operation, "executed").increment();
+        inFlight.incrementAndGet();
+        return mine;
+    }
+    
+    private void finish(Stripe stripe, Key key, Flight flight) {
+        stripe.lock.lock();
+        try {
+            stripe.flights.remove(key, flight);
+        } finally {
+            stripe.lock.unlock();
+        }
+        inFlight.decrementAndGet();
+    }
+    
+    private void advance(Stripe stripe) {
+        stripe.lock.lock();
+        try {
+            stripe.generation++;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> T await(Flight flight) {
+        try {
+            return (T) flight.future.join();
+        } catch (CompletionException e) {
+            // Enak izid kot vodilni klic, npr. 400 za neveljaven kazalec
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+    
+    private Counter counter(String operation, String outcome) {
+        return counters.computeIfAbsent(operation + ":" + outcome, name -> Counter.builder("review.coalescing.calls")
+            .description("Reads executed against the repository or coalesced into a running one")
+            .tag("operation", operation)
+            .tag("outcome", outcome)
+            .register(meterRegistry));
+    }
+    
+    private Stripe stripeOf(String scope) {
+        int hash = scope.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+    
+    private static String scope(String bookId, String userId) {
+        if (bookId != null) {
+            return "book:" + bookId;
+        }
+        return userId != null ? "user:" + userId : "*";
+    }
+    
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<Key, Flight> flights = new HashMap<>();
+        private long generation;
+    }
+    
+    private static final class Flight {
+        private long generation;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        
+        @SuppressWarnings("unchecked")
+        <T> CompletableFuture<T> future() {
+            return (CompletableFuture<T>) (CompletableFuture<?>) future;
+        }
+    }
+    
+    private static final class Key {
+        private final String operation;
+        private final String scope;
+        private final List<?> args;
+        
+        Key(String operation, String bookId, String userId, List<?> args) {
+            this.operation = operation;
+            this.scope = scope(bookId, userId);
+            this.args = args;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key other)) {
+                return false;
+            }
+            return operation.equals(other.operation) && scope.equals(other.scope) && args.equals(other.args);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(operation, scope, args);
+        }
+    }
+}
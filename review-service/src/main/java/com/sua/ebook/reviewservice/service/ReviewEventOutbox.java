@@ -0,0 +1,31 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.sua.ebook.reviewservice.model.Review;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Marks new reviews whose REVIEW_CREATED event still has to be written to the
+ * review_events outbox. The flag (eventPending) is part of the review document, so it is
+ * stored by the same insert as the review and cannot be lost separately from it.
+ * ReviewEventDispatcher turns flagged reviews into outbox events and clears the flag, then
+ * delivers the events. A slow or unavailable receiver never affects review writes.
+ * Without a configured review.events.url no reviews are flagged.
+ */
+@Service
+public class ReviewEventOutbox {
+    
+    @Value("${review.events.url:}")
+    private String url;
+    
+    public boolean isEnabled() {
+        return url != null && !url.isBlank();
+    }
+    
+    // Klicati pred vstavljanjem recenzije
+    public void markPending(Review review) {
+        if (isEnabled()) {
+            review.setEventPending(true);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.model.Review;
+import com.sua.ebook.reviewservice.repository.ReviewRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+@Service
+public class ReviewExportService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ReviewExportService.class);
+    
+    @Autowired
+    private ReviewRepository reviewRepository;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${review.export.batch-size:500}")
+    private int batchSize;
+    
+    @Value("${review.export.flush-every:100}")
+    private int flushEvery;
+    
+    // Izvoz vseh recenzij je interni vmesnik, enako kot rebuild in rebalance
+    public void checkAccess(String userRole) {
+        if (!"admin".equals(userRole)) {
+            throw ReviewServiceException.unauthorized("Only admins can export reviews");
+        }
+    }
+    
+    /**
+     * Writes every review with updatedAt >= since as one JSON document per line.
+     * Only one cursor batch is held in memory; when the client reads slowly the
+     * blocking write stalls the loop, so the next batch is not fetched from Mongo
+     * until the socket drains.
+     */
+    public long export(LocalDateTime since, OutputStream out) throws IOException {
+        long written = 0;
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        
+        try (Stream<Review> reviews = reviewRepository.streamUpdatedSince(since, batchSize)) {
+            Iterator<Review> iterator = reviews.iterator();
+            while (iterator.hasNext()) {
+                generator.writeObject(iterator.next());
+                generator.writeRaw('\n');
+                written++;
+                if (written % flushEvery == 0) {
+                    generator.flush();
+                }
+            }
+            generator.flush();
+        } catch (IOException e) {
+            logger.warn("Review export aborted after {} documents: {}", written, e.getMessage());
+            throw e;
+        } finally {
+            generator.close();
+        }
+        
+        logger.info("Review export finished: {} documents since {}", written, since);
+        return written;
+    }
+}
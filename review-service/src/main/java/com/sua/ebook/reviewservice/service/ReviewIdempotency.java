@@ -0,0 +1,309 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.model.IdempotencyRecord;
+import com.sua.ebook.reviewservice.model.Review;
+import com.sua.ebook.reviewservice.repository.ReviewLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Idempotency-Key support for review writes (POST /reviews and the quick rating).
+ * <p>
+ * A request with a key runs at most once per user and key. Its review is kept in
+ * idempotency_keys for review.idempotency.ttl, with a bounded in-memory cache in front.
+ * A retry with the same key gets that review back with 201 and Idempotent-Replayed, and
+ * ReviewService does not run again. A duplicate that arrives while the original is still
+ * running waits up to review.idempotency.wait for its result. On the same instance it
+ * waits on the original's future. On another instance it polls the IN_PROGRESS record.
+ * Failed requests are not stored, so a retry runs again. Reusing a key for a different
+ * request returns 422. With review.storage.backend=log only the in-memory cache is used.
+ */
+@Component
+public class ReviewIdempotency {
+    
+    public static final String KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    
+    private static final Logger logger = LoggerFactory.getLogger(ReviewIdempotency.class);
+    
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long POLL_MILLIS = 50;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired(required = false)
+    private ReviewLog reviewLog;
+    
+    @Value("${review.idempotency.ttl:24h}")
+    private Duration ttl;
+    
+    @Value("${review.idempotency.cache-size:10000}")
+    private long cacheSize;
+    
+    @Value("${review.idempotency.wait:5s}")
+    private Duration wait;
+    
+    @Value("${review.idempotency.lease:30s}")
+    private Duration lease;
+    
+    private Cache<String, Completed> completed;
+    private final ConcurrentHashMap<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    
+    private Counter executedCounter;
+    private Counter replayedCounter;
+    
+    @PostConstruct
+    void init() {
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, completed, "reviews.idempotency");
+        executedCounter = meterRegistry.counter("review.idempotency.requests", "outcome", "executed");
+        replayedCounter = meterRegistry.counter("review.idempotency.requests", "outcome", "replayed");
+    }
+    
+    // request so podatki zahteve (brez userId, ki je že v ključu); brez ključa se write izvede kot doslej
+    public Result execute(String userId, String key, String operation, String request, Supplier<Review> write) {
+        if (key == null) {
+            return new Result(write.get(), false);
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw ReviewServiceException.badRequest("Idempotency-Key must have 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        String id = userId + ":" + key;
+        String requestHash = hash(operation + "\n" + request);
+        
+        Completed cached = completed.getIfPresent(id);
+        if (cached != null) {
+            return replay(cached, requestHash);
+        }
+        
+        InFlight mine = new InFlight(requestHash);
+        InFlight running = inFlight.putIfAbsent(id, mine);
+        if (running != null) {
+            return awaitInFlight(running, requestHash);
+        }
+        try {
+            Result result = executeOnce(id, requestHash, write);
+            mine.future.complete(result.getReview());
+            return result;
+        } catch (RuntimeException e) {
+            mine.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, mine);
+        }
+    }
+    
+    private Result executeOnce(String id, String requestHash, Supplier<Review> write) {
+        if (reviewLog != null) {
+            Review review = write.get();
+            completed.put(id, new Completed(requestHash, review));
+            executedCounter.increment();
+            return new Result(review, false);
+        }
+        
+        Completed done = claim(id, requestHash);
+        if (done != null) {
+            completed.put(id, done);
+            return replay(done, requestHash);
+        }
+        
+        Review review;
+        try {
+            review = write.get();
+        } catch (RuntimeException e) {
+            release(id);
+            throw e;
+        }
+        executedCounter.increment();
+        
+        try {
+            Document response = new Document();
+            mongoTemplate.getConverter().write(review, response);
+            mongoTemplate.updateFirst(query(where("_id").is(id)),
+                new Update().set("status", IdempotencyRecord.STATUS_COMPLETED).set("response", response).unset("lockedUntil"),
+                IdempotencyRecord.class);
+        } catch (RuntimeException e) {
+            // Recenzija je zapisana; ponovitev na drugi instanci bo po izteku lease dobila 409 namesto 201
+            logger.warn("Failed to store the response for idempotency key {}: {}", id, e.getMessage());
+        }
+        completed.put(id, new Completed(requestHash, review));
+        return new Result(review, false);
+    }
+    
+    // Vrne null, če je zahteva naša (vstavljen ali prevzet IN_PROGRESS zapis), sicer odgovor originala
+    private Completed claim(String id, String requestHash) {
+        LocalDateTime deadline = LocalDateTime.now().plus(wait);
+        while (true) {
+            LocalDateTime now = LocalDateTime.now();
+            try {
+                mongoTemplate.insert(new IdempotencyRecord(id, requestHash, now.plus(lease), now.plus(ttl)));
+                return null;
+            } catch (DuplicateKeyException e) {
+                // Ključ je že uporabljen
+            }
+            
+            IdempotencyRecord record = mongoTemplate.findById(id, IdempotencyRecord.class);
+            if (record == null) {
+                // Original ni uspel ali je zapis potekel
+                continue;
+            }
+            if (!requestHash.equals(record.getRequestHash())) {
+                throw mismatch();
+            }
+            if (IdempotencyRecord.STATUS_COMPLETED.equals(record.getStatus())) {
+                return new Completed(requestHash, mongoTemplate.getConverter().read(Review.class, record.getResponse()));
+            }
+            if (record.getLockedUntil() == null || record.getLockedUntil().isBefore(now)) {
+                // Instanca z originalom je obstala; pogoj na lockedUntil, da ga prevzame le ena ponovitev
+                long taken = mongoTemplate.updateFirst(
+                    query(where("_id").is(id).and("status").is(IdempotencyRecord.STATUS_IN_PROGRESS).and("lockedUntil").is(record.getLockedUntil())),
+                    new Update().set("lockedUntil", now.plus(lease)),
+                    IdempotencyRecord.class).getModifiedCount();
+                if (taken > 0) {
+                    return null;
+                }
+                continue;
+            }
+            if (now.isAfter(deadline)) {
+                throw inProgress();
+            }
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw inProgress();
+            }
+        }
+    }
+    
+    private void release(String id) {
+        try {
+            mongoTemplate.remove(query(where("_id").is(id).and("status").is(IdempotencyRecord.STATUS_IN_PROGRESS)), IdempotencyRecord.class);
+        } catch (RuntimeException e) {
+            // Zapis sprosti iztek lease
+            logger.warn("Failed to release idempotency key {}: {}", id, e.getMessage());
+        }
+    }
+    
+    private Result awaitInFlight(InFlight running, String requestHash) {
+        if (!running.requestHash.equals(requestHash)) {
+            throw mismatch();
+        }
+        try {
+            Review review = running.future.get(wait.toMillis(), TimeUnit.MILLISECONDS);
+            replayedCounter.increment();
+            return new Result(review, true);
+        } catch (TimeoutException e) {
+            throw inProgress();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw inProgress();
+        } catch (ExecutionException e) {
+            // Enak izid kot original, npr. 409 za obstoječo recenzijo
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+    
+    private Result replay(Completed done, String requestHash) {
+        if (!done.requestHash.equals(requestHash)) {
+            throw mismatch();
+        }
+        replayedCounter.increment();
+        return new Result(done.review, true);
+    }
+    
+    private static ReviewServiceException mismatch() {
+        return ReviewServiceException.unprocessableEntity("Idempotency-Key was already used for a different request");
+    }
+    
+    private static ReviewServiceException inProgress() {
+        return ReviewServiceException.conflict("A request with this Idempotency-Key is still in progress");
+    }
+    
+    private static String hash(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    public static final class Result {
+        private final Review review;
+        private final boolean replayed;
+        
+        Result(Review review, boolean replayed) {
+            this.review = review;
+            this.replayed = replayed;
+        }
+        
+        public Review getReview() {
+            return review;
+        }
+        
+        public boolean isReplayed() {
+            return replayed;
+        }
+    }
+    
+    private static final class Completed {
+        private final String requestHash;
+        private final Review review;
+        
+        Completed(String requestHash, Review review) {
+            this.requestHash = requestHash;
+            this.review = review;
+        }
+    }
+    
+    private static final class InFlight {
+        private final String requestHash;
+        private final CompletableFuture<Review> future = new CompletableFuture<>();
+        
+        InFlight(String requestHash) {
+            this.requestHash = requestHash;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Omejitve velikosti strani in batch zahtev, skupne servlet in reactive servisu
+@Component
+public class ReviewQueryLimits {
+    
+    @Value("${review.pagination.default-limit:50}")
+    private int defaultPageSize;
+    
+    @Value("${review.pagination.max-limit:200}")
+    private int maxPageSize;
+    
+    @Value("${review.search.max-query-length:200}")
+    private int maxSearchQueryLength;
+    
+    @Value("${review.batch.max-book-ids:100}")
+    private int maxBatchBookIds;
+    
+    @Value("${review.batch.default-reviews-per-book:10}")
+    private int defaultReviewsPerBook;
+    
+    @Value("${review.batch.max-reviews-per-book:50}")
+    private int maxReviewsPerBook;
+    
+    public int pageSize(Integer limit) {
+        if (limit == null) {
+            return defaultPageSize;
+        }
+        if (limit < 1) {
+            throw ReviewServiceException.badRequest("Limit must be a positive number");
+        }
+        return Math.min(limit, maxPageSize);
+    }
+    
+    public String searchText(String q) {
+        if (q == null || q.isBlank()) {
+            throw ReviewServiceException.badRequest("Search query (q) is required");
+        }
+        if (q.length() > maxSearchQueryLength) {
+            throw ReviewServiceException.badRequest("Search query cannot exceed " + maxSearchQueryLength + " characters");
+        }
+        return q.trim();
+    }
+    
+    public Integer ratingFilter(Integer rating) {
+        if (rating != null && (rating < 1 || rating > 5)) {
+            throw ReviewServiceException.badRequest("Rating must be between 1 and 5");
+        }
+        return rating;
+    }
+    
+    public Set<String> batchBookIds(List<String> bookIds) {
+        Set<String> ids = new LinkedHashSet<>(bookIds);
+        if (ids.size() > maxBatchBookIds) {
+            throw ReviewServiceException.badRequest("At most " + maxBatchBookIds + " book IDs are allowed per request");
+        }
+        return ids;
+    }
+    
+    public int reviewsPerBook(Integer limit) {
+        return limit == null ? defaultReviewsPerBook : Math.min(limit, maxReviewsPerBook);
+    }
+}
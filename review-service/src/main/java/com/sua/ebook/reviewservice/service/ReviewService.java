@@ -1,19 +1,34 @@
 package com.sua.ebook.reviewservice.service;
 
+import com.sua.ebook.reviewservice.admission.MongoLatencyTracker;
 import com.sua.ebook.reviewservice.dto.QuickRatingDTO;
 import com.sua.ebook.reviewservice.dto.ReviewCreateDTO;
+import com.sua.ebook.reviewservice.dto.ReviewCursor;
+import com.sua.ebook.reviewservice.dto.ReviewFields;
+import com.sua.ebook.reviewservice.dto.ReviewPage;
+import com.sua.ebook.reviewservice.dto.ReviewSearchCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchHit;
 import com.sua.ebook.reviewservice.dto.ReviewUpdateDTO;
 import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.job.BookReviewDeletionJob;
+import com.sua.ebook.reviewservice.job.RatingSummaryRebuildJob;
+import com.sua.ebook.reviewservice.job.RatingTrendRebuildJob;
+import com.sua.ebook.reviewservice.job.ReviewShardRebalanceJob;
+import com.sua.ebook.reviewservice.model.BookRatingSummary;
 import com.sua.ebook.reviewservice.model.Review;
 import com.sua.ebook.reviewservice.repository.ReviewRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class ReviewService {
@@ -21,30 +36,91 @@ public class ReviewService {
     @Autowired
     private ReviewRepository reviewRepository;
     
-    public List<Review> getAllReviews() {
-        return reviewRepository.findAllByOrderByCreatedAtDesc();
+    @Autowired
+    private RatingSummaryService ratingSummaryService;
+    
+    @Autowired
+    private RatingTrendService ratingTrendService;
+    
+    @Autowired
+    private RatingSummaryRebuildJob ratingSummaryRebuildJob;
+    
+    @Autowired
+    private RatingTrendRebuildJob ratingTrendRebuildJob;
+    
+    @Autowired(required = false)
+    private ReviewShardRebalanceJob reviewShardRebalanceJob;
+    
+    @Autowired
+    private BookReviewDeletionJob bookReviewDeletionJob;
+    
+    @Autowired
+    private ReviewQueryLimits limits;
+    
+    @Autowired
+    private ReviewEventOutbox reviewEventOutbox;
+    
+    @Autowired
+    private BookReviewCache bookReviewCache;
+    
+    @Autowired
+    private RatingWriteBuffer ratingWriteBuffer;
+    
+    @Autowired
+    private ReadCoalescer readCoalescer;
+    
+    @Autowired
+    private MongoLatencyTracker mongoLatencyTracker;
+    
+    public ReviewPage<Review> getAllReviews(String cursor, Integer limit, ReviewFields fields) {
+        return findPage(null, null, cursor, limit, fields);
+    }
+    
+    public ReviewPage<Review> getReviewsByBookId(String bookId, String cursor, Integer limit, ReviewFields fields) {
+        return findPage(bookId, null, cursor, limit, fields);
+    }
+    
+    public ReviewPage<Review> getReviewsByUserId(String userId, String cursor, Integer limit, ReviewFields fields) {
+        return findPage(null, userId, cursor, limit, fields);
+    }
+    
+    // Serializirana stran iz BookReviewCache; ključ je trenutna verzija knjige
+    public BookReviewCache.CachedResponse getCachedReviewsByBookId(String bookId, String cursor, Integer limit,
+                                                                   ReviewFields fields, MediaType format) {
+        int pageSize = limits.pageSize(limit);
+        return bookReviewCache.get(BookReviewCache.REVIEWS, bookId, BookReviewCache.pageVariant(pageSize, fields, cursor), format, () -> {
+            ReviewPage<?> page = ReviewFields.project(findPage(bookId, null, cursor, pageSize, fields), fields);
+            return new BookReviewCache.CachedValue(page.getItems(), page.getNextCursor());
+        });
+    }
+    
+    // Različica strani za ETag in ključ v BookReviewCache
+    public String bookPageVariant(String cursor, Integer limit, ReviewFields fields) {
+        return BookReviewCache.pageVariant(limits.pageSize(limit), fields, cursor);
     }
     
-    public List<Review> getReviewsByBookId(String bookId) {
-        return reviewRepository.findByBookIdOrderByCreatedAtDesc(bookId);
+    // Zadetki po relevantnosti; strošek je sorazmeren številu zadetkov v text indeksu, ne velikosti kolekcije
+    public ReviewPage<ReviewSearchHit> searchReviews(String q, String bookId, Integer rating, String cursor, Integer limit) {
+        String text = limits.searchText(q);
+        int pageSize = limits.pageSize(limit);
+        List<ReviewSearchHit> hits = reviewRepository.search(text, bookId, limits.ratingFilter(rating),
+            ReviewSearchCursor.decode(cursor), pageSize + 1);
+        return ReviewPage.fromOverfetch(hits, pageSize, ReviewSearchCursor::encodeAfter);
     }
     
-    public List<Review> getReviewsByUserId(String userId) {
-        return reviewRepository.findByUserIdOrderByCreatedAtDesc(userId);
+    // Sočasne enake strani si delijo eno poizvedbo (ReadCoalescer), tudi JSON in CBOR iste strani iz BookReviewCache
+    private ReviewPage<Review> findPage(String bookId, String userId, String cursor, Integer limit, ReviewFields fields) {
+        int pageSize = limits.pageSize(limit);
+        List<?> args = Arrays.asList(cursor, pageSize, fields != null ? fields.key() : null);
+        return readCoalescer.execute("page", bookId, userId, args, () -> {
+            // En zapis več, da vemo, ali obstaja naslednja stran
+            List<Review> reviews = reviewRepository.findPage(bookId, userId, ReviewCursor.decode(cursor), pageSize + 1,
+                ReviewFields.projectionOf(fields));
+            return ReviewPage.fromOverfetch(reviews, pageSize, ReviewCursor::encodeAfter);
+        });
     }
     
     public Review createReview(ReviewCreateDTO reviewCreateDTO, String userId) {
-        Optional<Review> existingReview = reviewRepository.findByBookIdAndUserId(
-            reviewCreateDTO.getBookId(), userId);
-        
-        if (existingReview.isPresent()) {
-            throw ReviewServiceException.conflict("User has already reviewed this book");
-        }
-        
-        // Check if this is user's first review
-        long userReviewCount = reviewRepository.countByUserId(userId);
-        boolean isFirstReview = userReviewCount == 0;
-        
         Review review = new Review();
         review.setBookId(reviewCreateDTO.getBookId());
         review.setUserId(userId);
@@ -52,29 +128,43 @@ public class ReviewService {
         review.setReviewText(reviewCreateDTO.getReviewText());
         review.setCreatedAt(LocalDateTime.now());
         review.setUpdatedAt(LocalDateTime.now());
+        reviewEventOutbox.markPending(review);
         
-        Review savedReview = reviewRepository.save(review);
-        
-    // Notification sending disabled (notification-service removed)
-        
+        Review savedReview = insertReview(review);
+        ratingSummaryService.recordAdded(savedReview.getBookId(), savedReview.getRating());
+        ratingTrendService.recordAdded(savedReview.getBookId(), savedReview.getCreatedAt(), savedReview.getRating());
+        bookReviewCache.bump(savedReview.getBookId());
+        readCoalescer.written(savedReview.getBookId(), savedReview.getUserId());
         return savedReview;
     }
     
     public Review createQuickRating(String bookId, QuickRatingDTO quickRatingDTO, String userId) {
-        Optional<Review> existingReview = reviewRepository.findByBookIdAndUserId(bookId, userId);
-        
-        if (existingReview.isPresent()) {
-            throw ReviewServiceException.conflict("User has already reviewed this book");
-        }
-        
         Review review = new Review();
         review.setBookId(bookId);
         review.setUserId(userId);
         review.setRating(quickRatingDTO.getRating());
         review.setCreatedAt(LocalDateTime.now());
         review.setUpdatedAt(LocalDateTime.now());
+        reviewEventOutbox.markPending(review);
         
-        return reviewRepository.save(review);
+        if (ratingWriteBuffer.isEnabled()) {
+            return RatingWriteBuffer.await(ratingWriteBuffer.submitCreate(review));
+        }
+        Review savedReview = insertReview(review);
+        ratingSummaryService.recordAdded(savedReview.getBookId(), savedReview.getRating());
+        ratingTrendService.recordAdded(savedReview.getBookId(), savedReview.getCreatedAt(), savedReview.getRating());
+        bookReviewCache.bump(savedReview.getBookId());
+        readCoalescer.written(savedReview.getBookId(), savedReview.getUserId());
+        return savedReview;
+    }
+    
+    // En sam insert; unikatni indeks (bookId, userId) zavrne duplikat tudi pri sočasnih zahtevah
+    private Review insertReview(Review review) {
+        try {
+            return reviewRepository.insert(review);
+        } catch (DuplicateKeyException e) {
+            throw ReviewServiceException.conflict("User has already reviewed this book");
+        }
     }
     
     public Review updateReview(String reviewId, ReviewUpdateDTO reviewUpdateDTO, String userId) {
@@ -85,6 +175,7 @@ public class ReviewService {
             throw ReviewServiceException.unauthorized("You can only update your own reviews");
         }
         
+        int oldRating = review.getRating();
         if (reviewUpdateDTO.getRating() != null) {
             review.setRating(reviewUpdateDTO.getRating());
         }
@@ -93,10 +184,18 @@ public class ReviewService {
         }
         review.setUpdatedAt(LocalDateTime.now());
         
-        return reviewRepository.save(review);
+        Review savedReview = reviewRepository.save(review);
+        ratingSummaryService.recordChanged(savedReview.getBookId(), oldRating, savedReview.getRating());
+        ratingTrendService.recordChanged(savedReview.getBookId(), savedReview.getCreatedAt(), oldRating, savedReview.getRating());
+        bookReviewCache.bump(savedReview.getBookId());
+        readCoalescer.written(savedReview.getBookId(), savedReview.getUserId());
+        return savedReview;
     }
     
     public Review updateRating(String reviewId, QuickRatingDTO ratingDTO, String userId) {
+        if (ratingWriteBuffer.isEnabled()) {
+            return RatingWriteBuffer.await(ratingWriteBuffer.submitRatingUpdate(reviewId, ratingDTO.getRating(), userId));
+        }
         Review review = reviewRepository.findById(reviewId)
             .orElseThrow(() -> ReviewServiceException.notFound("Review not found"));
         
@@ -104,10 +203,16 @@ public class ReviewService {
             throw ReviewServiceException.unauthorized("You can only update your own reviews");
         }
         
+        int oldRating = review.getRating();
         review.setRating(ratingDTO.getRating());
         review.setUpdatedAt(LocalDateTime.now());
         
-        return reviewRepository.save(review);
+        Review savedReview = reviewRepository.save(review);
+        ratingSummaryService.recordChanged(savedReview.getBookId(), oldRating, savedReview.getRating());
+        ratingTrendService.recordChanged(savedReview.getBookId(), savedReview.getCreatedAt(), oldRating, savedReview.getRating());
+        bookReviewCache.bump(savedReview.getBookId());
+        readCoalescer.written(savedReview.getBookId(), savedReview.getUserId());
+        return savedReview;
     }
     
     public void deleteReview(String reviewId, String userId, String userRole) {
@@ -119,79 +224,88 @@ public class ReviewService {
         }
         
         reviewRepository.delete(review);
+        ratingSummaryService.recordRemoved(review.getBookId(), review.getRating());
+        ratingTrendService.recordRemoved(review.getBookId(), review.getCreatedAt(), review.getRating());
+        bookReviewCache.bump(review.getBookId());
+        readCoalescer.written(review.getBookId(), review.getUserId());
     }
     
-    public void deleteAllReviewsForBook(String bookId, String userRole) {
+    // Brisanje teče v ozadju (BookReviewDeletionJob); vrne stanje posla
+    public Map<String, Object> deleteAllReviewsForBook(String bookId, String userRole) {
         if (!"admin".equals(userRole)) {
             throw ReviewServiceException.unauthorized("Only admins can delete all reviews for a book");
         }
         
-        reviewRepository.deleteByBookId(bookId);
+        return BookReviewDeletionJob.status(bookReviewDeletionJob.submit(bookId));
+    }
+    
+    public Map<String, Object> getBookDeletionJob(String jobId, String userRole) {
+        if (!"admin".equals(userRole)) {
+            throw ReviewServiceException.unauthorized("Only admins can view deletion jobs");
+        }
+        
+        return BookReviewDeletionJob.status(bookReviewDeletionJob.find(jobId));
     }
     
     public Map<String, Object> getBookReviewStats(String bookId) {
-        List<Review> reviews = reviewRepository.findByBookIdOrderByCreatedAtDesc(bookId);
+        BookRatingSummary summary = readCoalescer.execute("stats", bookId, null, List.of(),
+            () -> ratingSummaryService.getSummary(bookId));
+        return ratingSummaryService.toStats(summary);
+    }
+    
+    public BookReviewCache.CachedResponse getCachedBookReviewStats(String bookId, MediaType format) {
+        return bookReviewCache.get(BookReviewCache.STATS, bookId, null, format,
+            () -> new BookReviewCache.CachedValue(getBookReviewStats(bookId), null));
+    }
+    
+    public Map<String, Object> getBookRatingTrend(String bookId, LocalDate from, LocalDate to, String granularity) {
+        return readCoalescer.execute("trend", bookId, null, Arrays.asList(from, to, granularity),
+            () -> ratingTrendService.getTrend(bookId, from, to, granularity));
+    }
+    
+    public Map<String, Map<String, Object>> getBookReviewStatsBatch(List<String> bookIds) {
+        Set<String> ids = limits.batchBookIds(bookIds);
+        Map<String, BookRatingSummary> summaries = ratingSummaryService.getSummaries(ids);
         
-        if (reviews.isEmpty()) {
-            Map<String, Object> stats = new HashMap<>();
-            stats.put("totalReviews", 0);
-            stats.put("averageRating", 0.0);
-            return stats;
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (String bookId : ids) {
+            stats.put(bookId, ratingSummaryService.toStats(summaries.get(bookId)));
         }
+        return stats;
+    }
+    
+    public Map<String, List<Review>> getReviewsByBookIds(List<String> bookIds, Integer limit) {
+        Set<String> ids = limits.batchBookIds(bookIds);
+        int perBook = limits.reviewsPerBook(limit);
+        Map<String, List<Review>> found = reviewRepository.findLatestByBookIds(ids, perBook);
         
-        double averageRating = reviews.stream()
-            .mapToInt(Review::getRating)
-            .average()
-            .orElse(0.0);
-        
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("totalReviews", reviews.size());
-        stats.put("averageRating", Math.round(averageRating * 100.0) / 100.0);
+        Map<String, List<Review>> reviews = new LinkedHashMap<>();
+        for (String bookId : ids) {
+            reviews.put(bookId, found.getOrDefault(bookId, List.of()));
+        }
+        return reviews;
+    }
+    
+    public Map<String, Object> rebuildRatingSummaries(String userRole) {
+        if (!"admin".equals(userRole)) {
+            throw ReviewServiceException.unauthorized("Only admins can rebuild rating summaries");
+        }
         
-        return stats;
+        return mongoLatencyTracker.outsideRequest(() -> {
+            Map<String, Object> result = ratingSummaryRebuildJob.rebuild();
+            result.put("trends", ratingTrendRebuildJob.rebuild());
+            return result;
+        });
     }
     
-    private void sendNotificationAsync(Review review, boolean isFirstReview) {
-        // Run notification sending in separate thread to avoid blocking
-        new Thread(() -> {
-            try {
-                String notificationUrl = "https://sua-dukens-projects-866eede9.vercel.app/api/review-created";
-                
-                // Create JSON payload
-                String jsonPayload = String.format(
-                    "{ \"userId\": \"%s\", \"bookId\": \"%s\", \"reviewId\": \"%s\", \"rating\": %d, \"isFirstReview\": %b }",
-                    review.getUserId(), review.getBookId(), review.getId(), review.getRating(), isFirstReview
-                );
-                
-                System.out.println("Sending notification to: " + notificationUrl);
-                System.out.println("Payload: " + jsonPayload);
-                
-                // Send actual HTTP request
-                try {
-                    java.net.http.HttpClient client = java.net.http.HttpClient.newHttpClient();
-                    java.net.http.HttpRequest request = java.net.http.HttpRequest.newBuilder()
-                            .uri(java.net.URI.create(notificationUrl))
-                            .header("Content-Type", "application/json")
-                            .POST(java.net.http.HttpRequest.BodyPublishers.ofString(jsonPayload))
-                            .timeout(java.time.Duration.ofSeconds(5))
-                            .build();
-                    
-                    java.net.http.HttpResponse<String> response = client.send(request, 
-                            java.net.http.HttpResponse.BodyHandlers.ofString());
-                    
-                    if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                        System.out.println("✅ Notification sent successfully: " + response.statusCode());
-                    } else {
-                        System.out.println("⚠️ Notification service returned: " + response.statusCode());
-                    }
-                } catch (Exception httpEx) {
-                    System.err.println("❌ HTTP request failed: " + httpEx.getMessage());
-                }
-                
-            } catch (Exception e) {
-                System.err.println("❌ Failed to send notification: " + e.getMessage());
-                // Don't fail the review creation if notification fails
-            }
-        }).start();
+    public Map<String, Object> rebalanceReviewShards(String userRole) {
+        if (!"admin".equals(userRole)) {
+            throw ReviewServiceException.unauthorized("Only admins can rebalance review shards");
+        }
+        if (reviewShardRebalanceJob == null) {
+            throw ReviewServiceException.badRequest("Sharding is not enabled (review.storage.backend=sharded)");
+        }
+        
+        return mongoLatencyTracker.outsideRequest(reviewShardRebalanceJob::rebalance);
     }
 }
@@ -0,0 +1,29 @@
+package com.sua.ebook.reviewservice.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+
+// Pogodba ReviewRepository nad dnevnikom v začasnem imeniku
+class LogReviewRepositoryTest extends ReviewRepositoryContractTest {
+    
+    @TempDir
+    Path directory;
+    
+    private ReviewLog reviewLog;
+    
+    @Override
+    protected ReviewRepository createRepository() {
+        reviewLog = ReviewLogTest.open(directory);
+        LogReviewRepository repository = new LogReviewRepository();
+        ReflectionTestUtils.setField(repository, "reviewLog", reviewLog);
+        return repository;
+    }
+    
+    @AfterEach
+    void closeLog() {
+        ReflectionTestUtils.invokeMethod(reviewLog, "close");
+    }
+}
@@ -0,0 +1,60 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.sua.ebook.reviewservice.model.Review;
+import de.bwaldvogel.mongo.MongoServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+// Pogodba ReviewRepository nad Spring Data repozitorijem in MongoDB v procesu
+class MongoReviewRepositoryTest extends ReviewRepositoryContractTest {
+    
+    private MongoServer server;
+    private MongoClient client;
+    
+    @Override
+    protected ReviewRepository createRepository() {
+        server = RepositoryTestSupport.startServer();
+        client = MongoClients.create(RepositoryTestSupport.uri(server, "reviews"));
+        MongoTemplate template = new MongoTemplate(client, "reviews");
+        createIndexes(template);
+        
+        ReviewRepositoryCustomImpl custom = new ReviewRepositoryCustomImpl();
+        ReflectionTestUtils.setField(custom, "mongoTemplate", template);
+        return new MongoRepositoryFactory(template)
+            .getRepository(ReviewRepository.class, RepositoryComposition.RepositoryFragments.just(custom));
+    }
+    
+    @AfterEach
+    void stopServer() {
+        client.close();
+        server.shutdownNow();
+    }
+    
+    @Override
+    @Test
+    @Disabled("mongo-java-server does not implement $text and textScore")
+    void searchesByScoreThenIdAndContinuesAfterTheCursor() {
+    }
+    
+    // Indeksi iz preslikave Review kot ob auto-index-creation, razen text indeksa
+    private static void createIndexes(MongoTemplate template) {
+        MongoMappingContext mappingContext = (MongoMappingContext) template.getConverter().getMappingContext();
+        IndexOperations indexOps = template.indexOps(Review.class);
+        for (IndexDefinition index : new MongoPersistentEntityIndexResolver(mappingContext).resolveIndexFor(Review.class)) {
+            if (!index.getIndexKeys().containsValue("text")) {
+                indexOps.ensureIndex(index);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.sua.ebook.reviewservice.model.Review;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.net.InetSocketAddress;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Skupno repozitorijskim testom: MongoDB v procesu, pretvornik kot v aplikaciji in testne recenzije
+final class RepositoryTestSupport {
+    
+    static final LocalDateTime BASE = LocalDateTime.of(2024, 3, 1, 12, 0);
+    
+    private RepositoryTestSupport() {}
+    
+    static MongoServer startServer() {
+        return new MongoServer(new MemoryBackend());
+    }
+    
+    static String uri(MongoServer server, String database) {
+        InetSocketAddress address = server.bind();
+        return "mongodb://localhost:" + address.getPort() + "/" + database;
+    }
+    
+    // Kot v aplikaciji: LocalDateTime kot datum, ne kot vgnezden dokument
+    static MappingMongoConverter converter() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+    
+    static Review review(String bookId, String userId, int minutes) {
+        return review(bookId, userId, 1 + minutes % 5, "Review of " + bookId, BASE.plusMinutes(minutes));
+    }
+    
+    static Review review(String bookId, String userId, int rating, String text, LocalDateTime createdAt) {
+        Review review = new Review(bookId, userId, rating, text);
+        review.setId(new ObjectId().toHexString());
+        review.setCreatedAt(createdAt);
+        review.setUpdatedAt(createdAt);
+        return review;
+    }
+    
+    static List<String> ids(List<Review> reviews) {
+        return reviews.stream().map(Review::getId).toList();
+    }
+}
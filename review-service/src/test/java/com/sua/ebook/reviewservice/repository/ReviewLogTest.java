@@ -0,0 +1,183 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.sua.ebook.reviewservice.model.Review;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.sua.ebook.reviewservice.repository.RepositoryTestSupport.review;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * ReviewLog on disk: replay after a restart, a torn write at the end of the last segment,
+ * damage inside a segment and a restart after compaction.
+ */
+class ReviewLogTest {
+    
+    // Dolžina, CRC32, tip; enako kot ReviewLog.HEADER_SIZE
+    private static final int HEADER_SIZE = 9;
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void replaysWritesDeletesAndUpdatesAfterRestart() {
+        ReviewLog log = open(directory);
+        Review kept = review("book-1", "user-1", 0);
+        Review updated = review("book-1", "user-2", 1);
+        Review deleted = review("book-1", "user-3", 2);
+        log.insert(List.of(kept, updated, deleted));
+        updated.setRating(5);
+        log.save(List.of(updated));
+        log.delete(List.of(deleted.getId()));
+        close(log);
+        
+        ReviewLog reopened = open(directory);
+        assertThat(reopened.count()).isEqualTo(2);
+        assertThat(reopened.findById(updated.getId())).get().extracting(Review::getRating).isEqualTo(5);
+        assertThat(reopened.findById(deleted.getId())).isEmpty();
+        assertThat(reopened.findByBookIdAndUserId("book-1", "user-3")).isEmpty();
+        assertThat(reopened.summary("book-1").getCount()).isEqualTo(2);
+        assertThat(reopened.summary("book-1").getSum()).isEqualTo(kept.getRating() + 5);
+        close(reopened);
+    }
+    
+    @Test
+    void cutsOffATornRecordAtTheEndOfTheLastSegment() throws IOException {
+        ReviewLog log = open(directory);
+        log.insert(List.of(review("book-1", "user-1", 0), review("book-1", "user-2", 1)));
+        close(log);
+        Path segment = onlySegment();
+        long size = Files.size(segment);
+        // Glava napoveduje 200 bajtov, na disku jih je le 20
+        ByteBuffer torn = ByteBuffer.allocate(HEADER_SIZE + 20).putInt(200).putInt(0).put((byte) 1);
+        Files.write(segment, torn.array(), StandardOpenOption.APPEND);
+        
+        ReviewLog reopened = open(directory);
+        assertThat(reopened.count()).isEqualTo(2);
+        assertThat(Files.size(segment)).isEqualTo(size);
+        reopened.insert(List.of(review("book-1", "user-3", 2)));
+        close(reopened);
+        
+        ReviewLog again = open(directory);
+        assertThat(again.count()).isEqualTo(3);
+        close(again);
+    }
+    
+    @Test
+    void cutsOffALastRecordWithABadChecksum() throws IOException {
+        ReviewLog log = open(directory);
+        log.insert(List.of(review("book-1", "user-1", 0)));
+        log.insert(List.of(review("book-1", "user-2", 1)));
+        close(log);
+        Path segment = onlySegment();
+        flipByte(segment, Files.size(segment) - 1);
+        
+        ReviewLog reopened = open(directory);
+        assertThat(reopened.count()).isEqualTo(1);
+        assertThat(reopened.findByBookIdAndUserId("book-1", "user-1")).isPresent();
+        close(reopened);
+    }
+    
+    @Test
+    void refusesToStartWhenASegmentIsDamagedBeforeItsEnd() throws IOException {
+        ReviewLog log = open(directory);
+        for (int i = 0; i < 3; i++) {
+            log.insert(List.of(review("book-1", "user-" + i, i)));
+        }
+        close(log);
+        Path segment = onlySegment();
+        long size = Files.size(segment);
+        // Bajt v vsebini prvega zapisa; za njim sta še dva potrjena zapisa
+        flipByte(segment, HEADER_SIZE + 10);
+        
+        assertThatThrownBy(() -> open(directory))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("is damaged at offset 0");
+        assertThat(Files.size(segment)).isEqualTo(size);
+    }
+    
+    @Test
+    void restartsFromACompactedSegment() throws IOException {
+        ReviewLog log = open(directory);
+        for (int i = 0; i < 6; i++) {
+            log.insert(List.of(review("book-1", "user-" + i, i)));
+        }
+        List<Review> reviews = log.findNewest("book-1", null);
+        log.delete(reviews.subList(0, 4).stream().map(Review::getId).toList());
+        Review updated = reviews.get(4);
+        updated.setRating(1);
+        log.save(List.of(updated));
+        log.compact();
+        // Po kompaktiranju v nov aktivni segment
+        Review added = log.insert(List.of(review("book-2", "user-1", 7))).get(0);
+        log.delete(List.of(reviews.get(5).getId()));
+        close(log);
+        
+        assertThat(segmentNames()).containsExactly("reviews-0000000001.log", "reviews-0000000002.log");
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ReviewLog reopened = open(directory, meterRegistry);
+        assertThat(reopened.count()).isEqualTo(2);
+        assertThat(reopened.findById(updated.getId())).get().extracting(Review::getRating).isEqualTo(1);
+        assertThat(reopened.findById(added.getId())).isPresent();
+        assertThat(reopened.summary("book-1").getCount()).isEqualTo(1);
+        // Posnetek z dvema živima recenzijama, nato en PUT in en DELETE
+        assertThat(meterRegistry.get("review.storage.log.records").gauge().value()).isEqualTo(4);
+        close(reopened);
+    }
+    
+    static ReviewLog open(Path directory) {
+        return open(directory, new SimpleMeterRegistry());
+    }
+    
+    static ReviewLog open(Path directory, MeterRegistry meterRegistry) {
+        ReviewLog log = new ReviewLog();
+        ReflectionTestUtils.setField(log, "mongoConverter", RepositoryTestSupport.converter());
+        ReflectionTestUtils.setField(log, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(log, "dir", directory.toString());
+        ReflectionTestUtils.setField(log, "syncEveryWrite", true);
+        ReflectionTestUtils.setField(log, "minDeadRecords", 10000L);
+        ReflectionTestUtils.setField(log, "deadRatio", 0.5);
+        ReflectionTestUtils.setField(log, "groupCommitEnabled", false);
+        ReflectionTestUtils.setField(log, "eventsUrl", "");
+        ReflectionTestUtils.setField(log, "webApplicationType", "servlet");
+        ReflectionTestUtils.invokeMethod(log, "init");
+        return log;
+    }
+    
+    private static void close(ReviewLog log) {
+        ReflectionTestUtils.invokeMethod(log, "close");
+    }
+    
+    private Path onlySegment() throws IOException {
+        assertThat(segmentNames()).hasSize(1);
+        return directory.resolve(segmentNames().get(0));
+    }
+    
+    private List<String> segmentNames() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+    
+    private static void flipByte(Path file, long position) throws IOException {
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(position);
+            int value = raw.read();
+            raw.seek(position);
+            raw.write(value ^ 0xFF);
+        }
+    }
+}
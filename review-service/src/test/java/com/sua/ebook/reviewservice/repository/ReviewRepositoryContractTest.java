@@ -0,0 +1,166 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.sua.ebook.reviewservice.dto.ReviewCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchCursor;
+import com.sua.ebook.reviewservice.dto.ReviewSearchHit;
+import com.sua.ebook.reviewservice.model.Review;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.sua.ebook.reviewservice.repository.RepositoryTestSupport.BASE;
+import static com.sua.ebook.reviewservice.repository.RepositoryTestSupport.ids;
+import static com.sua.ebook.reviewservice.repository.RepositoryTestSupport.review;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Behaviour every ReviewRepository backend must share, so that the service returns the
+ * same pages, exports and errors whichever review.storage.backend is configured. Each
+ * subclass provides an empty repository per test.
+ */
+abstract class ReviewRepositoryContractTest {
+    
+    private static final Comparator<Review> NEWEST_FIRST = Comparator
+        .comparing(Review::getCreatedAt).thenComparing(Review::getId).reversed();
+    private static final Comparator<Review> UPDATED_FIRST = Comparator
+        .comparing(Review::getUpdatedAt).thenComparing(Review::getId);
+    
+    protected ReviewRepository repository;
+    
+    protected abstract ReviewRepository createRepository() throws Exception;
+    
+    @BeforeEach
+    void createEmptyRepository() throws Exception {
+        repository = createRepository();
+    }
+    
+    @Test
+    void pagesNewestFirstAcrossCreatedAtTies() {
+        List<Review> book = new ArrayList<>();
+        // Trije in dva zapisa z enakim createdAt; vrstni red med njimi določa id
+        int[] minutes = {1, 1, 1, 2, 2, 3, 0};
+        for (int i = 0; i < minutes.length; i++) {
+            book.add(repository.insert(review("book-1", "user-" + i, minutes[i])));
+        }
+        repository.insert(review("book-2", "user-0", 5));
+        
+        List<Review> expected = book.stream().sorted(NEWEST_FIRST).toList();
+        assertThat(ids(readAllPages("book-1", null, 2))).isEqualTo(ids(expected));
+        // Izpeljana poizvedba obljublja le createdAt; vrstnega reda enakih časov Mongo ne določa
+        assertThat(repository.findByBookIdOrderByCreatedAtDesc("book-1"))
+            .hasSize(expected.size())
+            .isSortedAccordingTo(Comparator.comparing(Review::getCreatedAt).reversed());
+        
+        assertThat(readAllPages(null, null, 3)).hasSize(8);
+        assertThat(ids(readAllPages(null, "user-0", 1))).hasSize(2);
+        assertThat(ids(repository.findPage("book-1", "user-3", null, 10, null)))
+            .containsExactly(book.get(3).getId());
+    }
+    
+    @Test
+    void rejectsSecondReviewOfAUserForTheSameBook() {
+        Review first = repository.insert(review("book-1", "user-1", 0));
+        
+        assertThatThrownBy(() -> repository.insert(review("book-1", "user-1", 1)))
+            .isInstanceOf(DuplicateKeyException.class);
+        assertThatThrownBy(() -> repository.save(review("book-1", "user-1", 2)))
+            .isInstanceOf(DuplicateKeyException.class);
+        
+        first.setRating(3);
+        repository.save(first);
+        repository.insert(review("book-2", "user-1", 3));
+        assertThat(repository.countByBookId("book-1")).isEqualTo(1);
+        assertThat(repository.findByBookIdAndUserId("book-1", "user-1")).get()
+            .extracting(Review::getRating).isEqualTo(3);
+    }
+    
+    @Test
+    void searchesByScoreThenIdAndContinuesAfterTheCursor() {
+        repository.insert(review("book-1", "user-1", 5, "A great story", BASE));
+        repository.insert(review("book-1", "user-2", 5, "A great story", BASE));
+        repository.insert(review("book-2", "user-1", 4, "A great story", BASE));
+        repository.insert(review("book-2", "user-2", 5, "A boring plot", BASE));
+        Comparator<ReviewSearchHit> bestMatch = Comparator.comparingDouble(ReviewSearchHit::getScore)
+            .thenComparing(hit -> hit.getReview().getId()).reversed();
+        
+        List<ReviewSearchHit> hits = repository.search("great", null, null, null, 10);
+        assertThat(hits).hasSize(3).isSortedAccordingTo(bestMatch);
+        assertThat(repository.search("great", null, 5, null, 10)).hasSize(2);
+        assertThat(repository.search("great", "book-2", null, null, 10)).hasSize(1);
+        
+        List<ReviewSearchHit> first = repository.search("great", null, null, null, 2);
+        ReviewSearchHit last = first.get(first.size() - 1);
+        List<ReviewSearchHit> rest = repository.search("great", null, null,
+            new ReviewSearchCursor(last.getScore(), last.getReview().getId()), 2);
+        List<String> paged = new ArrayList<>();
+        Stream.concat(first.stream(), rest.stream()).forEach(hit -> paged.add(hit.getReview().getId()));
+        assertThat(paged).containsExactlyElementsOf(hits.stream().map(hit -> hit.getReview().getId()).toList());
+    }
+    
+    @Test
+    void exportsUpdatedSinceInUpdatedAtThenIdOrder() {
+        List<Review> written = new ArrayList<>();
+        int[] minutes = {4, 2, 2, 1, 3, 2};
+        for (int i = 0; i < minutes.length; i++) {
+            written.add(repository.insert(review("book-" + i % 2, "user-" + i, minutes[i])));
+        }
+        
+        List<Review> expected = written.stream()
+            .filter(review -> !review.getUpdatedAt().isBefore(BASE.plusMinutes(2)))
+            .sorted(UPDATED_FIRST)
+            .toList();
+        try (Stream<Review> exported = repository.streamUpdatedSince(BASE.plusMinutes(2), 2)) {
+            assertThat(ids(exported.toList())).isEqualTo(ids(expected));
+        }
+        try (Stream<Review> exported = repository.streamUpdatedSince(null, 2)) {
+            assertThat(exported.toList()).hasSize(6).isSortedAccordingTo(UPDATED_FIRST);
+        }
+    }
+    
+    @Test
+    void findsReviewsOfAUserCreatedBeforeAGivenTime() {
+        repository.insert(review("book-1", "user-1", 2));
+        repository.insert(review("book-2", "user-1", 5));
+        repository.insert(review("book-1", "user-2", 0));
+        
+        assertThat(repository.existsByUserIdAndCreatedAtBefore("user-1", BASE.plusMinutes(2))).isFalse();
+        assertThat(repository.existsByUserIdAndCreatedAtBefore("user-1", BASE.plusMinutes(5))).isTrue();
+        assertThat(repository.existsByUserIdAndCreatedAtBefore("user-3", BASE.plusMinutes(5))).isFalse();
+    }
+    
+    @Test
+    void deletesAllReviewsOfABookInBatches() {
+        for (int i = 0; i < 5; i++) {
+            repository.insert(review("book-1", "user-" + i, i));
+        }
+        repository.insert(review("book-2", "user-0", 0));
+        repository.insert(review("book-2", "user-1", 1));
+        
+        assertThat(repository.deleteBatchByBookId("book-1", 2)).isEqualTo(2);
+        assertThat(repository.deleteBatchByBookId("book-1", 2)).isEqualTo(2);
+        assertThat(repository.deleteBatchByBookId("book-1", 2)).isEqualTo(1);
+        assertThat(repository.deleteBatchByBookId("book-1", 2)).isZero();
+        assertThat(repository.countByBookId("book-1")).isZero();
+        assertThat(repository.countByBookId("book-2")).isEqualTo(2);
+    }
+    
+    private List<Review> readAllPages(String bookId, String userId, int limit) {
+        List<Review> all = new ArrayList<>();
+        ReviewCursor after = null;
+        while (true) {
+            List<Review> page = repository.findPage(bookId, userId, after, limit, null);
+            assertThat(page.size()).isLessThanOrEqualTo(limit);
+            all.addAll(page);
+            if (page.size() < limit) {
+                return all;
+            }
+            after = ReviewCursor.after(page.get(page.size() - 1));
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.sua.ebook.reviewservice.repository;
+
+import com.sua.ebook.reviewservice.dto.ReviewCursor;
+import com.sua.ebook.reviewservice.job.ReviewShardRebalanceJob;
+import com.sua.ebook.reviewservice.model.Review;
+import de.bwaldvogel.mongo.MongoServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.sua.ebook.reviewservice.repository.RepositoryTestSupport.BASE;
+import static com.sua.ebook.reviewservice.repository.RepositoryTestSupport.ids;
+import static com.sua.ebook.reviewservice.repository.RepositoryTestSupport.review;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * ShardedReviewRepository and ReviewShardRebalanceJob against two in-process MongoDB
+ * servers: routing by book, merged pages across shards, a rebalance from one shard to two
+ * and the reads while a book is on both shards.
+ */
+class ShardedReviewRepositoryTest {
+    
+    private final List<MongoServer> servers = new ArrayList<>();
+    private final List<String> uris = new ArrayList<>();
+    private final List<ReviewShards> opened = new ArrayList<>();
+    private MappingMongoConverter converter;
+    
+    @BeforeEach
+    void startServers() {
+        for (int i = 0; i < 2; i++) {
+            MongoServer server = RepositoryTestSupport.startServer();
+            servers.add(server);
+            uris.add(RepositoryTestSupport.uri(server, "reviews" + i));
+        }
+        converter = RepositoryTestSupport.converter();
+    }
+    
+    @AfterEach
+    void stopServers() {
+        opened.forEach(shards -> ReflectionTestUtils.invokeMethod(shards, "close"));
+        servers.forEach(MongoServer::shutdownNow);
+    }
+    
+    @Test
+    void routesEachBookToItsShard() {
+        ReviewShards shards = shards(uris, List.of());
+        ShardedReviewRepository repository = repository(shards);
+        
+        for (int shard = 0; shard < 2; shard++) {
+            String bookId = bookOn(shard, 0);
+            repository.insert(review(bookId, "user-1", 0));
+            
+            assertThat(shards.forBook(bookId)).isSameAs(shards.current().get(shard));
+            assertThat(reviewCount(shards.current().get(shard), bookId)).isEqualTo(1);
+            assertThat(reviewCount(shards.current().get(1 - shard), bookId)).isZero();
+            assertThat(repository.findByBookIdOrderByCreatedAtDesc(bookId)).hasSize(1);
+            assertThat(repository.countByBookId(bookId)).isEqualTo(1);
+        }
+    }
+    
+    @Test
+    void mergesPagesFromAllShardsNewestFirst() {
+        ShardedReviewRepository repository = repository(shards(uris, List.of()));
+        List<Review> written = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            written.add(repository.insert(review(bookOn(i % 2, i / 2), "reader", i)));
+            repository.insert(review(bookOn(i % 2, i / 2), "other", i));
+        }
+        
+        List<Review> first = repository.findPage(null, "reader", null, 4, null);
+        assertThat(ids(first)).containsExactly(id(written, 5), id(written, 4), id(written, 3), id(written, 2));
+        List<Review> second = repository.findPage(null, "reader", ReviewCursor.after(first.get(3)), 4, null);
+        assertThat(ids(second)).containsExactly(id(written, 1), id(written, 0));
+        
+        assertThat(repository.findPage(null, null, null, 20, null)).hasSize(12);
+        assertThat(repository.countByUserId("reader")).isEqualTo(6);
+        try (Stream<Review> updated = repository.streamUpdatedSince(BASE.minusDays(1), 2)) {
+            assertThat(updated.toList())
+                .hasSize(12)
+                .isSortedAccordingTo(Comparator.comparing(Review::getUpdatedAt).thenComparing(Review::getId));
+        }
+    }
+    
+    @Test
+    void rebalanceMovesReviewsToTheirNewShardOnce() {
+        ShardedReviewRepository single = repository(shards(uris.subList(0, 1), List.of()));
+        List<String> books = new ArrayList<>();
+        long expectedMoved = 0;
+        for (int n = 0; n < 10; n++) {
+            String bookId = "book-" + n;
+            books.add(bookId);
+            single.insert(review(bookId, "user-1", n));
+            single.insert(review(bookId, "user-2", n));
+            if (ReviewShards.shardOf(bookId, 2) == 1) {
+                expectedMoved += 2;
+            }
+        }
+        assertThat(expectedMoved).isPositive();
+        
+        ReviewShards shards = shards(uris, uris.subList(0, 1));
+        ShardedReviewRepository repository = repository(shards);
+        ReviewShardRebalanceJob job = rebalanceJob(shards);
+        assertThat(shards.isMigrating()).isTrue();
+        // Med selitvijo je vsaka knjiga berljiva, ne glede na to, kje so njene recenzije
+        books.forEach(bookId -> assertThat(repository.countByBookId(bookId)).isEqualTo(2));
+        
+        Map<String, Object> first = job.rebalance();
+        // Shardi se praznijo po vrsti, zato novi shard pregleda tudi pravkar premaknjene recenzije
+        assertThat(first.get("scannedReviews")).isEqualTo(20L + expectedMoved);
+        assertThat(first.get("movedReviews")).isEqualTo(expectedMoved);
+        assertThat(first.get("conflicts")).isEqualTo(0L);
+        for (String bookId : books) {
+            int shard = ReviewShards.shardOf(bookId, 2);
+            assertThat(reviewCount(shards.current().get(shard), bookId)).isEqualTo(2);
+            assertThat(reviewCount(shards.current().get(1 - shard), bookId)).isZero();
+            assertThat(repository.countByBookId(bookId)).isEqualTo(2);
+        }
+        
+        Map<String, Object> second = job.rebalance();
+        assertThat(second.get("scannedReviews")).isEqualTo(20L);
+        assertThat(second.get("movedReviews")).isEqualTo(0L);
+        assertThat(second.get("conflicts")).isEqualTo(0L);
+    }
+    
+    @Test
+    void saveDuringMigrationLeavesOneCopy() {
+        String bookId = bookOn(1, 0);
+        Review review = repository(shards(uris.subList(0, 1), List.of())).insert(review(bookId, "user-1", 0));
+        
+        ReviewShards shards = shards(uris, uris.subList(0, 1));
+        ShardedReviewRepository repository = repository(shards);
+        review.setRating(2);
+        repository.save(review);
+        
+        assertThat(reviewCount(shards.current().get(0), bookId)).isZero();
+        assertThat(reviewCount(shards.current().get(1), bookId)).isEqualTo(1);
+        assertThat(repository.countByBookId(bookId)).isEqualTo(1);
+        assertThat(repository.findById(review.getId())).get().extracting(Review::getRating).isEqualTo(2);
+        try (Stream<Review> updated = repository.streamUpdatedSince(BASE.minusDays(1), 10)) {
+            assertThat(updated.toList()).extracting(Review::getRating).containsExactly(2);
+        }
+    }
+    
+    @Test
+    void reviewCopiedByRebalanceIsReadOnce() {
+        String bookId = bookOn(1, 0);
+        Review review = repository(shards(uris.subList(0, 1), List.of())).insert(review(bookId, "user-1", 0));
+        
+        ReviewShards shards = shards(uris, uris.subList(0, 1));
+        ShardedReviewRepository repository = repository(shards);
+        // Stanje rebalansa med kopiranjem na cilj in brisanjem z vira
+        shards.current().get(1).insert(review);
+        
+        assertThat(ids(repository.findPage(bookId, null, null, 10, null))).containsExactly(review.getId());
+        assertThat(ids(repository.findPage(null, "user-1", null, 10, null))).containsExactly(review.getId());
+        assertThat(repository.countByBookId(bookId)).isEqualTo(1);
+        try (Stream<Review> updated = repository.streamUpdatedSince(BASE.minusDays(1), 10)) {
+            assertThat(ids(updated.toList())).containsExactly(review.getId());
+        }
+    }
+    
+    @Test
+    void findsReviewsWithPendingEventsOnAllShardsOldestFirst() {
+        ShardedReviewRepository repository = repository(shards(uris, List.of()));
+        List<Review> pending = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Review review = review(bookOn(i % 2, i / 2), "user-1", i);
+            review.setEventPending(true);
+            pending.add(repository.insert(review));
+            repository.insert(review(bookOn(i % 2, i / 2), "user-2", i));
+        }
+        
+        assertThat(ids(repository.findEventPending(3))).containsExactly(id(pending, 0), id(pending, 1), id(pending, 2));
+        repository.clearEventPending(List.of(id(pending, 0), id(pending, 3)));
+        assertThat(ids(repository.findEventPending(10))).containsExactly(id(pending, 1), id(pending, 2));
+        assertThat(repository.findById(id(pending, 0))).get().extracting(Review::getEventPending).isNull();
+    }
+    
+    private ReviewShards shards(List<String> shardUris, List<String> previousUris) {
+        ReviewShards shards = new ReviewShards();
+        ReflectionTestUtils.setField(shards, "mongoConverter", converter);
+        ReflectionTestUtils.setField(shards, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(shards, "clientCustomizers",
+            new DefaultListableBeanFactory().getBeanProvider(MongoClientSettingsBuilderCustomizer.class));
+        ReflectionTestUtils.setField(shards, "uris", List.copyOf(shardUris));
+        ReflectionTestUtils.setField(shards, "previousUris", List.copyOf(previousUris));
+        ReflectionTestUtils.setField(shards, "scatterThreads", 4);
+        ReflectionTestUtils.setField(shards, "groupCommitEnabled", false);
+        ReflectionTestUtils.setField(shards, "webApplicationType", "servlet");
+        ReflectionTestUtils.invokeMethod(shards, "init");
+        opened.add(shards);
+        return shards;
+    }
+    
+    private static ShardedReviewRepository repository(ReviewShards shards) {
+        ShardedReviewRepository repository = new ShardedReviewRepository();
+        ReflectionTestUtils.setField(repository, "shards", shards);
+        return repository;
+    }
+    
+    private static ReviewShardRebalanceJob rebalanceJob(ReviewShards shards) {
+        ReviewShardRebalanceJob job = new ReviewShardRebalanceJob();
+        ReflectionTestUtils.setField(job, "shards", shards);
+        // Majhne serije, da se premik razdeli na več paketov
+        ReflectionTestUtils.setField(job, "batchSize", 3);
+        return job;
+    }
+    
+    // n-ta knjiga, ki pri dveh shardih pade na podani shard
+    private static String bookOn(int shard, int n) {
+        int found = 0;
+        for (int i = 0; ; i++) {
+            String bookId = "book-" + i;
+            if (ReviewShards.shardOf(bookId, 2) == shard && found++ == n) {
+                return bookId;
+            }
+        }
+    }
+    
+    private static long reviewCount(MongoTemplate shard, String bookId) {
+        Query query = query(where("bookId").is(bookId));
+        return shard.count(query, Review.class);
+    }
+    
+    private static String id(List<Review> reviews, int index) {
+        return reviews.get(index).getId();
+    }
+}
@@ -0,0 +1,115 @@
+package com.sua.ebook.reviewservice.security;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * VerifiedTokenCache in front of JwtTokenProvider: a repeated token is verified once, while
+ * a changed, invalid or expired token always goes through verification and is rejected.
+ */
+class VerifiedTokenCacheTest {
+    
+    private static final String SECRET = "0123456789abcdef0123456789abcdef0123";
+    
+    private JwtTokenProvider provider;
+    private final AtomicInteger verifications = new AtomicInteger();
+    private Function<String, JwtPrincipal> verifier;
+    
+    @BeforeEach
+    void createProvider() {
+        provider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(provider, "jwtSecret", SECRET);
+        ReflectionTestUtils.invokeMethod(provider, "init");
+        verifier = token -> {
+            verifications.incrementAndGet();
+            return provider.parsePrincipal(token);
+        };
+    }
+    
+    @Test
+    void repeatedTokenIsVerifiedOnce() {
+        VerifiedTokenCache cache = cache(Duration.ofMinutes(5));
+        String token = token("user-1", "admin", Instant.now().plusSeconds(600));
+        
+        JwtPrincipal first = cache.get(token, verifier);
+        JwtPrincipal second = cache.get(token, verifier);
+        
+        assertThat(second).isSameAs(first);
+        assertThat(second.getUserId()).isEqualTo("user-1");
+        assertThat(second.getRole()).isEqualTo("admin");
+        assertThat(verifications).hasValue(1);
+        assertThat(cache.get(token("user-2", "user", Instant.now().plusSeconds(600)), verifier).getUserId())
+            .isEqualTo("user-2");
+        assertThat(verifications).hasValue(2);
+    }
+    
+    @Test
+    void changedOrInvalidTokenIsNeverServedFromTheCache() {
+        VerifiedTokenCache cache = cache(Duration.ofMinutes(5));
+        String token = token("user-1", "user", Instant.now().plusSeconds(600));
+        cache.get(token, verifier);
+        
+        // Drug podpis je drug ključ v predpomnilniku, zato gre skozi preverjanje
+        String forged = token.substring(0, token.lastIndexOf('.') + 1) + "AAAA" + token.substring(token.lastIndexOf('.') + 5);
+        assertThatThrownBy(() -> cache.get(forged, verifier)).hasMessageContaining("Invalid JWT token");
+        // Zavrnjen žeton se ne shrani: ponovitev se spet preveri
+        assertThatThrownBy(() -> cache.get(forged, verifier)).hasMessageContaining("Invalid JWT token");
+        assertThat(verifications).hasValue(3);
+    }
+    
+    @Test
+    void tokenIsVerifiedAgainOnceItExpires() throws InterruptedException {
+        VerifiedTokenCache cache = cache(Duration.ofMinutes(5));
+        // exp ima ločljivost sekunde
+        String token = token("user-1", "user", Instant.now().plusMillis(1500));
+        cache.get(token, verifier);
+        assertThat(verifications).hasValue(1);
+        
+        Thread.sleep(2000);
+        assertThatThrownBy(() -> cache.get(token, verifier)).hasMessageContaining("Invalid JWT token");
+        assertThat(verifications).hasValue(2);
+    }
+    
+    @Test
+    void entryLivesAtMostTheMaximumTtl() throws InterruptedException {
+        VerifiedTokenCache cache = cache(Duration.ofMillis(100));
+        String token = token("user-1", "user", Instant.now().plusSeconds(600));
+        cache.get(token, verifier);
+        
+        Thread.sleep(300);
+        assertThat(cache.get(token, verifier).getUserId()).isEqualTo("user-1");
+        assertThat(verifications).hasValue(2);
+    }
+    
+    private static VerifiedTokenCache cache(Duration maxTtl) {
+        VerifiedTokenCache cache = new VerifiedTokenCache();
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "maxSize", 100L);
+        ReflectionTestUtils.setField(cache, "maxTtl", maxTtl);
+        ReflectionTestUtils.invokeMethod(cache, "init");
+        return cache;
+    }
+    
+    private static String token(String userId, String role, Instant expiresAt) {
+        return Jwts.builder()
+            .setSubject(userId)
+            .claim("role", role)
+            .setExpiration(Date.from(expiresAt))
+            .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+            .compact();
+    }
+}
@@ -0,0 +1,156 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.sua.ebook.reviewservice.admission.MongoLatencyTracker;
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.model.Review;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * RatingWriteBuffer against an in-process MongoDB. Batches close after two writes, so the
+ * two writes of each test land in one window: both to the same (bookId, userId) pair.
+ */
+class RatingWriteBufferTest {
+    
+    private MongoServer server;
+    private MongoClient client;
+    private MongoTemplate mongoTemplate;
+    private MeterRegistry meterRegistry;
+    private RatingWriteBuffer buffer;
+    // Spremembe, ki bi jih paket prinesel povzetkom ocen
+    private final List<RatingChange> summaryChanges = new CopyOnWriteArrayList<>();
+    
+    @BeforeEach
+    void startBuffer() {
+        server = new MongoServer(new MemoryBackend());
+        InetSocketAddress address = server.bind();
+        client = MongoClients.create("mongodb://localhost:" + address.getPort());
+        SimpleMongoClientDatabaseFactory databaseFactory = new SimpleMongoClientDatabaseFactory(client, "reviews");
+        mongoTemplate = new MongoTemplate(databaseFactory);
+        meterRegistry = new SimpleMeterRegistry();
+        
+        ReadCoalescer readCoalescer = new ReadCoalescer();
+        ReflectionTestUtils.setField(readCoalescer, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(readCoalescer, "enabled", true);
+        ReflectionTestUtils.setField(readCoalescer, "stripeCount", 4);
+        ReflectionTestUtils.invokeMethod(readCoalescer, "init");
+        
+        buffer = new RatingWriteBuffer();
+        ReflectionTestUtils.setField(buffer, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(buffer, "mongoDatabaseFactory", databaseFactory);
+        ReflectionTestUtils.setField(buffer, "ratingSummaryService", new RatingSummaryService() {
+            @Override
+            void recordBatch(List<RatingChange> changes) {
+                summaryChanges.addAll(changes);
+            }
+        });
+        ReflectionTestUtils.setField(buffer, "ratingTrendService", new RatingTrendService() {
+            @Override
+            void recordBatch(List<RatingChange> changes) {
+            }
+        });
+        ReflectionTestUtils.setField(buffer, "bookReviewCache", new BookReviewCache() {
+            @Override
+            public void bump(String bookId) {
+            }
+        });
+        ReflectionTestUtils.setField(buffer, "readCoalescer", readCoalescer);
+        ReflectionTestUtils.setField(buffer, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(buffer, "mongoLatencyTracker", new MongoLatencyTracker());
+        ReflectionTestUtils.setField(buffer, "enabled", true);
+        // Dolgo okno, paket pa se zapre pri drugi zahtevi
+        ReflectionTestUtils.setField(buffer, "window", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(buffer, "maxBatch", 2);
+        ReflectionTestUtils.setField(buffer, "queueCapacity", 100);
+        ReflectionTestUtils.setField(buffer, "writeConcern", "acknowledged");
+        ReflectionTestUtils.invokeMethod(buffer, "init");
+    }
+    
+    @AfterEach
+    void stopBuffer() {
+        ReflectionTestUtils.invokeMethod(buffer, "shutdown");
+        client.close();
+        server.shutdownNow();
+    }
+    
+    @Test
+    void twoRatingUpdatesOfOneReviewInAWindowBecomeOneWrite() throws Exception {
+        Review review = new Review("book-1", "user-1", 2, null);
+        review.setId(new ObjectId().toHexString());
+        mongoTemplate.insert(review);
+        
+        CompletableFuture<Review> first = buffer.submitRatingUpdate(review.getId(), 4, "user-1");
+        CompletableFuture<Review> second = buffer.submitRatingUpdate(review.getId(), 5, "user-1");
+        
+        // Obe zahtevi dobita stanje po zadnji oceni paketa
+        assertThat(first.get(5, TimeUnit.SECONDS).getRating()).isEqualTo(5);
+        assertThat(second.get(5, TimeUnit.SECONDS).getRating()).isEqualTo(5);
+        assertThat(mongoTemplate.findById(review.getId(), Review.class).getRating()).isEqualTo(5);
+        // Ena sprememba 2 -> 5, ne 2 -> 4 in 4 -> 5 ali dvakrat od 2
+        assertThat(summaryChanges).hasSize(1);
+        assertThat(summaryChanges.get(0).oldRating).isEqualTo(2);
+        assertThat(summaryChanges.get(0).newRating).isEqualTo(5);
+        assertThat(meterRegistry.get("review.group_commit.coalesced").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("review.group_commit.batch_size").summary().count()).isEqualTo(1);
+    }
+    
+    @Test
+    void secondNewRatingOfTheSameUserForABookInAWindowGets409() throws Exception {
+        CompletableFuture<Review> first = buffer.submitCreate(new Review("book-1", "user-1", 4, null));
+        CompletableFuture<Review> second = buffer.submitCreate(new Review("book-1", "user-1", 1, null));
+        
+        Review written = first.get(5, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> RatingWriteBuffer.await(second))
+            .isInstanceOf(ReviewServiceException.class)
+            .extracting(e -> ((ReviewServiceException) e).getStatus())
+            .isEqualTo(HttpStatus.CONFLICT);
+        List<Review> stored = mongoTemplate.find(query(where("bookId").is("book-1").and("userId").is("user-1")), Review.class);
+        assertThat(stored).extracting(Review::getId).containsExactly(written.getId());
+        assertThat(stored.get(0).getRating()).isEqualTo(4);
+        assertThat(summaryChanges).hasSize(1);
+        assertThat(summaryChanges.get(0).oldRating).isNull();
+        assertThat(summaryChanges.get(0).newRating).isEqualTo(4);
+    }
+    
+    @Test
+    void updatesFromAnotherUserInTheSameWindowAreRejectedAndNotMerged() throws Exception {
+        Review review = new Review("book-1", "user-1", 3, null);
+        review.setId(new ObjectId().toHexString());
+        mongoTemplate.insert(review);
+        
+        CompletableFuture<Review> owner = buffer.submitRatingUpdate(review.getId(), 4, "user-1");
+        CompletableFuture<Review> stranger = buffer.submitRatingUpdate(review.getId(), 1, "user-2");
+        
+        assertThat(owner.get(5, TimeUnit.SECONDS).getRating()).isEqualTo(4);
+        assertThatThrownBy(() -> RatingWriteBuffer.await(stranger))
+            .isInstanceOf(ReviewServiceException.class)
+            .extracting(e -> ((ReviewServiceException) e).getStatus())
+            .isEqualTo(HttpStatus.UNAUTHORIZED);
+        assertThat(mongoTemplate.findById(review.getId(), Review.class).getRating()).isEqualTo(4);
+        assertThat(meterRegistry.get("review.group_commit.coalesced").counter().count()).isZero();
+    }
+}
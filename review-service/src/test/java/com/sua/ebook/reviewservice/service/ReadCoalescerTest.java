@@ -0,0 +1,161 @@
+package com.sua.ebook.reviewservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ReadCoalescer with a leading read held open: identical reads join it, and a read that
+ * starts after a write to its book, its user or to any book (unfiltered listing) runs on
+ * its own instead of returning the result from before the write.
+ */
+class ReadCoalescerTest {
+    
+    private ReadCoalescer coalescer;
+    private ExecutorService callers;
+    
+    @BeforeEach
+    void createCoalescer() {
+        coalescer = new ReadCoalescer();
+        ReflectionTestUtils.setField(coalescer, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(coalescer, "enabled", true);
+        ReflectionTestUtils.setField(coalescer, "stripeCount", 4);
+        ReflectionTestUtils.invokeMethod(coalescer, "init");
+        callers = Executors.newCachedThreadPool();
+    }
+    
+    @AfterEach
+    void stopCallers() {
+        callers.shutdownNow();
+    }
+    
+    @Test
+    void identicalReadsJoinTheRunningOne() throws Exception {
+        HeldRead leader = new HeldRead("first");
+        Future<String> first = callers.submit(() -> read("book-1", null, leader));
+        leader.awaitStarted();
+        
+        AtomicInteger ownReads = new AtomicInteger();
+        Future<String> joined = callers.submit(() -> read("book-1", null, () -> {
+            ownReads.incrementAndGet();
+            return "second";
+        }));
+        // Drugi klic čaka na vodilnega, zato se ne konča, dokler vodilni ne vrne rezultata
+        Thread.sleep(100);
+        assertThat(joined.isDone()).isFalse();
+        
+        leader.release();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("first");
+        assertThat(joined.get(5, TimeUnit.SECONDS)).isEqualTo("first");
+        assertThat(ownReads).hasValue(0);
+        // Po koncu vodilnega klica ga nova branja ne najdejo več
+        assertThat(read("book-1", null, () -> "third")).isEqualTo("third");
+    }
+    
+    @Test
+    void readAfterAWriteToTheBookDoesNotJoinAnEarlierRead() throws Exception {
+        HeldRead stale = new HeldRead("before write");
+        Future<String> first = callers.submit(() -> read("book-1", null, stale));
+        stale.awaitStarted();
+        
+        coalescer.written("book-1", "user-1");
+        // Branje po zapisu ne sme dobiti rezultata branja, ki se je začelo pred njim
+        assertThat(read("book-1", null, () -> "after write")).isEqualTo("after write");
+        
+        stale.release();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("before write");
+    }
+    
+    @Test
+    void writeAdvancesTheUserAndUnfilteredReadsToo() throws Exception {
+        HeldRead byUser = new HeldRead("user before write");
+        HeldRead unfiltered = new HeldRead("all before write");
+        Future<String> userRead = callers.submit(() -> read(null, "user-1", byUser));
+        Future<String> allRead = callers.submit(() -> read(null, null, unfiltered));
+        byUser.awaitStarted();
+        unfiltered.awaitStarted();
+        
+        coalescer.written("book-1", "user-1");
+        assertThat(read(null, "user-1", () -> "user after write")).isEqualTo("user after write");
+        assertThat(read(null, null, () -> "all after write")).isEqualTo("all after write");
+        
+        byUser.release();
+        unfiltered.release();
+        assertThat(userRead.get(5, TimeUnit.SECONDS)).isEqualTo("user before write");
+        assertThat(allRead.get(5, TimeUnit.SECONDS)).isEqualTo("all before write");
+    }
+    
+    @Test
+    void reactiveReadAfterAWriteDoesNotJoinAnEarlierRead() {
+        CompletableFuture<String> held = new CompletableFuture<>();
+        AtomicInteger reads = new AtomicInteger();
+        Supplier<Mono<String>> slowRead = () -> {
+            reads.incrementAndGet();
+            return Mono.fromFuture(held);
+        };
+        Mono<String> first = coalescer.executeReactive("page", "book-1", null, List.of(10), slowRead);
+        CompletableFuture<String> firstResult = first.toFuture();
+        CompletableFuture<String> joinedResult = coalescer
+            .executeReactive("page", "book-1", null, List.of(10), slowRead).toFuture();
+        assertThat(reads).hasValue(1);
+        
+        coalescer.written("book-1", null);
+        String fresh = coalescer.executeReactive("page", "book-1", null, List.of(10), () -> Mono.just("after write"))
+            .block(Duration.ofSeconds(5));
+        assertThat(fresh).isEqualTo("after write");
+        
+        held.complete("before write");
+        assertThat(firstResult.join()).isEqualTo("before write");
+        assertThat(joinedResult.join()).isEqualTo("before write");
+    }
+    
+    private String read(String bookId, String userId, Supplier<String> read) {
+        return coalescer.execute("page", bookId, userId, List.of(10), read);
+    }
+    
+    // Branje, ki se začne in počaka, dokler ga test ne sprosti
+    private static final class HeldRead implements Supplier<String> {
+        private final String result;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        
+        private HeldRead(String result) {
+            this.result = result;
+        }
+        
+        @Override
+        public String get() {
+            started.countDown();
+            try {
+                released.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return result;
+        }
+        
+        void awaitStarted() throws InterruptedException {
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+        
+        void release() {
+            released.countDown();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.sua.ebook.reviewservice.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.sua.ebook.reviewservice.exception.ReviewServiceException;
+import com.sua.ebook.reviewservice.model.Review;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * ReviewIdempotency against an in-process MongoDB: a retry with the same key and request is
+ * replayed without writing again, a key reused for a different request gets 422, on the
+ * same instance (cache, request in flight) and on another one (idempotency_keys).
+ */
+class ReviewIdempotencyTest {
+    
+    private static final String REQUEST = "{\"bookId\":\"book-1\",\"rating\":4}";
+    private static final String OTHER_REQUEST = "{\"bookId\":\"book-1\",\"rating\":5}";
+    
+    private MongoServer server;
+    private MongoClient client;
+    private MongoTemplate mongoTemplate;
+    private ExecutorService callers;
+    
+    @BeforeEach
+    void startServer() {
+        server = new MongoServer(new MemoryBackend());
+        InetSocketAddress address = server.bind();
+        client = MongoClients.create("mongodb://localhost:" + address.getPort());
+        mongoTemplate = new MongoTemplate(client, "reviews");
+        callers = Executors.newCachedThreadPool();
+    }
+    
+    @AfterEach
+    void stopServer() {
+        callers.shutdownNow();
+        client.close();
+        server.shutdownNow();
+    }
+    
+    @Test
+    void retryWithTheSameKeyIsReplayedWithoutWritingAgain() {
+        ReviewIdempotency idempotency = idempotency();
+        CountingWrite write = new CountingWrite();
+        
+        ReviewIdempotency.Result first = idempotency.execute("user-1", "key-1", "create", REQUEST, write);
+        ReviewIdempotency.Result retry = idempotency.execute("user-1", "key-1", "create", REQUEST, write);
+        
+        assertThat(first.isReplayed()).isFalse();
+        assertThat(retry.isReplayed()).isTrue();
+        assertThat(retry.getReview().getId()).isEqualTo(first.getReview().getId());
+        assertThat(write.calls).hasValue(1);
+        // Ključ pripada uporabniku: drug uporabnik z enakim ključem zapiše svojo recenzijo
+        assertThat(idempotency.execute("user-2", "key-1", "create", REQUEST, write).isReplayed()).isFalse();
+        assertThat(write.calls).hasValue(2);
+    }
+    
+    @Test
+    void keyReusedForADifferentRequestIsRejectedWith422() {
+        ReviewIdempotency idempotency = idempotency();
+        CountingWrite write = new CountingWrite();
+        idempotency.execute("user-1", "key-1", "create", REQUEST, write);
+        
+        assertUnprocessable(() -> idempotency.execute("user-1", "key-1", "create", OTHER_REQUEST, write));
+        // Enako telo za drugo operacijo je tudi druga zahteva
+        assertUnprocessable(() -> idempotency.execute("user-1", "key-1", "quick", REQUEST, write));
+        assertThat(write.calls).hasValue(1);
+    }
+    
+    @Test
+    void anotherInstanceReplaysOrRejectsFromTheStoredRecord() {
+        CountingWrite write = new CountingWrite();
+        Review original = idempotency().execute("user-1", "key-1", "create", REQUEST, write).getReview();
+        
+        // Nova instanca nima predpomnilnika, zato odgovor prebere iz idempotency_keys
+        ReviewIdempotency other = idempotency();
+        ReviewIdempotency.Result retry = other.execute("user-1", "key-1", "create", REQUEST, write);
+        assertThat(retry.isReplayed()).isTrue();
+        assertThat(retry.getReview().getId()).isEqualTo(original.getId());
+        assertThat(retry.getReview().getRating()).isEqualTo(original.getRating());
+        assertUnprocessable(() -> idempotency().execute("user-1", "key-1", "create", OTHER_REQUEST, write));
+        assertThat(write.calls).hasValue(1);
+    }
+    
+    @Test
+    void duplicateWaitsForTheRequestInFlightAndGetsItsReview() throws Exception {
+        ReviewIdempotency idempotency = idempotency();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountingWrite write = new CountingWrite(() -> {
+            started.countDown();
+            await(release);
+        });
+        Future<ReviewIdempotency.Result> original = callers.submit(
+            () -> idempotency.execute("user-1", "key-1", "create", REQUEST, write));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        
+        Future<ReviewIdempotency.Result> duplicate = callers.submit(
+            () -> idempotency.execute("user-1", "key-1", "create", REQUEST, write));
+        // Drugačna zahteva s ključem v teku ne čaka, ampak dobi 422 takoj
+        assertUnprocessable(() -> idempotency.execute("user-1", "key-1", "create", OTHER_REQUEST, write));
+        release.countDown();
+        
+        ReviewIdempotency.Result first = original.get(5, TimeUnit.SECONDS);
+        ReviewIdempotency.Result second = duplicate.get(5, TimeUnit.SECONDS);
+        assertThat(first.isReplayed()).isFalse();
+        assertThat(second.isReplayed()).isTrue();
+        assertThat(second.getReview().getId()).isEqualTo(first.getReview().getId());
+        assertThat(write.calls).hasValue(1);
+    }
+    
+    @Test
+    void failedRequestIsNotStoredSoTheRetryRunsAgain() {
+        ReviewIdempotency idempotency = idempotency();
+        CountingWrite failing = new CountingWrite(() -> {
+            throw ReviewServiceException.conflict("You have already reviewed this book");
+        });
+        assertThatThrownBy(() -> idempotency.execute("user-1", "key-1", "create", REQUEST, failing))
+            .isInstanceOf(ReviewServiceException.class);
+        
+        CountingWrite write = new CountingWrite();
+        assertThat(idempotency.execute("user-1", "key-1", "create", REQUEST, write).isReplayed()).isFalse();
+        assertThat(write.calls).hasValue(1);
+    }
+    
+    private ReviewIdempotency idempotency() {
+        ReviewIdempotency idempotency = new ReviewIdempotency();
+        ReflectionTestUtils.setField(idempotency, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(idempotency, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(idempotency, "ttl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(idempotency, "cacheSize", 100L);
+        ReflectionTestUtils.setField(idempotency, "wait", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(idempotency, "lease", Duration.ofSeconds(30));
+        ReflectionTestUtils.invokeMethod(idempotency, "init");
+        return idempotency;
+    }
+    
+    private static void assertUnprocessable(Runnable call) {
+        assertThatThrownBy(call::run)
+            .isInstanceOf(ReviewServiceException.class)
+            .extracting(e -> ((ReviewServiceException) e).getStatus())
+            .isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // Zapis recenzije, ki šteje klice; before teče pred zapisom
+    private static final class CountingWrite implements Supplier<Review> {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final Runnable before;
+        
+        private CountingWrite() {
+            this(() -> {});
+        }
+        
+        private CountingWrite(Runnable before) {
+            this.before = before;
+        }
+        
+        @Override
+        public Review get() {
+            calls.incrementAndGet();
+            before.run();
+            Review review = new Review("book-1", "user-1", 4, "A great story");
+            review.setId(new ObjectId().toHexString());
+            return review;
+        }
+    }
+}